@@ -10,7 +10,8 @@ public abstract class DatabaseWrapper{
 	
 	private static final String DATABASE_NAME = "collect.db";
 	private static final String DB_PATH = "/data/data/org.openforis.collect.android/databases/";
-	private static final int DATABASE_VERSION = 3;
+	//4: ofc_upload_queue, 5: ofc_sync_state
+	private static final int DATABASE_VERSION = 5;
 	public static final String CONNECTION_URL = "jdbc:sqldroid:"+DB_PATH+"collect.db";
 	///data/data/org.openforis.collect.android/databases/collect.db
 	private static OpenHelper openHelper;
@@ -57,12 +58,34 @@ public abstract class DatabaseWrapper{
 
 		@Override
 		public void onCreate(SQLiteDatabase db) {
-			
+			OpenHelper.createTables(db);
 		}
 
 		@Override
 		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-			
+			OpenHelper.createTables(db);
+		}
+		
+		//tables of the application itself, created before the managers using them are initialized;
+		//the collect tables are managed by liquibase
+		private static void createTables(SQLiteDatabase db){
+			db.execSQL("create table if not exists ofc_upload_queue"
+					+" ("
+					+"file_name text not null primary key,"
+					+"overwrite integer not null,"
+					+"status text not null,"
+					+"attempts integer not null,"
+					+"next_attempt integer not null,"
+					+"last_error text,"
+					+"date_queued integer not null"
+					+");");
+			db.execSQL("create table if not exists ofc_sync_state"
+					+" ("
+					+"record_id integer not null primary key,"
+					+"sync_key text not null,"
+					+"modified integer not null,"
+					+"hash text not null"
+					+");");
 		}
 	}
 }
\ No newline at end of file
@@ -3,12 +3,10 @@ package org.openforis.collect.android.fields;
 import java.util.ArrayList;
 
 import org.openforis.collect.android.R;
-import org.openforis.collect.android.management.ValidationManager;
 import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.collect.android.screens.FormScreen;
 import org.openforis.idm.metamodel.BooleanAttributeDefinition;
 import org.openforis.idm.metamodel.NodeDefinition;
-import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.model.BooleanAttribute;
 import org.openforis.idm.model.BooleanValue;
 import org.openforis.idm.model.EntityBuilder;
@@ -31,12 +29,10 @@ public class BooleanField extends Field {
 	private CheckBox chckBox1;
 	private CheckBox chckBox2;
 	
-	private static FormScreen form;
 	
 	public BooleanField(Context context, NodeDefinition nodeDef, boolean isChecked1, boolean isChecked2, String label1Text, String label2Text) {
 		super(context, nodeDef);
 
-		BooleanField.form = (FormScreen)context;
 
 		//this.label.setLayoutParams(new LayoutParams(0,ViewGroup.LayoutParams.WRAP_CONTENT, (float) 2));
 		this.label.setOnLongClickListener(new OnLongClickListener() {
@@ -57,9 +53,9 @@ public class BooleanField extends Field {
 				value.add(String.valueOf(chckBox1.isChecked()));
 				value.add(String.valueOf(!chckBox1.isChecked()));
 				if (BooleanField.this.nodeDefinition.isMultiple()){
-					BooleanField.this.setValue(BooleanField.form.currInstanceNo, !chckBox2.isChecked(), BooleanField.form.getFormScreenId(), true);	
+					BooleanField.this.setValue(BooleanField.this.form.currInstanceNo, !chckBox2.isChecked(), BooleanField.this.form.getFormScreenId(), true);	
 				} else {
-					BooleanField.this.setValue(0, !chckBox2.isChecked(), BooleanField.form.getFormScreenId(), true);
+					BooleanField.this.setValue(0, !chckBox2.isChecked(), BooleanField.this.form.getFormScreenId(), true);
 				}
   			}
 	    });		
@@ -79,9 +75,9 @@ public class BooleanField extends Field {
 					value.add(String.valueOf(!chckBox2.isChecked()));
 					value.add(String.valueOf(chckBox2.isChecked()));
 					if (BooleanField.this.nodeDefinition.isMultiple()){
-						BooleanField.this.setValue(BooleanField.form.currInstanceNo, !chckBox2.isChecked(), BooleanField.form.getFormScreenId(), true);	
+						BooleanField.this.setValue(BooleanField.this.form.currInstanceNo, !chckBox2.isChecked(), BooleanField.this.form.getFormScreenId(), true);	
 					} else {
-						BooleanField.this.setValue(0, !chckBox2.isChecked(), BooleanField.form.getFormScreenId(), true);
+						BooleanField.this.setValue(0, !chckBox2.isChecked(), BooleanField.this.form.getFormScreenId(), true);
 					}					
 	          }
 	    });
@@ -106,19 +102,14 @@ public class BooleanField extends Field {
 		this.addView(tr);
 	}
 	
-	private void validateResults(Node<? extends NodeDefinition> node){
-		ValidationResults results = ValidationManager.validateField(node); 
-		if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
-			this.setBackgroundColor(Color.RED);
-		}else if (results.getWarnings().size() > 0){
-			this.setBackgroundColor(Color.YELLOW);
-		}else{
-			this.setBackgroundColor(Color.TRANSPARENT);
-		}		
+	public void setValue(int position, Boolean boolValue, String path, boolean isSelectionChanged)
+	{
+		this.setValue(position, boolValue, path, isSelectionChanged, true);
 	}
 	
-	public void setValue(int position, Boolean boolValue, String path, boolean isSelectionChanged)
+	public void setValue(int position, Boolean boolValue, String path, boolean isSelectionChanged, boolean notify)
 	{
+		boolean isChanged = this.beginSetValue(String.valueOf(boolValue), notify);
 		if (boolValue==null){
 			if (!isSelectionChanged)
 				this.chckBox1.setChecked(false);
@@ -136,10 +127,10 @@ public class BooleanField extends Field {
 			BooleanAttribute boolAtr = (BooleanAttribute)node;
 			boolAtr.setValue(new BooleanValue(boolValue));
 			//Validate results 
-//			this.validateResults(node);
 		} else {
 			EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), boolValue, position);	
 		}
+		this.endSetValue(path, isChanged);
 	}
 	
 	public void addOnClickListener(OnClickListener onClickListener1, OnClickListener onClickListener2) {
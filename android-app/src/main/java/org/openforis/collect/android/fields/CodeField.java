@@ -3,7 +3,9 @@ package org.openforis.collect.android.fields;
 import java.util.ArrayList;
 
 import org.openforis.collect.android.R;
+import org.openforis.collect.android.lists.ListSearchActivity;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.CodeListCache;
 import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.collect.android.screens.FormScreen;
 import org.openforis.idm.metamodel.CodeAttributeDefinition;
@@ -15,6 +17,7 @@ import org.openforis.idm.model.EntityBuilder;
 import org.openforis.idm.model.Node;
 
 import android.content.Context;
+import android.content.Intent;
 import android.text.Editable;
 import android.view.View;
 import android.view.ViewGroup;
@@ -40,6 +43,7 @@ public class CodeField extends InputField {
 
 	ArrayList<String> options;
 	ArrayList<String> codes;
+	private CodeListOptions codeListOptions;
 	//private ArrayList<String> currentCodes;
 	
 	private boolean searchable;
@@ -47,7 +51,6 @@ public class CodeField extends InputField {
 	/*private ArrayList<String> selectedCodesList;
 	private int currentHierarchyLevel;*/
 	
-	private static FormScreen form;
 	
 //	private boolean selectedForTheFirstTime;
 	
@@ -56,7 +59,7 @@ public class CodeField extends InputField {
 	private ArrayList<Integer> childrenIds;
 	
 	public CodeField(Context context, NodeDefinition nodeDef, 
-			ArrayList<String> codes, ArrayList<String> options, 
+			CodeListOptions codeListOptions, 
 			String selectedItem) {
 		super(context, nodeDef);
 
@@ -70,7 +73,6 @@ public class CodeField extends InputField {
 		this.spinnerList = new ArrayList<Spinner>();
 		this.selectedCodesList = new ArrayList<String>();*/
 		
-		CodeField.form = (FormScreen)context;
 		
 		//this.selectedForTheFirstTime = true;
 		
@@ -86,7 +88,12 @@ public class CodeField extends InputField {
 			this.label.setOnClickListener(new OnClickListener() {
 				@Override
 				public void onClick(View v) {
-					
+					if (CodeField.this.spinner!=null&&CodeField.this.spinner.isEnabled()){
+						Intent searchIntent = new Intent(CodeField.this.getContext(), ListSearchActivity.class);
+						searchIntent.putExtra(getResources().getString(R.string.codeFieldId), CodeField.this.getId());
+						searchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+						CodeField.this.getContext().startActivity(searchIntent);
+					}
 				}});
 		}
 		
@@ -102,8 +109,7 @@ public class CodeField extends InputField {
 				this.spinner = new Spinner(context);
 				this.spinner.setPrompt(this.label.getText());
 				
-				this.codes = codes;
-				this.options = options;
+				this.setCodeListOptions(codeListOptions);
 
 				this.aa = new ArrayAdapter<String>(context, android.R.layout.simple_spinner_item, this.options);
 				this.aa.setDropDownViewResource(R.layout.codelistitem);
@@ -115,9 +121,9 @@ public class CodeField extends InputField {
 				    public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
 				    	
 				    	if (CodeField.this.nodeDefinition.isMultiple()){
-				    		CodeField.this.setValue(CodeField.form.currInstanceNo, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.form.getFormScreenId(),true);	
+				    		CodeField.this.setValue(CodeField.this.form.currInstanceNo, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.this.form.getFormScreenId(),true);	
 				    	} else {
-				    		CodeField.this.setValue(0, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.form.getFormScreenId(),true);
+				    		CodeField.this.setValue(0, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.this.form.getFormScreenId(),true);
 				    	}
 				    }
 
@@ -128,174 +134,51 @@ public class CodeField extends InputField {
 
 				});
 				
-				boolean isFound = false;
-				int position = 0;
-				if (selectedItem!=null){
-					while (!isFound&&position<this.codes.size()){
-						if (this.codes.get(position).equals(selectedItem)){
-							isFound = true;
-						}
-						position++;
-					}	
-				}
-				if (isFound)
-					this.spinner.setSelection(position-1);
-				else
-					this.spinner.setSelection(0);
+				this.spinner.setSelection(Math.max(this.codeListOptions.getPosition(selectedItem), 0));
 
 				this.addView(this.spinner);
 			} else {
+				this.spinner = new Spinner(context);
+				this.spinner.setPrompt(this.label.getText());
+				
 				if (this.codeAttrDef.getParentCodeAttributeDefinition()!=null){
-					this.spinner = new Spinner(context);
-					this.spinner.setPrompt(this.label.getText());
-					
-					//this.codes = codes;
-					//this.options = options;
-					this.codes = new ArrayList<String>();
-					this.codes.add("");
-					this.options = new ArrayList<String>();
-					this.options.add("");
-					
+					CodeListItem selectedParentItem = null;
 					CodeField parentCodeField = (CodeField)ApplicationManager.getUIElement(this.codeAttrDef.getParentCodeAttributeDefinition().getId());
 					if (parentCodeField!=null){
-						int selectedPositionInParent = parentCodeField.spinner.getSelectedItemPosition();
-						if (selectedPositionInParent>0){
-							selectedPositionInParent--;
-							for (int i=0;i<this.codeAttrDef.getList().getItems(this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().size();i++){
-								this.codes.add(this.codeAttrDef.getList().getItems(this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().get(i).getCode().toString());
-								this.options.add(this.codeAttrDef.getList().getItems(this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().get(i).getLabels().get(0).getText());
-							}
-						}							
-					}
-					
-					parentCodeField.addChildId(this.codeAttrDef.getId());
-					
-					this.aa = new ArrayAdapter<String>(context, android.R.layout.simple_spinner_item, this.options);
-					this.aa.setDropDownViewResource(R.layout.codelistitem);
-
-					this.spinner.setAdapter(aa);
-					this.spinner.setLayoutParams(new LayoutParams(0,ViewGroup.LayoutParams.WRAP_CONTENT,(float) 3));
-					this.spinner.setOnItemSelectedListener(new OnItemSelectedListener() {
-					    @Override
-					    public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
-					    	if (CodeField.this.nodeDefinition.isMultiple()){
-					    		CodeField.this.setValue(CodeField.form.currInstanceNo, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.form.getFormScreenId(),true);	
-					    	} else {
-					    		CodeField.this.setValue(0, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.form.getFormScreenId(),true);
-					    	}
-					    }
-
-					    @Override
-					    public void onNothingSelected(AdapterView<?> parentView) {
-					    	
-					    }
-
-					});
-					
-					boolean isFound = false;
-					int position = 0;
-					if (selectedItem!=null){
-						while (!isFound&&position<this.codes.size()){
-							if (this.codes.get(position).equals(selectedItem)){
-								isFound = true;
-							}
-							position++;
-						}	
-					}
-					if (isFound){
-						this.spinner.setSelection(position-1);
-					}						
-					else{
-						this.spinner.setSelection(0);						
-					}
-
-					if (this.aa.getCount()==1){
-						this.spinner.setEnabled(false);
-					} else {
-						this.spinner.setEnabled(true);
-					}
-					this.addView(this.spinner);
-				}			
-				else {
-					this.spinner = new Spinner(context);
-					this.spinner.setPrompt(this.label.getText());
-					
-					this.codes = codes;
-					this.options = options;
-
-					this.aa = new ArrayAdapter<String>(context, android.R.layout.simple_spinner_item, this.options);
-					this.aa.setDropDownViewResource(R.layout.codelistitem);
-
-					this.spinner.setAdapter(aa);
-					this.spinner.setLayoutParams(new LayoutParams(0,ViewGroup.LayoutParams.WRAP_CONTENT,(float) 3));
-					this.spinner.setOnItemSelectedListener(new OnItemSelectedListener() {
-					    @Override
-					    public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
-					    	if (CodeField.this.nodeDefinition.isMultiple()){
-					    		CodeField.this.setValue(CodeField.form.currInstanceNo, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.form.getFormScreenId(),true);	
-					    	} else {
-					    		CodeField.this.setValue(0, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.form.getFormScreenId(),true);
-					    	}
-					    	if (!CodeField.this.childrenIds.isEmpty()){
-					    		for (int i=0;i<CodeField.this.childrenIds.size();i++){
-					    			CodeField currentChild = (CodeField)ApplicationManager.getUIElement(CodeField.this.childrenIds.get(i));
-					    			currentChild.codes = new ArrayList<String>();
-					    			currentChild.codes.add("");
-					    			currentChild.options = new ArrayList<String>();
-					    			currentChild.options.add("");
-					    			
-									currentChild.aa.clear();
-					    			currentChild.aa.add("");
-					    			
-					    			int selectedPositionInParent = spinner.getSelectedItemPosition();
-									if (selectedPositionInParent>0){
-										selectedPositionInParent--;
-
-										for (int j=0;j<CodeField.this.codeAttrDef.getList().getItems(CodeField.this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().size();j++){									
-											currentChild.codes.add(CodeField.this.codeAttrDef.getList().getItems(CodeField.this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().get(j).getCode().toString());
-											currentChild.options.add(CodeField.this.codeAttrDef.getList().getItems(CodeField.this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().get(j).getLabels().get(0).getText());
-											currentChild.aa.add(CodeField.this.codeAttrDef.getList().getItems(CodeField.this.codeAttrDef.getCodeListLevel()-1).get(selectedPositionInParent).getChildItems().get(j).getLabels().get(0).getText());
-										}
-									}
-									if (currentChild.aa.getCount()==1){
-						    			currentChild.spinner.setEnabled(false);
-									} else {
-										currentChild.spinner.setEnabled(true);
-									}									
-					    		}
-					    		
-					    	}
-					    }
-
-					    @Override
-					    public void onNothingSelected(AdapterView<?> parentView) {
-					    	
-					    }
-
-					});
-					
-					boolean isFound = false;
-					int position = 0;
-					if (selectedItem!=null){
-						while (!isFound&&position<this.codes.size()){
-							if (this.codes.get(position).equals(selectedItem)){
-								isFound = true;
-							}
-							position++;
-						}	
-					}
-					if (isFound){
-						this.spinner.setSelection(position-1);
+						selectedParentItem = parentCodeField.getSelectedItem();
+						parentCodeField.addChildId(this.codeAttrDef.getId());
 					}
-					else{
-						this.spinner.setSelection(0);
-					}
-
+					this.setCodeListOptions(CodeListCache.getChildOptions(selectedParentItem));
+				} else {
+					this.setCodeListOptions(codeListOptions);
+				}
+				
+				this.aa = this.createAdapter(this.codeListOptions);
+				this.spinner.setAdapter(this.aa);
+				this.spinner.setLayoutParams(new LayoutParams(0,ViewGroup.LayoutParams.WRAP_CONTENT,(float) 3));
+				this.spinner.setOnItemSelectedListener(new OnItemSelectedListener() {
+				    @Override
+				    public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
+				    	if (CodeField.this.nodeDefinition.isMultiple()){
+				    		CodeField.this.setValue(CodeField.this.form.currInstanceNo, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.this.form.getFormScreenId(),true);	
+				    	} else {
+				    		CodeField.this.setValue(0, CodeField.this.codes.get(CodeField.this.spinner.getSelectedItemPosition()),CodeField.this.form.getFormScreenId(),true);
+				    	}
+				    	CodeField.this.refreshChildren();
+				    }
 
+				    @Override
+				    public void onNothingSelected(AdapterView<?> parentView) {
+				    	
+				    }
 
-					
-					this.addView(this.spinner);
+				});
+				
+				this.spinner.setSelection(Math.max(this.codeListOptions.getPosition(selectedItem), 0));
+				if (this.codeAttrDef.getParentCodeAttributeDefinition()!=null){
+					this.spinner.setEnabled(this.aa.getCount()>1);
 				}
+				this.addView(this.spinner);
 				//int hierarchyLevelsNo = this.codeAttrDef.getList().getHierarchy().size();
 				//Log.e("iloscPoziomow","=="+hierarchyLevelsNo);
 				/*for (int hierarchyLevel=0;hierarchyLevel<hierarchyLevelsNo;hierarchyLevel++){
@@ -330,24 +213,16 @@ public class CodeField extends InputField {
 	
 	public void setValue(int position, String code, String path, boolean isSelectionChanged)
 	{
+		this.setValue(position, code, path, isSelectionChanged, true);
+	}
+	
+	public void setValue(int position, String code, String path, boolean isSelectionChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(code, notify);
 		if (!this.codeAttrDef.isAllowUnlisted()){
 			//if (!this.hierarchical){
-				boolean isFound = false;
-				int counter = 0;
-				while (!isFound&&counter<this.codes.size()){
-					if (this.codes.get(counter).equals(code)){
-						isFound = true;
-					}
-					counter++;
-				}
-				if (isFound){
-					if (!isSelectionChanged)
-						this.spinner.setSelection(counter-1);
-				}
-				else{
-					if (!isSelectionChanged)
-						this.spinner.setSelection(0);
-				}	
+				if (!isSelectionChanged)
+					this.spinner.setSelection(Math.max(this.codeListOptions.getPosition(code), 0));
 			/*} else {//setting value of hierarchical list
 				
 			}*/
@@ -365,11 +240,12 @@ public class CodeField extends InputField {
 				EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), new Code(code), position);	
 			}	
 		}		
+		this.endSetValue(path, isChanged);
 	}
 	
 	@Override
 	public void afterTextChanged(Editable s) {
-		this.setValue(0, s.toString(), CodeField.form.getFormScreenId(),true);
+		this.setValue(0, s.toString(), CodeField.this.form.getFormScreenId(),true);
 	}
 	
 	public static String getLabelForCodeListItem(CodeListItem codeListItem){
@@ -384,7 +260,52 @@ public class CodeField extends InputField {
 		return label;
 	}
 	
+	private void setCodeListOptions(CodeListOptions codeListOptions){
+		this.codeListOptions = codeListOptions;
+		this.codes = codeListOptions.getCodes();
+		this.options = codeListOptions.getOptions();
+	}
+	
+	public CodeListOptions getCodeListOptions(){
+		return this.codeListOptions;
+	}
+	
+	public void setSelectedPosition(int position){
+		if (this.spinner!=null&&position>=0&&position<this.aa.getCount())
+			this.spinner.setSelection(position);
+	}
+	
+	private CodeListItem getSelectedItem(){
+		if (this.spinner==null||this.codeListOptions==null)
+			return null;
+		return this.codeListOptions.getItem(this.spinner.getSelectedItemPosition());
+	}
+	
+	//only the adapter of the current options is kept, a child gets a new one when the selection of its parent changes its options
+	private ArrayAdapter<String> createAdapter(CodeListOptions codeListOptions){
+		ArrayAdapter<String> adapter = new ArrayAdapter<String>(this.getContext(), android.R.layout.simple_spinner_item, codeListOptions.getOptions());
+		adapter.setDropDownViewResource(R.layout.codelistitem);
+		return adapter;
+	}
+	
+	private void refreshChildren(){
+		if (this.childrenIds.isEmpty())
+			return;
+		CodeListOptions childOptions = CodeListCache.getChildOptions(this.getSelectedItem());
+		for (int i=0;i<this.childrenIds.size();i++){
+			CodeField currentChild = (CodeField)ApplicationManager.getUIElement(this.childrenIds.get(i));
+			if (currentChild!=null&&currentChild.codeListOptions!=childOptions){
+				currentChild.setCodeListOptions(childOptions);
+				currentChild.aa = currentChild.createAdapter(childOptions);
+				currentChild.spinner.setAdapter(currentChild.aa);
+				currentChild.spinner.setEnabled(currentChild.aa.getCount()>1);
+				currentChild.refreshChildren();
+			}
+		}
+	}
+	
 	private void addChildId(int childCodeListId){
-		this.childrenIds.add(childCodeListId);
+		if (!this.childrenIds.contains(childCodeListId))
+			this.childrenIds.add(childCodeListId);
 	}
 }
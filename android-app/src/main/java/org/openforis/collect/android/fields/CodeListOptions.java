@@ -0,0 +1,75 @@
+package org.openforis.collect.android.fields;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openforis.idm.metamodel.CodeListItem;
+
+public class CodeListOptions {
+
+	private ArrayList<String> codes;
+	private ArrayList<String> options;
+	private ArrayList<CodeListItem> items;
+	private Map<String,Integer> positions;
+	private CodeListSearchIndex searchIndex;
+
+	//first position of the lists is always the empty choice,
+	//lists are shared between fields and must not be modified
+	public CodeListOptions(List<CodeListItem> codeListItemsList, String emptyCode){
+		int size = (codeListItemsList==null)?1:codeListItemsList.size()+1;
+		this.codes = new ArrayList<String>(size);
+		this.options = new ArrayList<String>(size);
+		this.items = new ArrayList<CodeListItem>(size);
+		this.positions = new HashMap<String,Integer>(size*2);
+
+		this.codes.add(emptyCode);
+		this.options.add("");
+		this.items.add(null);
+		this.positions.put(emptyCode, 0);
+		if (codeListItemsList!=null){
+			for (CodeListItem codeListItem : codeListItemsList){
+				String code = codeListItem.getCode();
+				if (!this.positions.containsKey(code)){
+					this.positions.put(code, this.codes.size());
+				}
+				this.codes.add(code);
+				this.options.add(CodeField.getLabelForCodeListItem(codeListItem));
+				this.items.add(codeListItem);
+			}
+		}
+	}
+
+	public ArrayList<String> getCodes(){
+		return this.codes;
+	}
+
+	public ArrayList<String> getOptions(){
+		return this.options;
+	}
+
+	public CodeListItem getItem(int position){
+		if (position<0||position>=this.items.size())
+			return null;
+		return this.items.get(position);
+	}
+
+	public int getPosition(String code){
+		if (code==null)
+			return -1;
+		Integer position = this.positions.get(code);
+		return (position==null)?-1:position;
+	}
+
+	public synchronized CodeListSearchIndex getSearchIndex(){
+		if (this.searchIndex==null){
+			this.searchIndex = new CodeListSearchIndex(this);
+		}
+		return this.searchIndex;
+	}
+
+	public int size(){
+		return this.codes.size();
+	}
+}
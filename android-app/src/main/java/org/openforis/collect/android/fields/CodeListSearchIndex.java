@@ -0,0 +1,119 @@
+package org.openforis.collect.android.fields;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class CodeListSearchIndex {
+
+	private String[] tokens;
+	private int[] tokenPositions;
+	private int size;
+
+	//positions refer to the CodeListOptions lists, position 0 (empty choice) is not indexed
+	public CodeListSearchIndex(CodeListOptions codeListOptions){
+		this.size = codeListOptions.size();
+		final List<String> tokensList = new ArrayList<String>();
+		List<Integer> positionsList = new ArrayList<Integer>();
+		for (int position=1;position<this.size;position++){
+			String text = codeListOptions.getCodes().get(position)+" "+codeListOptions.getOptions().get(position);
+			for (String token : CodeListSearchIndex.tokenize(text)){
+				tokensList.add(token);
+				positionsList.add(position);
+			}
+		}
+		Integer[] order = new Integer[tokensList.size()];
+		for (int i=0;i<order.length;i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return tokensList.get(first).compareTo(tokensList.get(second));
+			}
+		});
+		this.tokens = new String[order.length];
+		this.tokenPositions = new int[order.length];
+		for (int i=0;i<order.length;i++){
+			this.tokens[i] = tokensList.get(order[i]);
+			this.tokenPositions[i] = positionsList.get(order[i]);
+		}
+	}
+
+	//returns matching positions in list order, or null when the calling thread was interrupted
+	public int[] search(String query){
+		String[] queryTokens = CodeListSearchIndex.tokenize(query);
+		if (queryTokens.length==0){
+			int[] all = new int[this.size-1];
+			for (int i=0;i<all.length;i++){
+				all[i] = i+1;
+			}
+			return all;
+		}
+		boolean[] matches = null;
+		for (String queryToken : queryTokens){
+			if (Thread.currentThread().isInterrupted())
+				return null;
+			boolean[] tokenMatches = new boolean[this.size];
+			int index = this.lowerBound(queryToken);
+			while (index<this.tokens.length&&this.tokens[index].startsWith(queryToken)){
+				tokenMatches[this.tokenPositions[index]] = true;
+				index++;
+			}
+			if (matches==null){
+				matches = tokenMatches;
+			} else {
+				for (int i=0;i<this.size;i++){
+					matches[i] = matches[i]&&tokenMatches[i];
+				}
+			}
+		}
+		int count = 0;
+		for (int i=0;i<this.size;i++){
+			if (matches[i])
+				count++;
+		}
+		int[] result = new int[count];
+		count = 0;
+		for (int i=0;i<this.size;i++){
+			if (matches[i])
+				result[count++] = i;
+		}
+		return result;
+	}
+
+	private int lowerBound(String key){
+		int low = 0;
+		int high = this.tokens.length;
+		while (low<high){
+			int middle = (low+high)>>>1;
+			if (this.tokens[middle].compareTo(key)<0){
+				low = middle+1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	public static String normalize(String text){
+		if (text==null)
+			return "";
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+		return normalized.replaceAll("\\p{InCombiningDiacriticalMarks}+", "").toLowerCase();
+	}
+
+	private static String[] tokenize(String text){
+		String normalized = CodeListSearchIndex.normalize(text).trim();
+		if (normalized.length()==0)
+			return new String[0];
+		List<String> tokensList = new ArrayList<String>();
+		for (String token : normalized.split("[^\\p{L}\\p{N}]+")){
+			if (token.length()>0)
+				tokensList.add(token);
+		}
+		return tokensList.toArray(new String[tokensList.size()]);
+	}
+}
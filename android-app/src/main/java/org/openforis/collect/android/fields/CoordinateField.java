@@ -36,12 +36,10 @@ public class CoordinateField extends InputField implements OnClickListener {
 	private EditText txtLongitude;
 	private Button btnGetCoordinates;
 	
-	private static FormScreen form;
 	
 	public CoordinateField(Context context, NodeDefinition nodeDef) {		
 		super(context, nodeDef);
 
-		CoordinateField.form = (FormScreen)context;
 		
 		//this.label.setLayoutParams(new LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1f));
 		this.label.setOnLongClickListener(new OnLongClickListener() {
@@ -214,6 +212,12 @@ public class CoordinateField extends InputField implements OnClickListener {
 	
 	public void setValue(Integer position, String lon, String lat, String path, boolean isTextChanged)
 	{
+		this.setValue(position, lon, lat, path, isTextChanged, true);
+	}
+	
+	public void setValue(Integer position, String lon, String lat, String path, boolean isTextChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(lon+";"+lat, notify);
 		if (!isTextChanged){
 			this.txtLongitude.setText(lon);
 			this.txtLatitude.setText(lat);
@@ -243,6 +247,7 @@ public class CoordinateField extends InputField implements OnClickListener {
 			}
 				
 		}
+		this.endSetValue(path, isChanged);
 	}
 	
 	@Override
@@ -259,7 +264,7 @@ public class CoordinateField extends InputField implements OnClickListener {
 	
 	@Override
 	public void afterTextChanged(Editable s) {
-		this.setValue(0, CoordinateField.this.txtLongitude.getText().toString(), CoordinateField.this.txtLatitude.getText().toString(), CoordinateField.form.getFormScreenId(),true);
+		this.setValue(0, CoordinateField.this.txtLongitude.getText().toString(), CoordinateField.this.txtLatitude.getText().toString(), CoordinateField.this.form.getFormScreenId(),true);
 	}
 	
 	@Override
@@ -267,6 +272,13 @@ public class CoordinateField extends InputField implements OnClickListener {
 		
 	}
 	
+	@Override
+	protected void setValidationResults(ValidationResults results){
+		int color = UIElement.getValidationColor(results);
+		this.txtLongitude.setBackgroundColor(color);
+		this.txtLatitude.setBackgroundColor(color);
+	}
+	
 	//Check is given value a number
 	private Boolean isNumeric(String strValue){
 		Boolean result = false;
@@ -281,7 +293,7 @@ public class CoordinateField extends InputField implements OnClickListener {
 	
 	@Override
 	public void onClick(View arg0) {
-		CoordinateField.form.currentCoordinateField = this;
-		CoordinateField.form.startInternalGps(this);
+		CoordinateField.this.form.currentCoordinateField = this;
+		CoordinateField.this.form.startInternalGps(this);
 	}
 }
\ No newline at end of file
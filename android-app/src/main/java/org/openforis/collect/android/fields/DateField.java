@@ -5,10 +5,8 @@ import java.util.Random;
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.dialogs.DateSetDialog;
 import org.openforis.collect.android.management.ApplicationManager;
-import org.openforis.collect.android.management.ValidationManager;
 import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.idm.metamodel.NodeDefinition;
-import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.model.Date;
 import org.openforis.idm.model.DateAttribute;
 import org.openforis.idm.model.EntityBuilder;
@@ -16,7 +14,6 @@ import org.openforis.idm.model.Node;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Color;
 import android.text.Editable;
 import android.text.InputType;
 import android.view.View;
@@ -74,33 +71,6 @@ public class DateField extends InputField {
 	    });
 	}
 
-	private void validateResult(Node<? extends NodeDefinition> node){
-		ValidationResults results = ValidationManager.validateField(node);
-		if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
-			DateField.this.txtBox.setBackgroundColor(Color.RED);
-		}else if (results.getWarnings().size() > 0){
-			DateField.this.txtBox.setBackgroundColor(Color.YELLOW);
-		}else{
-			DateField.this.txtBox.setBackgroundColor(Color.TRANSPARENT);
-		}
-		/*Log.i("DateField info", "Start to validate DateField's value");		    		
-//		Log.i("VALIDATION FOR DATE FIELD", "Record of attribute is: " + attribute.getRecord());
-		//Validate value into field and change color if it's not valid
-		Validator validator = new Validator();
-		ValidationResults results = validator.validate(attribute); 
-		if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
-			DateField.this.txtBox.setBackgroundColor(Color.RED);
-		}else if (results.getWarnings().size() > 0){
-			DateField.this.txtBox.setBackgroundColor(Color.YELLOW);
-		}else{
-			DateField.this.txtBox.setBackgroundColor(Color.TRANSPARENT);
-		}
-		Log.e("VALIDATION FOR DATE FIELD", "Errors: " + results.getErrors().size() + " : " + results.getErrors().toString());
-		Log.d("VALIDATION FOR DATE FIELD", "Warnings: "  + results.getWarnings().size() + " : " + results.getWarnings().toString());
-		Log.e("VALIDATION FOR DATE FIELD", "Fails: "  + results.getFailed().size() + " : " +  results.getFailed().toString());	    		
-		*/
-	}
-	
 	private void showDatePickerDialog(int id) {
 		Intent datePickerIntent = new Intent(DateField.this.getContext(), DateSetDialog.class);
     	datePickerIntent.putExtra("datefield_id", id);
@@ -111,6 +81,12 @@ public class DateField extends InputField {
 	
 	public void setValue(Integer position, String value, String path, boolean isTextChanged)
 	{
+		this.setValue(position, value, path, isTextChanged, true);
+	}
+	
+	public void setValue(Integer position, String value, String path, boolean isTextChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(value, notify);
 		if (!isTextChanged)
 			this.txtBox.setText(value);
 
@@ -150,7 +126,6 @@ public class DateField extends InputField {
 			} else {
 				dateAtr.setValue(new Date(Integer.valueOf(year),Integer.valueOf(month),Integer.valueOf(day)));
 			}
-			//this.validateResult(node);
 		} else {
 			if (month.equals("") && day.equals("") && year.equals("")){
 				EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), new Date(null,null,null), position);
@@ -170,6 +145,7 @@ public class DateField extends InputField {
 				EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), new Date(Integer.valueOf(year),Integer.valueOf(month),Integer.valueOf(day)), position);
 			}	
 		}
+		this.endSetValue(path, isChanged);
 	}
 	
 	@Override
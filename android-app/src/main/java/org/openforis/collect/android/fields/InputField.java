@@ -1,6 +1,7 @@
 package org.openforis.collect.android.fields;
 
 import org.openforis.idm.metamodel.NodeDefinition;
+import org.openforis.idm.metamodel.validation.ValidationResults;
 
 import android.content.Context;
 import android.text.Editable;
@@ -66,4 +67,9 @@ public class InputField extends Field implements TextWatcher {
 	public void addTextChangedListener(TextWatcher textWatcher) {
 		this.txtBox.addTextChangedListener(textWatcher);
 	}
+	
+	@Override
+	protected void setValidationResults(ValidationResults results){
+		this.txtBox.setBackgroundColor(UIElement.getValidationColor(results));
+	}
 }
@@ -85,6 +85,12 @@ public class MemoField extends InputField {
 	
 	public void setValue(Integer position, String value, String path, boolean isTextChanged)
 	{
+		this.setValue(position, value, path, isTextChanged, true);
+	}
+	
+	public void setValue(Integer position, String value, String path, boolean isTextChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(value, notify);
 		if (!isTextChanged)
 			this.txtBox.setText(value);
 
@@ -95,5 +101,6 @@ public class MemoField extends InputField {
 		} else {
 			EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), value, position);	
 		}
+		this.endSetValue(path, isChanged);
 	}
 }
@@ -4,11 +4,9 @@ import java.util.Map;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
-import org.openforis.collect.android.management.ValidationManager;
 import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.idm.metamodel.NodeDefinition;
 import org.openforis.idm.metamodel.NumberAttributeDefinition;
-import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.model.Entity;
 import org.openforis.idm.model.EntityBuilder;
 import org.openforis.idm.model.IntegerAttribute;
@@ -18,7 +16,6 @@ import org.openforis.idm.model.RealAttribute;
 import org.openforis.idm.model.RealValue;
 
 import android.content.Context;
-import android.graphics.Color;
 import android.text.Editable;
 import android.text.InputType;
 import android.text.TextWatcher;
@@ -86,7 +83,6 @@ public class NumberField extends InputField {
 				    	}
 			    	}
 		    	}else{
-		    		//NumberField.this.validateResult();
 		    	}
 		    }
 	    });
@@ -128,23 +124,14 @@ public class NumberField extends InputField {
 		});
 	}
 	
-	private void validateResult(){
-		String value = NumberField.this.txtBox.getText().toString();
-		if ((value!=null) && (!value.equals("")) && (!value.equals("null"))){
-			Node<? extends NodeDefinition> node = NumberField.this.findParentEntity(form.getFormScreenId()).get(NumberField.this.nodeDefinition.getName(), form.currInstanceNo);
-			ValidationResults results = ValidationManager.validateField(node);
-			if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
-				NumberField.this.txtBox.setBackgroundColor(Color.RED);
-			}else if (results.getWarnings().size() > 0){
-				NumberField.this.txtBox.setBackgroundColor(Color.YELLOW);
-			}else{
-				NumberField.this.txtBox.setBackgroundColor(Color.TRANSPARENT);
-			}
-		}
+	public void setValue(int position, String value, String path, boolean isTextChanged)
+	{
+		this.setValue(position, value, path, isTextChanged, true);
 	}
 	
-	public void setValue(int position, String value, String path, boolean isTextChanged)
-	{		
+	public void setValue(int position, String value, String path, boolean isTextChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(value, notify);
 		try{
 			Node<? extends NodeDefinition> node = this.findParentEntity(path).get(this.nodeDefinition.getName(), position);
 			if (node!=null){
@@ -172,6 +159,7 @@ public class NumberField extends InputField {
 		} catch (Exception e){
 			Log.e("Number value got exception", "=="+e.getStackTrace());
 		}		
+		this.endSetValue(path, isChanged);
 	}
 	
 	public String getType(){
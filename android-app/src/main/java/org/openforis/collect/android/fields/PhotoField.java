@@ -29,7 +29,13 @@ public class PhotoField extends FileField implements OnClickListener{
 	}
 	
 	public void setValue(Integer position, String photoName, String path, boolean isPhotoChanged)
-	{		
+	{
+		this.setValue(position, photoName, path, isPhotoChanged, true);
+	}
+	
+	public void setValue(Integer position, String photoName, String path, boolean isPhotoChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(photoName, notify);
 		java.io.File imageFile = new java.io.File(photoName);
 	    if(imageFile.exists()){
 			Node<? extends NodeDefinition> node = this.findParentEntity(path).get(this.nodeDefinition.getName(), position);
@@ -47,6 +53,7 @@ public class PhotoField extends FileField implements OnClickListener{
 	    else{
 	    	this.image.setImageResource(R.drawable.emptyimage);
 	    }
+		this.endSetValue(path, isChanged);
 	}
 
 	@Override
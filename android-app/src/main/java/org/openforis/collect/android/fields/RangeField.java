@@ -116,6 +116,12 @@ public class RangeField extends InputField {
 	
 	public void setValue(Integer position, String value, String path, boolean isTextChanged)
 	{
+		this.setValue(position, value, path, isTextChanged, true);
+	}
+	
+	public void setValue(Integer position, String value, String path, boolean isTextChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(value, notify);
 		if (!isTextChanged)
 			this.txtBox.setText(value);
 
@@ -181,5 +187,6 @@ public class RangeField extends InputField {
 		}catch (Exception e){
 			Log.e("RangeField", "ERROR when try to set value" + e.getMessage());
 		}
+		this.endSetValue(path, isChanged);
 	}
 }
@@ -1,10 +1,10 @@
 package org.openforis.collect.android.fields;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.SummaryCache;
 import org.openforis.collect.android.screens.FormScreen;
 import org.openforis.idm.metamodel.AttributeDefinition;
 import org.openforis.idm.metamodel.CodeAttributeDefinition;
@@ -26,6 +26,7 @@ import org.openforis.idm.model.Time;
 import org.openforis.idm.model.Value;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Color;
 import android.text.Html;
 import android.util.Log;
@@ -66,28 +67,20 @@ public class SummaryList extends UIElement {
 			titleView.setText(this.label.getText());
 		this.tableLayout.addView(titleView);
 		
-		//adding the entity and its nodes if do not exist yet
-		for (int i=0;i<entityDef.getChildDefinitions().size();i++){
-			try{
-				Entity parentEntity1 = ApplicationManager.currentRecord.getRootEntity();
-				String screenPath = this.context.getFormScreenId();
-				String[] entityPath = screenPath.split(getResources().getString(R.string.valuesSeparator2));
-				int pathLength = entityPath.length;
-				for (int m=2;m<pathLength;m++){
-					String[] instancePath = entityPath[m].split(getResources().getString(R.string.valuesSeparator1));
-					int id = Integer.valueOf(instancePath[0]);
-					int instanceNo = Integer.valueOf(instancePath[1]);
-					parentEntity1 = (Entity) parentEntity1.get(ApplicationManager.getSurvey().getSchema().getDefinitionById(id).getName(), instanceNo);
-					parentEntity1.setId(id);
-				}
-				parentEntity1 = (Entity)parentEntity1.get(entityDef.getName(), entityInstanceNo);			
-			} catch (Exception e){
-			
+		//tagging entities on the screen path with their definition ids, done once instead of once per child definition
+		try{
+			Entity pathEntity = ApplicationManager.currentRecord.getRootEntity();
+			String[] entityPath = this.context.getFormScreenId().split(getResources().getString(R.string.valuesSeparator2));
+			for (int m=2;m<entityPath.length;m++){
+				String[] instancePath = entityPath[m].split(getResources().getString(R.string.valuesSeparator1));
+				int id = Integer.valueOf(instancePath[0]);
+				int instanceNo = Integer.valueOf(instancePath[1]);
+				pathEntity = (Entity) pathEntity.get(ApplicationManager.getSurvey().getSchema().getDefinitionById(id).getName(), instanceNo);
+				pathEntity.setId(id);
 			}
-		}
+		} catch (Exception e){
 		
-		ArrayList<List<String>> keysList = new ArrayList<List<String>>();
-		ArrayList<List<String>> detailsList = new ArrayList<List<String>>();
+		}
 		
 		Entity parentEntity = this.findParentEntity(this.context.getFormScreenId());
 		Entity currentEntity = null;
@@ -102,86 +95,9 @@ public class SummaryList extends UIElement {
 
 		if (this.context.getFormScreenId()!=null){
 			
-			//fetching keys and their values
-			List<AttributeDefinition> keyAttrDefsList = entityDef.getKeyAttributeDefinitions();
-			for (AttributeDefinition attrDef : keyAttrDefsList){
-				List<String> key = new ArrayList<String>();
-				Value attrValue = null;
-				if (currentEntity.getId()!=null)
-					if (entityDef.getId()==currentEntity.getId()){//entityDef isn't yet in currentRecord
-						attrValue = (Value)currentEntity.getValue(attrDef.getName(),0);	
-					}				
-				key.add(attrDef.getName());
-				String stringValue = convertValueToString(attrValue, (NodeDefinition)attrDef);
-				if (stringValue!=null)
-					key.add(stringValue);	
-				keysList.add(key);
-			}
-			
-			String keysLine = "";
-			for (List<String> key : keysList){
-				if (key.size()==1){
-					keysLine += key.get(0) + getResources().getString(R.string.valuesSeparator1);
-				} else {
-					keysLine += key.get(0) + getResources().getString(R.string.valuesEqualsTo) + key.get(1) + getResources().getString(R.string.valuesSeparator1);	
-				}
-				
-				if (keysLine.length()>threshold){
-					break;
-				}
-			}
-		
-			if (keysLine.length()>threshold){
-				keysLine = keysLine.substring(0,threshold-3)+"...";
-			} else {
-				if (!keysLine.equals("")){
-					keysLine = keysLine.substring(0,keysLine.length()-1);	
-				}				
-			}
-			
-			//fetching details and their values
-			List<NodeDefinition> detailNodeDefsList = entityDef.getChildDefinitions();
-			for (NodeDefinition nodeDef : detailNodeDefsList){
-				List<String> detail = new ArrayList<String>();
-				Value attrValue = null;
-				if (nodeDef instanceof EntityDefinition){
-					attrValue = new TextValue("entitydefinitionnode");
-				} else {
-					attrValue = (Value)currentEntity.getValue(nodeDef.getName(),0);	
-				}
-				detail.add(nodeDef.getName());
-				String stringValue = convertValueToString(attrValue, nodeDef);
-				if (stringValue!=null)
-					detail.add(stringValue);				
-				detailsList.add(detail);
-			}
-			
-			String detailsLine = "";
-			for (List<String> detail : detailsList){
-				if (detail.size()==1){
-					detailsLine += detail.get(0) + getResources().getString(R.string.valuesSeparator1);
-				} else {
-					if (detail.get(1).equals("entitydefinitionnode")){
-						detailsLine += "["+detail.get(0)+"]" + getResources().getString(R.string.valuesSeparator1);
-					} else {
-						detailsLine += detail.get(0) + getResources().getString(R.string.valuesEqualsTo) + detail.get(1) + getResources().getString(R.string.valuesSeparator1);	
-					}						
-				}
-				
-				if (detailsLine.length()>threshold){
-					break;
-				}
-			}
-			if (detailsLine.length()>threshold){
-				String visibleDetails = detailsLine.substring(0,threshold-3);
-				if (visibleDetails.substring(visibleDetails.length()-1, visibleDetails.length()).equals(getResources().getString(R.string.valuesSeparator1))){
-					visibleDetails = visibleDetails.substring(0,visibleDetails.length()-1);
-				}
-				detailsLine = visibleDetails;
-				detailsLine += getResources().getString(R.string.valuesNotVisibleSign);
-			} else {
-				detailsLine = detailsLine.substring(0,detailsLine.length()-1);
-			}
+			String[] summary = SummaryList.getSummary(getResources(), entityDef, currentEntity, threshold);
+			String keysLine = summary[0];
+			String detailsLine = summary[1];
 			
 			TextView tv = new TextView(context);
 			tv.setText(Html.fromHtml("<font size=\"32px\"><b>"+keysLine+"</b></font>")+"\n"+detailsLine);
@@ -222,7 +138,78 @@ public class SummaryList extends UIElement {
 		this.entityDefinition = entityDef;
 	}
 	
-	private String convertValueToString(Value value, NodeDefinition nodeDef){
+	//keys and details lines of the entity, safe to call from a background thread
+	public static String[] getSummary(Resources res, EntityDefinition entityDef, Entity currentEntity, int threshold){
+		String[] summary = SummaryCache.getSummary(currentEntity, threshold);
+		if (summary==null){
+			summary = new String[]{SummaryList.buildKeysLine(res, entityDef, currentEntity, threshold), SummaryList.buildDetailsLine(res, entityDef, currentEntity, threshold)};
+			SummaryCache.putSummary(currentEntity, threshold, summary);
+		}
+		return summary;
+	}
+	
+	private static String buildKeysLine(Resources res, EntityDefinition entityDef, Entity currentEntity, int threshold){
+		String separator = res.getString(R.string.valuesSeparator1);
+		StringBuilder keysLine = new StringBuilder();
+		List<AttributeDefinition> keyAttrDefsList = entityDef.getKeyAttributeDefinitions();
+		for (AttributeDefinition attrDef : keyAttrDefsList){
+			Value attrValue = null;
+			if (currentEntity.getId()!=null)
+				if (entityDef.getId()==currentEntity.getId()){//entityDef isn't yet in currentRecord
+					attrValue = (Value)currentEntity.getValue(attrDef.getName(),0);	
+				}
+			keysLine.append(attrDef.getName());
+			String stringValue = convertValueToString(res, attrValue, (NodeDefinition)attrDef);
+			if (stringValue!=null)
+				keysLine.append(res.getString(R.string.valuesEqualsTo)).append(stringValue);
+			keysLine.append(separator);
+			
+			if (keysLine.length()>threshold){
+				break;
+			}
+		}
+		
+		if (keysLine.length()>threshold){
+			return keysLine.substring(0,threshold-3)+"...";
+		} else if (keysLine.length()>0){
+			return keysLine.substring(0,keysLine.length()-1);
+		}
+		return "";
+	}
+	
+	private static String buildDetailsLine(Resources res, EntityDefinition entityDef, Entity currentEntity, int threshold){
+		String separator = res.getString(R.string.valuesSeparator1);
+		StringBuilder detailsLine = new StringBuilder();
+		List<NodeDefinition> detailNodeDefsList = entityDef.getChildDefinitions();
+		for (NodeDefinition nodeDef : detailNodeDefsList){
+			if (nodeDef instanceof EntityDefinition){
+				detailsLine.append("[").append(nodeDef.getName()).append("]");
+			} else {
+				detailsLine.append(nodeDef.getName());
+				String stringValue = convertValueToString(res, (Value)currentEntity.getValue(nodeDef.getName(),0), nodeDef);
+				if (stringValue!=null)
+					detailsLine.append(res.getString(R.string.valuesEqualsTo)).append(stringValue);
+			}
+			detailsLine.append(separator);
+			
+			if (detailsLine.length()>threshold){
+				break;
+			}
+		}
+		
+		if (detailsLine.length()>threshold){
+			String visibleDetails = detailsLine.substring(0,threshold-3);
+			if (visibleDetails.endsWith(separator)){
+				visibleDetails = visibleDetails.substring(0,visibleDetails.length()-1);
+			}
+			return visibleDetails+res.getString(R.string.valuesNotVisibleSign);
+		} else if (detailsLine.length()>0){
+			return detailsLine.substring(0,detailsLine.length()-1);
+		}
+		return "";
+	}
+	
+	private static String convertValueToString(Resources res, Value value, NodeDefinition nodeDef){
 		String valueToReturn = null;
 		if (value!=null){
 			if (value instanceof TextValue){
@@ -251,20 +238,20 @@ public class SummaryList extends UIElement {
 				}
 			} else if (value instanceof RealRange){
 				RealRange rangeValue = (RealRange)value;
-				valueToReturn = rangeValue.getFrom()+getResources().getString(R.string.rangeSeparator)+rangeValue.getTo();
+				valueToReturn = rangeValue.getFrom()+res.getString(R.string.rangeSeparator)+rangeValue.getTo();
 			} else if (value instanceof IntegerRange){
 				IntegerRange rangeValue = (IntegerRange)value;
-				valueToReturn = rangeValue.getFrom()+getResources().getString(R.string.rangeSeparator)+rangeValue.getTo();
+				valueToReturn = rangeValue.getFrom()+res.getString(R.string.rangeSeparator)+rangeValue.getTo();
 			} else if (value instanceof Coordinate){
 				Coordinate coordinateValue = (Coordinate)value;
 				if (coordinateValue.getX()==null && coordinateValue.getY()==null){
 					valueToReturn = "";
 				} else if (coordinateValue.getX()==null) {
-					valueToReturn = getResources().getString(R.string.coordinateSeparator)+coordinateValue.getY();
+					valueToReturn = res.getString(R.string.coordinateSeparator)+coordinateValue.getY();
 				} else if (coordinateValue.getY()==null) {
-					valueToReturn = coordinateValue.getX()+getResources().getString(R.string.coordinateSeparator);
+					valueToReturn = coordinateValue.getX()+res.getString(R.string.coordinateSeparator);
 				} else {
-					valueToReturn = coordinateValue.getX()+getResources().getString(R.string.coordinateSeparator)+coordinateValue.getY();	
+					valueToReturn = coordinateValue.getX()+res.getString(R.string.coordinateSeparator)+coordinateValue.getY();	
 				}
 			} else if (value instanceof Date){
 				Date dateValue = (Date)value;
@@ -277,7 +264,7 @@ public class SummaryList extends UIElement {
 					month = dateValue.getMonth().toString();
 				if (dateValue.getYear()!=null)
 					year = dateValue.getYear().toString();
-				valueToReturn = year+getResources().getString(R.string.dateSeparator)+month+getResources().getString(R.string.dateSeparator)+day;
+				valueToReturn = year+res.getString(R.string.dateSeparator)+month+res.getString(R.string.dateSeparator)+day;
 			} else if (value instanceof Time){
 				Time timeValue = (Time)value;
 				String hour = "";
@@ -294,7 +281,7 @@ public class SummaryList extends UIElement {
 						minute = "0"+minute;
 					}
 				}					
-				valueToReturn = hour+getResources().getString(R.string.timeSeparator)+minute;
+				valueToReturn = hour+res.getString(R.string.timeSeparator)+minute;
 			} else if (value instanceof TaxonOccurrence){
 				TaxonOccurrence taxonValue = (TaxonOccurrence)value;
 				String code = "";
@@ -312,10 +299,10 @@ public class SummaryList extends UIElement {
 					vernLang = taxonValue.getLanguageCode();
 				if (taxonValue.getLanguageVariety()!=null)
 					langVariant = taxonValue.getLanguageVariety();
-				valueToReturn = code+getResources().getString(R.string.taxonSeparator)+
-						sciName+getResources().getString(R.string.taxonSeparator)+
-						vernName+getResources().getString(R.string.taxonSeparator)+
-						vernLang+getResources().getString(R.string.taxonSeparator)+
+				valueToReturn = code+res.getString(R.string.taxonSeparator)+
+						sciName+res.getString(R.string.taxonSeparator)+
+						vernName+res.getString(R.string.taxonSeparator)+
+						vernLang+res.getString(R.string.taxonSeparator)+
 						langVariant;
 			} else if (value instanceof File){
 				File fileValue = (File)value;
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.openforis.collect.android.R;
+import org.openforis.collect.android.management.SummaryCache;
 import org.openforis.idm.metamodel.BooleanAttributeDefinition;
 import org.openforis.idm.metamodel.CodeAttributeDefinition;
 import org.openforis.idm.metamodel.CoordinateAttributeDefinition;
@@ -33,6 +34,7 @@ import org.openforis.idm.model.TextValue;
 import org.openforis.idm.model.Time;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Color;
 import android.view.Gravity;
 import android.view.ViewGroup;
@@ -55,13 +57,84 @@ public class SummaryTable extends UIElement {
 	    this.tableLayout.setShrinkAllColumns(true);
 	    this.tableLayout.setPadding(5, 10, 5, 10);
 	    
-	    this.values = new ArrayList<List<String>>();	    
+	    this.values = SummaryTable.getValues(getResources(), nodeDef, parentEntity);
+	    
+		int colNo = columnHeader.size();
+		int rowNo = this.values.size();
+		
+		TextView header = new TextView(context);
+		header.setText(this.label.getText());
+		this.tableLayout.addView(header);
+		
+		TableRow colHeaders = new TableRow(context);
+		
+		TextView colTitle = new TextView(context);
+		//colTitle.setBackgroundDrawable(getResources().getDrawable(R.drawable.cellshape));
+		colTitle.setPadding(20, 5, 20, 5);
+		colTitle.setGravity(Gravity.CENTER);
+		colTitle.setText("ID");
+		colHeaders.addView(colTitle);
+		for (int i=0;i<colNo;i++){
+			colTitle = new TextView(context);
+			//colTitle.setBackgroundDrawable(getResources().getDrawable(R.drawable.cellshape));
+			colTitle.setPadding(20, 5, 20, 5);
+			colTitle.setGravity(Gravity.CENTER);
+			colTitle.setText(columnHeader.get(i));
+			colHeaders.addView(colTitle);
+		}
+		this.tableLayout.addView(colHeaders);
+		
+		for (int i=0;i<rowNo;i++){
+			TableRow tempRow = new TableRow(context);
+			//List<String> rowValues = rows.get(i);
+			List<String> rowValues = this.values.get(i);
+			for (int j=-1;j<colNo;j++){
+				TextView cell = new TextView(context);
+				//cell.setBackgroundDrawable(getResources().getDrawable(R.drawable.cellshape));
+				cell.setPadding(20, 5, 20, 5);
+				cell.setGravity(Gravity.CENTER);
+				if (j>=0){
+					cell.setText(rowValues.get(j));	
+				} else {
+					cell.setText(""+i);	
+				}				
+				cell.setId(i);
+				cell.setOnClickListener(listener);
+				/*cell.setOnClickListener(new OnClickListener() {                      
+					@Override
+					public void onClick(View arg0) {
+						TextView tv = (TextView)arg0;
+						Log.e("klikniety","=="+tv.getText().toString());
+					}
+				});*/
+				tempRow.addView(cell);
+			}
+			this.tableLayout.addView(tempRow);
+		}
+		
+		this.container.setLayoutParams(new LayoutParams(ViewGroup.LayoutParams.FILL_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+		this.container.addView(this.tableLayout);
+		this.addView(this.container);
+	}
+	
+	//values of all the instances of the attribute, safe to call from a background thread
+	public static List<List<String>> getValues(Resources res, NodeDefinition nodeDef, Entity parentEntity){
+		List<List<String>> values = SummaryCache.getTableValues(parentEntity, nodeDef.getName());
+		if (values==null){
+			values = SummaryTable.loadValues(res, nodeDef, parentEntity);
+			SummaryCache.putTableValues(parentEntity, nodeDef.getName(), values);
+		}
+		return values;
+	}
+	
+	private static List<List<String>> loadValues(Resources res, NodeDefinition nodeDef, Entity parentEntity){
+	    List<List<String>> values = new ArrayList<List<String>>();	    
 	   
 	    List<Node<?>> listOfNodes = parentEntity.getAll(nodeDef.getName());
 	    if (listOfNodes.size()==0){
 		    ArrayList<String> newValue = new ArrayList<String>();
 		    newValue.add("");
-		    this.values.add(newValue);
+		    values.add(newValue);
 			//EntityBuilder.addValue(parentEntity, nodeDef.getName(), newValue, 0);
 	    }
 
@@ -77,9 +150,9 @@ public class SummaryTable extends UIElement {
 						loadedValue = "";
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);	
+				    values.add(newValue);	
 				} else if (nodeDef instanceof NumberAttributeDefinition){
-					if (((NumberAttributeDefinition) this.nodeDefinition).isInteger()){
+					if (((NumberAttributeDefinition) nodeDef).isInteger()){
 						IntegerAttribute intAttr = (IntegerAttribute)parentEntity.getValue(nodeDef.getName(), i);
 						IntegerValue intValue = (IntegerValue)intAttr.getValue();
 						if (intValue!=null)
@@ -88,7 +161,7 @@ public class SummaryTable extends UIElement {
 							else loadedValue = "";
 						ArrayList<String> newValue = new ArrayList<String>();
 						newValue.add(loadedValue);
-						this.values.add(newValue);
+						values.add(newValue);
 					} else {
 						RealAttribute realAttr = (RealAttribute)parentEntity.getValue(nodeDef.getName(), i);
 						RealValue realValue = (RealValue)realAttr.getValue();
@@ -100,7 +173,7 @@ public class SummaryTable extends UIElement {
 						loadedValue = realValue.getValue().toString();
 						ArrayList<String> newValue = new ArrayList<String>();
 						newValue.add(loadedValue);
-						this.values.add(newValue);
+						values.add(newValue);
 					}
 				} else if (nodeDef instanceof BooleanAttributeDefinition){
 					BooleanValue boolValue = (BooleanValue)parentEntity.getValue(nodeDef.getName(), i);
@@ -111,7 +184,7 @@ public class SummaryTable extends UIElement {
 							loadedValue = "";
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof CodeAttributeDefinition){
 					Code codeValue = (Code)parentEntity.getValue(nodeDef.getName(), i);
 					if (codeValue!=null)
@@ -121,31 +194,31 @@ public class SummaryTable extends UIElement {
 							loadedValue = "";
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof CoordinateAttributeDefinition){
 					Coordinate coordValue = (Coordinate)parentEntity.getValue(nodeDef.getName(), i);
-					loadedValue = coordValue.getX()+getResources().getString(R.string.coordinateSeparator)+coordValue.getY();
+					loadedValue = coordValue.getX()+res.getString(R.string.coordinateSeparator)+coordValue.getY();
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof RangeAttributeDefinition){
 					RangeAttributeDefinition rangeAttrDef = (RangeAttributeDefinition)nodeDef;
 					if (rangeAttrDef.isReal()){
 						RealRange rangeValue = (RealRange)parentEntity.getValue(nodeDef.getName(), i);
-						loadedValue = rangeValue.getFrom()+getResources().getString(R.string.rangeSeparator)+rangeValue.getTo();
+						loadedValue = rangeValue.getFrom()+res.getString(R.string.rangeSeparator)+rangeValue.getTo();
 					} else {
 						IntegerRange rangeValue = (IntegerRange)parentEntity.getValue(nodeDef.getName(), i);
-						loadedValue = rangeValue.getFrom()+getResources().getString(R.string.rangeSeparator)+rangeValue.getTo();	
+						loadedValue = rangeValue.getFrom()+res.getString(R.string.rangeSeparator)+rangeValue.getTo();	
 					}					
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof DateAttributeDefinition){
 					Date dateValue = (Date)parentEntity.getValue(nodeDef.getName(), i);
-					loadedValue = dateValue.getYear()+getResources().getString(R.string.dateSeparator)+dateValue.getMonth()+getResources().getString(R.string.dateSeparator)+dateValue.getDay();
+					loadedValue = dateValue.getYear()+res.getString(R.string.dateSeparator)+dateValue.getMonth()+res.getString(R.string.dateSeparator)+dateValue.getDay();
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof TimeAttributeDefinition){
 					Time timeValue = (Time)parentEntity.getValue(nodeDef.getName(), i);
 					String hour = "";
@@ -162,88 +235,31 @@ public class SummaryTable extends UIElement {
 							minute = "0"+minute;
 						}
 					}
-					loadedValue = hour+getResources().getString(R.string.timeSeparator)+minute;
+					loadedValue = hour+res.getString(R.string.timeSeparator)+minute;
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof TaxonAttributeDefinition){
 					TaxonOccurrence taxonValue = (TaxonOccurrence)parentEntity.getValue(nodeDef.getName(), i);
 					if (taxonValue!=null)
-						loadedValue = taxonValue.getCode()+getResources().getString(R.string.taxonSeparator)+
-						taxonValue.getScientificName()+getResources().getString(R.string.taxonSeparator)+
-						taxonValue.getVernacularName()+getResources().getString(R.string.taxonSeparator)+
-						taxonValue.getLanguageCode()+getResources().getString(R.string.taxonSeparator)+
+						loadedValue = taxonValue.getCode()+res.getString(R.string.taxonSeparator)+
+						taxonValue.getScientificName()+res.getString(R.string.taxonSeparator)+
+						taxonValue.getVernacularName()+res.getString(R.string.taxonSeparator)+
+						taxonValue.getLanguageCode()+res.getString(R.string.taxonSeparator)+
 						taxonValue.getLanguageVariety();
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				} else if (nodeDef instanceof FileAttributeDefinition){
 					File fileValue = (File)parentEntity.getValue(nodeDef.getName(), i);
 					loadedValue = fileValue.getFilename();
 				    ArrayList<String> newValue = new ArrayList<String>();
 				    newValue.add(loadedValue);
-				    this.values.add(newValue);
+				    values.add(newValue);
 				}
 			}
 	    }
-	    
-	    
-		int colNo = columnHeader.size();
-		int rowNo = this.values.size();
-		
-		TextView header = new TextView(context);
-		header.setText(this.label.getText());
-		this.tableLayout.addView(header);
-		
-		TableRow colHeaders = new TableRow(context);
-		
-		TextView colTitle = new TextView(context);
-		//colTitle.setBackgroundDrawable(getResources().getDrawable(R.drawable.cellshape));
-		colTitle.setPadding(20, 5, 20, 5);
-		colTitle.setGravity(Gravity.CENTER);
-		colTitle.setText("ID");
-		colHeaders.addView(colTitle);
-		for (int i=0;i<colNo;i++){
-			colTitle = new TextView(context);
-			//colTitle.setBackgroundDrawable(getResources().getDrawable(R.drawable.cellshape));
-			colTitle.setPadding(20, 5, 20, 5);
-			colTitle.setGravity(Gravity.CENTER);
-			colTitle.setText(columnHeader.get(i));
-			colHeaders.addView(colTitle);
-		}
-		this.tableLayout.addView(colHeaders);
-		
-		for (int i=0;i<rowNo;i++){
-			TableRow tempRow = new TableRow(context);
-			//List<String> rowValues = rows.get(i);
-			List<String> rowValues = this.values.get(i);
-			for (int j=-1;j<colNo;j++){
-				TextView cell = new TextView(context);
-				//cell.setBackgroundDrawable(getResources().getDrawable(R.drawable.cellshape));
-				cell.setPadding(20, 5, 20, 5);
-				cell.setGravity(Gravity.CENTER);
-				if (j>=0){
-					cell.setText(rowValues.get(j));	
-				} else {
-					cell.setText(""+i);	
-				}				
-				cell.setId(i);
-				cell.setOnClickListener(listener);
-				/*cell.setOnClickListener(new OnClickListener() {                      
-					@Override
-					public void onClick(View arg0) {
-						TextView tv = (TextView)arg0;
-						Log.e("klikniety","=="+tv.getText().toString());
-					}
-				});*/
-				tempRow.addView(cell);
-			}
-			this.tableLayout.addView(tempRow);
-		}
-		
-		this.container.setLayoutParams(new LayoutParams(ViewGroup.LayoutParams.FILL_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
-		this.container.addView(this.tableLayout);
-		this.addView(this.container);
+	    return values;
 	}
 	
 	public void changeBackgroundColor(int backgroundColor){
@@ -55,7 +55,6 @@ public class TaxonField extends InputField {
 	private Button btnSearchByVernName;
 	
 	boolean searchable;
-	private static FormScreen form;
 	
 	private final String[] languageCodes = {"acm", "Mesopotamian Arabic", "afr", "Afrikaans", "ara", "Arabic", "arz", "Egyptian Arabic", "bel", "Belarusian", "ben", "Bengali", "bos", "Bosnian", "bre", "Breton", "bul", "Bulgarian", "cat", "Catalan", "ces", "Czech", "cha", "Chamorro", "cmn", "Mandarin Chinese", "dan", "Danish", "deu", "German", "ell", "Modern Greek (1453-)", "eng", "English", "epo", "Esperanto", "est", "Estonian", "eus", "Basque", "fao", "Faroese", "fin", "Finnish", "fra", "French", "fry", "Western Frisian", "gle", "Irish", "glg", "Galician", "heb", "Hebrew", "hin", "Hindi", "hrv", "Croatian", "hun", "Hungarian", "hye", "Armenian", "ina", "Interlingua (International Auxiliary Language Association)", "ind", "Indonesian", "isl", "Icelandic", "ita", "Italian", "jbo", "Lojban", "kat", "Georgian", "kaz", "Kazakh", "kor", "Korean", "lat", "Latin", "lit", "Lithuanian", "lvs", "Standard Latvian", "lzh", "Literary Chinese", "mal", "Malayalam", "mon", "Mongolian", "nan", "Min Nan Chinese", "nds", "Low German", "nld", "Dutch", "nob", "Norwegian Bokml", "non", "Old Norse", "orv", "Old Russian", "oss", "Ossetian", "pes", "Iranian Persian", "pol", "Polish", "por", "Portuguese", "que", "Quechua", "roh", "Romansh", "ron", "Romanian", "rus", "Russian", "scn", "Sicilian", "slk", "Slovak", "slv", "Slovenian", "spa", "Spanish", "sqi", "Albanian", "srp", "Serbian", "swe", "Swedish", "swh", "Swahili (individual language)", "tat", "Tatar", "tgl", "Tagalog", "tha", "Thai", "tlh", "Klingon", "tur", "Turkish", "uig", "Uighur", "ukr", "Ukrainian", "urd", "Urdu", "uzb", "Uzbek", "vie", "Vietnamese", "vol", "Volapk", "wuu", "Wu Chinese", "yid", "Yiddish", "yue", "Yue Chinese", "zsm", "Standard Malay"};
 	
@@ -64,7 +63,6 @@ public class TaxonField extends InputField {
 			String selectedItem) {
 		super(context, nodeDef);
 
-		TaxonField.form = (FormScreen)context;
 		
 		//Create input field "Code"
 		//Label "Code"
@@ -119,7 +117,7 @@ public class TaxonField extends InputField {
 						TaxonField.this.txtVernacularName.getText().toString(), 
 						TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(TaxonField.this.spinner.getSelectedItemPosition())-1]/*TaxonField.this.txtVernacularLang.getText().toString()*/, 
 						TaxonField.this.txtLangVariant.getText().toString(),
-						TaxonField.form.getFormScreenId(),true);
+						TaxonField.this.form.getFormScreenId(),true);
 			}	
 		});
 		//Button "Search By Code"
@@ -203,7 +201,7 @@ public class TaxonField extends InputField {
 						TaxonField.this.txtVernacularName.getText().toString(), 
 						TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(TaxonField.this.spinner.getSelectedItemPosition())-1]/*TaxonField.this.txtVernacularLang.getText().toString()*/, 
 						TaxonField.this.txtLangVariant.getText().toString(),
-						TaxonField.form.getFormScreenId(),true);
+						TaxonField.this.form.getFormScreenId(),true);
 			}	
 		});
 		//Button "Search By Scientific names"
@@ -295,7 +293,7 @@ public class TaxonField extends InputField {
 						s.toString(), 
 						TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(TaxonField.this.spinner.getSelectedItemPosition())-1]/*TaxonField.this.txtVernacularLang.getText().toString()*/, 
 						TaxonField.this.txtLangVariant.getText().toString(),
-						TaxonField.form.getFormScreenId(),true);
+						TaxonField.this.form.getFormScreenId(),true);
 			}	
 		});
 		//Button "Search By Vernacular names"
@@ -352,13 +350,13 @@ public class TaxonField extends InputField {
 		    @Override
 		    public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
 		    	if (TaxonField.this.nodeDefinition.isMultiple()){
-		    		TaxonField.this.setValue(TaxonField.form.currInstanceNo, 
+		    		TaxonField.this.setValue(TaxonField.this.form.currInstanceNo, 
 		    		TaxonField.this.txtCodes.getText().toString(), 
 		    		TaxonField.this.txtSciName.getText().toString(),
 					TaxonField.this.txtVernacularName.getText().toString(), 
 					TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(position)-1]/*TaxonField.this.txtVernacularLang.getText().toString()*/, 
 					TaxonField.this.txtLangVariant.getText().toString(),
-					TaxonField.form.getFormScreenId(),true);
+					TaxonField.this.form.getFormScreenId(),true);
 		    	} else {
 		    		TaxonField.this.setValue(0, 
 				    		TaxonField.this.txtCodes.getText().toString(), 
@@ -366,7 +364,7 @@ public class TaxonField extends InputField {
 							TaxonField.this.txtVernacularName.getText().toString(), 
 							TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(position)-1]/*TaxonField.this.txtVernacularLang.getText().toString()*/, 
 							TaxonField.this.txtLangVariant.getText().toString(),
-							TaxonField.form.getFormScreenId(),true);
+							TaxonField.this.form.getFormScreenId(),true);
 		    	}			    	
 		    	
 		    	/*if (!CodeField.this.selectedForTheFirstTime){
@@ -433,7 +431,7 @@ public class TaxonField extends InputField {
 						TaxonField.this.txtVernacularName.getText().toString(), 
 						TaxonField.this.txtVernacularLang.getText().toString(), 
 						TaxonField.this.txtLangVariant.getText().toString(),
-						TaxonField.form.getFormScreenId(),true);
+						TaxonField.this.form.getFormScreenId(),true);
 			}	
 		});*/
 		//Create layout and add input field "Vernacular language" into there
@@ -491,7 +489,7 @@ public class TaxonField extends InputField {
 						TaxonField.this.txtVernacularName.getText().toString(), 
 						TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(TaxonField.this.spinner.getSelectedItemPosition())-1]/*TaxonField.this.txtVernacularLang.getText().toString()*/, 
 						TaxonField.this.txtLangVariant.getText().toString(),
-						TaxonField.form.getFormScreenId(),true);
+						TaxonField.this.form.getFormScreenId(),true);
 			}	
 		});
 		//Create layout and add input field "Language variant" into there
@@ -532,6 +530,11 @@ public class TaxonField extends InputField {
 	}
 	
 	public void setValue(int position, String code, String sciName, String vernName, String vernLang, String langVariant, String path, boolean isTextChanged){
+		this.setValue(position, code, sciName, vernName, vernLang, langVariant, path, isTextChanged, true);
+	}
+	
+	public void setValue(int position, String code, String sciName, String vernName, String vernLang, String langVariant, String path, boolean isTextChanged, boolean notify){
+		boolean isChanged = this.beginSetValue(code+";"+sciName+";"+vernName+";"+vernLang+";"+langVariant, notify);
 		if (!isTextChanged){
 			this.txtCodes.setText(code);
 			this.txtSciName.setText(sciName);
@@ -552,6 +555,7 @@ public class TaxonField extends InputField {
 			}
 			EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), new TaxonOccurrence(code, sciName, vernName, vernLang, langVariant), position);	
 		}
+		this.endSetValue(path, isChanged);
 	}
 
 	private void startSearchScreen(String strContent, String strCriteria){
@@ -560,7 +564,7 @@ public class TaxonField extends InputField {
 		searchTaxonIntent.putExtra("content", strContent);
 		searchTaxonIntent.putExtra("criteria", strCriteria);
 		searchTaxonIntent.putExtra("taxonId", taxonId);
-		searchTaxonIntent.putExtra("path", TaxonField.form.getFormScreenId());
+		searchTaxonIntent.putExtra("path", TaxonField.this.form.getFormScreenId());
 		searchTaxonIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
     	super.getContext().startActivity(searchTaxonIntent);	
 	}
@@ -575,7 +579,7 @@ public class TaxonField extends InputField {
 	
 	/*@Override
 	public void afterTextChanged(Editable s) {
-		this.setValue(0, TaxonField.this.txtCodes.getText().toString(), TaxonField.this.txtSciName.getText().toString(), TaxonField.this.txtVernacularName.getText().toString(),TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(TaxonField.this.spinner.getSelectedItemPosition())-1] TaxonField.this.txtVernacularLang.getText().toString(), TaxonField.this.txtLangVariant.getText().toString(), TaxonField.form.getFormScreenId(), true);
+		this.setValue(0, TaxonField.this.txtCodes.getText().toString(), TaxonField.this.txtSciName.getText().toString(), TaxonField.this.txtVernacularName.getText().toString(),TaxonField.this.languageCodes[getVernacularLanguageCodeIndex(TaxonField.this.spinner.getSelectedItemPosition())-1] TaxonField.this.txtVernacularLang.getText().toString(), TaxonField.this.txtLangVariant.getText().toString(), TaxonField.this.form.getFormScreenId(), true);
 	}*/
 	
 	public int getVernacularLanguageCodeIndex(int selectedItemPosition){
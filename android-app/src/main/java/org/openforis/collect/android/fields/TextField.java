@@ -2,22 +2,18 @@ package org.openforis.collect.android.fields;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
-import org.openforis.collect.android.management.ValidationManager;
 import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.idm.metamodel.NodeDefinition;
-import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.model.EntityBuilder;
 import org.openforis.idm.model.Node;
 import org.openforis.idm.model.TextAttribute;
 import org.openforis.idm.model.TextValue;
 
 import android.content.Context;
-import android.graphics.Color;
 import android.text.InputFilter;
 import android.text.InputType;
 import android.text.method.QwertyKeyListener;
 import android.text.method.TextKeyListener;
-import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
@@ -72,28 +68,19 @@ public class TextField extends InputField {
 				    	}				    	
 			    	}
 		    	}else{
-		    		//TextField.this.validateResults();
 		    	}
 		    }
 	    });
 	}
 	
-	private void validateResults(){
-		
-		Log.i("TextField info", "Start to validate TextField's value");
-		Node<? extends NodeDefinition> node = TextField.this.findParentEntity(form.getFormScreenId()).get(TextField.this.nodeDefinition.getName(), form.currInstanceNo);
-		ValidationResults results = ValidationManager.validateField(node);
-		if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
-			TextField.this.txtBox.setBackgroundColor(Color.RED);
-		}else if (results.getWarnings().size() > 0){
-			TextField.this.txtBox.setBackgroundColor(Color.YELLOW);
-		}else{
-			TextField.this.txtBox.setBackgroundColor(Color.TRANSPARENT);
-		}   				
+	public void setValue(Integer position, String value, String path, boolean isTextChanged)
+	{
+		this.setValue(position, value, path, isTextChanged, true);
 	}
 	
-	public void setValue(Integer position, String value, String path, boolean isTextChanged)
+	public void setValue(Integer position, String value, String path, boolean isTextChanged, boolean notify)
 	{
+		boolean isChanged = this.beginSetValue(value, notify);
 		if (!isTextChanged)
 			this.txtBox.setText(value);
 		
@@ -104,5 +91,6 @@ public class TextField extends InputField {
 		} else {
 			EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), value, position);	
 		}
+		this.endSetValue(path, isChanged);
 	}
 }
@@ -5,10 +5,8 @@ import java.util.Random;
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.dialogs.TimeSetDialog;
 import org.openforis.collect.android.management.ApplicationManager;
-import org.openforis.collect.android.management.ValidationManager;
 import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.idm.metamodel.NodeDefinition;
-import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.model.EntityBuilder;
 import org.openforis.idm.model.Node;
 import org.openforis.idm.model.Time;
@@ -16,7 +14,6 @@ import org.openforis.idm.model.TimeAttribute;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Color;
 import android.text.Editable;
 import android.text.InputType;
 import android.text.TextWatcher;
@@ -78,17 +75,6 @@ public class TimeField extends InputField implements TextWatcher {
 	    });
 	}
 	
-	private void validateResult(Node<? extends NodeDefinition> node){
-		ValidationResults results = ValidationManager.validateField(node);
-		if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
-			TimeField.this.txtBox.setBackgroundColor(Color.RED);
-		}else if (results.getWarnings().size() > 0){
-			TimeField.this.txtBox.setBackgroundColor(Color.YELLOW);
-		}else{
-			TimeField.this.txtBox.setBackgroundColor(Color.TRANSPARENT);
-		}			    				
-	}
-	
 	private void showTimePickerDialog(int id) {  	
 //		Log.i(getResources().getString(R.string.app_name), "Id from date field was: " + id);
 		Intent timePickerIntent = new Intent(TimeField.this.getContext(), TimeSetDialog.class);
@@ -149,6 +135,12 @@ public class TimeField extends InputField implements TextWatcher {
 	
 	public void setValue(Integer position, String value, String path, boolean isTextChanged)
 	{
+		this.setValue(position, value, path, isTextChanged, true);
+	}
+	
+	public void setValue(Integer position, String value, String path, boolean isTextChanged, boolean notify)
+	{
+		boolean isChanged = this.beginSetValue(value, notify);
 		if (!isTextChanged)
 			this.txtBox.setText(value);
 		
@@ -176,7 +168,6 @@ public class TimeField extends InputField implements TextWatcher {
 				timeAttr.setValue(new Time(Integer.valueOf(hour),Integer.valueOf(minute)));
 			}
 			//Validate results
-			//this.validateResult(node);
 		} else {
 			if (hour.equals("") && minute.equals("")){
 				EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), new Time(null,null), position);
@@ -188,6 +179,7 @@ public class TimeField extends InputField implements TextWatcher {
 				EntityBuilder.addValue(this.findParentEntity(path), this.nodeDefinition.getName(), new Time(Integer.valueOf(hour),Integer.valueOf(minute)), position);
 			}			
 		}
+		this.endSetValue(path, isChanged);
 	}
 	
 	/*@Override
@@ -2,11 +2,17 @@ package org.openforis.collect.android.fields;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.AutosaveScheduler;
+import org.openforis.collect.android.management.NodeStateCache;
+import org.openforis.collect.android.management.SummaryCache;
+import org.openforis.collect.android.management.ValidationManager;
 import org.openforis.collect.android.screens.FormScreen;
 import org.openforis.idm.metamodel.EntityDefinition;
 import org.openforis.idm.metamodel.NodeDefinition;
 import org.openforis.idm.metamodel.NodeLabel.Type;
+import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.model.Entity;
+import org.openforis.idm.model.Node;
 
 import android.content.Context;
 import android.graphics.Color;
@@ -29,6 +35,10 @@ public class UIElement extends TableLayout{
 	protected FormScreen form;
 	
 	private boolean isRequired;
+	
+	//value last loaded from or written to the record by setValue
+	private String currentValue;
+	private int setValueDepth;
 
 	
 	public UIElement(Context context, NodeDefinition nodeDef){
@@ -42,7 +52,7 @@ public class UIElement extends TableLayout{
 		try{
 			if (!this.form.getFormScreenId().equals("")){
 				Entity parentEntity = (Entity)this.findParentEntity(this.form.getFormScreenId());
-				this.isRequired = parentEntity.isRequired(nodeDef.getName());				
+				this.isRequired = NodeStateCache.isRequired(parentEntity, nodeDef);				
 			}	
 		} catch (Exception e){
 
@@ -102,4 +112,56 @@ public class UIElement extends TableLayout{
 		}
 		return null;
 	}
+	
+	//called at the start of setValue, returns true if the value is a change of the record:
+	//values loaded from the record (notify false), the value already set, and the echoes of the listeners of the widgets
+	//while a value is being shown are not changes
+	protected boolean beginSetValue(String value, boolean notify){
+		if (this.setValueDepth++>0)
+			return false;
+		boolean isChanged = notify&&(this.currentValue==null||!this.currentValue.equals(value));
+		this.currentValue = value;
+		return isChanged;
+	}
+	
+	//called at the end of setValue with the result of beginSetValue
+	protected void endSetValue(String path, boolean isChanged){
+		this.setValueDepth--;
+		if (isChanged)
+			this.notifyValueChanged(path);
+	}
+	
+	protected void notifyValueChanged(String path){
+		Entity parentEntity = this.findParentEntity(path);
+		SummaryCache.invalidate(parentEntity);
+		NodeStateCache.valueChanged(this.nodeDefinition);
+		ValidationManager.scheduleValidation(parentEntity, this.nodeDefinition);
+		AutosaveScheduler.markDirty(this.getResources());
+	}
+	
+	//called on the main thread when the validation of one of the attributes of this element is completed
+	public void showValidationResults(Node<?> node, ValidationResults results){
+		if (results==null)
+			return;
+		Entity parentEntity = this.findParentEntity(this.form.getFormScreenId());
+		if (parentEntity==null)
+			return;
+		int instanceNo = (this.nodeDefinition.isMultiple())?this.form.currInstanceNo:0;
+		if (parentEntity.get(this.nodeDefinition.getName(), instanceNo)!=node)
+			return;
+		this.setValidationResults(results);
+	}
+	
+	protected void setValidationResults(ValidationResults results){
+		this.setBackgroundColor(UIElement.getValidationColor(results));
+	}
+	
+	protected static int getValidationColor(ValidationResults results){
+		if(results.getErrors().size() > 0 || results.getFailed().size() > 0){
+			return Color.RED;
+		}else if (results.getWarnings().size() > 0){
+			return Color.YELLOW;
+		}
+		return Color.TRANSPARENT;
+	}
 }
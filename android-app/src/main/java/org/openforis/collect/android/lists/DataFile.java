@@ -10,6 +10,7 @@ public class DataFile {
 
 	private String name;
 	private String image;
+	private String status;
 
 	public String getName() {
 		return name;
@@ -27,4 +28,13 @@ public class DataFile {
 		this.image = image;
 	}
 
+	//transfer status shown under the name, null if the file is not being transferred
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
 }
@@ -1,25 +1,21 @@
 package org.openforis.collect.android.lists;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
-import org.openforis.collect.android.management.DataManager;
+import org.openforis.collect.android.management.RecordImporter;
 import org.openforis.collect.android.messages.AlertMessage;
+import org.openforis.collect.android.misc.FileListing;
+import org.openforis.collect.android.misc.ImportPipeline;
 import org.openforis.collect.android.misc.RunnableHandler;
 import org.openforis.collect.android.misc.ServerInterface;
+import org.openforis.collect.android.misc.SharedHttpClient;
 import org.openforis.collect.model.CollectSurvey;
 
 import android.app.Activity;
@@ -34,7 +30,6 @@ import android.net.NetworkInfo;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
-import android.os.StrictMode;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
@@ -65,25 +60,26 @@ public class DownloadActivity extends Activity{
 	
 	private int filesCount;
 	
-	private List<DataFile> dataFilesList;
+	private List<DataFile> dataFilesList = new ArrayList<DataFile>();
 	private FileListAdapter adapter;
 	
+	private FileListing fileListing;
+	private List<String> displayedFiles;
+	private int backgroundColor;
+	
 	ProgressBar pb;
     Dialog dialog;
     int downloadedSize = 0;
     int totalSize = 0;
     TextView cur_val;
-    String dwnload_file_path = "http://ar5.arbonaut.com/awfdatademo/planned/";
+    String dwnload_file_path = SharedHttpClient.getUrl(ServerInterface.DOWNLOAD_FOLDER_PATH);
+    
 	
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         Log.i(getResources().getString(R.string.app_name),TAG+":onCreate");
         setContentView(R.layout.uploadactivity);
-        if (android.os.Build.VERSION.SDK_INT > 9) {
-            StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-            StrictMode.setThreadPolicy(policy);
-        }
         try{
         	if (isNetworkAvailable()){
         		this.activityLabel = (TextView)findViewById(R.id.lblList);        		
@@ -102,21 +98,15 @@ public class DownloadActivity extends Activity{
                     @Override
                     public void onClick(View v) {
                     	//showProgress(dwnload_file_path);
-                    	pd = ProgressDialog.show(DownloadActivity.this, getResources().getString(R.string.workInProgress), getResources().getString(R.string.downloadingDataToServerMessage));
+                    	List<String> fileNames = new ArrayList<String>();
                     	for (int i=0;i<dataFilesList.size();i++){
                     		if (DownloadActivity.this.adapter.checkList.get(i)[0]){
-                    			final int number = i;
-                    					
-                                new Thread(new Runnable() {
-                                    public void run() {
-                                         downloadFile(adapter.getItem(number).getName());
-                                    }
-                                  }).start();
-                                filesCount++;
+                                fileNames.add(adapter.getItem(i).getName());
                     		}
                     	}
-                    	if (filesCount==0){
-    			    		pd.dismiss();
+                    	if (!fileNames.isEmpty()){
+                    		pd = ProgressDialog.show(DownloadActivity.this, getResources().getString(R.string.workInProgress), getResources().getString(R.string.downloadingDataToServerMessage));
+                    		importFiles(fileNames);
     			    	}
     			    	/*CheckBox upload;
     			    	//CheckBox overwrite;
@@ -204,23 +194,58 @@ public class DownloadActivity extends Activity{
 		//int layout = (backgroundColor!=Color.WHITE)?R.layout.selectableitem_white:R.layout.selectableitem_black;
 		//int layout = (backgroundColor!=Color.WHITE)?R.layout.download_list_item_white:R.layout.download_list_item_black;
 		//this.adapter = new ArrayAdapter<String>(this,layout,filesList);
+		this.backgroundColor = backgroundColor;
+		//the cached listing is shown at once and revalidated with the server in the background
+		this.fileListing = ServerInterface.getFileListing(getCacheDir());
+		this.displayedFiles = null;
+		List<String> cachedFiles = this.fileListing.getFiles();
+		if (cachedFiles!=null){
+			showFiles(cachedFiles);
+		}
+		new ListFiles().execute(this.fileListing);
+		//this.adapter = new ArrayAdapter<String>(this, layout, R.id.lblFileName, filesList);
+		//this.setListAdapter(this.adapter);
+		
+		this.filesCount = 0;
+    }
+    
+    private void showFiles(List<String> serverFiles){
+    	this.displayedFiles = serverFiles;
 		dataFilesList = new ArrayList<DataFile>();
-		List<String> serverFiles = ServerInterface.getFilesList();
 		int filesNo = serverFiles.size();
 		for (int i=0;i<filesNo;i++) {
 	        //filesList[i] = serverFiles.get(i);
 	        dataFilesList.add(new DataFile(serverFiles.get(i),"xml_icon"));
 		}
-		if (filesNo==0){
-			this.activityLabel.setText(getResources().getString(R.string.noDataToDownload));
-		}
-		int layout = (backgroundColor!=Color.WHITE)?R.layout.download_list_item_white:R.layout.download_list_item_black;
+		this.activityLabel.setText(getResources().getString((filesNo==0)?R.string.noDataToDownload:R.string.dataToDownload));
+		int layout = (this.backgroundColor!=Color.WHITE)?R.layout.download_list_item_white:R.layout.download_list_item_black;
 		this.adapter = new FileListAdapter(this, layout, dataFilesList, "download");
 		lv.setAdapter(this.adapter);
-		//this.adapter = new ArrayAdapter<String>(this, layout, R.id.lblFileName, filesList);
-		//this.setListAdapter(this.adapter);
-		
-		this.filesCount = 0;
+    }
+    
+    //conditional GET of the listing, costs one 304 round trip while the folder of the server does not change
+    private class ListFiles extends AsyncTask<FileListing, Void, List<String>> {
+    	
+    	protected List<String> doInBackground(FileListing... listings) {
+    		FileListing listing = listings[0];
+    		try {
+    			FileListing.Result result = listing.refresh();
+    			Log.i(TAG, "file listing "+((result.isModified)?"received: "+result.receivedBytes+" bytes":"not modified"));
+    			return result.files;
+    		} catch (IOException e) {
+    			Log.w(TAG, "file listing not received: "+e);
+    			List<String> cachedFiles = listing.load();
+    			return (cachedFiles!=null)?cachedFiles:new ArrayList<String>();
+    		}
+    	}
+    	
+    	protected void onPostExecute(List<String> serverFiles) {
+    		//the adapter, and the files checked in it, are kept when the listing did not change
+    		if (isFinishing()||serverFiles==DownloadActivity.this.displayedFiles){
+    			return;
+    		}
+    		showFiles(serverFiles);
+    	}
     }
     
     /*public List clientServerFileList(){
@@ -292,29 +317,6 @@ public class DownloadActivity extends Activity{
         }
     }*/
     
-    private static String convertStreamToString(InputStream is) throws Exception {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-        	if (line.contains("<value>")&&line.contains("</value>")){
-        		line = line.substring(line.indexOf("<value>")+7,line.indexOf("</value>"));
-        	} else if (line.contains("<code>")&&line.contains("<code>")){
-        		line = line.substring(line.indexOf("<code>")+6,line.indexOf("</code>"));        		
-        	}
-        	sb.append(line).append("\n");
-        }
-        return sb.toString();
-    }
-
-    private static String getStringFromFile (String filePath) throws Exception {
-        File fl = new File(filePath);
-        FileInputStream fin = new FileInputStream(fl);
-        String ret = convertStreamToString(fin);
-        fin.close();        
-        return ret;
-    }
-    
     private boolean isNetworkAvailable() {
         ConnectivityManager connectivityManager 
               = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -329,7 +331,7 @@ public class DownloadActivity extends Activity{
          */
         protected String doInBackground(Object... args) {
             try {            
-				return ServerInterface.sendDataFiles(DownloadActivity.getStringFromFile(Environment.getExternalStorageDirectory().toString()+String.valueOf(getResources().getString(R.string.exported_data_folder)+"/"+args[0])),(Boolean)args[1]);
+				return ServerInterface.sendDataFiles(new File(Environment.getExternalStorageDirectory().toString()+getResources().getString(R.string.exported_data_folder)+"/"+args[0]),(Boolean)args[1]);
 			} catch (Exception e) {
 				e.printStackTrace();
 				return "";
@@ -376,89 +378,27 @@ public class DownloadActivity extends Activity{
      
     }
     
-    void downloadFile(String fileName){
-        
-        try {        	
-            URL url = new URL(dwnload_file_path+fileName);
-            Log.e("file","=="+dwnload_file_path+fileName);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
- 
-            urlConnection.setRequestMethod("GET");
-            urlConnection.setDoOutput(true);
- 
-            //connect
-            urlConnection.connect();
- 
-            //set the path where we want to save the file          
-            File SDCardRoot = new File(Environment.getExternalStorageDirectory()+getResources().getString(R.string.imported_data_folder));
-            //create a new file, to save the downloaded file
-            File file = new File(SDCardRoot,fileName);
-  
-            FileOutputStream fileOutput = new FileOutputStream(file);
- 
-            //Stream used for reading the data from the internet
-            InputStream inputStream = urlConnection.getInputStream();
- 
-            //this is the total size of the file which we are downloading
-            totalSize = urlConnection.getContentLength();
- 
-            /*runOnUiThread(new Runnable() {
-                public void run() {
-                    pb.setMax(totalSize);
-                }              
-            });*/
-             
-            //create a buffer...
-            byte[] buffer = new byte[1024];
-            int bufferLength = 0;
- 
-            while ( (bufferLength = inputStream.read(buffer)) > 0 ) {
-                fileOutput.write(buffer, 0, bufferLength);
-                downloadedSize += bufferLength;
-                // update the progressbar //
-                /*runOnUiThread(new Runnable() {
-                    public void run() {
-                        pb.setProgress(downloadedSize);
-                        float per = ((float)downloadedSize/totalSize) * 100;
-                        cur_val.setText("Downloaded " + downloadedSize + "KB / " + totalSize + "KB (" + (int)per + "%)" );
-                    }
-                });*/
-            }
-            //close the output stream when complete //
-            fileOutput.close();
-            /*runOnUiThread(new Runnable() {
-                public void run() {
-                    //dialog.dismiss(); // if you want close it..
-                }
-            });*/
-            DataManager dataManager = new DataManager((CollectSurvey) ApplicationManager.getSurvey(),ApplicationManager.getSurvey().getSchema().getRootEntityDefinition(ApplicationManager.currRootEntityId).getName(),ApplicationManager.getLoggedInUser());
-            Log.e("fileNAMEtoLoad","=="+fileName);
-            dataManager.loadRecordFromXml(fileName);
-            filesCount--;
-            if (filesCount==0){
-            	pd.dismiss();
-    			/*AlertMessage.createPositiveDialog(DownloadActivity.this, true, null,
-    					getResources().getString(R.string.downloadToDeviceSuccessfulTitle), 
-    					getResources().getString(R.string.downloadToDeviceSuccessfulMessage),
-    						getResources().getString(R.string.okay),
-    			    		new DialogInterface.OnClickListener() {
-    							@Override
-    							public void onClick(DialogInterface dialog, int which) {
-    								
-    							}
-    						},
-    						null).show();	*/
-            }            	
-        } catch (final MalformedURLException e) {
-            showError("Error : MalformedURLException " + e);       
-            e.printStackTrace();
-        } catch (final IOException e) {
-            showError("Error : IOException " + e);         
-            e.printStackTrace();
-        }
-        catch (final Exception e) {
-            showError("Error : Please check your internet connection " + e);
-        }      
+    //the files are downloaded to the imported folder, parsed and saved in batches by the stages of a pipeline running side by side
+    void importFiles(List<String> fileNames){
+    	File importFolder = new File(Environment.getExternalStorageDirectory()+getResources().getString(R.string.imported_data_folder));
+    	RecordImporter.importFiles((CollectSurvey) ApplicationManager.getSurvey(),
+    			ApplicationManager.getSurvey().getSchema().getRootEntityDefinition(ApplicationManager.currRootEntityId).getName(),
+    			ApplicationManager.getLoggedInUser(),
+    			dwnload_file_path, fileNames, importFolder, new RecordImporter.Listener() {
+			@Override
+			public void onImportFinished(ImportPipeline.Result result, Exception error) {
+				if (error!=null){
+					showError("Error : import failed "+error);
+				} else {
+					for (Map.Entry<String,String> failed : result.failed.entrySet()){
+						showError("Error : "+failed.getKey()+" "+failed.getValue());
+					}
+				}
+				if (pd!=null&&pd.isShowing()){
+					pd.dismiss();
+				}
+			}
+		});
     }
      
     void showError(final String err){
@@ -55,7 +55,7 @@ public class FileListAdapter extends ArrayAdapter<DataFile> {
 		//TextView txtName = (TextView) convertView.findViewById(R.id.cityName);
 		//txtName.setText(city.getName());
 		TextView txtFileName = (TextView) convertView.findViewById(R.id.lblFileName);
-		txtFileName.setText(dataFile.getName());
+		txtFileName.setText((dataFile.getStatus()==null)?dataFile.getName():dataFile.getName()+"\n"+dataFile.getStatus());
 		
 		/* Take the TextView from layout and set the city's wiki link */
 		//TextView txtWiki = (TextView) convertView.findViewById(R.id.cityLinkWiki);
@@ -1,105 +1,77 @@
 package org.openforis.collect.android.lists;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.openforis.collect.android.R;
-import org.openforis.idm.metamodel.CodeListItem;
+import org.openforis.collect.android.fields.CodeField;
+import org.openforis.collect.android.fields.CodeListOptions;
+import org.openforis.collect.android.management.ApplicationManager;
 
 import android.app.ListActivity;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.View;
-import android.widget.ArrayAdapter;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
 import android.widget.ListView;
+import android.widget.TextView;
 
 public class ListSearchActivity extends ListActivity implements TextWatcher{
 
+	private static final String TAG = "ListSearchActivity";
+
 	private EditText txtSearchByName;
-	private ArrayList<String> treeData;
-	private ArrayAdapter<String> adapter;
-	private ArrayList<String> codes;
-	private String listName;
-	
-	private List<CodeListItem> itemsList;
-	
+	private CodeField codeField;
+	private CodeListOptions codeListOptions;
+	private SearchResultAdapter adapter;
+	private FilterTask filterTask;
+
 	public void onCreate(Bundle icicle) {
 		super.onCreate(icicle);
 		setContentView(R.layout.listsearchactivity);
 		this.txtSearchByName = (EditText)this.findViewById(R.id.txtSearchByName);
 		this.txtSearchByName.addTextChangedListener(this);
-		
-		this.listName = this.getIntent().getStringExtra("listName");
-		
-		/*this.itemsList = TabManager.survey.getCodeList(this.listName).getItems();
-		for (CodeListItem codeListItem : this.itemsList){
-			this.codes.add(codeListItem.getCode());
-			this.treeData.add(codeListItem.getLabel(null));
+
+		int codeFieldId = this.getIntent().getIntExtra(getResources().getString(R.string.codeFieldId), -1);
+		this.codeField = (CodeField)ApplicationManager.getUIElement(codeFieldId);
+		if (this.codeField==null||this.codeField.getCodeListOptions()==null){
+			Log.i(getResources().getString(R.string.app_name), TAG+":code field not found "+codeFieldId);
+			finish();
+			return;
+		}
+		this.codeListOptions = this.codeField.getCodeListOptions();
+		this.adapter = new SearchResultAdapter();
+		this.setListAdapter(this.adapter);
+		this.doSearch();
+	}
+
+	@Override
+	public void onDestroy(){
+		if (this.filterTask!=null){
+			this.filterTask.cancel(true);
 		}
-        //this.codes = ;//this.getIntent().getStringExtra("codes").split("\\\");
-        //this.treeData = ;//this.getIntent().getStringExtra("options").split("\\\");
-        this.adapter = new ArrayAdapter<String>(this, R.layout.row, R.id.label, treeData);
-		this.setListAdapter(this.adapter);		*/		
+		super.onDestroy();
 	}
 
 	@Override
 	protected void onListItemClick(ListView l, View v, int position, long id) {
 		super.onListItemClick(l, v, position, id);
-		/*if (!getListAdapter().getItem(position).toString().equals("No tree matches keyword entered...")){
-				//saving selected value
-				this.pref_db.saveItem(constants.PREFselectedItem, getListAdapter().getItem(position).toString());
-				for (int i=0;i<treeData.length;i++){
-					if (treeData[i].equals(getListAdapter().getItem(position).toString())){
-						position = i;
-						break;
-					}
-				}
-				this.pref_db.saveItem(constants.PREFselectedItemCode, this.codes[position]);
-		        finish();
-		}*/
+		this.codeField.setSelectedPosition(this.adapter.getCodePosition(position));
+		finish();
 	}
-    
+
 	private void doSearch(){
-		String query = this.txtSearchByName.getText().toString().trim();
-		ArrayList<String> resultList = new ArrayList<String>();
-	    /*for ( int i = 0; i<treeData.size(); i++){
-	    	resultList[i] = "";
-	    }*/
-            
-		if (query.equals("")){
-			resultList = treeData;
+		if (this.filterTask!=null){
+			this.filterTask.cancel(true);
 		}
-		else{
-			query = query.toLowerCase();
-			ArrayList<String> foundSpecies = new ArrayList<String>();
-			for (String s : treeData) {
-        		if (s.toLowerCase().contains(query.toLowerCase())){
-        			foundSpecies.add(s);
-        		}
-        	}
-	        int numberFound = foundSpecies.size();
-	        if (numberFound==0){
-	        	//resultList = new String[1];
-	        	resultList.add("No tree matches keyword entered...");
-	        }
-	        else{
-	        	//resultList = new String[foundSpecies.size()];
-		        
-		        for (int i=0; i<numberFound;i++){
-		        	//resultList[i] = foundSpecies.get(i);
-		        	resultList.add(foundSpecies.get(i));
-		        }	
-	        }	        
-	        
-			
-		}
-		this.adapter = new ArrayAdapter<String>(this, R.layout.row, R.id.label, resultList);
-		this.setListAdapter(this.adapter);
+		this.filterTask = new FilterTask();
+		this.filterTask.execute(this.txtSearchByName.getText().toString());
 	}
 
-	
+
 	public void afterTextChanged(Editable s) {
 		doSearch();
 	}
@@ -107,11 +79,71 @@ public class ListSearchActivity extends ListActivity implements TextWatcher{
 
 	public void beforeTextChanged(CharSequence s, int start, int count,
 			int after) {
-		
+
 	}
 
-	
+
 	public void onTextChanged(CharSequence s, int start, int before, int count) {
-		
+
+	}
+
+	private class FilterTask extends AsyncTask<String, Void, int[]> {
+
+		@Override
+		protected int[] doInBackground(String... query) {
+			return ListSearchActivity.this.codeListOptions.getSearchIndex().search(query[0]);
+		}
+
+		@Override
+		protected void onPostExecute(int[] positions) {
+			if (!this.isCancelled()&&positions!=null){
+				ListSearchActivity.this.adapter.setPositions(positions);
+			}
+		}
+	}
+
+	private class SearchResultAdapter extends BaseAdapter {
+
+		private int[] positions = new int[0];
+		private LayoutInflater inflater = LayoutInflater.from(ListSearchActivity.this);
+
+		public void setPositions(int[] positions){
+			this.positions = positions;
+			this.notifyDataSetChanged();
+		}
+
+		public int getCodePosition(int position){
+			return this.positions[position];
+		}
+
+		@Override
+		public int getCount() {
+			return this.positions.length;
+		}
+
+		@Override
+		public Object getItem(int position) {
+			return ListSearchActivity.this.codeListOptions.getOptions().get(this.positions[position]);
+		}
+
+		@Override
+		public long getItemId(int position) {
+			return this.positions[position];
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			TextView label;
+			if (convertView==null){
+				convertView = this.inflater.inflate(R.layout.row, parent, false);
+				label = (TextView)convertView.findViewById(R.id.label);
+				convertView.setTag(label);
+			} else {
+				label = (TextView)convertView.getTag();
+			}
+			int codePosition = this.positions[position];
+			label.setText(ListSearchActivity.this.codeListOptions.getCodes().get(codePosition)+" - "+ListSearchActivity.this.codeListOptions.getOptions().get(codePosition));
+			return convertView;
+		}
 	}
-}
\ No newline at end of file
+}
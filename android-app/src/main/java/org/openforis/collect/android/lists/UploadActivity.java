@@ -1,29 +1,23 @@
 package org.openforis.collect.android.lists;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.Map;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.UploadQueue;
 import org.openforis.collect.android.messages.AlertMessage;
 import org.openforis.collect.android.misc.RunnableHandler;
-import org.openforis.collect.android.misc.ServerInterface;
 
 import android.app.Activity;
-import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
 import android.util.Log;
@@ -54,10 +48,6 @@ public class UploadActivity extends Activity{
 	
 	private String path;
 	
-	private ProgressDialog pd;
-	
-	private int filesCount;
-	
 	private List<DataFile> dataFilesList;
 	private FileListAdapter adapter;
 	
@@ -86,20 +76,11 @@ public class UploadActivity extends Activity{
     			    public void onClick(View v) {
     			    	//CheckBox upload;
     			    	//CheckBox overwrite;
-    			    	pd = ProgressDialog.show(UploadActivity.this, getResources().getString(R.string.workInProgress), getResources().getString(R.string.uploadingDataToServerMessage));
     			    	for (int i=0;i<adapter.getCount();i++){
-    			    		//LinearLayout ll = (LinearLayout)lv.getChildAt(i);
-    			    		//upload = (CheckBox)ll.getChildAt(1);
-    			    		//overwrite = (CheckBox)ll.getChildAt(2);
-    			    		//if (upload.isChecked()){
     			    		if (adapter.checkList.get(i)[0]){
-    			    			(new SendData()).execute(adapter.getItem(i).getName(),adapter.checkList.get(i)[1]);
-    		    				filesCount++;	
+    			    			UploadQueue.enqueue(adapter.getItem(i).getName(),adapter.checkList.get(i)[1]);
     			    		}
     			    	}
-    			    	if (filesCount==0){
-    			    		pd.dismiss();
-    			    	}
     			    	/*
     			    	pd = ProgressDialog.show(UploadActivity.this, getResources().getString(R.string.workInProgress), getResources().getString(R.string.uploadingDataToServerMessage));
     			    	
@@ -132,8 +113,6 @@ public class UploadActivity extends Activity{
 							},
 							null).show();
         	}
-        	
-        	this.filesCount = 0;
         } catch (Exception e){
     		RunnableHandler.reportException(e,getResources().getString(R.string.app_name),TAG+":onCreate",
     				Environment.getExternalStorageDirectory().toString()
@@ -172,6 +151,7 @@ public class UploadActivity extends Activity{
 	        //filesList[i] = serverFiles.get(i);
 	        dataFilesList.add(new DataFile(dataFiles[i].getName(),"xml_icon"));
 		}
+		this.refreshUploadStatuses();
 		if (filesNo==0){
 			this.activityLabel.setText(getResources().getString(R.string.noDataToDownload));
 		}
@@ -182,6 +162,41 @@ public class UploadActivity extends Activity{
 		this.setListAdapter(this.adapter);*/
 		this.adapter = new FileListAdapter(this, layout, dataFilesList, "upload");
 		lv.setAdapter(this.adapter);
+		UploadQueue.setListener(new UploadQueue.Listener(){
+			@Override
+			public void onQueueChanged() {
+				UploadActivity.this.refreshUploadStatuses();
+				UploadActivity.this.adapter.notifyDataSetChanged();
+			}
+		});
+    }
+    
+    @Override
+    public void onPause(){
+    	UploadQueue.setListener(null);
+    	super.onPause();
+    }
+    
+    private void refreshUploadStatuses(){
+    	Map<String,UploadQueue.Item> queueItems = UploadQueue.getItems();
+    	for (DataFile dataFile : this.dataFilesList){
+    		UploadQueue.Item queueItem = queueItems.get(dataFile.getName());
+    		dataFile.setStatus((queueItem==null)?null:this.getStatusText(queueItem));
+    	}
+    }
+    
+    private String getStatusText(UploadQueue.Item queueItem){
+    	if (queueItem.status.equals(UploadQueue.STATUS_PENDING)){
+    		return getResources().getString(R.string.uploadStatusPending);
+    	} else if (queueItem.status.equals(UploadQueue.STATUS_UPLOADING)){
+    		return getResources().getString(R.string.uploadStatusUploading);
+    	} else if (queueItem.status.equals(UploadQueue.STATUS_DONE)){
+    		return getResources().getString(R.string.uploadStatusDone);
+    	} else if (queueItem.status.equals(UploadQueue.STATUS_RETRYING)){
+    		long delay = Math.max(0, queueItem.nextAttempt-System.currentTimeMillis())/1000;
+    		return String.format(getResources().getString(R.string.uploadStatusRetrying), queueItem.attemptsNo, delay);
+    	}
+    	return String.format(getResources().getString(R.string.uploadStatusFailed), queueItem.lastError);
     }
     
     /*@Override
@@ -233,87 +248,10 @@ public class UploadActivity extends Activity{
         }
     }*/
     
-    private static String convertStreamToString(InputStream is) throws Exception {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-        	/*if (line.contains("<value>")&&line.contains("</value>")){
-        		line = line.substring(line.indexOf("<value>")+7,line.indexOf("</value>"));
-        	} else if (line.contains("<code>")&&line.contains("<code>")){
-        		line = line.substring(line.indexOf("<code>")+6,line.indexOf("</code>"));        		
-        	}*/
-        	sb.append(line).append("\n");
-        }
-        return sb.toString();
-    }
-
-    private static String getStringFromFile (String filePath) throws Exception {
-        File fl = new File(filePath);
-        FileInputStream fin = new FileInputStream(fl);
-        String ret = convertStreamToString(fin);
-        fin.close();        
-        return ret;
-    }
-    
     private boolean isNetworkAvailable() {
         ConnectivityManager connectivityManager 
               = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
         NetworkInfo activeNetworkInfo = connectivityManager.getActiveNetworkInfo();
         return activeNetworkInfo != null && activeNetworkInfo.isConnected();
     }
-    
-    private class SendData extends AsyncTask {
-    	 
-        /**
-         * Let's make the http request and return the result as a String.
-         */
-        protected String doInBackground(Object... args) {
-            try {            
-				return ServerInterface.sendDataFiles(UploadActivity.getStringFromFile(Environment.getExternalStorageDirectory().toString()+String.valueOf(getResources().getString(R.string.exported_data_folder)+"/"+args[0])),(Boolean)args[1]);
-			} catch (Exception e) {
-				e.printStackTrace();
-				return "";
-			}
-        }
-     
-        /**
-         * Parse the String result, and create a new array adapter for the list
-         * view.
-         */
-        protected void onPostExecute(Object objResult) {
-        	Log.e("onPostExecute","=="+objResult);
-        	filesCount--;
-
-            if(objResult != null && objResult instanceof String) {
-                String result = (String) objResult;
-
-                String[] responseList;
-     
-                StringTokenizer tk = new StringTokenizer(result, ",");
-     
-                responseList = new String[tk.countTokens()];
-     
-                int i = 0;
-                while(tk.hasMoreTokens()) {
-                    responseList[i++] = tk.nextToken();
-                }
-            }
-            if (filesCount==0){
-            	pd.dismiss();
-    			/*AlertMessage.createPositiveDialog(UploadActivity.this, true, null,
-    					getResources().getString(R.string.uploadToServerSuccessfulTitle), 
-    					getResources().getString(R.string.uploadToServerSuccessfulMessage),
-    						getResources().getString(R.string.okay),
-    			    		new DialogInterface.OnClickListener() {
-    							@Override
-    							public void onClick(DialogInterface dialog, int which) {
-    								
-    							}
-    						},
-    						null).show();	*/
-            }            	
-        }
-     
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+package org.openforis.collect.android.lists;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openforis.collect.android.R;
+import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.RecordValidator;
+import org.openforis.collect.android.management.RecordValidator.ReportEntry;
+import org.openforis.collect.android.screens.FormScreen;
+import org.openforis.collect.android.screens.FormScreenDescriptor;
+
+import android.app.ListActivity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+public class ValidationReportActivity extends ListActivity implements RecordValidator.ReportListener {
+
+	private static final String TAG = "ValidationReportActivity";
+
+	private TextView lblStatus;
+	private ReportAdapter adapter;
+	private RecordValidator recordValidator;
+	private long startTime;
+
+	public void onCreate(Bundle icicle) {
+		super.onCreate(icicle);
+		setContentView(R.layout.validationreport);
+		if (ApplicationManager.currentRecord==null){
+			finish();
+			return;
+		}
+		this.lblStatus = (TextView)this.findViewById(R.id.lblValidationStatus);
+		this.adapter = new ReportAdapter();
+		this.setListAdapter(this.adapter);
+
+		this.startTime = System.currentTimeMillis();
+		this.recordValidator = new RecordValidator(ApplicationManager.currentRecord,
+				getResources().getString(R.string.valuesSeparator1), getResources().getString(R.string.valuesSeparator2),
+				getResources().getString(R.string.breadcrumbSeparator), this);
+		this.recordValidator.start();
+	}
+
+	@Override
+	public void onDestroy(){
+		if (this.recordValidator!=null){
+			this.recordValidator.cancel();
+		}
+		super.onDestroy();
+	}
+
+	@Override
+	protected void onListItemClick(ListView l, View v, int position, long id) {
+		super.onListItemClick(l, v, position, id);
+		ReportEntry entry = (ReportEntry)this.adapter.getItem(position);
+		int intentType = (entry.getEntityDefinition().isMultiple())?getResources().getInteger(R.integer.multipleEntityIntent):getResources().getInteger(R.integer.singleEntityIntent);
+		FormScreenDescriptor descriptor = new FormScreenDescriptor(entry.getBreadcrumb(), intentType, entry.getEntityDefinition().getId(), entry.getInstanceNo(),
+				entry.getParentFormScreenId(), entry.getEntityDefinition().getChildDefinitions());
+		Intent intent = new Intent(this, FormScreen.class);
+		intent.putExtra(getResources().getString(R.string.screenDescriptor), descriptor);
+		this.startActivity(intent);
+	}
+
+	@Override
+	public void onEntriesFound(final List<ReportEntry> entries) {
+		this.runOnUiThread(new Runnable(){
+			@Override
+			public void run() {
+				ValidationReportActivity.this.adapter.addEntries(entries);
+			}
+		});
+	}
+
+	@Override
+	public void onFinished(final int attributesNo, final boolean isCancelled) {
+		final long duration = System.currentTimeMillis()-this.startTime;
+		Log.i(getResources().getString(R.string.app_name), TAG+":"+attributesNo+" attributes validated in "+duration+"ms");
+		this.runOnUiThread(new Runnable(){
+			@Override
+			public void run() {
+				if (isCancelled){
+					ValidationReportActivity.this.lblStatus.setText(getResources().getString(R.string.validationCancelled));
+				} else {
+					ValidationReportActivity.this.lblStatus.setText(getResources().getString(R.string.validationFinished)+attributesNo);
+				}
+			}
+		});
+	}
+
+	private class ReportAdapter extends BaseAdapter {
+
+		private List<ReportEntry> entries = new ArrayList<ReportEntry>();
+		private LayoutInflater inflater = LayoutInflater.from(ValidationReportActivity.this);
+		//keeps the entries of the same entity together in the order of the form, whatever order the workers report them in:
+		//instance 10 comes after instance 2, and an entity before its children
+		private Comparator<ReportEntry> comparator = new Comparator<ReportEntry>(){
+			@Override
+			public int compare(ReportEntry entry1, ReportEntry entry2) {
+				int[] path1 = entry1.getPath();
+				int[] path2 = entry2.getPath();
+				for (int i=0;i<path1.length&&i<path2.length;i++){
+					if (path1[i]!=path2[i])
+						return (path1[i]<path2[i])?-1:1;
+				}
+				if (path1.length!=path2.length)
+					return (path1.length<path2.length)?-1:1;
+				return entry1.getAttributeLabel().compareTo(entry2.getAttributeLabel());
+			}
+		};
+
+		public void addEntries(List<ReportEntry> newEntries){
+			for (ReportEntry entry : newEntries){
+				int position = Collections.binarySearch(this.entries, entry, this.comparator);
+				this.entries.add((position<0)?-position-1:position, entry);
+			}
+			this.notifyDataSetChanged();
+		}
+
+		@Override
+		public int getCount() {
+			return this.entries.size();
+		}
+
+		@Override
+		public Object getItem(int position) {
+			return this.entries.get(position);
+		}
+
+		@Override
+		public long getItemId(int position) {
+			return position;
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			TextView label;
+			if (convertView==null){
+				convertView = this.inflater.inflate(R.layout.row, parent, false);
+				label = (TextView)convertView.findViewById(R.id.label);
+				convertView.setTag(label);
+			} else {
+				label = (TextView)convertView.getTag();
+			}
+			ReportEntry entry = this.entries.get(position);
+			StringBuilder text = new StringBuilder(entry.getBreadcrumb());
+			text.append("\n").append(entry.getAttributeLabel());
+			if (entry.getErrorsNo()>0)
+				text.append(" - ").append(getResources().getString(R.string.validationErrors)).append(entry.getErrorsNo());
+			if (entry.getWarningsNo()>0)
+				text.append(" - ").append(getResources().getString(R.string.validationWarnings)).append(entry.getWarningsNo());
+			if (entry.getMessage().length()>0)
+				text.append("\n").append(entry.getMessage());
+			label.setText(text);
+			return convertView;
+		}
+	}
+}
@@ -2,10 +2,10 @@ package org.openforis.collect.android.management;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,7 +26,9 @@ import org.openforis.collect.android.lists.RecordChoiceActivity;
 import org.openforis.collect.android.lists.RootEntityChoiceActivity;
 import org.openforis.collect.android.messages.AlertMessage;
 import org.openforis.collect.android.misc.RunnableHandler;
+import org.openforis.collect.android.misc.SharedHttpClient;
 import org.openforis.collect.android.screens.FormScreen;
+import org.openforis.collect.android.screens.FormScreenDescriptor;
 import org.openforis.collect.manager.SurveyManager;
 import org.openforis.collect.manager.UserManager;
 import org.openforis.collect.model.CollectRecord;
@@ -41,12 +43,10 @@ import org.openforis.collect.persistence.xml.UIOptionsBinder;
 import org.openforis.idm.metamodel.EntityDefinition;
 import org.openforis.idm.metamodel.LanguageSpecificText;
 import org.openforis.idm.metamodel.NodeDefinition;
-import org.openforis.idm.metamodel.NodeLabel.Type;
 import org.openforis.idm.metamodel.Survey;
 import org.openforis.idm.metamodel.validation.Validator;
 import org.openforis.idm.metamodel.xml.SurveyIdmlBinder;
 import org.openforis.idm.model.Entity;
-import org.openforis.idm.model.expression.ExpressionFactory;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 
 import android.app.Activity;
@@ -70,6 +70,8 @@ public class ApplicationManager extends BaseActivity {
 	private static SQLDroidDataSource dataSource;
 	private static UserManager userManager;
 	public static SurveyManager surveyManager;
+	public static CachingExpressionFactory expressionFactory;
+	private static CollectSurveyContext collectSurveyContext;
 	
 	private static CollectSurvey survey;
 	//private static Schema schema;
@@ -79,7 +81,7 @@ public class ApplicationManager extends BaseActivity {
 	
 	public static SharedPreferences appPreferences;
 	
-	private static Map<Integer,UIElement> uiElementsMap;
+	private static WeakReference<UIElementRegistry<UIElement>> uiElementRegistry;
 	
 	public static CollectRecord currentRecord;
 	public static int currRootEntityId;
@@ -112,6 +114,8 @@ public class ApplicationManager extends BaseActivity {
 	        	JdbcDaoSupport.init(dataSource);
 	        	
 			    DatabaseWrapper.init(ApplicationManager.this);
+			    UploadQueue.init(ApplicationManager.this);
+			    SyncManager.init(ApplicationManager.this);
 	        	
 			    //updateDBSchema();
 			    //creating database
@@ -162,16 +166,16 @@ public class ApplicationManager extends BaseActivity {
 			    CollectDatabase collectDB = new CollectDatabase(DatabaseWrapper.db);	*/
 			    
 			    //instantiating managers
-			    ExpressionFactory expressionFactory = new ExpressionFactory();
+			    ApplicationManager.expressionFactory = new CachingExpressionFactory();
 	        	Validator validator = new Validator();
-	        	CollectSurveyContext collectSurveyContext = new CollectSurveyContext(expressionFactory, validator/*, null*/);
+	        	ApplicationManager.collectSurveyContext = new CollectSurveyContext(ApplicationManager.expressionFactory, validator/*, null*/);
 	        	//CollectSurveyContext collectSurveyContext = new CollectSurveyContext(expressionFactory, validator);
 	        	
 	        	surveyManager = new SurveyManager();
-	        	surveyManager.setCollectSurveyContext(collectSurveyContext);
+	        	surveyManager.setCollectSurveyContext(ApplicationManager.collectSurveyContext);
 	        	//surveyManager.setSurveyDao(new SurveyDao(collectSurveyContext));
 	        	SurveyDao surveyDao = new SurveyDao();
-	        	surveyDao.setSurveyContext(collectSurveyContext);	        	
+	        	surveyDao.setSurveyContext(ApplicationManager.collectSurveyContext);	        	
 	        	surveyManager.setSurveyWorkDao(new SurveyWorkDao());
 	        	surveyManager.setSurveyDao(surveyDao);
 	        	surveyManager.init();
@@ -208,8 +212,6 @@ public class ApplicationManager extends BaseActivity {
 	        	//List<EntityDefinition> rootEntitiesDefsList = schema.getRootEntityDefinitions();
 	        	//getAllFormFields(rootEntitiesDefsList);
 	        	
-	        	ApplicationManager.uiElementsMap = new HashMap<Integer,UIElement>();        	
-	        	
 	        	//adding default user to database if not exists        	
 	        	User defaultUser = new User();
 	        	defaultUser.setName(getResources().getString(R.string.defaultUsername));
@@ -276,6 +278,11 @@ public class ApplicationManager extends BaseActivity {
 			editor = ApplicationManager.appPreferences.edit();
 			editor.putString(getResources().getString(R.string.formDefinitionPath), formDefinitionPath);
 			
+			String serverBaseUrl = ApplicationManager.appPreferences.getString(getResources().getString(R.string.serverBaseUrl), getResources().getString(R.string.defaultServerBaseUrl));
+			editor = ApplicationManager.appPreferences.edit();
+			editor.putString(getResources().getString(R.string.serverBaseUrl), serverBaseUrl);
+			SharedHttpClient.setBaseUrl(serverBaseUrl);
+			
 	    	editor.commit();
 	    		    
         	creationThread.start();
@@ -390,14 +397,11 @@ public class ApplicationManager extends BaseActivity {
 			 	           	jdbcDao.getConnection();
 			 	           	
 		 	    			String sdcardPath = Environment.getExternalStorageDirectory().toString();
-		 	    			ExpressionFactory expressionFactory = new ExpressionFactory();
-		 		        	Validator validator = new Validator();
-		 		        	CollectSurveyContext collectSurveyContext = new CollectSurveyContext(expressionFactory, validator/*, null*/);
 		 		        	String selectedFormDefinitionFile = ApplicationManager.appPreferences.getString(getResources().getString(R.string.formDefinitionPath), getResources().getString(R.string.defaultFormDefinitionPath));
 		 		        	Log.e("loadingForm","=FROM=="+selectedFormDefinitionFile);
 			            	//FileInputStream fis = new FileInputStream(sdcardPath+getResources().getString(R.string.formDefinitionFile));     	
 		 		        	FileInputStream fis = new FileInputStream(sdcardPath+selectedFormDefinitionFile);
-			            	SurveyIdmlBinder binder = new SurveyIdmlBinder(collectSurveyContext);
+			            	SurveyIdmlBinder binder = new SurveyIdmlBinder(ApplicationManager.collectSurveyContext);
 			        		binder.addApplicationOptionsBinder(new UIOptionsBinder());
 			        		survey = (CollectSurvey) binder.unmarshal(fis);
 			        		List<LanguageSpecificText> projectNamesList = survey.getProjectNames();
@@ -584,17 +588,9 @@ public class ApplicationManager extends BaseActivity {
 		//List<EntityDefinition> rootEntitiesDefsList = schema.getRootEntityDefinitions();		
 		Intent intent = new Intent(this,FormScreen.class);
 		EntityDefinition rootEntityDef = (EntityDefinition)ApplicationManager.getSurvey().getSchema().getDefinitionById(ApplicationManager.currRootEntityId);
-		intent.putExtra(getResources().getString(R.string.breadcrumb), ApplicationManager.getLabel(rootEntityDef/*, null*/));
-		intent.putExtra(getResources().getString(R.string.intentType), getResources().getInteger(R.integer.singleEntityIntent));
-		intent.putExtra(getResources().getString(R.string.parentFormScreenId), "");
-		intent.putExtra(getResources().getString(R.string.idmlId), ApplicationManager.currRootEntityId);
-		intent.putExtra(getResources().getString(R.string.instanceNo), 0);
-		List<NodeDefinition> entityAttributes = rootEntityDef.getChildDefinitions();
-        int counter = 0;
-        for (NodeDefinition formField : entityAttributes){
-			intent.putExtra(getResources().getString(R.string.attributeId)+counter, formField.getId());
-			counter++;
-        }
+		FormScreenDescriptor descriptor = new FormScreenDescriptor(ApplicationManager.getLabel(rootEntityDef/*, null*/), getResources().getInteger(R.integer.singleEntityIntent), 
+				ApplicationManager.currRootEntityId, 0, "", rootEntityDef.getChildDefinitions());
+		intent.putExtra(getResources().getString(R.string.screenDescriptor), descriptor);
 		/*intent.putExtra(getResources().getString(R.string.breadcrumb), "");
 		intent.putExtra(getResources().getString(R.string.intentType), getResources().getInteger(R.integer.singleEntityIntent));
 		intent.putExtra(getResources().getString(R.string.parentFormScreenId), "");
@@ -613,6 +609,17 @@ public class ApplicationManager extends BaseActivity {
 	
 	public void showRootEntitiesListScreen(){
 		ApplicationManager.currRootEntityId = -1;		
+		final Survey selectedSurvey = ApplicationManager.survey;
+		Thread thread = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				LabelCache.prepare(selectedSurvey, ApplicationManager.selectedLanguage);
+				if (ApplicationManager.expressionFactory!=null)
+					ApplicationManager.expressionFactory.prepare(selectedSurvey);
+			}
+		});
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
 		this.startActivityForResult(new Intent(this, RootEntityChoiceActivity.class),getResources().getInteger(R.integer.rootEntitySelection));
 	}
 	
@@ -634,11 +641,27 @@ public class ApplicationManager extends BaseActivity {
     }
 	
 	public static UIElement getUIElement(int elementId){
-		return ApplicationManager.uiElementsMap.get(elementId);
+		UIElementRegistry<UIElement> registry = ApplicationManager.getUIElementRegistry();
+		if (registry==null)
+			return null;
+		return registry.get(elementId);
 	}
 	
 	public static void putUIElement(int key, UIElement uiEl){
-		ApplicationManager.uiElementsMap.put(key, uiEl);
+		UIElementRegistry<UIElement> registry = ApplicationManager.getUIElementRegistry();
+		if (registry!=null)
+			registry.put(key, uiEl);
+	}
+	
+	//registry of the form screen currently in the foreground
+	public static void setUIElementRegistry(UIElementRegistry<UIElement> registry){
+		ApplicationManager.uiElementRegistry = new WeakReference<UIElementRegistry<UIElement>>(registry);
+	}
+	
+	private static UIElementRegistry<UIElement> getUIElementRegistry(){
+		if (ApplicationManager.uiElementRegistry==null)
+			return null;
+		return ApplicationManager.uiElementRegistry.get();
 	}
 	
 	public static String getSessionId(){
@@ -646,19 +669,7 @@ public class ApplicationManager extends BaseActivity {
 	}
 	
 	public static String getLabel(NodeDefinition nodeDef/*, String language*/){
-		//Log.e("getLabel","=="+ApplicationManager.selectedLanguage);
-		String label = nodeDef.getLabel(Type.INSTANCE, ApplicationManager.selectedLanguage);
-		/*if (label==null){
-			label = nodeDef.getLabel(Type.INSTANCE, "en");
-		}*/
-		if (label==null){
-			if (nodeDef.getLabels().size()>0){
-				label = nodeDef.getLabels().get(0).getText();	
-			} else {
-				label = "";
-			}			
-		}
-		return label;
+		return LabelCache.getLabel(nodeDef);
 	}
 	
 	
@@ -0,0 +1,185 @@
+package org.openforis.collect.android.management;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openforis.collect.android.R;
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.collect.model.CollectSurvey;
+
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+//saves the current record in the background when it was modified: after a pause in editing (idle delay),
+//at the latest after the autosave interval, and when the application goes to the background
+public class AutosaveScheduler {
+
+	private static final String TAG = "AutosaveScheduler";
+
+	private static CollectRecord dirtyRecord;
+	private static Handler handler;
+	private static ExecutorService saveExecutor;
+	private static boolean isPeriodicSaveScheduled;
+	private static DataManager dataManager;
+	private static CollectSurvey dataManagerSurvey;
+
+	private static volatile long lastSaveDuration = -1;
+	private static volatile long lastSaveProcessWrittenBytes = -1;
+
+	private static Runnable idleSave = new Runnable(){
+		@Override
+		public void run() {
+			AutosaveScheduler.saveNow("idle");
+		}
+	};
+
+	private static Runnable periodicSave = new Runnable(){
+		@Override
+		public void run() {
+			AutosaveScheduler.isPeriodicSaveScheduled = false;
+			AutosaveScheduler.saveNow("interval");
+		}
+	};
+
+	//called on the main thread whenever a value of the current record is modified,
+	//a burst of edits only postpones the idle save
+	public static void markDirty(Resources res){
+		if (ApplicationManager.currentRecord==null)
+			return;
+		if (AutosaveScheduler.dirtyRecord!=null&&AutosaveScheduler.dirtyRecord!=ApplicationManager.currentRecord){
+			AutosaveScheduler.saveNow("record changed");
+		}
+		AutosaveScheduler.dirtyRecord = ApplicationManager.currentRecord;
+		int interval = res.getInteger(R.integer.autosaveIntervalInMs);
+		int idleDelay = res.getInteger(R.integer.autosaveIdleDelayInMs);
+		if (ApplicationManager.appPreferences!=null){
+			interval = ApplicationManager.appPreferences.getInt(res.getString(R.string.autosaveInterval), interval);
+			idleDelay = ApplicationManager.appPreferences.getInt(res.getString(R.string.autosaveIdleDelay), idleDelay);
+		}
+		if (AutosaveScheduler.handler==null){
+			AutosaveScheduler.handler = new Handler(Looper.getMainLooper());
+		}
+		if (idleDelay>0){
+			AutosaveScheduler.handler.removeCallbacks(AutosaveScheduler.idleSave);
+			AutosaveScheduler.handler.postDelayed(AutosaveScheduler.idleSave, idleDelay);
+		}
+		if (interval>0&&!AutosaveScheduler.isPeriodicSaveScheduled){
+			AutosaveScheduler.isPeriodicSaveScheduled = true;
+			AutosaveScheduler.handler.postDelayed(AutosaveScheduler.periodicSave, interval);
+		}
+	}
+
+	//the record was saved by other means
+	public static void markClean(){
+		AutosaveScheduler.dirtyRecord = null;
+		AutosaveScheduler.cancelScheduledSaves();
+	}
+
+	//called on the main thread when a save of the record failed, it is retried with the next trigger
+	public static void markSaveFailed(CollectRecord record){
+		if (AutosaveScheduler.dirtyRecord==null)
+			AutosaveScheduler.dirtyRecord = record;
+	}
+
+	//takes a snapshot of the modified record on the main thread and saves it in the background, does nothing if nothing changed
+	public static void saveNow(final String trigger){
+		final CollectRecord record = AutosaveScheduler.dirtyRecord;
+		if (record==null)
+			return;
+		AutosaveScheduler.dirtyRecord = null;
+		AutosaveScheduler.cancelScheduledSaves();
+		CollectSurvey survey = (CollectSurvey)ApplicationManager.getSurvey();
+		if (survey==null||ApplicationManager.getLoggedInUser()==null)
+			return;
+		if (AutosaveScheduler.dataManager==null||AutosaveScheduler.dataManagerSurvey!=survey){
+			AutosaveScheduler.dataManager = new DataManager(survey, survey.getSchema().getRootEntityDefinitions().get(0).getName(), ApplicationManager.getLoggedInUser());
+			AutosaveScheduler.dataManagerSurvey = survey;
+		}
+		final DataManager recordDataManager = AutosaveScheduler.dataManager;
+		final CollectRecord snapshot;
+		try{
+			snapshot = recordDataManager.takeSnapshot(record);
+		} catch (Exception e){
+			Log.e(TAG, "snapshot of the record failed: "+e);
+			AutosaveScheduler.dirtyRecord = record;
+			return;
+		}
+		if (AutosaveScheduler.saveExecutor==null){
+			AutosaveScheduler.saveExecutor = Executors.newSingleThreadExecutor();
+		}
+		AutosaveScheduler.saveExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				long startTime = System.currentTimeMillis();
+				long writtenBytesBefore = AutosaveScheduler.getProcessWrittenBytes();
+				boolean isSuccess = recordDataManager.saveSnapshot(snapshot, record);
+				long writtenBytesAfter = AutosaveScheduler.getProcessWrittenBytes();
+				AutosaveScheduler.lastSaveDuration = System.currentTimeMillis()-startTime;
+				AutosaveScheduler.lastSaveProcessWrittenBytes = (writtenBytesBefore<0||writtenBytesAfter<0)?-1:writtenBytesAfter-writtenBytesBefore;
+				Log.i(TAG, "autosave ("+trigger+") "+((isSuccess)?"done":"failed")+" in "+AutosaveScheduler.lastSaveDuration+"ms, bytes written by the process meanwhile: "+AutosaveScheduler.lastSaveProcessWrittenBytes);
+				if (!isSuccess&&AutosaveScheduler.handler!=null){
+					AutosaveScheduler.handler.post(new Runnable(){
+						@Override
+						public void run() {
+							AutosaveScheduler.markSaveFailed(record);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	public static boolean isDirty(){
+		return AutosaveScheduler.dirtyRecord!=null;
+	}
+
+	//duration (ms) of the last autosave, -1 if none was done yet
+	public static long getLastSaveDuration(){
+		return AutosaveScheduler.lastSaveDuration;
+	}
+
+	//bytes written by the whole process while the last autosave ran, -1 if unknown:
+	//an upper bound of the cost of the save, since the uploads, downloads, sync and logging running at the same time are counted too,
+	//the writes of sqlite for the save itself are not visible on their own
+	public static long getLastSaveProcessWrittenBytes(){
+		return AutosaveScheduler.lastSaveProcessWrittenBytes;
+	}
+
+	private static void cancelScheduledSaves(){
+		if (AutosaveScheduler.handler!=null){
+			AutosaveScheduler.handler.removeCallbacks(AutosaveScheduler.idleSave);
+			AutosaveScheduler.handler.removeCallbacks(AutosaveScheduler.periodicSave);
+		}
+		AutosaveScheduler.isPeriodicSaveScheduled = false;
+	}
+
+	//bytes written so far by all the threads of this process, according to the kernel I/O accounting
+	private static long getProcessWrittenBytes(){
+		BufferedReader reader = null;
+		try{
+			reader = new BufferedReader(new FileReader("/proc/self/io"));
+			String line;
+			while ((line = reader.readLine())!=null){
+				if (line.startsWith("wchar:")){
+					return Long.parseLong(line.substring("wchar:".length()).trim());
+				}
+			}
+		} catch (Exception e){
+			//not available on this kernel
+		} finally {
+			if (reader!=null){
+				try {
+					reader.close();
+				} catch (IOException e) {
+
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -3,9 +3,12 @@ package org.openforis.collect.android.management;
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.lists.DownloadActivity;
 import org.openforis.collect.android.lists.UploadActivity;
+import org.openforis.collect.android.lists.ValidationReportActivity;
 import org.openforis.collect.android.messages.AlertMessage;
+import org.openforis.collect.android.messages.ToastMessage;
 import org.openforis.collect.android.misc.RunnableHandler;
 import org.openforis.collect.android.screens.SettingsScreen;
+import org.openforis.collect.model.CollectRecord;
 import org.openforis.collect.model.CollectSurvey;
 
 import android.app.Activity;
@@ -14,6 +17,7 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.graphics.Color;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
 import android.util.Log;
@@ -22,6 +26,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.Window;
 import android.view.WindowManager;
+import android.widget.Toast;
 
 
 public class BaseActivity extends Activity {
@@ -102,44 +107,48 @@ public class BaseActivity extends Activity {
 	        case R.id.menu_save:
 	        	CollectSurvey collectSurveySave = (CollectSurvey)ApplicationManager.getSurvey();	        	
 	        	DataManager dataManagerSave = new DataManager(collectSurveySave,collectSurveySave.getSchema().getRootEntityDefinitions().get(0).getName(),ApplicationManager.getLoggedInUser());
-	        	boolean isSuccess = dataManagerSave.saveRecord(this);
-	        	if (isSuccess){
-	        		AlertMessage.createPositiveDialog(BaseActivity.this, true, null,
-							getResources().getString(R.string.savingDataTitle), 
-							getResources().getString(R.string.savingDataSuccessMessage),
-								getResources().getString(R.string.okay),
-					    		new DialogInterface.OnClickListener() {
-									@Override
-									public void onClick(DialogInterface dialog, int which) {
-										
-									}
-								},
-								null).show();
-	        	} else {
-	        		AlertMessage.createPositiveDialog(BaseActivity.this, true, null,
-							getResources().getString(R.string.savingDataTitle), 
-							getResources().getString(R.string.savingDataFailureMessage),
-								getResources().getString(R.string.okay),
-					    		new DialogInterface.OnClickListener() {
-									@Override
-									public void onClick(DialogInterface dialog, int which) {
-										
-									}
-								},
-								null).show();
-	        	}
+	        	CollectRecord recordSave = ApplicationManager.currentRecord;
+	        	AutosaveScheduler.markClean();
+	        	new SaveRecordTask(dataManagerSave, recordSave, null).execute(dataManagerSave.takeSnapshot(recordSave));
 	        	return true;
 	        case R.id.menu_export:
 	        	CollectSurvey collectSurveyExport = (CollectSurvey)ApplicationManager.getSurvey();	        	
 	        	DataManager dataManagerExport = new DataManager(collectSurveyExport,collectSurveyExport.getSchema().getRootEntityDefinitions().get(0).getName(),ApplicationManager.getLoggedInUser());
-	        	dataManagerExport.saveRecordToXml(ApplicationManager.currentRecord, Environment.getExternalStorageDirectory().toString()+getResources().getString(R.string.exported_data_folder));
+	        	CollectRecord recordExport = ApplicationManager.currentRecord;
+	        	new SaveRecordTask(dataManagerExport, recordExport, Environment.getExternalStorageDirectory().toString()+getResources().getString(R.string.exported_data_folder))
+	        			.execute(dataManagerExport.takeSnapshot(recordExport));
 	        	return true;	    
+			case R.id.menu_validate:
+				if (ApplicationManager.currentRecord!=null){
+					startActivity(new Intent(BaseActivity.this, ValidationReportActivity.class));
+				}
+			    return true;
 			case R.id.menu_upload:
 				startActivity(new Intent(BaseActivity.this, UploadActivity.class));
 			    return true;
 			case R.id.menu_download:
 				startActivity(new Intent(BaseActivity.this, DownloadActivity.class));
 			    return true;    
+			case R.id.menu_sync:
+				CollectSurvey collectSurveySync = (CollectSurvey)ApplicationManager.getSurvey();
+				DataManager dataManagerSync = new DataManager(collectSurveySync,collectSurveySync.getSchema().getRootEntityDefinitions().get(0).getName(),ApplicationManager.getLoggedInUser());
+				boolean isStarted = SyncManager.sync(dataManagerSync, new SyncManager.Listener() {
+					@Override
+					public void onSyncFinished(SyncManager.Result result, Exception error) {
+						if (result==null){
+							ToastMessage.displayToastMessage(BaseActivity.this, String.format(getResources().getString(R.string.syncFailed), error), Toast.LENGTH_LONG);
+							return;
+						}
+						String message = String.format(getResources().getString(R.string.syncFinished), result.delta.toUpload.size(), result.importedNo, result.delta.unchangedNo);
+						if (!result.failures.isEmpty())
+							message += String.format(getResources().getString(R.string.syncRecordsFailed), result.failures.size(), result.failures.values().iterator().next());
+						ToastMessage.displayToastMessage(BaseActivity.this, message, Toast.LENGTH_LONG);
+					}
+				});
+				if (!isStarted){
+					ToastMessage.displayToastMessage(BaseActivity.this, getResources().getString(R.string.syncInProgress), Toast.LENGTH_SHORT);
+				}
+			    return true;
 			case R.id.menu_settings:
 				startActivity(new Intent(BaseActivity.this,SettingsScreen.class));
 			    return true;	    
@@ -175,6 +184,58 @@ public class BaseActivity extends Activity {
     @Override
     public void onPause(){
     	Log.i(getResources().getString(R.string.app_name),TAG+":onPause");
+    	AutosaveScheduler.saveNow("pause");
     	super.onPause();
     }
+    
+    @Override
+    public void onStop(){
+    	AutosaveScheduler.saveNow("stop");
+    	super.onStop();
+    }
+    
+    //saves (or exports to the given folder) a snapshot of the record while the live record can still be edited
+    private class SaveRecordTask extends AsyncTask<CollectRecord, Void, Boolean> {
+    	
+    	private DataManager dataManager;
+    	private CollectRecord liveRecord;
+    	private String exportFolder;
+    	
+    	public SaveRecordTask(DataManager dataManager, CollectRecord liveRecord, String exportFolder){
+    		this.dataManager = dataManager;
+    		this.liveRecord = liveRecord;
+    		this.exportFolder = exportFolder;
+    	}
+    	
+		@Override
+		protected Boolean doInBackground(CollectRecord... snapshots) {
+			if (this.exportFolder!=null){
+				this.dataManager.saveRecordToXml(snapshots[0], this.exportFolder);
+				return true;
+			}
+			return this.dataManager.saveSnapshot(snapshots[0], this.liveRecord);
+		}
+		
+		@Override
+		protected void onPostExecute(Boolean isSuccess) {
+			if (this.exportFolder!=null)
+				return;
+			//marked clean when the save was started, so that the autosave does not save it as well
+			if (!isSuccess)
+				AutosaveScheduler.markSaveFailed(this.liveRecord);
+			if (BaseActivity.this.isFinishing())
+				return;
+			AlertMessage.createPositiveDialog(BaseActivity.this, true, null,
+					getResources().getString(R.string.savingDataTitle), 
+					(isSuccess)?getResources().getString(R.string.savingDataSuccessMessage):getResources().getString(R.string.savingDataFailureMessage),
+						getResources().getString(R.string.okay),
+			    		new DialogInterface.OnClickListener() {
+							@Override
+							public void onClick(DialogInterface dialog, int which) {
+								
+							}
+						},
+						null).show();
+		}
+    }
 }
\ No newline at end of file
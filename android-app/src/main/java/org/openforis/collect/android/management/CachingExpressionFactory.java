@@ -0,0 +1,199 @@
+package org.openforis.collect.android.management;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openforis.idm.metamodel.AttributeDefault;
+import org.openforis.idm.metamodel.AttributeDefinition;
+import org.openforis.idm.metamodel.EntityDefinition;
+import org.openforis.idm.metamodel.NodeDefinition;
+import org.openforis.idm.metamodel.Survey;
+import org.openforis.idm.metamodel.validation.Check;
+import org.openforis.idm.metamodel.validation.CustomCheck;
+import org.openforis.idm.model.expression.CheckConditionExpression;
+import org.openforis.idm.model.expression.CustomCheckExpression;
+import org.openforis.idm.model.expression.DefaultValueExpression;
+import org.openforis.idm.model.expression.ExpressionFactory;
+import org.openforis.idm.model.expression.InvalidExpressionException;
+import org.openforis.idm.model.expression.RelevanceExpression;
+import org.openforis.idm.model.expression.RequiredExpression;
+import org.openforis.idm.model.expression.ValueExpression;
+
+import android.util.Log;
+
+//compiles every expression string only once for the survey in use, compiled expressions are stateless
+//and are shared between records and validations
+public class CachingExpressionFactory extends ExpressionFactory {
+
+	private static final String TAG = "CachingExpressionFactory";
+
+	private interface Compiler<T> {
+		public T compile(String expression) throws InvalidExpressionException;
+	}
+
+	private Map<String,CheckConditionExpression> checkConditionExpressions = new HashMap<String,CheckConditionExpression>();
+	private Map<String,CustomCheckExpression> customCheckExpressions = new HashMap<String,CustomCheckExpression>();
+	private Map<String,DefaultValueExpression> defaultValueExpressions = new HashMap<String,DefaultValueExpression>();
+	private Map<String,RelevanceExpression> relevanceExpressions = new HashMap<String,RelevanceExpression>();
+	private Map<String,RequiredExpression> requiredExpressions = new HashMap<String,RequiredExpression>();
+	private Map<String,ValueExpression> valueExpressions = new HashMap<String,ValueExpression>();
+
+	private Survey cachedSurvey;
+	private long hitsNo;
+	private long compiledNo;
+	private long compileTime;
+
+	@Override
+	public CheckConditionExpression createCheckConditionExpression(String expression) throws InvalidExpressionException {
+		return this.get(this.checkConditionExpressions, expression, new Compiler<CheckConditionExpression>(){
+			@Override
+			public CheckConditionExpression compile(String expression) throws InvalidExpressionException {
+				return CachingExpressionFactory.super.createCheckConditionExpression(expression);
+			}
+		});
+	}
+
+	@Override
+	public CustomCheckExpression createCustomCheckExpression(String expression) throws InvalidExpressionException {
+		return this.get(this.customCheckExpressions, expression, new Compiler<CustomCheckExpression>(){
+			@Override
+			public CustomCheckExpression compile(String expression) throws InvalidExpressionException {
+				return CachingExpressionFactory.super.createCustomCheckExpression(expression);
+			}
+		});
+	}
+
+	@Override
+	public DefaultValueExpression createDefaultValueExpression(String expression) throws InvalidExpressionException {
+		return this.get(this.defaultValueExpressions, expression, new Compiler<DefaultValueExpression>(){
+			@Override
+			public DefaultValueExpression compile(String expression) throws InvalidExpressionException {
+				return CachingExpressionFactory.super.createDefaultValueExpression(expression);
+			}
+		});
+	}
+
+	@Override
+	public RelevanceExpression createRelevanceExpression(String expression) throws InvalidExpressionException {
+		return this.get(this.relevanceExpressions, expression, new Compiler<RelevanceExpression>(){
+			@Override
+			public RelevanceExpression compile(String expression) throws InvalidExpressionException {
+				return CachingExpressionFactory.super.createRelevanceExpression(expression);
+			}
+		});
+	}
+
+	@Override
+	public RequiredExpression createRequiredExpression(String expression) throws InvalidExpressionException {
+		return this.get(this.requiredExpressions, expression, new Compiler<RequiredExpression>(){
+			@Override
+			public RequiredExpression compile(String expression) throws InvalidExpressionException {
+				return CachingExpressionFactory.super.createRequiredExpression(expression);
+			}
+		});
+	}
+
+	@Override
+	public ValueExpression createValueExpression(String expression) throws InvalidExpressionException {
+		return this.get(this.valueExpressions, expression, new Compiler<ValueExpression>(){
+			@Override
+			public ValueExpression compile(String expression) throws InvalidExpressionException {
+				return CachingExpressionFactory.super.createValueExpression(expression);
+			}
+		});
+	}
+
+	//drops the expressions of the previous survey and compiles the ones of the given survey
+	public void prepare(Survey survey){
+		synchronized (this){
+			if (survey==this.cachedSurvey)
+				return;
+			this.clear();
+			this.cachedSurvey = survey;
+		}
+		if (survey==null)
+			return;
+		long startTime = System.currentTimeMillis();
+		for (EntityDefinition rootEntityDef : survey.getSchema().getRootEntityDefinitions()){
+			this.precompile(rootEntityDef);
+		}
+		Log.i(TAG, "survey "+survey.getName()+" expressions compiled in "+(System.currentTimeMillis()-startTime)+"ms: "+this.getStatistics());
+	}
+
+	public synchronized void clear(){
+		this.checkConditionExpressions.clear();
+		this.customCheckExpressions.clear();
+		this.defaultValueExpressions.clear();
+		this.relevanceExpressions.clear();
+		this.requiredExpressions.clear();
+		this.valueExpressions.clear();
+		this.cachedSurvey = null;
+	}
+
+	public synchronized long getHitsNo(){
+		return this.hitsNo;
+	}
+
+	public synchronized long getCompiledNo(){
+		return this.compiledNo;
+	}
+
+	//total time (ms) spent compiling expressions
+	public synchronized long getCompileTime(){
+		return this.compileTime;
+	}
+
+	public synchronized String getStatistics(){
+		return "compiled: "+this.compiledNo+" in "+this.compileTime+"ms, cache hits: "+this.hitsNo;
+	}
+
+	private <T> T get(Map<String,T> expressions, String expression, Compiler<T> compiler) throws InvalidExpressionException {
+		synchronized (this){
+			T compiledExpression = expressions.get(expression);
+			if (compiledExpression!=null){
+				this.hitsNo++;
+				return compiledExpression;
+			}
+		}
+		long startTime = System.currentTimeMillis();
+		T compiledExpression = compiler.compile(expression);
+		synchronized (this){
+			this.compiledNo++;
+			this.compileTime += System.currentTimeMillis()-startTime;
+			expressions.put(expression, compiledExpression);
+		}
+		return compiledExpression;
+	}
+
+	private void precompile(EntityDefinition entityDef){
+		for (NodeDefinition childDef : entityDef.getChildDefinitions()){
+			try{
+				if (childDef.getRelevantExpression()!=null)
+					this.createRelevanceExpression(childDef.getRelevantExpression());
+				if (childDef.getRequiredExpression()!=null)
+					this.createRequiredExpression(childDef.getRequiredExpression());
+				if (childDef instanceof AttributeDefinition){
+					AttributeDefinition attributeDef = (AttributeDefinition)childDef;
+					for (Check<?> check : attributeDef.getChecks()){
+						if (check.getCondition()!=null)
+							this.createCheckConditionExpression(check.getCondition());
+						if (check instanceof CustomCheck&&((CustomCheck)check).getExpression()!=null)
+							this.createCustomCheckExpression(((CustomCheck)check).getExpression());
+					}
+					for (AttributeDefault attributeDefault : attributeDef.getAttributeDefaults()){
+						if (attributeDefault.getCondition()!=null)
+							this.createCheckConditionExpression(attributeDefault.getCondition());
+						if (attributeDefault.getExpression()!=null)
+							this.createDefaultValueExpression(attributeDefault.getExpression());
+					}
+				}
+			} catch (InvalidExpressionException e){
+				//reported again when the expression is evaluated
+				Log.w(TAG, "invalid expression in "+childDef.getName()+": "+e.getMessage());
+			}
+			if (childDef instanceof EntityDefinition){
+				this.precompile((EntityDefinition)childDef);
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.openforis.collect.android.management;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.openforis.collect.android.fields.CodeListOptions;
+import org.openforis.idm.metamodel.CodeList;
+import org.openforis.idm.metamodel.CodeListItem;
+import org.openforis.idm.metamodel.Survey;
+
+public class CodeListCache {
+
+	private static final String EMPTY_CODE = "null";
+	private static final String EMPTY_CHILD_CODE = "";
+
+	private static Map<String,CodeListOptions> optionsMap = new HashMap<String,CodeListOptions>();
+	//children of each parent item, built once per parent
+	private static Map<CodeListItem,CodeListOptions> childOptionsMap = new IdentityHashMap<CodeListItem,CodeListOptions>();
+	private static CodeListOptions emptyChildOptions;
+	private static Survey cachedSurvey;
+	private static String cachedLanguage;
+
+	public static synchronized CodeListOptions getOptions(CodeList codeList){
+		CodeListCache.checkValidity();
+		CodeListOptions codeListOptions = CodeListCache.optionsMap.get(codeList.getName());
+		if (codeListOptions==null){
+			codeListOptions = new CodeListOptions(codeList.getItems(), EMPTY_CODE);
+			CodeListCache.optionsMap.put(codeList.getName(), codeListOptions);
+		}
+		return codeListOptions;
+	}
+
+	public static synchronized CodeListOptions getChildOptions(CodeListItem parentItem){
+		CodeListCache.checkValidity();
+		if (parentItem==null){
+			if (CodeListCache.emptyChildOptions==null){
+				CodeListCache.emptyChildOptions = new CodeListOptions(null, EMPTY_CHILD_CODE);
+			}
+			return CodeListCache.emptyChildOptions;
+		}
+		CodeListOptions childOptions = CodeListCache.childOptionsMap.get(parentItem);
+		if (childOptions==null){
+			childOptions = new CodeListOptions(parentItem.getChildItems(), EMPTY_CHILD_CODE);
+			CodeListCache.childOptionsMap.put(parentItem, childOptions);
+		}
+		return childOptions;
+	}
+
+	public static synchronized void clear(){
+		CodeListCache.optionsMap.clear();
+		CodeListCache.childOptionsMap.clear();
+		CodeListCache.cachedSurvey = null;
+		CodeListCache.cachedLanguage = null;
+	}
+
+	private static void checkValidity(){
+		Survey survey = ApplicationManager.getSurvey();
+		String language = ApplicationManager.selectedLanguage;
+		boolean isLanguageChanged = (language==null)?(CodeListCache.cachedLanguage!=null):!language.equals(CodeListCache.cachedLanguage);
+		if (survey!=CodeListCache.cachedSurvey||isLanguageChanged){
+			CodeListCache.clear();
+			CodeListCache.cachedSurvey = survey;
+			CodeListCache.cachedLanguage = language;
+		}
+	}
+}
@@ -1,7 +1,16 @@
 package org.openforis.collect.android.management;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -54,62 +63,109 @@ public class DataManager {
 	
 	public boolean saveRecord(Context ctx) {
 		boolean isSuccess = true;
-		try {
-			JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
-			jdbcDao.getConnection();
-			CollectRecord recordToSave = ApplicationManager.currentRecord;
+		synchronized (DataManager.class){
+			try {
+				JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
+				jdbcDao.getConnection();
+				CollectRecord recordToSave = ApplicationManager.currentRecord;
 			
-			if (recordToSave.getId()==null){
-				recordToSave.setCreatedBy(this.user);
-				recordToSave.setCreationDate(new Date());
-				recordToSave.setStep(Step.ENTRY);			
-			} else {
-				recordToSave.setModifiedDate(new Date());
-			}
-			DataManager.recordManager.save(recordToSave, ApplicationManager.getSessionId());
-		} catch (RecordUnlockedException e) {
-			e.printStackTrace();
-			isSuccess = false;
-		} catch (RecordPersistenceException e) {
-			e.printStackTrace();
-			isSuccess = false;
-		} catch (NullPointerException e){
-			e.printStackTrace();
-			isSuccess = false;
-		} catch (Exception e){
-			e.printStackTrace();
-			isSuccess = false;
-		} finally {
+				if (recordToSave.getId()==null){
+					recordToSave.setCreatedBy(this.user);
+					recordToSave.setCreationDate(new Date());
+					recordToSave.setStep(Step.ENTRY);			
+				} else {
+					recordToSave.setModifiedDate(new Date());
+				}
+				DataManager.recordManager.save(recordToSave, ApplicationManager.getSessionId());
+			} catch (RecordUnlockedException e) {
+				e.printStackTrace();
+				isSuccess = false;
+			} catch (RecordPersistenceException e) {
+				e.printStackTrace();
+				isSuccess = false;
+			} catch (NullPointerException e){
+				e.printStackTrace();
+				isSuccess = false;
+			} catch (Exception e){
+				e.printStackTrace();
+				isSuccess = false;
+			} finally {
 			
+			}
 		}
 		return isSuccess;
 	}
 	
 	public int saveRecord(CollectRecord recordToSave) {
-		try {
-			JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
-			jdbcDao.getConnection();
-			Log.e("recordToSave==null","=="+(recordToSave==null));
-			if (recordToSave.getId()==null){
-				recordToSave.setCreatedBy(this.user);
-				recordToSave.setCreationDate(new Date());
-				recordToSave.setStep(Step.ENTRY);			
-			} else {
-				recordToSave.setModifiedDate(new Date());
-			}
-			DataManager.recordManager.save(recordToSave, ApplicationManager.getSessionId());
-		} catch (RecordUnlockedException e) {
-			e.printStackTrace();
-		} catch (RecordPersistenceException e) {
-			e.printStackTrace();
-		} catch (NullPointerException e){
-			e.printStackTrace();
-		} finally {
+		synchronized (DataManager.class){
+			try {
+				JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
+				jdbcDao.getConnection();
+				Log.e("recordToSave==null","=="+(recordToSave==null));
+				if (recordToSave.getId()==null){
+					recordToSave.setCreatedBy(this.user);
+					recordToSave.setCreationDate(new Date());
+					recordToSave.setStep(Step.ENTRY);			
+				} else {
+					recordToSave.setModifiedDate(new Date());
+				}
+				DataManager.recordManager.save(recordToSave, ApplicationManager.getSessionId());
+			} catch (RecordUnlockedException e) {
+				e.printStackTrace();
+			} catch (RecordPersistenceException e) {
+				e.printStackTrace();
+			} catch (NullPointerException e){
+				e.printStackTrace();
+			} finally {
 
+			}
 		}
 		return 0;
 	}
 	
+	//stamps the live record and copies it, the snapshot can then be saved or exported on a background thread
+	public CollectRecord takeSnapshot(CollectRecord record){
+		if (record.getId()==null){
+			if (record.getCreationDate()==null){
+				record.setCreatedBy(this.user);
+				record.setCreationDate(new Date());
+				record.setStep(Step.ENTRY);
+			}
+		} else {
+			record.setModifiedDate(new Date());
+		}
+		return RecordSnapshot.take(record);
+	}
+	
+	public boolean saveSnapshot(CollectRecord snapshot, CollectRecord liveRecord){
+		boolean isSuccess = true;
+		//snapshots of the same record must not be written concurrently,
+		//a new record gets its id from the first save and the later snapshots must update that row
+		synchronized (DataManager.class){
+			try {
+				if (snapshot.getId()==null&&liveRecord.getId()!=null){
+					snapshot.setId(liveRecord.getId());
+				}
+				JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
+				jdbcDao.getConnection();
+				DataManager.recordManager.save(snapshot, ApplicationManager.getSessionId());
+				if (liveRecord.getId()==null){
+					liveRecord.setId(snapshot.getId());
+				}
+			} catch (RecordUnlockedException e) {
+				e.printStackTrace();
+				isSuccess = false;
+			} catch (RecordPersistenceException e) {
+				e.printStackTrace();
+				isSuccess = false;
+			} catch (Exception e){
+				e.printStackTrace();
+				isSuccess = false;
+			}
+		}
+		return isSuccess;
+	}
+	
 	public int saveRecordToXml(CollectRecord recordToSave, String folderToSave) {
 		long startTime = System.currentTimeMillis();
 		try {
@@ -123,7 +179,7 @@ public class DataManager {
 				recordToSave.setModifiedDate(new Date());
 			}
 			
-			FileWriter fwr = new FileWriter(folderToSave+"/"+ApplicationManager.currentRecord.getId()+"_"+ApplicationManager.currRootEntityId+"_"+ApplicationManager.currentRecord.getCreationDate().getDay()+"_"+ApplicationManager.currentRecord.getCreationDate().getMonth()+"_"+ApplicationManager.currentRecord.getCreationDate().getYear()+"_"+ApplicationManager.currentRecord.getCreationDate().getHours()+"_"+ApplicationManager.currentRecord.getCreationDate().getMinutes()+"_"+ApplicationManager.currentRecord.getCreatedBy().getName()+".xml");
+			FileWriter fwr = new FileWriter(folderToSave+"/"+recordToSave.getId()+"_"+ApplicationManager.currRootEntityId+"_"+recordToSave.getCreationDate().getDay()+"_"+recordToSave.getCreationDate().getMonth()+"_"+recordToSave.getCreationDate().getYear()+"_"+recordToSave.getCreationDate().getHours()+"_"+recordToSave.getCreationDate().getMinutes()+"_"+recordToSave.getCreatedBy().getName()+".xml");
 			this.dataMarshaller.write(recordToSave, fwr);
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -136,7 +192,74 @@ public class DataManager {
 		return 0;
 	}
 	
+	//the record is marshalled as it is, without updating its modification date
+	public byte[] toXml(CollectRecord record) {
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		try {
+			Writer writer = new OutputStreamWriter(xml, "UTF-8");
+			this.dataMarshaller.write(record, writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} catch (XmlPullParserException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return xml.toByteArray();
+	}
+	
+	//parses an exported record without touching the database, each thread needs its own DataManager
+	public CollectRecord parseRecordXml(File file) throws DataUnmarshallerException, IOException {
+		ParseRecordResult result;
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			result = this.dataUnmarshaller.parse(reader);
+		} finally {
+			reader.close();
+		}
+		if (result==null||result.getRecord()==null){
+			throw new IOException((result==null)?"record not parsed":result.getMessage());
+		}
+		return result.getRecord();
+	}
+	
+	//saves the records in one transaction, the whole batch is rolled back if one of them fails;
+	//all the DataManager methods share one connection and hold the DataManager.class lock while they use it,
+	//so no other save joins the transaction or has its changes rolled back with it, and no load closes the connection under it
+	public void saveRecords(List<CollectRecord> records) throws RecordPersistenceException, RecordUnlockedException, SQLException {
+		synchronized (DataManager.class){
+			Connection connection = new JdbcDaoSupport().getConnection();
+			boolean autoCommit = connection.getAutoCommit();
+			boolean isSuccess = false;
+			connection.setAutoCommit(false);
+			try {
+				for (CollectRecord recordToSave : records){
+					if (recordToSave.getId()==null){
+						recordToSave.setCreatedBy(this.user);
+						recordToSave.setCreationDate(new Date());
+						recordToSave.setStep(Step.ENTRY);
+					} else {
+						recordToSave.setModifiedDate(new Date());
+					}
+					DataManager.recordManager.save(recordToSave, ApplicationManager.getSessionId());
+				}
+				connection.commit();
+				isSuccess = true;
+			} finally {
+				if (!isSuccess)
+					connection.rollback();
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+	
 	public CollectRecord loadRecordFromXml(String filename) {
+		return this.loadRecordFromXml(filename, null);
+	}
+	
+	//the imported record replaces the record with the given id, if any
+	public CollectRecord loadRecordFromXml(String filename, Integer recordId) {
 		filename = Environment.getExternalStorageDirectory().toString()+"/ofcm/data/imported/"+filename;
 		long startTime = System.currentTimeMillis();
 		CollectRecord loadedRecord = null;
@@ -157,6 +280,9 @@ public class DataManager {
 			}
 			Log.e("loadedResult"+(result==null),"LOADED FROM XML IN "+(System.currentTimeMillis()-startTime)/1000+"s");
 			Log.e("loadedRecord","=="+(loadedRecord==null));
+			if (recordId!=null){
+				loadedRecord.setId(recordId);
+			}
 			this.saveRecord(loadedRecord);
 			Log.e("record","SAVED");
 		} catch (NullPointerException e){
@@ -168,42 +294,48 @@ public class DataManager {
 	}
 	
 	public void deleteRecord(int position){
-		try {
-			JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
-			jdbcDao.getConnection();
-			List<CollectRecord> recordsList = DataManager.recordManager.loadSummaries(survey, rootEntity);
-			DataManager.recordManager.delete(recordsList.get(position).getId());			
-		} catch (RecordPersistenceException e) {
-			e.printStackTrace();
+		synchronized (DataManager.class){
+			try {
+				JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
+				jdbcDao.getConnection();
+				List<CollectRecord> recordsList = DataManager.recordManager.loadSummaries(survey, rootEntity);
+				DataManager.recordManager.delete(recordsList.get(position).getId());			
+			} catch (RecordPersistenceException e) {
+				e.printStackTrace();
+			}
 		}
 	}
 	
 	public List<CollectRecord> loadSummaries(){
 		Log.e("loading","SUMMARIES");
 		long startTime = System.currentTimeMillis();
-		JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
-		jdbcDao.getConnection();
-		Log.e("jdbcDaoconnection","=="+((System.currentTimeMillis()-startTime)/1000));
-		startTime = System.currentTimeMillis();
-		List<CollectRecord> recordsList = DataManager.recordManager.loadSummaries(survey, rootEntity);		
-		Log.e("loadSummaries","=="+((System.currentTimeMillis()-startTime)/1000));
-		JdbcDaoSupport.close();
+		synchronized (DataManager.class){
+			JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
+			jdbcDao.getConnection();
+			Log.e("jdbcDaoconnection","=="+((System.currentTimeMillis()-startTime)/1000));
+			startTime = System.currentTimeMillis();
+			List<CollectRecord> recordsList = DataManager.recordManager.loadSummaries(survey, rootEntity);		
+			Log.e("loadSummaries","=="+((System.currentTimeMillis()-startTime)/1000));
+			JdbcDaoSupport.close();
+		}
 		return recordsList;
 	}
 	
 	public CollectRecord loadRecord(int recordId){
 		long startTime = System.currentTimeMillis();
 		CollectRecord loadedRecord = null;
-		try {
-			JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
-			jdbcDao.getConnection();
-			loadedRecord = DataManager.recordManager.load(survey, recordId, Step.ENTRY.getStepNumber());
-			JdbcDaoSupport.close();
-		} catch (NullPointerException e){
-			e.printStackTrace();
-		} /*catch (RecordPersistenceException e) {
-			e.printStackTrace();
-		}*/
+		synchronized (DataManager.class){
+			try {
+				JdbcDaoSupport jdbcDao = new JdbcDaoSupport();
+				jdbcDao.getConnection();
+				loadedRecord = DataManager.recordManager.load(survey, recordId, Step.ENTRY.getStepNumber());
+				JdbcDaoSupport.close();
+			} catch (NullPointerException e){
+				e.printStackTrace();
+			} /*catch (RecordPersistenceException e) {
+				e.printStackTrace();
+			}*/
+		}
 		Log.e("record"+recordId,"LOADED IN "+(System.currentTimeMillis()-startTime)+"ms");
 		return loadedRecord;
 	}
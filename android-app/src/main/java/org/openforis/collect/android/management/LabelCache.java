@@ -0,0 +1,93 @@
+package org.openforis.collect.android.management;
+
+import org.openforis.idm.metamodel.EntityDefinition;
+import org.openforis.idm.metamodel.NodeDefinition;
+import org.openforis.idm.metamodel.NodeLabel.Type;
+import org.openforis.idm.metamodel.Survey;
+
+//instance labels of all the node definitions of a survey in the selected language, indexed by definition id
+public class LabelCache {
+
+	private static class LabelTable {
+		private Survey survey;
+		private String language;
+		private String[] labels;
+	}
+
+	private static volatile LabelTable labelTable;
+
+	public static String getLabel(NodeDefinition nodeDef){
+		LabelTable table = LabelCache.labelTable;
+		if (table==null||table.survey!=ApplicationManager.getSurvey()||!LabelCache.isSameLanguage(table.language, ApplicationManager.selectedLanguage)){
+			LabelCache.prepare(ApplicationManager.getSurvey(), ApplicationManager.selectedLanguage);
+			table = LabelCache.labelTable;
+		}
+		int id = nodeDef.getId();
+		if (table!=null&&id>=0&&id<table.labels.length&&table.labels[id]!=null){
+			return table.labels[id];
+		}
+		return LabelCache.resolveLabel(nodeDef, ApplicationManager.selectedLanguage);
+	}
+
+	//builds the label table, called when a survey is selected and when the language is changed
+	public static synchronized void prepare(Survey survey, String language){
+		LabelTable table = LabelCache.labelTable;
+		if (table!=null&&table.survey==survey&&LabelCache.isSameLanguage(table.language, language))
+			return;
+		table = new LabelTable();
+		table.survey = survey;
+		table.language = language;
+		table.labels = new String[0];
+		if (survey!=null){
+			int maxId = 0;
+			for (EntityDefinition rootEntityDef : survey.getSchema().getRootEntityDefinitions()){
+				maxId = Math.max(maxId, LabelCache.getMaxId(rootEntityDef));
+			}
+			table.labels = new String[maxId+1];
+			for (EntityDefinition rootEntityDef : survey.getSchema().getRootEntityDefinitions()){
+				LabelCache.fillLabels(rootEntityDef, language, table.labels);
+			}
+		}
+		LabelCache.labelTable = table;
+	}
+
+	public static synchronized void clear(){
+		LabelCache.labelTable = null;
+	}
+
+	static String resolveLabel(NodeDefinition nodeDef, String language){
+		String label = nodeDef.getLabel(Type.INSTANCE, language);
+		if (label==null){
+			if (nodeDef.getLabels().size()>0){
+				label = nodeDef.getLabels().get(0).getText();
+			} else {
+				label = "";
+			}
+		}
+		return label;
+	}
+
+	private static int getMaxId(NodeDefinition nodeDef){
+		int maxId = nodeDef.getId();
+		if (nodeDef instanceof EntityDefinition){
+			for (NodeDefinition childDef : ((EntityDefinition)nodeDef).getChildDefinitions()){
+				maxId = Math.max(maxId, LabelCache.getMaxId(childDef));
+			}
+		}
+		return maxId;
+	}
+
+	private static void fillLabels(NodeDefinition nodeDef, String language, String[] labels){
+		if (nodeDef.getId()>=0)
+			labels[nodeDef.getId()] = LabelCache.resolveLabel(nodeDef, language);
+		if (nodeDef instanceof EntityDefinition){
+			for (NodeDefinition childDef : ((EntityDefinition)nodeDef).getChildDefinitions()){
+				LabelCache.fillLabels(childDef, language, labels);
+			}
+		}
+	}
+
+	private static boolean isSameLanguage(String language1, String language2){
+		return (language1==null)?(language2==null):language1.equals(language2);
+	}
+}
@@ -0,0 +1,109 @@
+package org.openforis.collect.android.management;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.idm.metamodel.EntityDefinition;
+import org.openforis.idm.metamodel.NodeDefinition;
+import org.openforis.idm.metamodel.Survey;
+import org.openforis.idm.model.Entity;
+
+//results of the required expressions of the children of each entity instance,
+//an entry is dropped as soon as one of the attributes named in its expression changes
+public class NodeStateCache {
+
+	private static Map<Entity,Map<Integer,Boolean>> requiredMap = new IdentityHashMap<Entity,Map<Integer,Boolean>>();
+	//attribute name -> ids of the node definitions whose required expression refers to it
+	private static Map<String,Set<Integer>> dependentsMap;
+	private static CollectRecord cachedRecord;
+	private static Survey cachedSurvey;
+
+	public static synchronized boolean isRequired(Entity entity, NodeDefinition nodeDef){
+		NodeStateCache.checkValidity();
+		Boolean isRequired = NodeStateCache.getState(NodeStateCache.requiredMap, entity, nodeDef);
+		if (isRequired==null){
+			isRequired = entity.isRequired(nodeDef.getName());
+			NodeStateCache.putState(NodeStateCache.requiredMap, entity, nodeDef, isRequired);
+		}
+		return isRequired;
+	}
+
+	//called whenever the value of an attribute is modified
+	public static synchronized void valueChanged(NodeDefinition nodeDef){
+		NodeStateCache.checkValidity();
+		if (NodeStateCache.dependentsMap==null)
+			return;
+		Set<Integer> dependents = NodeStateCache.dependentsMap.get(nodeDef.getName());
+		if (dependents==null)
+			return;
+		NodeStateCache.removeStates(NodeStateCache.requiredMap, dependents);
+	}
+
+	public static synchronized void clear(){
+		NodeStateCache.requiredMap.clear();
+		NodeStateCache.cachedRecord = null;
+	}
+
+	private static Boolean getState(Map<Entity,Map<Integer,Boolean>> statesMap, Entity entity, NodeDefinition nodeDef){
+		Map<Integer,Boolean> entityStates = statesMap.get(entity);
+		return (entityStates==null)?null:entityStates.get(nodeDef.getId());
+	}
+
+	private static void putState(Map<Entity,Map<Integer,Boolean>> statesMap, Entity entity, NodeDefinition nodeDef, Boolean state){
+		Map<Integer,Boolean> entityStates = statesMap.get(entity);
+		if (entityStates==null){
+			entityStates = new HashMap<Integer,Boolean>();
+			statesMap.put(entity, entityStates);
+		}
+		entityStates.put(nodeDef.getId(), state);
+	}
+
+	private static void removeStates(Map<Entity,Map<Integer,Boolean>> statesMap, Set<Integer> nodeDefIds){
+		for (Map<Integer,Boolean> entityStates : statesMap.values()){
+			entityStates.keySet().removeAll(nodeDefIds);
+		}
+	}
+
+	private static void checkValidity(){
+		if (ApplicationManager.currentRecord!=NodeStateCache.cachedRecord){
+			NodeStateCache.clear();
+			NodeStateCache.cachedRecord = ApplicationManager.currentRecord;
+		}
+		Survey survey = ApplicationManager.getSurvey();
+		if (survey!=NodeStateCache.cachedSurvey){
+			NodeStateCache.cachedSurvey = survey;
+			NodeStateCache.dependentsMap = NodeStateCache.buildDependentsMap(survey);
+		}
+	}
+
+	private static Map<String,Set<Integer>> buildDependentsMap(Survey survey){
+		Map<String,Set<Integer>> dependents = new HashMap<String,Set<Integer>>();
+		if (survey==null)
+			return dependents;
+		for (EntityDefinition rootEntityDef : survey.getSchema().getRootEntityDefinitions()){
+			NodeStateCache.addDependents(rootEntityDef, dependents);
+		}
+		return dependents;
+	}
+
+	private static void addDependents(EntityDefinition entityDef, Map<String,Set<Integer>> dependents){
+		for (NodeDefinition childDef : entityDef.getChildDefinitions()){
+			Set<String> names = ValidationManager.getNames(childDef.getRequiredExpression());
+			for (String name : names){
+				Set<Integer> nameDependents = dependents.get(name);
+				if (nameDependents==null){
+					nameDependents = new HashSet<Integer>();
+					dependents.put(name, nameDependents);
+				}
+				nameDependents.add(childDef.getId());
+			}
+			if (childDef instanceof EntityDefinition){
+				NodeStateCache.addDependents((EntityDefinition)childDef, dependents);
+			}
+		}
+	}
+}
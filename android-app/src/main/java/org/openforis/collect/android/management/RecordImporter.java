@@ -0,0 +1,102 @@
+package org.openforis.collect.android.management;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openforis.collect.android.misc.FileDownloader;
+import org.openforis.collect.android.misc.ImportPipeline;
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.collect.model.CollectSurvey;
+import org.openforis.collect.model.User;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+//imports records downloaded from the server through an ImportPipeline: the xml files are downloaded to the imported folder,
+//where a broken download is resumed, parsed as they arrive and the records are saved in batches, one transaction per batch
+public class RecordImporter {
+
+	private static final String TAG = "RecordImporter";
+
+	private static final int DOWNLOAD_WORKERS_NO = 3;
+	private static final int PARSE_WORKERS_NO = 2;
+
+	public interface Listener {
+		//called on the main thread
+		public void onImportFinished(ImportPipeline.Result result, Exception error);
+	}
+
+	private static Handler handler;
+	private static ExecutorService importExecutor;
+	private static FileDownloader downloader;
+
+	//must be called on the main thread, fileNames are relative to folderUrl
+	public static void importFiles(final CollectSurvey survey, final String rootEntity, final User user,
+			String folderUrl, List<String> fileNames, final File importFolder, final Listener listener){
+		if (RecordImporter.handler==null){
+			RecordImporter.handler = new Handler(Looper.getMainLooper());
+			RecordImporter.importExecutor = Executors.newSingleThreadExecutor();
+			RecordImporter.downloader = new FileDownloader(DOWNLOAD_WORKERS_NO, FileDownloader.DEFAULT_BUFFER_SIZE);
+		}
+		final Map<String,String> files = new LinkedHashMap<String,String>();
+		for (String fileName : fileNames){
+			files.put(fileName, folderUrl+fileName);
+		}
+		RecordImporter.importExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				ImportPipeline.Result result = null;
+				Exception error = null;
+				try {
+					result = RecordImporter.run(survey, rootEntity, user, files, importFolder);
+					Log.i(TAG, result.importedNo+" record(s) imported in "+result.time+"ms ("+result.getThroughput()+" records/s), "
+							+result.downloadedBytes+" bytes downloaded, "+result.batchesNo+" batch(es), "+result.failed.size()+" failed");
+					for (Map.Entry<String,String> failed : result.failed.entrySet()){
+						Log.w(TAG, failed.getKey()+" "+failed.getValue());
+					}
+				} catch (Exception e){
+					Log.w(TAG, "import failed: "+e);
+					error = e;
+				}
+				final ImportPipeline.Result importResult = result;
+				final Exception importError = error;
+				RecordImporter.handler.post(new Runnable(){
+					@Override
+					public void run() {
+						if (listener!=null)
+							listener.onImportFinished(importResult, importError);
+					}
+				});
+			}
+		});
+	}
+
+	private static ImportPipeline.Result run(final CollectSurvey survey, final String rootEntity, final User user, Map<String,String> files, File importFolder) throws InterruptedException {
+		//the unmarshaller keeps the state of the record being parsed, every parse worker gets its own
+		final ThreadLocal<DataManager> parsers = new ThreadLocal<DataManager>(){
+			@Override
+			protected DataManager initialValue() {
+				return new DataManager(survey, rootEntity, user);
+			}
+		};
+		final DataManager writer = new DataManager(survey, rootEntity, user);
+		ImportPipeline<CollectRecord> pipeline = new ImportPipeline<CollectRecord>(RecordImporter.downloader, importFolder, PARSE_WORKERS_NO,
+				ImportPipeline.DEFAULT_QUEUE_CAPACITY, ImportPipeline.DEFAULT_BATCH_SIZE);
+		return pipeline.run(files, new ImportPipeline.Parser<CollectRecord>(){
+			@Override
+			public CollectRecord parse(String name, File file) throws Exception {
+				return parsers.get().parseRecordXml(file);
+			}
+		}, new ImportPipeline.Persister<CollectRecord>(){
+			@Override
+			public void persist(List<CollectRecord> records) throws Exception {
+				writer.saveRecords(records);
+			}
+		});
+	}
+}
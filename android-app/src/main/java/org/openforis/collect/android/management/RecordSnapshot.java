@@ -0,0 +1,64 @@
+package org.openforis.collect.android.management;
+
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.collect.model.CollectSurvey;
+import org.openforis.idm.metamodel.NodeDefinition;
+import org.openforis.idm.model.Attribute;
+import org.openforis.idm.model.Entity;
+import org.openforis.idm.model.Field;
+import org.openforis.idm.model.Node;
+import org.openforis.idm.model.State;
+
+//copy of a record which can be saved or exported on a background thread while the live record is being edited,
+//every field is copied with its value, remarks, symbol and state, and every entity with the states of its children;
+//the value objects themselves are immutable and are shared with the live record
+public class RecordSnapshot {
+
+	//must be called on the thread editing the record
+	public static CollectRecord take(CollectRecord record){
+		CollectSurvey survey = (CollectSurvey)record.getSurvey();
+		String versionName = (record.getVersion()==null)?null:record.getVersion().getName();
+		CollectRecord snapshot = new CollectRecord(survey, versionName);
+		snapshot.setId(record.getId());
+		snapshot.setStep(record.getStep());
+		snapshot.setCreatedBy(record.getCreatedBy());
+		snapshot.setCreationDate(record.getCreationDate());
+		snapshot.setModifiedBy(record.getModifiedBy());
+		snapshot.setModifiedDate(record.getModifiedDate());
+		Entity rootEntity = record.getRootEntity();
+		if (rootEntity!=null){
+			Entity snapshotRootEntity = snapshot.createRootEntity(rootEntity.getName());
+			RecordSnapshot.copyChildren(rootEntity, snapshotRootEntity);
+		}
+		return snapshot;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void copyChildren(Entity source, Entity target){
+		for (NodeDefinition childDef : source.getDefinition().getChildDefinitions()){
+			String childName = childDef.getName();
+			for (Node<?> child : source.getAll(childName)){
+				Node<?> childCopy = childDef.createNode();
+				target.add(childCopy);
+				if (child instanceof Entity){
+					RecordSnapshot.copyChildren((Entity)child, (Entity)childCopy);
+				} else if (child instanceof Attribute){
+					Attribute attribute = (Attribute)child;
+					Attribute attributeCopy = (Attribute)childCopy;
+					for (int i=0;i<attribute.getFieldCount();i++){
+						Field field = attribute.getField(i);
+						Field fieldCopy = attributeCopy.getField(i);
+						fieldCopy.setValue(field.getValue());
+						fieldCopy.setRemarks(field.getRemarks());
+						fieldCopy.setSymbol(field.getSymbol());
+						fieldCopy.setState(field.getState().intValue());
+					}
+				}
+			}
+			//relevance and required states of the children, e.g. approved missing values
+			State childState = source.getChildState(childName);
+			if (childState!=null)
+				target.setChildState(childName, childState.intValue());
+		}
+	}
+}
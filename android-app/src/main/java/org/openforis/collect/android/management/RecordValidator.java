@@ -0,0 +1,286 @@
+package org.openforis.collect.android.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.idm.metamodel.AttributeDefinition;
+import org.openforis.idm.metamodel.EntityDefinition;
+import org.openforis.idm.metamodel.NodeDefinition;
+import org.openforis.idm.metamodel.validation.ValidationResult;
+import org.openforis.idm.metamodel.validation.ValidationResults;
+import org.openforis.idm.metamodel.validation.Validator;
+import org.openforis.idm.model.Attribute;
+import org.openforis.idm.model.Entity;
+import org.openforis.idm.model.Node;
+
+import android.util.Log;
+
+//validates all the attributes of a record on a bounded pool of worker threads,
+//entries with errors or warnings are delivered to the listener as soon as each batch of attributes is checked;
+//the workers read a snapshot of the record, which is only read while the live record goes on being edited
+public class RecordValidator {
+
+	private static final String TAG = "RecordValidator";
+
+	//number of attributes validated by a single task
+	private static final int BATCH_SIZE = 64;
+
+	public interface ReportListener {
+		//called on a worker thread
+		public void onEntriesFound(List<ReportEntry> entries);
+		//called once, on a worker thread when every attribute was checked or on the thread calling cancel
+		public void onFinished(int attributesNo, boolean isCancelled);
+	}
+
+	public static class ReportEntry {
+
+		private EntityReference entity;
+		private String attributeLabel;
+		private int errorsNo;
+		private int warningsNo;
+		private String message;
+
+		private ReportEntry(EntityReference entity, String attributeLabel, int errorsNo, int warningsNo, String message){
+			this.entity = entity;
+			this.attributeLabel = attributeLabel;
+			this.errorsNo = errorsNo;
+			this.warningsNo = warningsNo;
+			this.message = message;
+		}
+
+		public String getBreadcrumb(){
+			return this.entity.breadcrumb;
+		}
+
+		//path of the form screen showing the entity, in the format returned by FormScreen.getFormScreenId
+		public String getFormScreenId(){
+			return this.entity.formScreenId;
+		}
+
+		public String getParentFormScreenId(){
+			return this.entity.parentFormScreenId;
+		}
+
+		public EntityDefinition getEntityDefinition(){
+			return this.entity.entityDef;
+		}
+
+		public int getInstanceNo(){
+			return this.entity.instanceNo;
+		}
+
+		//position of the entity in the record: position of each definition among its siblings followed by the instance number,
+		//from the root entity down
+		public int[] getPath(){
+			return this.entity.path;
+		}
+
+		public String getAttributeLabel(){
+			return this.attributeLabel;
+		}
+
+		public int getErrorsNo(){
+			return this.errorsNo;
+		}
+
+		public int getWarningsNo(){
+			return this.warningsNo;
+		}
+
+		public String getMessage(){
+			return this.message;
+		}
+	}
+
+	private static class EntityReference {
+		private EntityDefinition entityDef;
+		private int instanceNo;
+		private String breadcrumb;
+		private String formScreenId;
+		private String parentFormScreenId;
+		private int[] path;
+	}
+
+	private Entity rootEntity;
+	private String instanceSeparator;
+	private String pathSeparator;
+	private String breadcrumbSeparator;
+	private ReportListener listener;
+	private ExecutorService executor;
+	private volatile boolean isCancelled;
+	//one extra pending task stands for the walk itself, so that the validation can't finish before all batches are submitted
+	private final AtomicInteger pendingTasks = new AtomicInteger(1);
+	private final AtomicInteger attributesNo = new AtomicInteger();
+	private final AtomicBoolean isFinished = new AtomicBoolean();
+	//the Validator keeps the state of the attribute being validated, every worker gets its own
+	private final ThreadLocal<Validator> validators = new ThreadLocal<Validator>(){
+		@Override
+		protected Validator initialValue() {
+			return new Validator();
+		}
+	};
+
+	//must be called on the thread editing the record, the separators are the ones used by the form screens to build their ids and breadcrumbs
+	public RecordValidator(CollectRecord record, String instanceSeparator, String pathSeparator, String breadcrumbSeparator, ReportListener listener){
+		this.rootEntity = RecordSnapshot.take(record).getRootEntity();
+		this.instanceSeparator = instanceSeparator;
+		this.pathSeparator = pathSeparator;
+		this.breadcrumbSeparator = breadcrumbSeparator;
+		this.listener = listener;
+	}
+
+	public void start(){
+		int threadsNo = Math.max(1, Runtime.getRuntime().availableProcessors());
+		this.executor = Executors.newFixedThreadPool(threadsNo, new ThreadFactory(){
+			private AtomicInteger threadNo = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, TAG+"-"+threadNo.incrementAndGet());
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		//the tree is walked on a pool thread too, batches are submitted while it goes
+		this.executor.execute(new Runnable(){
+			@Override
+			public void run() {
+				RecordValidator.this.walkRecord();
+			}
+		});
+	}
+
+	//the batches not started yet are dropped, the listener is told at once
+	public void cancel(){
+		this.isCancelled = true;
+		if (this.executor!=null){
+			this.executor.shutdownNow();
+		}
+		this.finish();
+	}
+
+	private void walkRecord(){
+		EntityReference rootReference = new EntityReference();
+		rootReference.entityDef = this.rootEntity.getDefinition();
+		rootReference.instanceNo = 0;
+		rootReference.breadcrumb = ApplicationManager.getLabel(rootReference.entityDef);
+		rootReference.formScreenId = rootReference.entityDef.getId()+this.instanceSeparator+0;
+		rootReference.parentFormScreenId = "";
+		rootReference.path = new int[0];
+		List<Attribute<?,?>> batch = new ArrayList<Attribute<?,?>>(BATCH_SIZE);
+		List<EntityReference> batchEntities = new ArrayList<EntityReference>(BATCH_SIZE);
+		try{
+			this.walkEntity(this.rootEntity, rootReference, batch, batchEntities);
+			if (!batch.isEmpty()){
+				this.submitBatch(batch, batchEntities);
+			}
+		} catch (RejectedExecutionException e){
+			//cancelled meanwhile
+		} catch (Exception e){
+			Log.e(TAG, "record validation failed: "+e);
+		}
+		this.taskFinished();
+	}
+
+	private void walkEntity(Entity entity, EntityReference reference, List<Attribute<?,?>> batch, List<EntityReference> batchEntities){
+		List<NodeDefinition> childDefs = reference.entityDef.getChildDefinitions();
+		for (int d=0;d<childDefs.size();d++){
+			if (this.isCancelled)
+				return;
+			NodeDefinition childDef = childDefs.get(d);
+			List<Node<?>> children = entity.getAll(childDef.getName());
+			for (int i=0;i<children.size();i++){
+				Node<?> child = children.get(i);
+				if (childDef instanceof AttributeDefinition&&child instanceof Attribute){
+					batch.add((Attribute<?,?>)child);
+					batchEntities.add(reference);
+					if (batch.size()==BATCH_SIZE){
+						this.submitBatch(new ArrayList<Attribute<?,?>>(batch), new ArrayList<EntityReference>(batchEntities));
+						batch.clear();
+						batchEntities.clear();
+					}
+				} else if (childDef instanceof EntityDefinition&&child instanceof Entity){
+					EntityReference childReference = new EntityReference();
+					childReference.entityDef = (EntityDefinition)childDef;
+					childReference.instanceNo = i;
+					childReference.breadcrumb = reference.breadcrumb+this.breadcrumbSeparator+ApplicationManager.getLabel(childDef)
+							+((childDef.isMultiple())?" "+(i+1):"");
+					childReference.parentFormScreenId = reference.formScreenId;
+					childReference.formScreenId = reference.formScreenId+this.pathSeparator+childDef.getId()+this.instanceSeparator+i;
+					childReference.path = new int[reference.path.length+2];
+					System.arraycopy(reference.path, 0, childReference.path, 0, reference.path.length);
+					childReference.path[reference.path.length] = d;
+					childReference.path[reference.path.length+1] = i;
+					this.walkEntity((Entity)child, childReference, batch, batchEntities);
+				}
+			}
+		}
+	}
+
+	private void submitBatch(final List<Attribute<?,?>> attributes, final List<EntityReference> entities){
+		this.pendingTasks.incrementAndGet();
+		this.executor.execute(new Runnable(){
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			@Override
+			public void run() {
+				List<ReportEntry> entries = new ArrayList<ReportEntry>();
+				Validator validator = RecordValidator.this.validators.get();
+				try{
+					for (int i=0;i<attributes.size()&&!RecordValidator.this.isCancelled;i++){
+						Attribute<?,?> attribute = attributes.get(i);
+						ValidationResults results = validator.validate((Attribute)attribute);
+						RecordValidator.this.attributesNo.incrementAndGet();
+						if (results==null)
+							continue;
+						int errorsNo = results.getErrors().size()+results.getFailed().size();
+						int warningsNo = results.getWarnings().size();
+						if (errorsNo+warningsNo>0){
+							entries.add(new ReportEntry(entities.get(i), ApplicationManager.getLabel(attribute.getDefinition()),
+									errorsNo, warningsNo, RecordValidator.getMessage(results)));
+						}
+					}
+				} catch (Exception e){
+					Log.e(TAG, "validation of a batch failed: "+e);
+				}
+				if (!entries.isEmpty()&&!RecordValidator.this.isCancelled){
+					RecordValidator.this.listener.onEntriesFound(entries);
+				}
+				RecordValidator.this.taskFinished();
+			}
+		});
+	}
+
+	private void taskFinished(){
+		if (this.pendingTasks.decrementAndGet()==0){
+			this.executor.shutdown();
+			this.finish();
+		}
+	}
+
+	private void finish(){
+		if (this.isFinished.compareAndSet(false, true))
+			this.listener.onFinished(this.attributesNo.get(), this.isCancelled);
+	}
+
+	private static String getMessage(ValidationResults results){
+		StringBuilder message = new StringBuilder();
+		List<ValidationResult> failures = new ArrayList<ValidationResult>(results.getErrors());
+		failures.addAll(results.getFailed());
+		failures.addAll(results.getWarnings());
+		for (ValidationResult result : failures){
+			String rule = (result.getValidator()==null)?"":result.getValidator().getClass().getSimpleName();
+			if (message.indexOf(rule)==-1){
+				if (message.length()>0)
+					message.append(", ");
+				message.append(rule);
+			}
+		}
+		return message.toString();
+	}
+}
@@ -0,0 +1,72 @@
+package org.openforis.collect.android.management;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.idm.model.Entity;
+
+public class SummaryCache {
+
+	private static Map<Entity,String[]> summariesMap = new IdentityHashMap<Entity,String[]>();
+	private static Map<Entity,Integer> thresholdsMap = new IdentityHashMap<Entity,Integer>();
+	private static Map<Entity,Map<String,List<List<String>>>> tableValuesMap = new IdentityHashMap<Entity,Map<String,List<List<String>>>>();
+	private static CollectRecord cachedRecord;
+
+	public static synchronized String[] getSummary(Entity entity, int threshold){
+		SummaryCache.checkValidity();
+		Integer cachedThreshold = SummaryCache.thresholdsMap.get(entity);
+		if (cachedThreshold==null||cachedThreshold!=threshold)
+			return null;
+		return SummaryCache.summariesMap.get(entity);
+	}
+
+	public static synchronized void putSummary(Entity entity, int threshold, String[] summary){
+		SummaryCache.checkValidity();
+		SummaryCache.summariesMap.put(entity, summary);
+		SummaryCache.thresholdsMap.put(entity, threshold);
+	}
+
+	public static synchronized List<List<String>> getTableValues(Entity parentEntity, String attributeName){
+		SummaryCache.checkValidity();
+		Map<String,List<List<String>>> entityTables = SummaryCache.tableValuesMap.get(parentEntity);
+		if (entityTables==null)
+			return null;
+		return entityTables.get(attributeName);
+	}
+
+	public static synchronized void putTableValues(Entity parentEntity, String attributeName, List<List<String>> values){
+		SummaryCache.checkValidity();
+		Map<String,List<List<String>>> entityTables = SummaryCache.tableValuesMap.get(parentEntity);
+		if (entityTables==null){
+			entityTables = new HashMap<String,List<List<String>>>();
+			SummaryCache.tableValuesMap.put(parentEntity, entityTables);
+		}
+		entityTables.put(attributeName, values);
+	}
+
+	//called whenever an attribute of the entity is modified
+	public static synchronized void invalidate(Entity entity){
+		if (entity==null)
+			return;
+		SummaryCache.summariesMap.remove(entity);
+		SummaryCache.thresholdsMap.remove(entity);
+		SummaryCache.tableValuesMap.remove(entity);
+	}
+
+	public static synchronized void clear(){
+		SummaryCache.summariesMap.clear();
+		SummaryCache.thresholdsMap.clear();
+		SummaryCache.tableValuesMap.clear();
+		SummaryCache.cachedRecord = null;
+	}
+
+	private static void checkValidity(){
+		if (ApplicationManager.currentRecord!=SummaryCache.cachedRecord){
+			SummaryCache.clear();
+			SummaryCache.cachedRecord = ApplicationManager.currentRecord;
+		}
+	}
+}
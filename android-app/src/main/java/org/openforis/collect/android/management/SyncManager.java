@@ -0,0 +1,287 @@
+package org.openforis.collect.android.management;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openforis.collect.android.R;
+import org.openforis.collect.android.database.DatabaseWrapper;
+import org.openforis.collect.android.misc.DeltaSyncClient;
+import org.openforis.collect.android.misc.FileDownloader;
+import org.openforis.collect.android.misc.ServerInterface;
+import org.openforis.collect.android.misc.SharedHttpClient;
+import org.openforis.collect.android.misc.SyncManifest;
+import org.openforis.collect.model.CollectRecord;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+//two-way sync of the records of the device with the server: the manifests of both sides are compared with DeltaSyncClient,
+//the records new or newer on the device are exported and queued in UploadQueue, the ones new or newer on the server are downloaded and imported,
+//the hash of every record is kept in the database with its modification date so that only records modified since the last sync are marshalled again
+public class SyncManager {
+
+	private static final String TAG = "SyncManager";
+
+	//created by DatabaseWrapper, used under the DataManager.class lock like the upload queue
+	private static final String TABLE_NAME = "ofc_sync_state";
+
+	public static final String FILE_PREFIX = "sync_";
+
+	private static final int DOWNLOAD_WORKERS_NO = 3;
+
+	public interface Listener {
+		//called on the main thread once every download is imported or has failed, result is null if the sync failed
+		public void onSyncFinished(Result result, Exception error);
+	}
+
+	public static class Result {
+		public SyncManifest.Delta delta;
+		public int importedNo;
+		//key of the record -> download or import error
+		public Map<String,Exception> failures = new LinkedHashMap<String,Exception>();
+	}
+
+	private static class State {
+		int recordId;
+		long modified;
+		String hash;
+	}
+
+	private static Context context;
+	private static Handler handler;
+	private static ExecutorService syncExecutor;
+	private static FileDownloader downloader;
+	private static boolean isRunning;
+
+	//called once the database is open
+	public static void init(Context ctx){
+		SyncManager.context = ctx.getApplicationContext();
+		SyncManager.handler = new Handler(Looper.getMainLooper());
+		SyncManager.syncExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	public static boolean isRunning(){
+		return SyncManager.isRunning;
+	}
+
+	//must be called on the main thread, returns false if a sync is already running
+	public static boolean sync(final DataManager dataManager, final Listener listener){
+		if (SyncManager.handler==null||SyncManager.isRunning)
+			return false;
+		SyncManager.isRunning = true;
+		SyncManager.syncExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				Result result = null;
+				Exception error = null;
+				try {
+					result = SyncManager.run(dataManager);
+				} catch (Exception e){
+					Log.w(TAG, "sync failed: "+e);
+					error = e;
+				}
+				final Result syncResult = result;
+				final Exception syncError = error;
+				SyncManager.handler.post(new Runnable(){
+					@Override
+					public void run() {
+						SyncManager.isRunning = false;
+						if (listener!=null)
+							listener.onSyncFinished(syncResult, syncError);
+					}
+				});
+			}
+		});
+		return true;
+	}
+
+	//returns once the downloaded records are imported, so that the next sync does not fetch them again
+	private static Result run(final DataManager dataManager) throws IOException {
+		long startTime = System.currentTimeMillis();
+		Map<Integer,State> states = SyncManager.loadStates();
+		SyncManifest manifest = new SyncManifest();
+		final Map<String,Integer> recordIds = new HashMap<String,Integer>();
+		int hashedNo = 0;
+		List<CollectRecord> summaries = dataManager.loadSummaries();
+		for (CollectRecord summary : summaries){
+			String key = SyncManager.getKey(summary);
+			long modified = SyncManager.getModified(summary);
+			State state = states.get(summary.getId());
+			if (state==null||state.modified!=modified){
+				CollectRecord record = dataManager.loadRecord(summary.getId());
+				byte[] xml = (record==null)?null:dataManager.toXml(record);
+				if (xml==null)
+					continue;
+				state = SyncManager.saveState(summary.getId(), key, modified, SyncManifest.hash(xml));
+				hashedNo++;
+			}
+			recordIds.put(key, summary.getId());
+			manifest.add(new SyncManifest.Entry(key, modified, state.hash));
+		}
+		Log.i(TAG, "manifest of "+manifest.size()+" records built in "+(System.currentTimeMillis()-startTime)+"ms, "+hashedNo+" record(s) hashed again");
+
+		final Map<String,String> parameters = new LinkedHashMap<String,String>();
+		parameters.put("survey_id","99");
+		parameters.put("username","collect");
+		DeltaSyncClient client = new DeltaSyncClient(SharedHttpClient.getUrl(ServerInterface.SYNC_PATH));
+		SyncManifest.Delta delta = client.compare(manifest, parameters);
+		Log.i(TAG, "manifests compared: "+client.getSentBytes()+" bytes sent, "+client.getReceivedBytes()+" bytes received, "
+				+delta.toUpload.size()+" record(s) to upload, "+delta.toDownload.size()+" to download, "+delta.unchangedNo+" unchanged");
+
+		String exportFolder = Environment.getExternalStorageDirectory().toString()+SyncManager.context.getResources().getString(R.string.exported_data_folder);
+		final List<String> exportedFiles = new ArrayList<String>();
+		for (String key : delta.toUpload){
+			Integer recordId = recordIds.get(key);
+			CollectRecord record = dataManager.loadRecord(recordId);
+			byte[] xml = (record==null)?null:dataManager.toXml(record);
+			if (xml==null)
+				continue;
+			//the exported bytes are the ones hashed, so the server gets the same hash
+			String fileName = SyncManager.getFileName(key);
+			OutputStream out = new FileOutputStream(new File(exportFolder, fileName));
+			try {
+				out.write(xml);
+			} finally {
+				out.close();
+			}
+			SyncManager.saveState(recordId, key, SyncManager.getModified(record), SyncManifest.hash(xml));
+			exportedFiles.add(fileName);
+		}
+		//queued together so that the upload queue sends them in bundles
+		SyncManager.handler.post(new Runnable(){
+			@Override
+			public void run() {
+				for (String fileName : exportedFiles){
+					UploadQueue.enqueue(fileName, true);
+				}
+			}
+		});
+
+		if (SyncManager.downloader==null)
+			SyncManager.downloader = new FileDownloader(DOWNLOAD_WORKERS_NO, FileDownloader.DEFAULT_BUFFER_SIZE);
+		File importFolder = new File(Environment.getExternalStorageDirectory()+SyncManager.context.getResources().getString(R.string.imported_data_folder));
+		final Result result = new Result();
+		result.delta = delta;
+		Map<String,Future<File>> downloads = new LinkedHashMap<String,Future<File>>();
+		for (final String key : delta.toDownload){
+			final String fileName = SyncManager.getFileName(key);
+			downloads.put(key, SyncManager.downloader.download(client.getRecordUrl(key, parameters), importFolder, fileName, delta.hashes.get(key), new FileDownloader.Listener(){
+				@Override
+				public void onFinished(String url, File file, FileDownloader.Result downloadResult) {
+					//a failed download is reported by its future
+					if (file==null)
+						return;
+					try {
+						String hash = SyncManifest.hash(file);
+						//imports are saved one at a time, like the snapshots of the autosave
+						synchronized (DataManager.class){
+							CollectRecord record = dataManager.loadRecordFromXml(fileName, recordIds.get(key));
+							if (record==null||record.getId()==null)
+								throw new IOException("record not imported");
+							SyncManager.saveState(record.getId(), key, SyncManager.getModified(record), hash);
+						}
+						synchronized (result){
+							result.importedNo++;
+						}
+					} catch (Exception e){
+						Log.w(TAG, key+" not imported: "+e);
+						synchronized (result){
+							result.failures.put(key, e);
+						}
+					}
+				}
+			}));
+		}
+		//the listener of a download has returned, and its import is done, by the time its future is
+		for (Map.Entry<String,Future<File>> download : downloads.entrySet()){
+			try {
+				download.getValue().get();
+			} catch (ExecutionException e){
+				Log.w(TAG, download.getKey()+" not downloaded: "+e.getCause());
+				synchronized (result){
+					result.failures.put(download.getKey(), (e.getCause() instanceof Exception)?(Exception)e.getCause():e);
+				}
+			} catch (InterruptedException e){
+				throw new InterruptedIOException("sync interrupted while downloading");
+			}
+		}
+		Log.i(TAG, result.importedNo+" record(s) imported, "+result.failures.size()+" failed");
+		return result;
+	}
+
+	//root entity name and key values, stable across devices unlike the record id
+	static String getKey(CollectRecord record){
+		StringBuilder key = new StringBuilder((record.getRootEntity()!=null)?record.getRootEntity().getName():"record");
+		List<String> keyValues = record.getRootEntityKeyValues();
+		if (keyValues==null||keyValues.isEmpty()){
+			key.append(":id=").append(record.getId());
+		} else {
+			for (String keyValue : keyValues){
+				key.append(':').append(keyValue);
+			}
+		}
+		return key.toString();
+	}
+
+	private static long getModified(CollectRecord record){
+		Date modified = (record.getModifiedDate()!=null)?record.getModifiedDate():record.getCreationDate();
+		return (modified==null)?0:modified.getTime();
+	}
+
+	private static String getFileName(String key){
+		return FILE_PREFIX+key.replaceAll("[^A-Za-z0-9_.-]", "_")+".xml";
+	}
+
+	private static Map<Integer,State> loadStates(){
+		Map<Integer,State> states = new HashMap<Integer,State>();
+		synchronized (DataManager.class){
+			Cursor cursor = DatabaseWrapper.db.query(TABLE_NAME, null, null, null, null, null, null);
+			try {
+				while (cursor.moveToNext()){
+					State state = new State();
+					state.recordId = cursor.getInt(cursor.getColumnIndex("record_id"));
+					state.modified = cursor.getLong(cursor.getColumnIndex("modified"));
+					state.hash = cursor.getString(cursor.getColumnIndex("hash"));
+					states.put(state.recordId, state);
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		return states;
+	}
+
+	private static State saveState(int recordId, String key, long modified, String hash){
+		ContentValues values = new ContentValues();
+		values.put("record_id", recordId);
+		values.put("sync_key", key);
+		values.put("modified", modified);
+		values.put("hash", hash);
+		synchronized (DataManager.class){
+			DatabaseWrapper.db.replace(TABLE_NAME, null, values);
+		}
+		State state = new State();
+		state.recordId = recordId;
+		state.modified = modified;
+		state.hash = hash;
+		return state;
+	}
+}
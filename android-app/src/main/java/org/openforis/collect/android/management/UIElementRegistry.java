@@ -0,0 +1,48 @@
+package org.openforis.collect.android.management;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+//elements registered by a single form screen, held weakly so that the registry never keeps a screen's views alive
+public class UIElementRegistry<T> {
+
+	private Map<Integer,WeakReference<T>> elementsMap;
+
+	public UIElementRegistry(){
+		this.elementsMap = new HashMap<Integer,WeakReference<T>>();
+	}
+
+	public synchronized void put(int elementId, T element){
+		this.elementsMap.put(elementId, this.createReference(element));
+	}
+
+	public synchronized T get(int elementId){
+		WeakReference<T> reference = this.elementsMap.get(elementId);
+		if (reference==null)
+			return null;
+		T element = reference.get();
+		if (element==null)
+			this.elementsMap.remove(elementId);
+		return element;
+	}
+
+	public synchronized int size(){
+		Iterator<WeakReference<T>> iterator = this.elementsMap.values().iterator();
+		while (iterator.hasNext()){
+			if (iterator.next().get()==null)
+				iterator.remove();
+		}
+		return this.elementsMap.size();
+	}
+
+	//called by the screen when it releases its views
+	public synchronized void clear(){
+		this.elementsMap.clear();
+	}
+
+	protected WeakReference<T> createReference(T element){
+		return new WeakReference<T>(element);
+	}
+}
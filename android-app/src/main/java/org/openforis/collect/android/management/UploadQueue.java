@@ -0,0 +1,371 @@
+package org.openforis.collect.android.management;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openforis.collect.android.R;
+import org.openforis.collect.android.database.DatabaseWrapper;
+import org.openforis.collect.android.misc.BundleUploader;
+import org.openforis.collect.android.misc.ServerInterface;
+
+import android.content.BroadcastReceiver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+//exported files waiting to be sent to the server, kept in the database so that uploads survive restarts of the application,
+//failed uploads are retried with an exponential backoff and whenever the network comes back,
+//files due at the same time are sent together in bundles when the server accepts them
+public class UploadQueue {
+
+	private static final String TAG = "UploadQueue";
+
+	//created by DatabaseWrapper, on its own connection: every use holds the DataManager.class lock,
+	//so that it never meets a transaction of the DataManager connection (SQLITE_BUSY)
+	private static final String TABLE_NAME = "ofc_upload_queue";
+
+	public static final String STATUS_PENDING = "pending";
+	public static final String STATUS_UPLOADING = "uploading";
+	public static final String STATUS_RETRYING = "retrying";
+	public static final String STATUS_DONE = "done";
+	public static final String STATUS_FAILED = "failed";
+
+	//uploaded files stay listed as done for a day
+	private static final long DONE_RETENTION = 24*60*60*1000L;
+
+	public interface Listener {
+		//called on the main thread whenever the status of an item changes
+		public void onQueueChanged();
+	}
+
+	public static class Item {
+		public String fileName;
+		public boolean overwrite;
+		public String status;
+		public int attemptsNo;
+		public long nextAttempt;
+		public String lastError;
+		//identifies the queuing of the file, a file queued again while it is uploaded is uploaded once more
+		public long dateQueued;
+	}
+
+	private static Context context;
+	private static Handler handler;
+	private static ExecutorService uploadExecutor;
+	private static Set<String> activeUploads = new HashSet<String>();
+	//single uploads and bundles in progress
+	private static int activeTasksNo;
+	private static Listener listener;
+	private static Random random = new Random();
+	private static long lastDateQueued;
+
+	private static Runnable drain = new Runnable(){
+		@Override
+		public void run() {
+			UploadQueue.drain();
+		}
+	};
+
+	private static BroadcastReceiver connectivityReceiver = new BroadcastReceiver(){
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			if (!intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)){
+				UploadQueue.retryNow();
+			}
+		}
+	};
+
+	//called once the database is open, its table is created by DatabaseWrapper;
+	//uploads interrupted by the end of the previous session are started again
+	public static void init(Context ctx){
+		UploadQueue.context = ctx.getApplicationContext();
+		UploadQueue.handler = new Handler(Looper.getMainLooper());
+		UploadQueue.uploadExecutor = Executors.newCachedThreadPool();
+		UploadQueue.handler.post(new Runnable(){
+			@Override
+			public void run() {
+				ContentValues values = new ContentValues();
+				values.put("status", STATUS_PENDING);
+				synchronized (DataManager.class){
+					DatabaseWrapper.db.update(TABLE_NAME, values, "status=?", new String[]{STATUS_UPLOADING});
+				}
+				UploadQueue.purge();
+				UploadQueue.context.registerReceiver(UploadQueue.connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+				UploadQueue.drain();
+			}
+		});
+	}
+
+	//must be called on the main thread, a file already in the queue is queued again with the new overwrite flag
+	public static void enqueue(String fileName, boolean overwrite){
+		ContentValues values = new ContentValues();
+		values.put("file_name", fileName);
+		values.put("overwrite", (overwrite)?1:0);
+		values.put("status", STATUS_PENDING);
+		values.put("attempts", 0);
+		values.put("next_attempt", 0);
+		values.putNull("last_error");
+		//always increasing, even when the file is queued twice within a millisecond
+		UploadQueue.lastDateQueued = Math.max(System.currentTimeMillis(), UploadQueue.lastDateQueued+1);
+		values.put("date_queued", UploadQueue.lastDateQueued);
+		synchronized (DataManager.class){
+			DatabaseWrapper.db.replace(TABLE_NAME, null, values);
+		}
+		UploadQueue.notifyListener();
+		//files queued one after the other are started together by the next pass, so that they can share a bundle
+		if (UploadQueue.handler!=null){
+			UploadQueue.handler.removeCallbacks(UploadQueue.drain);
+			UploadQueue.handler.post(UploadQueue.drain);
+		}
+	}
+
+	//the items waiting for their next attempt are started without waiting for the end of their backoff
+	public static void retryNow(){
+		if (UploadQueue.handler==null)
+			return;
+		UploadQueue.handler.post(new Runnable(){
+			@Override
+			public void run() {
+				ContentValues values = new ContentValues();
+				values.put("next_attempt", 0);
+				synchronized (DataManager.class){
+					DatabaseWrapper.db.update(TABLE_NAME, values, "status=?", new String[]{STATUS_RETRYING});
+				}
+				UploadQueue.drain();
+			}
+		});
+	}
+
+	//file name -> queue item, must be called on the main thread
+	public static Map<String,Item> getItems(){
+		Map<String,Item> items = new HashMap<String,Item>();
+		if (UploadQueue.handler==null)
+			return items;
+		synchronized (DataManager.class){
+			Cursor cursor = DatabaseWrapper.db.query(TABLE_NAME, null, null, null, null, null, null);
+			try {
+				while (cursor.moveToNext()){
+					Item item = UploadQueue.readItem(cursor);
+					items.put(item.fileName, item);
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		return items;
+	}
+
+	public static void setListener(Listener listener){
+		UploadQueue.listener = listener;
+	}
+
+	//starts due uploads as long as the concurrency limit allows it, and schedules the next pass for the items in backoff
+	private static void drain(){
+		if (UploadQueue.handler==null)
+			return;
+		UploadQueue.handler.removeCallbacks(UploadQueue.drain);
+		if (!UploadQueue.isNetworkAvailable())
+			return;
+		int maxUploadsNo = UploadQueue.context.getResources().getInteger(R.integer.defaultUploadConcurrency);
+		if (ApplicationManager.appPreferences!=null){
+			maxUploadsNo = ApplicationManager.appPreferences.getInt(UploadQueue.context.getResources().getString(R.string.uploadConcurrency), maxUploadsNo);
+		}
+		long now = System.currentTimeMillis();
+		long nextAttempt = Long.MAX_VALUE;
+		Map<String,Item> dueItems = new HashMap<String,Item>();
+		List<UploadScheduler.Upload> dueUploads = new ArrayList<UploadScheduler.Upload>();
+		List<Item> waitingItems = new ArrayList<Item>();
+		synchronized (DataManager.class){
+			Cursor cursor = DatabaseWrapper.db.query(TABLE_NAME, null, "status=? or status=?", new String[]{STATUS_PENDING, STATUS_RETRYING}, null, null, "next_attempt, date_queued");
+			try {
+				while (cursor.moveToNext()){
+					waitingItems.add(UploadQueue.readItem(cursor));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		for (Item item : waitingItems){
+			if (UploadQueue.activeUploads.contains(item.fileName))
+				continue;
+			if (item.nextAttempt>now){
+				nextAttempt = Math.min(nextAttempt, item.nextAttempt);
+			} else {
+				File file = UploadQueue.getFile(item);
+				dueItems.put(item.fileName, item);
+				dueUploads.add(new UploadScheduler.Upload(item.fileName, item.overwrite, (file.exists())?file.length():-1));
+			}
+		}
+		int tasksNo = Math.max(1, maxUploadsNo)-UploadQueue.activeTasksNo;
+		for (List<UploadScheduler.Upload> task : UploadScheduler.plan(dueUploads, tasksNo, ServerInterface.isBundleUploadSupported(), ServerInterface.CHUNKED_UPLOAD_THRESHOLD)){
+			if (task.size()==1){
+				UploadQueue.start(dueItems.get(task.get(0).fileName));
+			} else {
+				List<Item> bundle = new ArrayList<Item>();
+				for (UploadScheduler.Upload upload : task){
+					bundle.add(dueItems.get(upload.fileName));
+				}
+				UploadQueue.startBundle(bundle);
+			}
+		}
+		if (nextAttempt!=Long.MAX_VALUE){
+			UploadQueue.handler.postDelayed(UploadQueue.drain, nextAttempt-now);
+		}
+	}
+
+	private static File getFile(Item item){
+		return new File(Environment.getExternalStorageDirectory().toString()+UploadQueue.context.getResources().getString(R.string.exported_data_folder), item.fileName);
+	}
+
+	private static void start(final Item item){
+		UploadQueue.activeTasksNo++;
+		UploadQueue.activeUploads.add(item.fileName);
+		UploadQueue.updateStatus(item, STATUS_UPLOADING, item.attemptsNo, item.nextAttempt, item.lastError);
+		final File file = UploadQueue.getFile(item);
+		UploadQueue.uploadExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				String response = null;
+				String error = null;
+				if (!file.exists()){
+					error = "file not found";
+				} else {
+					try {
+						response = ServerInterface.sendDataFiles(file, item.overwrite);
+						if (response==null)
+							error = "no response from the server";
+					} catch (Exception e){
+						error = e.toString();
+					}
+				}
+				final String uploadError = error;
+				final boolean isFileMissing = !file.exists();
+				UploadQueue.handler.post(new Runnable(){
+					@Override
+					public void run() {
+						UploadQueue.finish(item, uploadError, isFileMissing);
+					}
+				});
+			}
+		});
+	}
+
+	private static void startBundle(final List<Item> items){
+		UploadQueue.activeTasksNo++;
+		final List<File> files = new ArrayList<File>();
+		for (Item item : items){
+			UploadQueue.activeUploads.add(item.fileName);
+			UploadQueue.updateStatus(item, STATUS_UPLOADING, item.attemptsNo, item.nextAttempt, item.lastError);
+			files.add(UploadQueue.getFile(item));
+		}
+		final boolean overwrite = items.get(0).overwrite;
+		UploadQueue.uploadExecutor.execute(new Runnable(){
+			@Override
+			public void run() {
+				BundleUploader.Result result = null;
+				String error = "no response from the server";
+				try {
+					result = ServerInterface.sendBundle(files, overwrite);
+				} catch (Exception e){
+					error = e.toString();
+				}
+				final BundleUploader.Result bundleResult = result;
+				final String bundleError = error;
+				UploadQueue.handler.post(new Runnable(){
+					@Override
+					public void run() {
+						UploadQueue.activeTasksNo--;
+						for (int i=0;i<items.size();i++){
+							Item item = items.get(i);
+							String itemError = (bundleResult==null)?bundleError:bundleResult.refused.get(item.fileName);
+							UploadQueue.complete(item, itemError, !files.get(i).exists());
+						}
+						UploadQueue.drain();
+					}
+				});
+			}
+		});
+	}
+
+	private static void finish(Item item, String error, boolean isFileMissing){
+		UploadQueue.activeTasksNo--;
+		UploadQueue.complete(item, error, isFileMissing);
+		UploadQueue.drain();
+	}
+
+	//the row is left alone if the file was queued again during the upload, the new queuing is still pending
+	private static void complete(Item item, String error, boolean isFileMissing){
+		UploadQueue.activeUploads.remove(item.fileName);
+		int attemptsNo = item.attemptsNo+1;
+		if (error==null){
+			Log.i(TAG, item.fileName+" uploaded after "+attemptsNo+" attempt(s)");
+			UploadQueue.updateStatus(item, STATUS_DONE, attemptsNo, 0, null);
+		} else if (isFileMissing||!UploadScheduler.isRetried(attemptsNo)){
+			Log.w(TAG, item.fileName+" upload failed ("+error+"), given up after "+attemptsNo+" attempt(s)");
+			UploadQueue.updateStatus(item, STATUS_FAILED, attemptsNo, 0, error);
+		} else {
+			long retryDelay = UploadScheduler.getRetryDelay(attemptsNo, UploadQueue.random);
+			Log.w(TAG, item.fileName+" upload failed ("+error+"), attempt "+attemptsNo+", next one in "+retryDelay+"ms");
+			UploadQueue.updateStatus(item, STATUS_RETRYING, attemptsNo, System.currentTimeMillis()+retryDelay, error);
+		}
+	}
+
+	//deletes the rows of the files uploaded before the retention period
+	private static void purge(){
+		synchronized (DataManager.class){
+			DatabaseWrapper.db.delete(TABLE_NAME, "status=? and date_queued<?", new String[]{STATUS_DONE, String.valueOf(System.currentTimeMillis()-DONE_RETENTION)});
+		}
+	}
+
+	private static void updateStatus(Item item, String status, int attemptsNo, long nextAttempt, String lastError){
+		ContentValues values = new ContentValues();
+		values.put("status", status);
+		values.put("attempts", attemptsNo);
+		values.put("next_attempt", nextAttempt);
+		values.put("last_error", lastError);
+		synchronized (DataManager.class){
+			DatabaseWrapper.db.update(TABLE_NAME, values, "file_name=? and date_queued=?", new String[]{item.fileName, String.valueOf(item.dateQueued)});
+		}
+		UploadQueue.notifyListener();
+	}
+
+	private static Item readItem(Cursor cursor){
+		Item item = new Item();
+		item.fileName = cursor.getString(cursor.getColumnIndex("file_name"));
+		item.overwrite = cursor.getInt(cursor.getColumnIndex("overwrite"))!=0;
+		item.status = cursor.getString(cursor.getColumnIndex("status"));
+		item.attemptsNo = cursor.getInt(cursor.getColumnIndex("attempts"));
+		item.nextAttempt = cursor.getLong(cursor.getColumnIndex("next_attempt"));
+		item.lastError = cursor.getString(cursor.getColumnIndex("last_error"));
+		item.dateQueued = cursor.getLong(cursor.getColumnIndex("date_queued"));
+		return item;
+	}
+
+	private static void notifyListener(){
+		if (UploadQueue.listener!=null){
+			UploadQueue.listener.onQueueChanged();
+		}
+	}
+
+	private static boolean isNetworkAvailable(){
+		ConnectivityManager connectivityManager = (ConnectivityManager)UploadQueue.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		NetworkInfo activeNetworkInfo = connectivityManager.getActiveNetworkInfo();
+		return activeNetworkInfo!=null&&activeNetworkInfo.isConnected();
+	}
+}
@@ -0,0 +1,79 @@
+package org.openforis.collect.android.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//decisions of the upload queue that don't depend on the database or on the network: when a failed upload is attempted again,
+//when it is given up, and which of the due files a pass starts, alone or together in bundles
+public class UploadScheduler {
+
+	private static final long MIN_RETRY_DELAY = 5*1000;
+	private static final long MAX_RETRY_DELAY = 30*60*1000;
+	private static final int MAX_BACKOFF_EXPONENT = 16;
+	//about a day of attempts, most of them at the maximum delay
+	public static final int MAX_ATTEMPTS = 64;
+
+	//small files due together are sent in bundles of up to this many files or bytes
+	private static final int MAX_BUNDLE_FILES = 100;
+	private static final long MAX_BUNDLE_BYTES = 4*1024*1024;
+
+	public static class Upload {
+		public final String fileName;
+		public final boolean overwrite;
+		//-1 if the file is missing
+		public final long length;
+
+		public Upload(String fileName, boolean overwrite, long length){
+			this.fileName = fileName;
+			this.overwrite = overwrite;
+			this.length = length;
+		}
+	}
+
+	//exponential backoff with "equal jitter": half of the delay is fixed, the other half random,
+	//so that files failing together are not retried together
+	public static long getRetryDelay(int attemptsNo, Random random){
+		long delay = Math.min(MAX_RETRY_DELAY, MIN_RETRY_DELAY<<Math.min(attemptsNo-1, MAX_BACKOFF_EXPONENT));
+		return delay/2+(long)(random.nextDouble()*(delay/2));
+	}
+
+	//false once the upload failed too many times, it stays failed until the file is queued again
+	public static boolean isRetried(int attemptsNo){
+		return attemptsNo<MAX_ATTEMPTS;
+	}
+
+	//uploads started by a pass over the due files, in queue order: one list per task, with a single file or a bundle,
+	//no more than tasksNo of them; big files (over maxBundledLength) and missing ones are sent on their own
+	public static List<List<Upload>> plan(List<Upload> dueUploads, int tasksNo, boolean isBundleSupported, long maxBundledLength){
+		List<List<Upload>> tasks = new ArrayList<List<Upload>>();
+		boolean[] isPlanned = new boolean[dueUploads.size()];
+		for (int i=0;i<dueUploads.size()&&tasks.size()<tasksNo;i++){
+			if (isPlanned[i])
+				continue;
+			Upload upload = dueUploads.get(i);
+			List<Upload> task = new ArrayList<Upload>();
+			task.add(upload);
+			isPlanned[i] = true;
+			if (isBundleSupported&&UploadScheduler.isBundleable(upload, maxBundledLength)){
+				long bundleBytes = upload.length;
+				for (int j=i+1;j<dueUploads.size()&&task.size()<MAX_BUNDLE_FILES;j++){
+					Upload bundled = dueUploads.get(j);
+					if (isPlanned[j]||bundled.overwrite!=upload.overwrite||!UploadScheduler.isBundleable(bundled, maxBundledLength))
+						continue;
+					if (bundleBytes+bundled.length>MAX_BUNDLE_BYTES)
+						break;
+					task.add(bundled);
+					isPlanned[j] = true;
+					bundleBytes += bundled.length;
+				}
+			}
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	private static boolean isBundleable(Upload upload, long maxBundledLength){
+		return upload.length>=0&&upload.length<=maxBundledLength;
+	}
+}
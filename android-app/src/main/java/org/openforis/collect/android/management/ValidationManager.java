@@ -1,82 +1,263 @@
 package org.openforis.collect.android.management;
 
-import org.openforis.idm.metamodel.BooleanAttributeDefinition;
-import org.openforis.idm.metamodel.CoordinateAttributeDefinition;
-import org.openforis.idm.metamodel.DateAttributeDefinition;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openforis.collect.android.fields.UIElement;
+import org.openforis.collect.model.CollectRecord;
+import org.openforis.idm.metamodel.AttributeDefinition;
+import org.openforis.idm.metamodel.EntityDefinition;
 import org.openforis.idm.metamodel.NodeDefinition;
-import org.openforis.idm.metamodel.NumberAttributeDefinition;
-import org.openforis.idm.metamodel.RangeAttributeDefinition;
-import org.openforis.idm.metamodel.TextAttributeDefinition;
-import org.openforis.idm.metamodel.TimeAttributeDefinition;
+import org.openforis.idm.metamodel.Survey;
+import org.openforis.idm.metamodel.validation.Check;
+import org.openforis.idm.metamodel.validation.ComparisonCheck;
+import org.openforis.idm.metamodel.validation.CustomCheck;
 import org.openforis.idm.metamodel.validation.ValidationResults;
 import org.openforis.idm.metamodel.validation.Validator;
 import org.openforis.idm.model.Attribute;
-import org.openforis.idm.model.CoordinateAttribute;
-import org.openforis.idm.model.DateAttribute;
-import org.openforis.idm.model.IntegerAttribute;
+import org.openforis.idm.model.Entity;
 import org.openforis.idm.model.Node;
-import org.openforis.idm.model.RealAttribute;
-import org.openforis.idm.model.TextAttribute;
-import org.openforis.idm.model.TimeAttribute;
 
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 
 public class ValidationManager {
-	
-	@SuppressWarnings("rawtypes")
+
+	//time (ms) a field has to stay unchanged before it is validated, so that typing never waits for the validator
+	private static final int VALIDATION_DELAY = 300;
+
+	private static Survey validatorSurvey;
+	private static Validator validator;
+	//attribute definition id -> definitions of the attributes whose checks refer to it
+	private static Map<Integer,Set<AttributeDefinition>> dependentsMap;
+
+	private static Handler handler;
+	private static Map<Entity,Map<Integer,Runnable>> pendingValidations = new IdentityHashMap<Entity,Map<Integer,Runnable>>();
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public static ValidationResults validateField(Node<? extends NodeDefinition> node){
-		NodeDefinition nodeDef = node.getDefinition();
-		ValidationResults results = null;
-		Validator validator = null;
-		Attribute attribute = null;
-		if (nodeDef instanceof TextAttributeDefinition){    			    		
-			attribute = (TextAttribute)node;
-			validator = new Validator();
-			results = validator.validate(attribute); 
-			Log.e("VALIDATION FOR TEXT FIELD", "Errors: " + results.getErrors().size() + " : " + results.getErrors().toString());
-			Log.d("VALIDATION FOR TEXT FIELD", "Warnings: "  + results.getWarnings().size() + " : " + results.getWarnings().toString());
-			Log.e("VALIDATION FOR TEXT FIELD", "Fails: "  + results.getFailed().size() + " : " +  results.getFailed().toString());	    						
-		}else if (nodeDef instanceof NumberAttributeDefinition){
-			if(((NumberAttributeDefinition) nodeDef).isInteger()){
-				attribute = (IntegerAttribute)node;
-			}else if (((NumberAttributeDefinition) nodeDef).isReal()){
-				attribute = (RealAttribute)node;
+		if (!(node instanceof Attribute))
+			return null;
+		return ValidationManager.getValidator().validate((Attribute)node);
+	}
+
+	//validates the attribute which was changed in the given entity and all the attributes whose checks depend on it,
+	//once the attribute stayed unchanged for VALIDATION_DELAY; the record is edited on the main thread,
+	//so the validation runs there too, between two changes, and never sees a half-edited entity
+	public static void scheduleValidation(final Entity parentEntity, final NodeDefinition nodeDef){
+		if (parentEntity==null||!(nodeDef instanceof AttributeDefinition))
+			return;
+		if (ValidationManager.handler==null){
+			ValidationManager.handler = new Handler(Looper.getMainLooper());
+		}
+		Map<Integer,Runnable> entityValidations = ValidationManager.pendingValidations.get(parentEntity);
+		if (entityValidations==null){
+			entityValidations = new HashMap<Integer,Runnable>();
+			ValidationManager.pendingValidations.put(parentEntity, entityValidations);
+		}
+		//a newer change of the same attribute supersedes the pending validation
+		Runnable pendingValidation = entityValidations.remove(nodeDef.getId());
+		if (pendingValidation!=null){
+			ValidationManager.handler.removeCallbacks(pendingValidation);
+		}
+		final CollectRecord record = ApplicationManager.currentRecord;
+		Runnable validation = new Runnable(){
+			@Override
+			public void run() {
+				Map<Integer,Runnable> entityValidations = ValidationManager.pendingValidations.get(parentEntity);
+				if (entityValidations!=null){
+					entityValidations.remove(nodeDef.getId());
+					if (entityValidations.isEmpty())
+						ValidationManager.pendingValidations.remove(parentEntity);
+				}
+				if (record==ApplicationManager.currentRecord)
+					ValidationManager.runValidation(parentEntity, (AttributeDefinition)nodeDef);
+			}
+		};
+		entityValidations.put(nodeDef.getId(), validation);
+		ValidationManager.handler.postDelayed(validation, VALIDATION_DELAY);
+	}
+
+	public static void clear(){
+		if (ValidationManager.handler!=null){
+			for (Map<Integer,Runnable> entityValidations : ValidationManager.pendingValidations.values()){
+				for (Runnable validation : entityValidations.values()){
+					ValidationManager.handler.removeCallbacks(validation);
+				}
+			}
+		}
+		ValidationManager.pendingValidations.clear();
+		synchronized (ValidationManager.class){
+			ValidationManager.validator = null;
+			ValidationManager.validatorSurvey = null;
+			ValidationManager.dependentsMap = null;
+		}
+	}
+
+	private static void runValidation(Entity parentEntity, AttributeDefinition attributeDef){
+		List<Node<?>> nodes = new ArrayList<Node<?>>(parentEntity.getAll(attributeDef.getName()));
+		for (AttributeDefinition dependentDef : ValidationManager.getDependents(attributeDef)){
+			ValidationManager.findNodes(parentEntity, dependentDef, nodes);
+		}
+		for (Node<?> node : nodes){
+			if (node instanceof Attribute){
+				Attribute<?,?> attribute = (Attribute<?,?>)node;
+				UIElement uiEl = ApplicationManager.getUIElement(attribute.getDefinition().getId());
+				if (uiEl!=null){
+					uiEl.showValidationResults(attribute, ValidationManager.validateField(node));
+				}
+			}
+		}
+	}
+
+	//collects the instances of the given attribute which are reachable from the entity where the change took place:
+	//goes up to the closest entity containing the attribute definition and then down to all of its instances
+	private static void findNodes(Entity entity, AttributeDefinition attributeDef, List<Node<?>> nodes){
+		LinkedList<EntityDefinition> pathDown = new LinkedList<EntityDefinition>();
+		Entity ancestor = entity;
+		while (ancestor!=null){
+			pathDown.clear();
+			NodeDefinition parentDef = attributeDef.getParentDefinition();
+			while (parentDef!=null&&parentDef!=ancestor.getDefinition()){
+				pathDown.addFirst((EntityDefinition)parentDef);
+				parentDef = parentDef.getParentDefinition();
 			}
-			validator = new Validator();
-			results = validator.validate(attribute); 
-			Log.e("VALIDATION FOR NUMBER FIELD", "Errors: " + results.getErrors().size() + " : " + results.getErrors().toString());
-			Log.d("VALIDATION FOR NUMBER FIELD", "Warnings: "  + results.getWarnings().size() + " : " + results.getWarnings().toString());
-			Log.e("VALIDATION FOR NUMBER FIELD", "Fails: "  + results.getFailed().size() + " : " +  results.getFailed().toString());		
-		}else if (nodeDef instanceof CoordinateAttributeDefinition){
-			attribute = (CoordinateAttribute)node;
-			validator = new Validator();
-			results = validator.validate(attribute); 
-			Log.e("VALIDATION FOR COORDINATE FIELD", "Errors: " + results.getErrors().size() + " : " + results.getErrors().toString());
-			Log.d("VALIDATION FOR COORDINATE FIELD", "Warnings: "  + results.getWarnings().size() + " : " + results.getWarnings().toString());
-			Log.e("VALIDATION FOR COORDINATE FIELD", "Fails: "  + results.getFailed().size() + " : " +  results.getFailed().toString());		
-		}else if (nodeDef instanceof DateAttributeDefinition){
-			attribute = (DateAttribute)node;
-			validator = new Validator();
-			results = validator.validate(attribute); 
-			Log.e("VALIDATION FOR DATE FIELD", "Errors: " + results.getErrors().size() + " : " + results.getErrors().toString());
-			Log.d("VALIDATION FOR DATE FIELD", "Warnings: "  + results.getWarnings().size() + " : " + results.getWarnings().toString());
-			Log.e("VALIDATION FOR DATE FIELD", "Fails: "  + results.getFailed().size() + " : " +  results.getFailed().toString());			
-		}else if (nodeDef instanceof TimeAttributeDefinition){
-			attribute = (TimeAttribute)node;
-			validator = new Validator();
-			results = validator.validate(attribute); 
-			Log.e("VALIDATION FOR TIME FIELD", "Errors: " + results.getErrors().size() + " : " + results.getErrors().toString());
-			Log.d("VALIDATION FOR TIME FIELD", "Warnings: "  + results.getWarnings().size() + " : " + results.getWarnings().toString());
-			Log.e("VALIDATION FOR TIME FIELD", "Fails: "  + results.getFailed().size() + " : " +  results.getFailed().toString());			
-		}else if (nodeDef instanceof RangeAttributeDefinition){
-			
-		}else if (nodeDef instanceof BooleanAttributeDefinition){
-			
-		}else{
-			
-		}
-		Log.i("VALIDATION","Attribute: " + attribute.getName() + " Attribute value is: " + attribute.getValue());
-		return results;
+			if (parentDef!=null)
+				break;
+			ancestor = ancestor.getParent();
+		}
+		if (ancestor!=null){
+			ValidationManager.collectNodes(ancestor, pathDown, 0, attributeDef.getName(), nodes);
+		}
 	}
 
+	private static void collectNodes(Entity entity, List<EntityDefinition> pathDown, int level, String name, List<Node<?>> nodes){
+		if (level==pathDown.size()){
+			for (Node<?> node : entity.getAll(name)){
+				if (!nodes.contains(node))
+					nodes.add(node);
+			}
+			return;
+		}
+		for (Node<?> child : entity.getAll(pathDown.get(level).getName())){
+			if (child instanceof Entity)
+				ValidationManager.collectNodes((Entity)child, pathDown, level+1, name, nodes);
+		}
+	}
+
+	private static synchronized Validator getValidator(){
+		ValidationManager.checkValidity();
+		return ValidationManager.validator;
+	}
+
+	private static synchronized Set<AttributeDefinition> getDependents(AttributeDefinition attributeDef){
+		ValidationManager.checkValidity();
+		if (ValidationManager.dependentsMap==null){
+			ValidationManager.dependentsMap = ValidationManager.buildDependentsMap(ValidationManager.validatorSurvey);
+		}
+		Set<AttributeDefinition> dependents = ValidationManager.dependentsMap.get(attributeDef.getId());
+		return (dependents==null)?new HashSet<AttributeDefinition>():dependents;
+	}
+
+	private static void checkValidity(){
+		Survey survey = ApplicationManager.getSurvey();
+		if (ValidationManager.validator==null||survey!=ValidationManager.validatorSurvey){
+			ValidationManager.validator = new Validator();
+			ValidationManager.validatorSurvey = survey;
+			ValidationManager.dependentsMap = null;
+		}
+	}
+
+	//an attribute depends on every attribute whose name appears in the expressions of its checks
+	private static Map<Integer,Set<AttributeDefinition>> buildDependentsMap(Survey survey){
+		Map<Integer,Set<AttributeDefinition>> dependents = new HashMap<Integer,Set<AttributeDefinition>>();
+		if (survey==null)
+			return dependents;
+		List<AttributeDefinition> attributeDefs = new ArrayList<AttributeDefinition>();
+		for (EntityDefinition rootEntityDef : survey.getSchema().getRootEntityDefinitions()){
+			ValidationManager.collectAttributeDefinitions(rootEntityDef, attributeDefs);
+		}
+		Map<String,List<AttributeDefinition>> attributeDefsByName = new HashMap<String,List<AttributeDefinition>>();
+		for (AttributeDefinition attributeDef : attributeDefs){
+			List<AttributeDefinition> sameNameDefs = attributeDefsByName.get(attributeDef.getName());
+			if (sameNameDefs==null){
+				sameNameDefs = new ArrayList<AttributeDefinition>();
+				attributeDefsByName.put(attributeDef.getName(), sameNameDefs);
+			}
+			sameNameDefs.add(attributeDef);
+		}
+		for (AttributeDefinition attributeDef : attributeDefs){
+			for (Check<?> check : attributeDef.getChecks()){
+				for (String expression : ValidationManager.getExpressions(check)){
+					for (String name : ValidationManager.getNames(expression)){
+						List<AttributeDefinition> referencedDefs = attributeDefsByName.get(name);
+						if (referencedDefs==null)
+							continue;
+						for (AttributeDefinition referencedDef : referencedDefs){
+							if (referencedDef==attributeDef)
+								continue;
+							Set<AttributeDefinition> referencedDependents = dependents.get(referencedDef.getId());
+							if (referencedDependents==null){
+								referencedDependents = new HashSet<AttributeDefinition>();
+								dependents.put(referencedDef.getId(), referencedDependents);
+							}
+							referencedDependents.add(attributeDef);
+						}
+					}
+				}
+			}
+		}
+		return dependents;
+	}
+
+	private static void collectAttributeDefinitions(EntityDefinition entityDef, List<AttributeDefinition> attributeDefs){
+		for (NodeDefinition childDef : entityDef.getChildDefinitions()){
+			if (childDef instanceof AttributeDefinition){
+				attributeDefs.add((AttributeDefinition)childDef);
+			} else if (childDef instanceof EntityDefinition){
+				ValidationManager.collectAttributeDefinitions((EntityDefinition)childDef, attributeDefs);
+			}
+		}
+	}
+
+	private static List<String> getExpressions(Check<?> check){
+		List<String> expressions = new ArrayList<String>();
+		expressions.add(check.getCondition());
+		if (check instanceof CustomCheck){
+			expressions.add(((CustomCheck)check).getExpression());
+		} else if (check instanceof ComparisonCheck){
+			ComparisonCheck comparisonCheck = (ComparisonCheck)check;
+			expressions.add(comparisonCheck.getLessThanExpression());
+			expressions.add(comparisonCheck.getLessThanOrEqualsExpression());
+			expressions.add(comparisonCheck.getGreaterThanExpression());
+			expressions.add(comparisonCheck.getGreaterThanOrEqualsExpression());
+			expressions.add(comparisonCheck.getEqualsExpression());
+		}
+		return expressions;
+	}
+
+	//splits an XPath-like expression into the names it may refer to
+	static Set<String> getNames(String expression){
+		Set<String> names = new HashSet<String>();
+		if (expression==null)
+			return names;
+		int start = -1;
+		for (int i=0;i<=expression.length();i++){
+			char c = (i<expression.length())?expression.charAt(i):' ';
+			boolean isNameChar = Character.isLetterOrDigit(c)||c=='_'||(c=='-'&&start!=-1);
+			if (isNameChar&&start==-1){
+				start = i;
+			} else if (!isNameChar&&start!=-1){
+				names.add(expression.substring(start, i));
+				start = -1;
+			}
+		}
+		return names;
+	}
 }
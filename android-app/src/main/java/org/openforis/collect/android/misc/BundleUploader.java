@@ -0,0 +1,79 @@
+package org.openforis.collect.android.misc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+
+//sends many exported records in one request as a RecordBundleEntity,
+//the server answers with one "<file name>\t<ok|failed>\t<message>" line per file of the bundle
+public class BundleUploader {
+
+	public static final String STATUS_OK = "ok";
+
+	public static class Result {
+		//file name -> message of the server
+		public final Map<String,String> saved = new LinkedHashMap<String,String>();
+		public final Map<String,String> refused = new LinkedHashMap<String,String>();
+	}
+
+	private final String url;
+
+	public BundleUploader(String url){
+		this.url = url;
+	}
+
+	//files the server does not mention in its answer are reported as refused
+	public Result upload(List<File> files, Map<String,String> parameters) throws IOException {
+		HttpPost request = new HttpPost(this.url+TransferUtils.toQuery(parameters));
+		request.setEntity(new RecordBundleEntity(files));
+		request.setHeader(HttpCompression.ACCEPT_ENCODING, HttpCompression.GZIP);
+		HttpResponse response = SharedHttpClient.getClient().execute(request);
+		HttpEntity responseEntity = response.getEntity();
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode<200||statusCode>=300){
+			if (responseEntity!=null)
+				responseEntity.consumeContent();
+			if (statusCode==HttpStatus.SC_NOT_FOUND||statusCode==HttpStatus.SC_METHOD_NOT_ALLOWED||statusCode==HttpStatus.SC_NOT_IMPLEMENTED||statusCode==HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE)
+				throw new TransferUtils.UnsupportedException("bundle uploads not supported: "+statusCode);
+			throw new IOException("bundle refused: "+response.getStatusLine());
+		}
+		Result result = new Result();
+		if (responseEntity!=null){
+			Header contentEncoding = responseEntity.getContentEncoding();
+			InputStream in = HttpCompression.decode(responseEntity.getContent(), (contentEncoding==null)?null:contentEncoding.getValue());
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+				String line;
+				while ((line = reader.readLine())!=null){
+					String[] fields = line.split("\t", 3);
+					if (fields.length<2)
+						continue;
+					String message = (fields.length>2)?fields[2]:"";
+					if (fields[1].equals(STATUS_OK)){
+						result.saved.put(fields[0], message);
+					} else {
+						result.refused.put(fields[0], message);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+		for (File file : files){
+			if (!result.saved.containsKey(file.getName())&&!result.refused.containsKey(file.getName()))
+				result.refused.put(file.getName(), "not in the answer of the server");
+		}
+		return result;
+	}
+}
@@ -0,0 +1,210 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+//resumable upload of a file in fixed size chunks:
+//HEAD <url>/<upload id> returns the offset already acknowledged by the server in Upload-Offset (404 if the upload is unknown),
+//PUT <url>/<upload id> sends the chunk starting at Upload-Offset together with its md5 in Upload-Checksum,
+//the server answers with the new acknowledged offset, or with 409 and its own offset if the client is out of sync;
+//a compressed chunk is gzipped on its own with Content-Encoding: gzip, offsets and checksums are those of the file bytes
+public class ChunkedUploader {
+
+	public static final int DEFAULT_CHUNK_SIZE = 64*1024;
+
+	public static final String UPLOAD_OFFSET = "Upload-Offset";
+	public static final String UPLOAD_LENGTH = "Upload-Length";
+	public static final String UPLOAD_CHECKSUM = "Upload-Checksum";
+
+	public static final int SC_CHECKSUM_MISMATCH = 460;
+
+	private static final int MAX_CHUNK_ATTEMPTS = 3;
+
+	private final String url;
+	private final int chunkSize;
+	private int connectTimeout = 30*1000;
+	private int readTimeout = 60*1000;
+	private boolean isCompressed;
+	private long sentBytes;
+	private long transferredBytes;
+
+	public ChunkedUploader(String url, int chunkSize){
+		this.url = url;
+		this.chunkSize = chunkSize;
+	}
+
+	public void setTimeouts(int connectTimeout, int readTimeout){
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	//the chunks are gzipped until the server refuses a compressed chunk
+	public void setCompressed(boolean isCompressed){
+		this.isCompressed = isCompressed;
+	}
+
+	//false once the server refused a compressed chunk
+	public boolean isCompressed(){
+		return this.isCompressed;
+	}
+
+	//file bytes sent by the last call of upload, including retransmitted chunks
+	public long getSentBytes(){
+		return this.sentBytes;
+	}
+
+	//bytes of the request bodies sent by the last call of upload, less than the file bytes when the chunks are compressed
+	public long getTransferredBytes(){
+		return this.transferredBytes;
+	}
+
+	//id stable across restarts of the application, a modified file gets a new id and is sent again from the beginning
+	public static String getUploadId(File file){
+		return TransferUtils.toHex(TransferUtils.md5((file.getName()+":"+file.length()+":"+file.lastModified()).getBytes()));
+	}
+
+	//sends the part of the file not yet acknowledged by the server, returns the response to the last chunk,
+	//an IOException leaves the upload in a state where it can be resumed by calling this method again
+	public String upload(File file, Map<String,String> parameters) throws IOException {
+		if (!file.exists())
+			throw new FileNotFoundException(file.getPath());
+		this.sentBytes = 0;
+		this.transferredBytes = 0;
+		String uploadUrl = this.url+"/"+ChunkedUploader.getUploadId(file)+TransferUtils.toQuery(parameters);
+		long length = file.length();
+		long offset = this.getAcknowledgedOffset(uploadUrl);
+		byte[] buffer = new byte[this.chunkSize];
+		ByteArrayOutputStream compressedChunk = new ByteArrayOutputStream();
+		String response = "";
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			int failedAttemptsNo = 0;
+			//set while a chunk refused compressed with 400 is sent again uncompressed
+			boolean isCompressionSuspected = false;
+			do {
+				int chunkLength = (int)Math.min(this.chunkSize, length-offset);
+				in.seek(offset);
+				in.readFully(buffer, 0, chunkLength);
+				boolean isChunkCompressed = this.isCompressed;
+				if (isChunkCompressed){
+					compressedChunk.reset();
+					HttpCompression.compress(new ByteArrayInputStream(buffer, 0, chunkLength), compressedChunk);
+				}
+				int bodyLength = (isChunkCompressed)?compressedChunk.size():chunkLength;
+				HttpURLConnection connection = this.openConnection(uploadUrl, "PUT");
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(bodyLength);
+				connection.setRequestProperty("Content-Type", "application/octet-stream");
+				if (isChunkCompressed)
+					connection.setRequestProperty(HttpCompression.CONTENT_ENCODING, HttpCompression.GZIP);
+				connection.setRequestProperty(UPLOAD_OFFSET, String.valueOf(offset));
+				connection.setRequestProperty(UPLOAD_LENGTH, String.valueOf(length));
+				connection.setRequestProperty(UPLOAD_CHECKSUM, "md5 "+TransferUtils.toHex(TransferUtils.md5(buffer, 0, chunkLength)));
+				try {
+					OutputStream out = connection.getOutputStream();
+					if (isChunkCompressed){
+						compressedChunk.writeTo(out);
+					} else {
+						out.write(buffer, 0, chunkLength);
+					}
+					out.close();
+					this.sentBytes += chunkLength;
+					this.transferredBytes += bodyLength;
+					int statusCode = connection.getResponseCode();
+					if (isChunkCompressed&&statusCode==HttpURLConnection.HTTP_UNSUPPORTED_TYPE){
+						this.isCompressed = false;
+						continue;
+					}
+					if (isChunkCompressed&&statusCode==HttpURLConnection.HTTP_BAD_REQUEST){
+						//the compression is given up unless the uncompressed chunk is refused the same way
+						this.isCompressed = false;
+						isCompressionSuspected = true;
+						continue;
+					}
+					if (isCompressionSuspected){
+						isCompressionSuspected = false;
+						if (statusCode==HttpURLConnection.HTTP_BAD_REQUEST)
+							this.isCompressed = true;
+					}
+					if (statusCode>=200&&statusCode<300){
+						offset = ChunkedUploader.getOffset(connection);
+						response = ChunkedUploader.readResponse(connection);
+						failedAttemptsNo = 0;
+					} else if (statusCode==HttpURLConnection.HTTP_CONFLICT){
+						offset = ChunkedUploader.getOffset(connection);
+					} else if (statusCode==SC_CHECKSUM_MISMATCH){
+						if (++failedAttemptsNo>=MAX_CHUNK_ATTEMPTS)
+							throw new IOException("chunk at "+offset+" corrupted "+failedAttemptsNo+" times");
+					} else if (statusCode==HttpURLConnection.HTTP_NOT_FOUND||statusCode==HttpURLConnection.HTTP_BAD_METHOD||statusCode==HttpURLConnection.HTTP_NOT_IMPLEMENTED){
+						throw new TransferUtils.UnsupportedException("chunked uploads not supported: "+statusCode);
+					} else {
+						throw new IOException("chunk at "+offset+" refused: "+statusCode);
+					}
+				} finally {
+					connection.disconnect();
+				}
+			} while (offset<length);
+		} finally {
+			in.close();
+		}
+		return response;
+	}
+
+	private long getAcknowledgedOffset(String uploadUrl) throws IOException {
+		HttpURLConnection connection = this.openConnection(uploadUrl, "HEAD");
+		try {
+			int statusCode = connection.getResponseCode();
+			if (statusCode==HttpURLConnection.HTTP_NOT_FOUND)
+				return 0;
+			if (statusCode==HttpURLConnection.HTTP_BAD_METHOD||statusCode==HttpURLConnection.HTTP_NOT_IMPLEMENTED)
+				throw new TransferUtils.UnsupportedException("chunked uploads not supported: "+statusCode);
+			if (statusCode<200||statusCode>=300)
+				throw new IOException("upload state not available: "+statusCode);
+			if (connection.getHeaderField(UPLOAD_OFFSET)==null)
+				throw new TransferUtils.UnsupportedException("chunked uploads not supported: no "+UPLOAD_OFFSET+" in the response");
+			return ChunkedUploader.getOffset(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private HttpURLConnection openConnection(String uploadUrl, String method) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(uploadUrl).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.readTimeout);
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	private static long getOffset(HttpURLConnection connection) throws IOException {
+		String offset = connection.getHeaderField(UPLOAD_OFFSET);
+		if (offset==null)
+			throw new IOException("no "+UPLOAD_OFFSET+" in the response");
+		try {
+			return Long.parseLong(offset.trim());
+		} catch (NumberFormatException e){
+			throw new IOException("invalid "+UPLOAD_OFFSET+": "+offset);
+		}
+	}
+
+	private static String readResponse(HttpURLConnection connection) throws IOException {
+		InputStream in = connection.getInputStream();
+		try {
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			HttpCompression.copy(in, response);
+			return response.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
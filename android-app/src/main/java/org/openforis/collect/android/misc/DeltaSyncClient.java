@@ -0,0 +1,88 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+//compares the manifest of the device with the one of the server in a single request:
+//POST <url>/manifest?buckets=<n> sends the digests of the buckets of the device,
+//the server answers (gzipped) with the buckets it holds differently and its own entries in those buckets,
+//so an unchanged dataset costs a few kilobytes whatever its number of records
+public class DeltaSyncClient {
+
+	public static final String MANIFEST_PATH = "/manifest";
+	public static final String RECORD_PATH = "/record";
+	public static final String BUCKETS_NO = "buckets";
+	public static final String KEY = "key";
+
+	private final String url;
+	private long sentBytes;
+	private long receivedBytes;
+
+	public DeltaSyncClient(String url){
+		this.url = url;
+	}
+
+	//bytes on the wire of the last comparison, request and response bodies only
+	public long getSentBytes(){
+		return this.sentBytes;
+	}
+
+	public long getReceivedBytes(){
+		return this.receivedBytes;
+	}
+
+	//what has to be uploaded and downloaded to bring the device and the server up to date
+	public SyncManifest.Delta compare(SyncManifest local, Map<String,String> parameters) throws IOException {
+		int bucketsNo = local.getBucketsNo();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		SyncManifest.writeBucketDigests(local.getBucketDigests(bucketsNo), body);
+
+		Map<String,String> query = new HashMap<String,String>();
+		if (parameters!=null)
+			query.putAll(parameters);
+		query.put(BUCKETS_NO, String.valueOf(bucketsNo));
+		HttpPost request = new HttpPost(this.url+MANIFEST_PATH+TransferUtils.toQuery(query));
+		ByteArrayEntity entity = new ByteArrayEntity(body.toByteArray());
+		entity.setContentType("application/octet-stream");
+		request.setEntity(entity);
+		request.setHeader(HttpCompression.ACCEPT_ENCODING, HttpCompression.GZIP);
+		this.sentBytes = body.size();
+		this.receivedBytes = 0;
+
+		HttpResponse response = SharedHttpClient.getClient().execute(request);
+		HttpEntity responseEntity = response.getEntity();
+		byte[] responseBytes = (responseEntity==null)?new byte[0]:EntityUtils.toByteArray(responseEntity);
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode==HttpStatus.SC_NOT_FOUND||statusCode==HttpStatus.SC_METHOD_NOT_ALLOWED||statusCode==HttpStatus.SC_NOT_IMPLEMENTED)
+			throw new TransferUtils.UnsupportedException("delta sync not supported: "+statusCode);
+		if (statusCode<200||statusCode>=300)
+			throw new IOException("manifest refused: "+response.getStatusLine());
+		this.receivedBytes = responseBytes.length;
+		Header contentEncoding = responseEntity.getContentEncoding();
+		InputStream in = HttpCompression.decode(new ByteArrayInputStream(responseBytes), (contentEncoding==null)?null:contentEncoding.getValue());
+		SortedSet<Integer> changedBuckets = new TreeSet<Integer>();
+		SyncManifest remote = SyncManifest.readChanges(in, changedBuckets);
+		return local.getBuckets(changedBuckets, bucketsNo).compare(remote);
+	}
+
+	//url from which the server sends the xml of the record with the given key
+	public String getRecordUrl(String key, Map<String,String> parameters) throws IOException {
+		String query = TransferUtils.toQuery(parameters);
+		return this.url+RECORD_PATH+query+((query.length()==0)?"?":"&")+KEY+"="+URLEncoder.encode(key, "UTF-8");
+	}
+}
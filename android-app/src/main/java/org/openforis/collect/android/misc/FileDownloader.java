@@ -0,0 +1,262 @@
+package org.openforis.collect.android.misc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+//downloads files with a bounded number of workers: each file is written to <name>.part in the target folder,
+//resumed with an HTTP Range request after a failure, verified and then renamed to its final name,
+//so that a file with the final name is always complete;
+//the ETag or Last-Modified of the file and its md5 are kept in <name>.part.validator, a part is only resumed with an If-Range
+//on that validator, so that the bytes of two versions of a file are never joined
+public class FileDownloader {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64*1024;
+	public static final String PART_EXTENSION = ".part";
+	public static final String VALIDATOR_EXTENSION = ".part.validator";
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	public interface Listener {
+		//called on the worker thread, file is null if the download failed
+		public void onFinished(String url, File file, Result result);
+	}
+
+	public static class Result {
+		public long downloadedBytes;
+		public long resumedFrom;
+		public long time;
+		public int attemptsNo;
+		public Exception error;
+
+		//bytes per second
+		public long getThroughput(){
+			return (this.time<=0)?this.downloadedBytes*1000:this.downloadedBytes*1000/this.time;
+		}
+	}
+
+	private final ExecutorService workers;
+	private final int bufferSize;
+	private int connectTimeout = 30*1000;
+	private int readTimeout = 60*1000;
+
+	public FileDownloader(int workersNo, int bufferSize){
+		this.workers = Executors.newFixedThreadPool(workersNo, new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "FileDownloader");
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		this.bufferSize = bufferSize;
+	}
+
+	public void setTimeouts(int connectTimeout, int readTimeout){
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	//queues the download of url into targetFolder/fileName, expectedMd5 (hex) may be null
+	public Future<File> download(final String url, final File targetFolder, final String fileName, final String expectedMd5, final Listener listener){
+		return this.workers.submit(new Callable<File>(){
+			@Override
+			public File call() throws Exception {
+				Result result = new Result();
+				File file = null;
+				try {
+					file = FileDownloader.this.download(url, targetFolder, fileName, expectedMd5, result);
+				} catch (Exception e){
+					result.error = e;
+				}
+				if (listener!=null)
+					listener.onFinished(url, file, result);
+				if (result.error!=null)
+					throw result.error;
+				return file;
+			}
+		});
+	}
+
+	public void shutdown(){
+		this.workers.shutdownNow();
+	}
+
+	private File download(String url, File targetFolder, String fileName, String expectedMd5, Result result) throws IOException {
+		if (!targetFolder.exists())
+			targetFolder.mkdirs();
+		File partFile = new File(targetFolder, fileName+PART_EXTENSION);
+		File validatorFile = new File(targetFolder, fileName+VALIDATOR_EXTENSION);
+		File file = new File(targetFolder, fileName);
+		long startTime = System.currentTimeMillis();
+		//a part without validator may belong to another version of the file
+		if (partFile.exists()&&FileDownloader.readValidator(validatorFile)[0]==null)
+			partFile.delete();
+		result.resumedFrom = partFile.length();
+		IOException lastError = null;
+		while (result.attemptsNo<MAX_ATTEMPTS){
+			result.attemptsNo++;
+			try {
+				this.transfer(url, partFile, validatorFile, result);
+				lastError = null;
+				break;
+			} catch (IOException e){
+				lastError = e;
+			}
+		}
+		result.time = System.currentTimeMillis()-startTime;
+		if (lastError!=null)
+			throw lastError;
+		//the whole file is hashed, whichever attempts and ranges it was received in
+		String checksum = (expectedMd5!=null)?expectedMd5:FileDownloader.readValidator(validatorFile)[1];
+		if (checksum!=null){
+			String md5 = TransferUtils.toHex(TransferUtils.md5(partFile, this.bufferSize));
+			if (!checksum.equalsIgnoreCase(md5)){
+				partFile.delete();
+				validatorFile.delete();
+				throw new IOException(fileName+" corrupted, md5 "+md5+" instead of "+checksum);
+			}
+		}
+		if (file.exists()&&!file.delete())
+			throw new IOException("cannot replace "+file.getPath());
+		if (!partFile.renameTo(file))
+			throw new IOException("cannot rename "+partFile.getPath());
+		validatorFile.delete();
+		return file;
+	}
+
+	//appends the missing part of the file to partFile, a new validator is stored whenever the file is sent from the beginning
+	private void transfer(String url, File partFile, File validatorFile, Result result) throws IOException {
+		long offset = partFile.length();
+		HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.readTimeout);
+		connection.setUseCaches(false);
+		if (offset>0){
+			//byte ranges refer to the encoded body, a resumed file must be sent as it is;
+			//the server sends the whole file instead of the range if it changed since the part was received
+			connection.setRequestProperty("Range", "bytes="+offset+"-");
+			connection.setRequestProperty("If-Range", FileDownloader.readValidator(validatorFile)[0]);
+			connection.setRequestProperty(HttpCompression.ACCEPT_ENCODING, "identity");
+		} else {
+			connection.setRequestProperty(HttpCompression.ACCEPT_ENCODING, HttpCompression.GZIP);
+		}
+		try {
+			int statusCode = connection.getResponseCode();
+			boolean isAppending;
+			if (statusCode==HttpURLConnection.HTTP_PARTIAL){
+				isAppending = true;
+			} else if (statusCode==HttpURLConnection.HTTP_OK){
+				isAppending = false;
+			} else if (statusCode==416){
+				//the whole file was received before the previous attempt stopped
+				String contentRange = connection.getHeaderField("Content-Range");
+				if (contentRange!=null&&contentRange.trim().equals("bytes */"+offset))
+					return;
+				partFile.delete();
+				throw new IOException("range not satisfiable, restarting from the beginning");
+			} else {
+				throw new IOException("download refused: "+statusCode);
+			}
+			boolean isCompressed = HttpCompression.isGzip(connection.getContentEncoding());
+			if (!isAppending){
+				//stored before the body, so that a download cut from now on can be resumed;
+				//a weak etag can't be used in If-Range and the md5 of a compressed body is not the one of the file
+				String etag = connection.getHeaderField("ETag");
+				String validator = (etag!=null&&!etag.startsWith("W/"))?etag:connection.getHeaderField("Last-Modified");
+				String contentMd5 = connection.getHeaderField("Content-MD5");
+				String md5 = (isCompressed)?null:FileDownloader.decodeContentMd5(contentMd5);
+				FileDownloader.writeValidator(validatorFile, (isCompressed)?null:validator, md5);
+			}
+			//some connections report a cut body as a normal end of stream
+			long expectedBytes = (isCompressed)?-1:connection.getContentLength();
+			long receivedBytes = 0;
+			InputStream in = HttpCompression.decode(connection.getInputStream(), connection.getContentEncoding());
+			OutputStream out = new FileOutputStream(partFile, isAppending);
+			boolean isComplete = false;
+			try {
+				byte[] buffer = new byte[this.bufferSize];
+				int readBytes;
+				while ((readBytes = in.read(buffer))!=-1){
+					out.write(buffer, 0, readBytes);
+					receivedBytes += readBytes;
+					result.downloadedBytes += readBytes;
+				}
+				if (expectedBytes>=0&&receivedBytes<expectedBytes)
+					throw new IOException("connection closed after "+receivedBytes+" of "+expectedBytes+" bytes");
+				isComplete = true;
+			} finally {
+				out.close();
+				in.close();
+				if (!isComplete&&isCompressed){
+					//the decoded bytes cannot be matched with a byte range of the compressed body
+					partFile.delete();
+				}
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	//validator and md5 (hex) of the file being downloaded, each of them null if unknown
+	static String[] readValidator(File validatorFile){
+		String[] validator = new String[2];
+		if (!validatorFile.exists())
+			return validator;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(validatorFile), "UTF-8"));
+			try {
+				for (int i=0;i<validator.length;i++){
+					String line = reader.readLine();
+					validator[i] = (line==null||line.length()==0)?null:line;
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e){
+			validatorFile.delete();
+			return new String[2];
+		}
+		return validator;
+	}
+
+	static void writeValidator(File validatorFile, String validator, String md5) throws IOException {
+		if (validator==null&&md5==null){
+			validatorFile.delete();
+			return;
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(validatorFile), "UTF-8");
+		try {
+			writer.write(((validator==null)?"":validator)+"\n");
+			writer.write(((md5==null)?"":md5)+"\n");
+		} finally {
+			writer.close();
+		}
+	}
+
+	//Content-MD5 is sent in base64, returns its hex form or null if it is missing or malformed
+	private static String decodeContentMd5(String contentMd5){
+		if (contentMd5==null)
+			return null;
+		try {
+			byte[] md5 = TransferUtils.decodeBase64(contentMd5.trim());
+			return (md5.length==16)?TransferUtils.toHex(md5):null;
+		} catch (IllegalArgumentException e){
+			return null;
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package org.openforis.collect.android.misc;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+
+//names of the files of a folder of the server, kept in memory and in a cache file with the ETag and Last-Modified of the listing,
+//so that a refresh is a conditional GET answered with 304 and no body while the folder does not change;
+//the server may answer with a JSON array or CSV lines instead of its HTML directory index
+public class FileListing {
+
+	public static final String IF_NONE_MATCH = "If-None-Match";
+	public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String ETAG = "ETag";
+	public static final String LAST_MODIFIED = "Last-Modified";
+
+	public static final String JSON = "application/json";
+	public static final String CSV = "text/csv";
+	public static final String HTML = "text/html";
+	//structured listings are preferred, the apache index is still accepted
+	public static final String ACCEPT = JSON+", "+CSV+";q=0.9, "+HTML+";q=0.5";
+
+	public static class Result {
+		public final List<String> files;
+		//false if the server answered 304 and the cached listing was kept
+		public final boolean isModified;
+		public final long receivedBytes;
+
+		Result(List<String> files, boolean isModified, long receivedBytes){
+			this.files = files;
+			this.isModified = isModified;
+			this.receivedBytes = receivedBytes;
+		}
+	}
+
+	private final String url;
+	private final File cacheFile;
+
+	private List<String> files;
+	private String etag;
+	private String lastModified;
+	private boolean isLoaded;
+
+	//cacheFile may be null to keep the listing in memory only
+	public FileListing(String url, File cacheFile){
+		this.url = url;
+		this.cacheFile = cacheFile;
+	}
+
+	public String getUrl(){
+		return this.url;
+	}
+
+	//cached names, null if the listing was never received
+	public synchronized List<String> getFiles(){
+		return this.files;
+	}
+
+	//reads the cache file once, does nothing if the listing is already in memory
+	public synchronized List<String> load(){
+		if (this.isLoaded)
+			return this.files;
+		this.isLoaded = true;
+		if (this.cacheFile==null||!this.cacheFile.exists())
+			return null;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.cacheFile), "UTF-8"));
+			try {
+				//a listing cached for another server is ignored
+				if (!this.url.equals(reader.readLine()))
+					return null;
+				String etag = reader.readLine();
+				String lastModified = reader.readLine();
+				if (lastModified==null)
+					return null;
+				List<String> files = new ArrayList<String>();
+				String line;
+				while ((line = reader.readLine())!=null){
+					if (line.length()>0)
+						files.add(line);
+				}
+				this.files = Collections.unmodifiableList(files);
+				this.etag = (etag.length()>0)?etag:null;
+				this.lastModified = (lastModified.length()>0)?lastModified:null;
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e){
+			this.cacheFile.delete();
+		}
+		return this.files;
+	}
+
+	//revalidates the cached listing with the server, the names are downloaded and parsed again only if they changed
+	public Result refresh() throws IOException {
+		String etag;
+		String lastModified;
+		List<String> cachedFiles;
+		synchronized (this){
+			this.load();
+			cachedFiles = this.files;
+			etag = (cachedFiles!=null)?this.etag:null;
+			lastModified = (cachedFiles!=null)?this.lastModified:null;
+		}
+		HttpGet request = new HttpGet(this.url);
+		request.setHeader("Accept", ACCEPT);
+		request.setHeader(HttpCompression.ACCEPT_ENCODING, HttpCompression.GZIP);
+		if (etag!=null)
+			request.setHeader(IF_NONE_MATCH, etag);
+		if (lastModified!=null)
+			request.setHeader(IF_MODIFIED_SINCE, lastModified);
+		HttpResponse response = SharedHttpClient.getClient().execute(request);
+		HttpEntity entity = response.getEntity();
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode==HttpStatus.SC_NOT_MODIFIED&&cachedFiles!=null){
+			if (entity!=null)
+				entity.consumeContent();
+			return new Result(cachedFiles, false, 0);
+		}
+		if (statusCode!=HttpStatus.SC_OK){
+			if (entity!=null)
+				entity.consumeContent();
+			throw new IOException("file listing not received: "+response.getStatusLine());
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (entity!=null){
+			//returns the connection to the pool of the shared client once the body is read
+			InputStream in = entity.getContent();
+			try {
+				HttpCompression.copy(in, body);
+			} finally {
+				in.close();
+			}
+		}
+		Header contentEncoding = (entity!=null)?entity.getContentEncoding():null;
+		Header contentType = (entity!=null)?entity.getContentType():null;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(HttpCompression.decode(new ByteArrayInputStream(body.toByteArray()), (contentEncoding==null)?null:contentEncoding.getValue()), "UTF-8"));
+		List<String> files;
+		try {
+			files = Collections.unmodifiableList(FileListing.parse(reader, (contentType==null)?null:contentType.getValue()));
+		} finally {
+			reader.close();
+		}
+		Header etagHeader = response.getFirstHeader(ETAG);
+		Header lastModifiedHeader = response.getFirstHeader(LAST_MODIFIED);
+		synchronized (this){
+			this.files = files;
+			this.etag = (etagHeader==null)?null:etagHeader.getValue();
+			this.lastModified = (lastModifiedHeader==null)?null:lastModifiedHeader.getValue();
+			this.save();
+		}
+		return new Result(files, true, body.size());
+	}
+
+	private void save(){
+		if (this.cacheFile==null)
+			return;
+		File tempFile = new File(this.cacheFile.getPath()+".tmp");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+			try {
+				writer.write(this.url+"\n");
+				writer.write(((this.etag==null)?"":this.etag)+"\n");
+				writer.write(((this.lastModified==null)?"":this.lastModified)+"\n");
+				for (String file : this.files){
+					writer.write(file+"\n");
+				}
+			} finally {
+				writer.close();
+			}
+			//a listing is never half written when the app is killed
+			if (!tempFile.renameTo(this.cacheFile)){
+				this.cacheFile.delete();
+				tempFile.renameTo(this.cacheFile);
+			}
+		} catch (IOException e){
+			tempFile.delete();
+		}
+	}
+
+	static List<String> parse(BufferedReader reader, String contentType) throws IOException {
+		String type = (contentType==null)?"":contentType.toLowerCase();
+		if (type.startsWith(JSON)){
+			StringBuilder json = new StringBuilder();
+			char[] buffer = new char[HttpCompression.BUFFER_SIZE];
+			int readChars;
+			while ((readChars = reader.read(buffer))!=-1){
+				json.append(buffer, 0, readChars);
+			}
+			return FileListing.parseJson(json.toString());
+		} else if (type.startsWith(CSV)){
+			return FileListing.parseCsv(reader);
+		}
+		return FileListing.parseHtml(reader);
+	}
+
+	//apache directory index, one "<li><a href=...> name</a></li>" line per file
+	static List<String> parseHtml(BufferedReader reader) throws IOException {
+		List<String> files = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine())!=null){
+			if (line.contains("<a href")&&!line.contains("Parent Directory</a></li>")){
+				int start = line.lastIndexOf("\"> ");
+				int end = line.indexOf("</a></li>");
+				if (start!=-1&&end>start+3)
+					files.add(line.substring(start+3, end));
+			}
+		}
+		return files;
+	}
+
+	//name of the file in the first column, an optional "name" header line is skipped
+	static List<String> parseCsv(BufferedReader reader) throws IOException {
+		List<String> files = new ArrayList<String>();
+		String line;
+		boolean isFirstLine = true;
+		while ((line = reader.readLine())!=null){
+			String name = FileListing.readCsvField(line.trim());
+			if (isFirstLine&&name.equalsIgnoreCase("name")){
+				isFirstLine = false;
+				continue;
+			}
+			isFirstLine = false;
+			if (name.length()>0)
+				files.add(name);
+		}
+		return files;
+	}
+
+	//first field of a csv line, quoted fields may contain commas and doubled quotes
+	private static String readCsvField(String line){
+		if (!line.startsWith("\"")){
+			int end = line.indexOf(',');
+			return ((end==-1)?line:line.substring(0, end)).trim();
+		}
+		StringBuilder field = new StringBuilder();
+		int i = 1;
+		while (i<line.length()){
+			char c = line.charAt(i++);
+			if (c!='"'){
+				field.append(c);
+			} else if (i<line.length()&&line.charAt(i)=='"'){
+				field.append('"');
+				i++;
+			} else {
+				break;
+			}
+		}
+		return field.toString();
+	}
+
+	//array of names, or of objects with a "name" member: ["a.xml","b.xml"] or [{"name":"a.xml","size":120},...];
+	//parsed by hand since the org.json classes of the android jar are only stubs outside of a device
+	static List<String> parseJson(String json) throws IOException {
+		List<String> files = new ArrayList<String>();
+		JsonScanner scanner = new JsonScanner(json);
+		scanner.expect('[');
+		if (!scanner.skip(']')){
+			do {
+				if (scanner.peek()=='{'){
+					String name = scanner.readNameMember();
+					if (name!=null)
+						files.add(name);
+				} else {
+					files.add(scanner.readString());
+				}
+			} while (scanner.skip(','));
+			scanner.expect(']');
+		}
+		if (scanner.peek()!=0)
+			throw scanner.malformed();
+		return files;
+	}
+
+	private static class JsonScanner {
+
+		private final String json;
+		private int i;
+
+		JsonScanner(String json){
+			this.json = json;
+		}
+
+		//next character after the white space, 0 at the end of the text
+		char peek(){
+			while (this.i<this.json.length()&&Character.isWhitespace(this.json.charAt(this.i))){
+				this.i++;
+			}
+			return (this.i<this.json.length())?this.json.charAt(this.i):0;
+		}
+
+		boolean skip(char c){
+			if (this.peek()!=c)
+				return false;
+			this.i++;
+			return true;
+		}
+
+		void expect(char c) throws IOException {
+			if (!this.skip(c))
+				throw this.malformed();
+		}
+
+		IOException malformed(){
+			return new IOException("malformed file listing at "+this.i);
+		}
+
+		//reads an object, returns its "name" member or null if it has none
+		String readNameMember() throws IOException {
+			String name = null;
+			this.expect('{');
+			if (this.skip('}'))
+				return null;
+			do {
+				String key = this.readString();
+				this.expect(':');
+				if (key.equals("name")&&this.peek()=='"'){
+					name = this.readString();
+				} else {
+					this.skipValue();
+				}
+			} while (this.skip(','));
+			this.expect('}');
+			return name;
+		}
+
+		String readString() throws IOException {
+			this.expect('"');
+			StringBuilder string = new StringBuilder();
+			while (this.i<this.json.length()){
+				char c = this.json.charAt(this.i++);
+				if (c=='"')
+					return string.toString();
+				if (c!='\\'){
+					string.append(c);
+					continue;
+				}
+				if (this.i>=this.json.length())
+					break;
+				char escaped = this.json.charAt(this.i++);
+				switch (escaped){
+					case 'n': string.append('\n'); break;
+					case 't': string.append('\t'); break;
+					case 'r': string.append('\r'); break;
+					case 'b': string.append('\b'); break;
+					case 'f': string.append('\f'); break;
+					case 'u':
+						if (this.i+4>this.json.length())
+							throw this.malformed();
+						try {
+							string.append((char)Integer.parseInt(this.json.substring(this.i, this.i+4), 16));
+						} catch (NumberFormatException e){
+							throw this.malformed();
+						}
+						this.i += 4;
+						break;
+					default: string.append(escaped);
+				}
+			}
+			throw this.malformed();
+		}
+
+		//strings, numbers, literals and nested arrays or objects
+		void skipValue() throws IOException {
+			char c = this.peek();
+			if (c=='"'){
+				this.readString();
+			} else if (c=='['||c=='{'){
+				char close = (c=='[')?']':'}';
+				this.i++;
+				if (this.skip(close))
+					return;
+				do {
+					if (close=='}'){
+						this.readString();
+						this.expect(':');
+					}
+					this.skipValue();
+				} while (this.skip(','));
+				this.expect(close);
+			} else {
+				int start = this.i;
+				while (this.i<this.json.length()&&"+-.0123456789eEtruefalsn".indexOf(this.json.charAt(this.i))>=0){
+					this.i++;
+				}
+				if (this.i==start)
+					throw this.malformed();
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+
+//posts a file streamed from disk as a part of a multipart form, gzipped on the fly as a GzipCompressingEntity
+//only once the server advertised gzip in the Accept-Encoding of a response (RFC 7694), so that a server without
+//support never receives a compressed body; a compressed form answered with 415 is sent again uncompressed
+//and the compression is given up for good, any other refusal, 400 included, is reported as it is
+public class FileUploader {
+
+	private final String url;
+	private final String fileFieldName;
+	private final String fileContentType;
+	private boolean isCompressed;
+	private boolean isCompressionRefused;
+
+	public FileUploader(String url, String fileFieldName, String fileContentType){
+		this.url = url;
+		this.fileFieldName = fileFieldName;
+		this.fileContentType = fileContentType;
+	}
+
+	public void setCompressed(boolean isCompressed){
+		this.isCompressed = isCompressed;
+	}
+
+	//true once the server advertised gzip, false again once it refused a compressed form
+	public boolean isCompressed(){
+		return this.isCompressed;
+	}
+
+	//a server that refused a compressed form is not trusted when it advertises gzip again
+	public void setCompressionRefused(boolean isCompressionRefused){
+		this.isCompressionRefused = isCompressionRefused;
+		if (isCompressionRefused)
+			this.isCompressed = false;
+	}
+
+	public boolean isCompressionRefused(){
+		return this.isCompressionRefused;
+	}
+
+	//returns the decoded answer of the server
+	public String upload(File file, Map<String,String> fields) throws IOException {
+		HttpResponse response = SharedHttpClient.getClient().execute(this.createRequest(file, fields, this.isCompressed));
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (this.isCompressed&&statusCode==HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE){
+			FileUploader.consume(response);
+			this.setCompressionRefused(true);
+			response = SharedHttpClient.getClient().execute(this.createRequest(file, fields, false));
+			statusCode = response.getStatusLine().getStatusCode();
+		}
+		Header acceptEncoding = response.getFirstHeader(HttpCompression.ACCEPT_ENCODING);
+		if (acceptEncoding!=null&&!this.isCompressionRefused)
+			this.isCompressed = HttpCompression.isGzipAccepted(acceptEncoding.getValue());
+		if (statusCode<200||statusCode>=300){
+			FileUploader.consume(response);
+			throw new IOException("upload of "+file.getName()+" refused: "+response.getStatusLine());
+		}
+		HttpEntity entity = response.getEntity();
+		if (entity==null)
+			return "";
+		Header contentEncoding = entity.getContentEncoding();
+		InputStream in = HttpCompression.decode(entity.getContent(), (contentEncoding==null)?null:contentEncoding.getValue());
+		ByteArrayOutputStream answer = new ByteArrayOutputStream();
+		try {
+			HttpCompression.copy(in, answer);
+		} finally {
+			in.close();
+		}
+		return answer.toString("UTF-8");
+	}
+
+	private HttpPost createRequest(File file, Map<String,String> fields, boolean isCompressed){
+		HttpPost request = new HttpPost(this.url);
+		HttpEntity form = new MultipartFileEntity(fields, this.fileFieldName, file, this.fileContentType);
+		request.setEntity((isCompressed)?new GzipCompressingEntity(form):form);
+		request.setHeader(HttpCompression.ACCEPT_ENCODING, HttpCompression.GZIP);
+		return request;
+	}
+
+	private static void consume(HttpResponse response) throws IOException {
+		if (response.getEntity()!=null)
+			response.getEntity().consumeContent();
+	}
+}
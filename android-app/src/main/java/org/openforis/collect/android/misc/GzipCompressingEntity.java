@@ -0,0 +1,45 @@
+package org.openforis.collect.android.misc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+//request body compressed on the fly while it is written to the connection, sent chunked since its length is not known in advance
+public class GzipCompressingEntity extends HttpEntityWrapper {
+
+	public GzipCompressingEntity(HttpEntity entity){
+		super(entity);
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return new BasicHeader(HttpCompression.CONTENT_ENCODING, HttpCompression.GZIP);
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isChunked() {
+		return true;
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream==null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		InputStream in = this.wrappedEntity.getContent();
+		try {
+			HttpCompression.compress(in, outstream);
+		} finally {
+			in.close();
+		}
+	}
+}
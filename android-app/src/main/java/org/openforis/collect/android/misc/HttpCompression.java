@@ -0,0 +1,69 @@
+package org.openforis.collect.android.misc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//gzip content coding of the data exchanged with the server, everything is streamed through fixed size buffers
+public class HttpCompression {
+
+	public static final String GZIP = "gzip";
+	public static final String ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String CONTENT_ENCODING = "Content-Encoding";
+
+	public static final int BUFFER_SIZE = 8*1024;
+
+	//stream of the decoded body of a response, according to the content encoding sent by the server
+	public static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+		if (HttpCompression.isGzip(contentEncoding)){
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		return in;
+	}
+
+	//writes the content of the given stream gzipped, returns the number of uncompressed bytes
+	public static long compress(InputStream in, OutputStream out) throws IOException {
+		GZIPOutputStream gzipOut = new GZIPOutputStream(out, BUFFER_SIZE);
+		long copiedBytes = HttpCompression.copy(in, gzipOut);
+		gzipOut.finish();
+		gzipOut.flush();
+		return copiedBytes;
+	}
+
+	public static long copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long copiedBytes = 0;
+		int readBytes;
+		while ((readBytes = in.read(buffer))!=-1){
+			out.write(buffer, 0, readBytes);
+			copiedBytes += readBytes;
+		}
+		return copiedBytes;
+	}
+
+	public static boolean isGzip(String contentEncoding){
+		return contentEncoding!=null&&contentEncoding.trim().toLowerCase().contains(GZIP);
+	}
+
+	//whether an Accept-Encoding sent by the server in a response lists gzip, the way a server advertises the codings
+	//it accepts in request bodies (RFC 7694); "gzip;q=0" refuses it
+	public static boolean isGzipAccepted(String acceptEncoding){
+		if (acceptEncoding==null)
+			return false;
+		for (String coding : acceptEncoding.split(",")){
+			String[] parameters = coding.split(";");
+			String name = parameters[0].trim().toLowerCase();
+			if (!name.equals(GZIP)&&!name.equals("x-gzip"))
+				continue;
+			for (int i=1;i<parameters.length;i++){
+				String parameter = parameters[i].replace(" ", "").toLowerCase();
+				if (parameter.startsWith("q=")&&parameter.matches("q=0(\\.0*)?"))
+					return false;
+			}
+			return true;
+		}
+		return false;
+	}
+}
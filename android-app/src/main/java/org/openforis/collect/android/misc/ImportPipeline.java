@@ -0,0 +1,221 @@
+package org.openforis.collect.android.misc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//imports records from the server in three stages connected by bounded queues: the workers of a FileDownloader
+//download the files to the target folder, resuming and verifying them, parse workers turn the files into records
+//and a single writer persists the records in batches, so downloads overlap with parsing and with the database writes,
+//and a slow stage holds back the ones before it
+public class ImportPipeline<T> {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 8;
+	public static final int DEFAULT_BATCH_SIZE = 20;
+	//a commit costs more than the wait for the next records, as long as the writer is not the slowest stage
+	private static final long BATCH_DELAY = 100;
+
+	//called by several parse workers at the same time
+	public interface Parser<T> {
+		public T parse(String name, File file) throws Exception;
+	}
+
+	//called by the writer only, a failed batch fails all of its records
+	public interface Persister<T> {
+		public void persist(List<T> records) throws Exception;
+	}
+
+	public static class Result {
+		public int importedNo;
+		//file name -> reason
+		public final Map<String,String> failed = new LinkedHashMap<String,String>();
+		public long downloadedBytes;
+		public int batchesNo;
+		public long time;
+
+		//records per second
+		public double getThroughput(){
+			return (this.time>0)?this.importedNo*1000.0/this.time:0;
+		}
+	}
+
+	private static class Item<T> {
+		final String name;
+		final String url;
+		File file;
+		T record;
+
+		Item(String name, String url){
+			this.name = name;
+			this.url = url;
+		}
+	}
+
+	private final FileDownloader downloader;
+	private final File folder;
+	private final int parseWorkersNo;
+	private final int queueCapacity;
+	private final int batchSize;
+
+	//the number of workers of the downloader is the number of files downloaded at the same time
+	public ImportPipeline(FileDownloader downloader, File folder, int parseWorkersNo, int queueCapacity, int batchSize){
+		this.downloader = downloader;
+		this.folder = folder;
+		this.parseWorkersNo = parseWorkersNo;
+		this.queueCapacity = queueCapacity;
+		this.batchSize = batchSize;
+	}
+
+	//imports the files, file name -> url, and returns once the last batch is persisted
+	public Result run(Map<String,String> files, final Parser<T> parser, final Persister<T> persister) throws InterruptedException {
+		long startTime = System.currentTimeMillis();
+		final Result result = new Result();
+		//an item without a file marks the end of the stream
+		final Item<T> end = new Item<T>(null, null);
+		final BlockingQueue<Item<T>> parseQueue = new ArrayBlockingQueue<Item<T>>(this.queueCapacity);
+		final BlockingQueue<Item<T>> persistQueue = new ArrayBlockingQueue<Item<T>>(this.queueCapacity*this.batchSize);
+		final AtomicInteger pendingDownloadsNo = new AtomicInteger(files.size());
+		final AtomicInteger activeParseWorkersNo = new AtomicInteger(this.parseWorkersNo);
+		List<Future<File>> downloads = new ArrayList<Future<File>>(files.size());
+		ExecutorService executor = Executors.newFixedThreadPool(this.parseWorkersNo+1);
+		try {
+			for (int i=0;i<this.parseWorkersNo;i++){
+				executor.execute(new Runnable(){
+					@Override
+					public void run() {
+						try {
+							Item<T> item;
+							while ((item = parseQueue.take())!=end){
+								try {
+									item.record = parser.parse(item.name, item.file);
+									persistQueue.put(item);
+								} catch (InterruptedException e){
+									throw e;
+								} catch (Exception e){
+									ImportPipeline.fail(result, item.name, "not parsed: "+e);
+								}
+							}
+						} catch (InterruptedException e){
+							Thread.currentThread().interrupt();
+						} finally {
+							if (activeParseWorkersNo.decrementAndGet()==0)
+								ImportPipeline.putEnd(persistQueue, end, 1);
+						}
+					}
+				});
+			}
+			executor.execute(new Runnable(){
+				@Override
+				public void run() {
+					List<Item<T>> batch = new ArrayList<Item<T>>(ImportPipeline.this.batchSize);
+					try {
+						boolean isEnd = false;
+						while (!isEnd){
+							//waits for the first record, then for the ones parsed within BATCH_DELAY, up to the size of a batch
+							batch.add(persistQueue.take());
+							long deadline = System.currentTimeMillis()+BATCH_DELAY;
+							while (batch.size()<ImportPipeline.this.batchSize&&batch.get(batch.size()-1)!=end){
+								Item<T> item = persistQueue.poll(deadline-System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+								if (item==null)
+									break;
+								batch.add(item);
+							}
+							if (batch.get(batch.size()-1)==end){
+								batch.remove(batch.size()-1);
+								isEnd = true;
+							}
+							if (!batch.isEmpty())
+								ImportPipeline.this.persist(batch, persister, result);
+							batch.clear();
+						}
+					} catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			if (files.isEmpty())
+				ImportPipeline.putEnd(parseQueue, end, this.parseWorkersNo);
+			for (Map.Entry<String,String> entry : files.entrySet()){
+				final Item<T> item = new Item<T>(entry.getKey(), entry.getValue());
+				//the listener runs on the worker of the downloader, which waits while the parse queue is full
+				downloads.add(this.downloader.download(item.url, this.folder, item.name, null, new FileDownloader.Listener(){
+					@Override
+					public void onFinished(String url, File file, FileDownloader.Result downloadResult) {
+						try {
+							synchronized (result){
+								result.downloadedBytes += downloadResult.downloadedBytes;
+							}
+							if (file==null){
+								ImportPipeline.fail(result, item.name, "not downloaded: "+downloadResult.error);
+							} else {
+								item.file = file;
+								parseQueue.put(item);
+							}
+						} catch (InterruptedException e){
+							Thread.currentThread().interrupt();
+						} finally {
+							if (pendingDownloadsNo.decrementAndGet()==0)
+								ImportPipeline.putEnd(parseQueue, end, ImportPipeline.this.parseWorkersNo);
+						}
+					}
+				}));
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			executor.shutdownNow();
+			//the downloads still queued when the import is interrupted
+			for (Future<File> download : downloads){
+				download.cancel(true);
+			}
+		}
+		result.time = System.currentTimeMillis()-startTime;
+		return result;
+	}
+
+	private void persist(List<Item<T>> batch, Persister<T> persister, Result result){
+		List<T> records = new ArrayList<T>(batch.size());
+		for (Item<T> item : batch){
+			records.add(item.record);
+		}
+		try {
+			persister.persist(Collections.unmodifiableList(records));
+			synchronized (result){
+				result.importedNo += records.size();
+				result.batchesNo++;
+			}
+		} catch (Exception e){
+			for (Item<T> item : batch){
+				ImportPipeline.fail(result, item.name, "not saved: "+e);
+			}
+		}
+	}
+
+	private static void fail(Result result, String name, String reason){
+		synchronized (result){
+			result.failed.put(name, reason);
+		}
+	}
+
+	//one end of the stream for every worker of the next stage
+	private static <T> void putEnd(BlockingQueue<Item<T>> queue, Item<T> end, int workersNo){
+		try {
+			for (int i=0;i<workersNo;i++){
+				queue.put(end);
+			}
+		} catch (InterruptedException e){
+			//the import was cancelled
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HTTP;
+
+//multipart/form-data body whose file part is copied from disk straight to the connection through a fixed size buffer,
+//so the memory used does not depend on the size of the file
+public class MultipartFileEntity extends AbstractHttpEntity {
+
+	public static final int BUFFER_SIZE = 8*1024;
+
+	private static final String LINE_END = "\r\n";
+	private static final String TWO_HYPHENS = "--";
+
+	private final String boundary;
+	private final Map<String,String> fields;
+	private final String fileFieldName;
+	private final File file;
+	private final String fileContentType;
+
+	public MultipartFileEntity(Map<String,String> fields, String fileFieldName, File file, String fileContentType){
+		this.boundary = "----CollectMobileBoundary"+Long.toHexString(System.currentTimeMillis());
+		this.fields = new LinkedHashMap<String,String>(fields);
+		this.fileFieldName = fileFieldName;
+		this.file = file;
+		this.fileContentType = fileContentType;
+		this.setContentType("multipart/form-data; boundary="+this.boundary);
+		this.setChunked(false);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		try {
+			return this.getHead().length+this.file.length()+this.getTail().length;
+		} catch (UnsupportedEncodingException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		Vector<InputStream> parts = new Vector<InputStream>();
+		parts.add(new ByteArrayInputStream(this.getHead()));
+		parts.add(new FileInputStream(this.file));
+		parts.add(new ByteArrayInputStream(this.getTail()));
+		return new SequenceInputStream(parts.elements());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream==null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		outstream.write(this.getHead());
+		InputStream in = new FileInputStream(this.file);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int readBytes;
+			while ((readBytes = in.read(buffer))!=-1){
+				outstream.write(buffer, 0, readBytes);
+			}
+		} finally {
+			in.close();
+		}
+		outstream.write(this.getTail());
+		outstream.flush();
+	}
+
+	//text fields followed by the header of the file part
+	private byte[] getHead() throws UnsupportedEncodingException {
+		StringBuilder head = new StringBuilder();
+		for (Map.Entry<String,String> field : this.fields.entrySet()){
+			head.append(TWO_HYPHENS).append(this.boundary).append(LINE_END);
+			head.append("Content-Disposition: form-data; name=\"").append(field.getKey()).append("\"").append(LINE_END);
+			head.append("Content-Type: text/plain; charset=").append(HTTP.UTF_8).append(LINE_END);
+			head.append(LINE_END);
+			head.append(field.getValue()).append(LINE_END);
+		}
+		head.append(TWO_HYPHENS).append(this.boundary).append(LINE_END);
+		head.append("Content-Disposition: form-data; name=\"").append(this.fileFieldName).append("\"").append(LINE_END);
+		head.append("Content-Type: ").append(this.fileContentType).append(LINE_END);
+		head.append(LINE_END);
+		return head.toString().getBytes(HTTP.UTF_8);
+	}
+
+	private byte[] getTail() throws UnsupportedEncodingException {
+		return (LINE_END+TWO_HYPHENS+this.boundary+TWO_HYPHENS+LINE_END).getBytes(HTTP.UTF_8);
+	}
+}
@@ -0,0 +1,102 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+//zip archive of exported records built while it is written to the connection, one deflated entry per file,
+//followed by an index entry listing the name, length and md5 of every file so that the server can check the bundle
+//before saving all of its records in one transaction
+public class RecordBundleEntity extends AbstractHttpEntity {
+
+	public static final String CONTENT_TYPE = "application/zip";
+	public static final String INDEX_ENTRY = "index.txt";
+
+	private final List<File> files;
+
+	public RecordBundleEntity(List<File> files){
+		this.files = new ArrayList<File>(files);
+		this.setContentType(CONTENT_TYPE);
+		this.setChunked(true);
+	}
+
+	public List<File> getFiles(){
+		return this.files;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	//the bundle is built in memory here, HttpClient itself only calls writeTo
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+		this.writeTo(bundle);
+		return new ByteArrayInputStream(bundle.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream==null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		ZipOutputStream zip = new ZipOutputStream(outstream);
+		StringBuilder index = new StringBuilder();
+		byte[] buffer = new byte[HttpCompression.BUFFER_SIZE];
+		for (File file : this.files){
+			MessageDigest digest = RecordBundleEntity.createDigest();
+			zip.putNextEntry(new ZipEntry(file.getName()));
+			long length = 0;
+			InputStream in = new FileInputStream(file);
+			try {
+				int readBytes;
+				while ((readBytes = in.read(buffer))!=-1){
+					zip.write(buffer, 0, readBytes);
+					digest.update(buffer, 0, readBytes);
+					length += readBytes;
+				}
+			} finally {
+				in.close();
+			}
+			zip.closeEntry();
+			index.append(file.getName()).append('\t').append(length).append('\t').append(TransferUtils.toHex(digest.digest())).append('\n');
+		}
+		zip.putNextEntry(new ZipEntry(INDEX_ENTRY));
+		zip.write(index.toString().getBytes("UTF-8"));
+		zip.closeEntry();
+		//finishes the archive without closing the connection
+		zip.finish();
+		outstream.flush();
+	}
+
+	private static MessageDigest createDigest(){
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -8,6 +8,7 @@ import org.openforis.collect.android.R;
 import org.openforis.collect.android.fields.TaxonField;
 import org.openforis.collect.android.lists.DownloadActivity;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.DataManager;
 import org.openforis.collect.android.management.TaxonManager;
 import org.openforis.collect.persistence.TaxonDao;
 import org.openforis.collect.persistence.TaxonVernacularNameDao;
@@ -193,37 +194,40 @@ public class SearchTaxonActivity extends Activity {
 
         @Override
         public void run() {         
-        	//Open connection with database
-        	JdbcDaoSupport jdbcDao  = new JdbcDaoSupport();
-        	jdbcDao.getConnection();    	
-        	//Search results 
-        	this.lstTaxonOccurence = new ArrayList<TaxonOccurrence>();
-        	if(SearchTaxonActivity.this.taxonManager != null){
-        		Log.i(getResources().getString(R.string.app_name), "Search by: " + SearchTaxonActivity.this.criteria);
+        	//the import of downloaded records may be using the connection in a transaction
+        	synchronized (DataManager.class){
+	        	//Open connection with database
+	        	JdbcDaoSupport jdbcDao  = new JdbcDaoSupport();
+	        	jdbcDao.getConnection();    	
+	        	//Search results 
+	        	this.lstTaxonOccurence = new ArrayList<TaxonOccurrence>();
+	        	if(SearchTaxonActivity.this.taxonManager != null){
+	        		Log.i(getResources().getString(R.string.app_name), "Search by: " + SearchTaxonActivity.this.criteria);
         		    		
-        		if(SearchTaxonActivity.this.criteria.equalsIgnoreCase("Code")){
-    				Log.i(getResources().getString(R.string.app_name), "Search by Code");
-    				lstTaxonOccurence = SearchTaxonActivity.this.taxonManager.findByCode(SearchTaxonActivity.this.taxonomy, strSearch, 1000);			
-    			}
-    			else if (SearchTaxonActivity.this.criteria.equalsIgnoreCase("SciName")){
-    				Log.i(getResources().getString(R.string.app_name), "Search by Scientific name");
-    				lstTaxonOccurence = SearchTaxonActivity.this.taxonManager.findByScientificName(SearchTaxonActivity.this.taxonomy, strSearch, 1000);		
-    			}
-    			else if (SearchTaxonActivity.this.criteria.equalsIgnoreCase("VernacularName")){
-    				Log.i(getResources().getString(R.string.app_name), "Search by VernacularName");
-    				lstTaxonOccurence = SearchTaxonActivity.this.taxonManager.findByVernacularName(SearchTaxonActivity.this.taxonomy, strSearch, 1000);
+	        		if(SearchTaxonActivity.this.criteria.equalsIgnoreCase("Code")){
+	    				Log.i(getResources().getString(R.string.app_name), "Search by Code");
+	    				lstTaxonOccurence = SearchTaxonActivity.this.taxonManager.findByCode(SearchTaxonActivity.this.taxonomy, strSearch, 1000);			
+	    			}
+	    			else if (SearchTaxonActivity.this.criteria.equalsIgnoreCase("SciName")){
+	    				Log.i(getResources().getString(R.string.app_name), "Search by Scientific name");
+	    				lstTaxonOccurence = SearchTaxonActivity.this.taxonManager.findByScientificName(SearchTaxonActivity.this.taxonomy, strSearch, 1000);		
+	    			}
+	    			else if (SearchTaxonActivity.this.criteria.equalsIgnoreCase("VernacularName")){
+	    				Log.i(getResources().getString(R.string.app_name), "Search by VernacularName");
+	    				lstTaxonOccurence = SearchTaxonActivity.this.taxonManager.findByVernacularName(SearchTaxonActivity.this.taxonomy, strSearch, 1000);
     					
 
-    			}    		
-    			else{
-    				Log.i(getResources().getString(R.string.app_name), "Undefined criteria is: " + SearchTaxonActivity.this.criteria);
-    			}
-    		}else{
-    			Log.i(getResources().getString(R.string.app_name), "Species Manager is NULL!");
-    		}   	
+	    			}    		
+	    			else{
+	    				Log.i(getResources().getString(R.string.app_name), "Undefined criteria is: " + SearchTaxonActivity.this.criteria);
+	    			}
+	    		}else{
+	    			Log.i(getResources().getString(R.string.app_name), "Species Manager is NULL!");
+	    		}   	
     	    	
-        	//Close connection
-        	JdbcDaoSupport.close();
+	        	//Close connection
+	        	JdbcDaoSupport.close();
+        	}
             handler.sendEmptyMessage(0);
         }
 
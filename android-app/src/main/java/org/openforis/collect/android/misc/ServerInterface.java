@@ -1,72 +1,129 @@
 package org.openforis.collect.android.misc;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 
 import android.util.Log;
 
 public class ServerInterface {
 
-        public static final String SERVER_URL = "http://ar5.arbonaut.com/webforest/fao-mobile/save-received-data-file";
-
-        public static String sendDataFiles(String xml, boolean overwrite) {
-                return postSyncXML(xml, overwrite);
+        //paths relative to the base url of SharedHttpClient
+        public static final String UPLOAD_PATH = "/webforest/fao-mobile/save-received-data-file";
+        public static final String CHUNKED_UPLOAD_PATH = "/webforest/fao-mobile/upload-chunks";
+        public static final String DOWNLOAD_FOLDER_PATH = "/awfdatademo/planned/";
+        public static final String SYNC_PATH = "/webforest/fao-mobile/sync";
+        public static final String BUNDLE_UPLOAD_PATH = "/webforest/fao-mobile/save-received-data-bundle";
+        
+        //files bigger than this are sent in resumable chunks
+        public static final long CHUNKED_UPLOAD_THRESHOLD = 256*1024;
+        
+        //cleared when the server does not implement the chunked upload protocol
+        private static volatile boolean isChunkedUploadSupported = true;
+        
+        //set once the server advertises gzip in the Accept-Encoding of a response to an upload,
+        //cleared for good when it refuses a gzipped upload
+        private static volatile boolean isGzipUploadSupported = false;
+        private static volatile boolean isGzipUploadRefused = false;
+        
+        //cleared when the server does not accept bundles of records
+        private static volatile boolean isBundleUploadSupported = true;
+        
+        private static final String FILE_LISTING_CACHE = "server_files.txt";
+        private static FileListing fileListing;
+
+        public static String sendDataFiles(File xmlFile, boolean overwrite) {
+                if (isChunkedUploadSupported&&xmlFile.length()>CHUNKED_UPLOAD_THRESHOLD){
+                        try {
+                                return sendChunks(xmlFile, overwrite);
+                        } catch (TransferUtils.UnsupportedException e) {
+                                Log.i("ServerInterface", e.getMessage()+", sending whole files from now on");
+                                isChunkedUploadSupported = false;
+                        } catch (IOException e) {
+                                //resumed from the last acknowledged chunk by the next attempt
+                                Log.w("ServerInterface", "chunked upload of "+xmlFile.getName()+" interrupted: "+e);
+                                return null;
+                        }
+                }
+                return postSyncXML(xmlFile, overwrite);
+        }
+        
+        public static boolean isBundleUploadSupported(){
+                return isBundleUploadSupported;
+        }
+        
+        //sends the files in one request, so that the server saves them in one transaction,
+        //or one by one if the server does not accept bundles, returns null if the bundle could not be sent
+        public static BundleUploader.Result sendBundle(List<File> xmlFiles, boolean overwrite) {
+                if (isBundleUploadSupported){
+                        Map<String,String> parameters = new LinkedHashMap<String,String>();
+                        parameters.put("survey_id","99");
+                        parameters.put("username","collect");
+                        parameters.put("overwrite",String.valueOf(overwrite));
+                        try {
+                                return new BundleUploader(SharedHttpClient.getUrl(BUNDLE_UPLOAD_PATH)).upload(xmlFiles, parameters);
+                        } catch (TransferUtils.UnsupportedException e) {
+                                Log.i("ServerInterface", e.getMessage()+", sending files one by one from now on");
+                                isBundleUploadSupported = false;
+                        } catch (IOException e) {
+                                Log.w("ServerInterface", "bundle of "+xmlFiles.size()+" files not sent: "+e);
+                                return null;
+                        }
+                }
+                BundleUploader.Result result = new BundleUploader.Result();
+                for (File xmlFile : xmlFiles){
+                        String response = sendDataFiles(xmlFile, overwrite);
+                        if (response!=null){
+                                result.saved.put(xmlFile.getName(), response);
+                        } else {
+                                result.refused.put(xmlFile.getName(), "no response from the server");
+                        }
+                }
+                return result;
+        }
+        
+        private static String sendChunks(File xmlFile, boolean overwrite) throws IOException {
+                Map<String,String> parameters = new LinkedHashMap<String,String>();
+                parameters.put("survey_id","99");
+                parameters.put("username","collect");
+                parameters.put("overwrite",String.valueOf(overwrite));
+                ChunkedUploader uploader = new ChunkedUploader(SharedHttpClient.getUrl(CHUNKED_UPLOAD_PATH), ChunkedUploader.DEFAULT_CHUNK_SIZE);
+                //the chunks are gzipped like the uploads of whole files
+                uploader.setCompressed(isGzipUploadSupported);
+                try {
+                        return uploader.upload(xmlFile, parameters);
+                } finally {
+                        if (isGzipUploadSupported&&!uploader.isCompressed()){
+                                Log.i("ServerInterface", "compressed chunk refused, sending uncompressed data from now on");
+                                isGzipUploadSupported = false;
+                                isGzipUploadRefused = true;
+                        }
+                }
         }
 
-        public static List<String> getFilesList(){        	
-        	ArrayList<String> filesList = new ArrayList<String>();
-        	try {        
-        			HttpResponse response = null;
-        	        HttpClient client = new DefaultHttpClient();
-        	        HttpGet request = new HttpGet();
-        	        URI downloadFolder = new URI("http://ar5.arbonaut.com/awfdatademo/planned/");
-        	        //URI downloadFolder = new URI("http://cs.uef.fi/paikka/karol/doktorat/");
-        	        //new URI("http://cs.uef.fi/paikka/karol/listfiles.php?request_type='get_files_list'")
-        	        request.setURI(downloadFolder);
-        	        response = client.execute(request);
-        	        BufferedReader r = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
-
-        	        StringBuilder total = new StringBuilder();
-
-        	        String line = null;
-
-        	       while ((line = r.readLine()) != null) {
-        	    	   total.append(line);
-        	    	   if (line.contains("<a href")&&!line.contains("Parent Directory</a></li>")){
-        	    		   line = line.substring(line.lastIndexOf("\"> ")+3,line.indexOf("</a></li>"));
-        	    		   filesList.add(line);
-        	    	   }
-        	    	   
-        	       }
-        	    } catch (URISyntaxException e) {
-        	        e.printStackTrace();
-        	    } catch (ClientProtocolException e) {
-        	        // TODO Auto-generated catch block
-        	        e.printStackTrace();
-        	    } catch (IOException e) {
-        	        // TODO Auto-generated catch block
-        	        e.printStackTrace();
-        	    }   
-        	    return filesList;        	        	
+        //listing of the download folder, cached in the given folder and revalidated with a conditional GET
+        public static synchronized FileListing getFileListing(File cacheFolder){
+        	String url = SharedHttpClient.getUrl(DOWNLOAD_FOLDER_PATH);
+        	if (fileListing==null||!fileListing.getUrl().equals(url)){
+        		fileListing = new FileListing(url, (cacheFolder==null)?null:new File(cacheFolder, FILE_LISTING_CACHE));
+        	}
+        	return fileListing;
+        }
+        
+        //must not be called on the main thread
+        public static List<String> getFilesList(){
+        	try {
+        		return getFileListing(null).refresh().files;
+        	} catch (IOException e) {
+        		Log.w("ServerInterface", "file listing not received: "+e);
+        		List<String> cachedFiles = getFileListing(null).getFiles();
+        		return (cachedFiles!=null)?cachedFiles:new ArrayList<String>();
+        	}
         }
         /*private static String executeHttpRequest(String data) {
         		Log.e("executeHttpRequest","=="+data);
@@ -101,44 +158,30 @@ public class ServerInterface {
                 return result;
         }*/
         
-        private static String postSyncXML(String xml, boolean overwrite) {
-            String url = "http://ar5.arbonaut.com/webforest/fao-mobile/save-received-data-file";
-            HttpClient httpclient = new DefaultHttpClient();  
-            /* String encode_url=URLEncoder.encode(url,"UTF-8");
-         	String decode_url=URLDecoder.decode(encode_url,"UTF-8");*/
-            List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>();
-            nameValuePairs.add(new BasicNameValuePair("datafile_xml_string",xml));
-            nameValuePairs.add(new BasicNameValuePair("survey_id","99"));
-            nameValuePairs.add(new BasicNameValuePair("username","collect"));
-            nameValuePairs.add(new BasicNameValuePair("overwrite",String.valueOf(overwrite)));
-
-            UrlEncodedFormEntity form;
+        //the file is streamed from disk as the datafile_xml_string part of a multipart form, instead of being read into memory and url-encoded,
+        //the form is gzipped once the server advertised gzip, unless it refused a compressed upload before
+        private static String postSyncXML(File xmlFile, boolean overwrite) {
+            Map<String,String> fields = new LinkedHashMap<String,String>();
+            fields.put("survey_id","99");
+            fields.put("username","collect");
+            fields.put("overwrite",String.valueOf(overwrite));
+
+            FileUploader uploader = new FileUploader(SharedHttpClient.getUrl(UPLOAD_PATH), "datafile_xml_string", "text/xml; charset="+HTTP.UTF_8);
+            uploader.setCompressed(isGzipUploadSupported);
+            uploader.setCompressionRefused(isGzipUploadRefused);
             try {
-                form = new UrlEncodedFormEntity(nameValuePairs);
-                        form.setContentEncoding(HTTP.UTF_8);
-                HttpPost httppost = new HttpPost(url);
-
-                httppost.setEntity(form);
-
-                HttpResponse response = (HttpResponse) httpclient .execute(httppost);
-                HttpEntity resEntity = response.getEntity();  
-                String resp = EntityUtils.toString(resEntity);
-                /*try
-                {
-                    final String s = new String(resp.getBytes(), "UTF-8");
-                }
-                catch (UnsupportedEncodingException e)
-                {
-                    Log.e("utf8", "conversion", e);
-                }*/
-                return resp;
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-            } catch (ClientProtocolException e) {
-                e.printStackTrace();
+                return uploader.upload(xmlFile, fields);
             } catch (IOException e) {
-                e.printStackTrace();
+                Log.w("ServerInterface", "upload of "+xmlFile.getName()+" failed: "+e);
+            } finally {
+                if (uploader.isCompressionRefused()&&!isGzipUploadRefused){
+                    Log.i("ServerInterface", "compressed upload refused, sending uncompressed data from now on");
+                    isGzipUploadRefused = true;
+                } else if (uploader.isCompressed()&&!isGzipUploadSupported){
+                    Log.i("ServerInterface", "gzip advertised by the server, sending compressed data from now on");
+                }
+                isGzipUploadSupported = uploader.isCompressed();
             }
             return null;
-        }        
+        }
 }
@@ -0,0 +1,83 @@
+package org.openforis.collect.android.misc;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+
+//one HttpClient for the whole application: its pooled connections are kept alive between requests,
+//so a batch of uploads or downloads pays the TCP (and TLS) handshake once per connection instead of once per request,
+//the entity of every response must be consumed or the connection is not returned to the pool
+public class SharedHttpClient {
+
+	public static final String DEFAULT_BASE_URL = "http://ar5.arbonaut.com";
+
+	//upload queue and downloader workers together
+	public static final int MAX_CONNECTIONS = 6;
+	public static final int CONNECT_TIMEOUT = 30*1000;
+	public static final int SOCKET_TIMEOUT = 60*1000;
+	//time to wait for a free pooled connection
+	public static final long POOL_TIMEOUT = 60*1000;
+	public static final int SOCKET_BUFFER_SIZE = 8*1024;
+
+	private static volatile String baseUrl = DEFAULT_BASE_URL;
+	private static DefaultHttpClient client;
+
+	public static synchronized HttpClient getClient(){
+		if (SharedHttpClient.client==null){
+			HttpParams params = new BasicHttpParams();
+			HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+			HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+			HttpProtocolParams.setUseExpectContinue(params, false);
+			HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+			HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+			HttpConnectionParams.setSocketBufferSize(params, SOCKET_BUFFER_SIZE);
+			HttpConnectionParams.setStaleCheckingEnabled(params, true);
+			//small requests on a kept-alive connection must not wait for the ack of the previous packet
+			HttpConnectionParams.setTcpNoDelay(params, true);
+			ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+			ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS));
+			ConnManagerParams.setTimeout(params, POOL_TIMEOUT);
+			SchemeRegistry schemes = new SchemeRegistry();
+			schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			schemes.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+			ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, schemes);
+			SharedHttpClient.client = new DefaultHttpClient(connectionManager, params);
+		}
+		return SharedHttpClient.client;
+	}
+
+	//closes the pooled connections, the next call of getClient creates a new client
+	public static synchronized void shutdown(){
+		if (SharedHttpClient.client!=null){
+			SharedHttpClient.client.getConnectionManager().shutdown();
+			SharedHttpClient.client = null;
+		}
+	}
+
+	//scheme, host and optional port of the server, without a trailing slash
+	public static void setBaseUrl(String url){
+		SharedHttpClient.baseUrl = (url.endsWith("/"))?url.substring(0, url.length()-1):url;
+	}
+
+	public static String getBaseUrl(){
+		return SharedHttpClient.baseUrl;
+	}
+
+	//path starting with a slash
+	public static String getUrl(String path){
+		return SharedHttpClient.baseUrl+path;
+	}
+}
@@ -0,0 +1,287 @@
+package org.openforis.collect.android.misc;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+//records known to one side of a sync: record key (root entity keys), modification date and md5 of the record xml,
+//entries are spread over buckets by key so that two manifests can first be compared bucket by bucket,
+//and only the entries of the buckets that differ have to be exchanged
+public class SyncManifest {
+
+	public static final int MIN_BUCKETS_NO = 16;
+	public static final int MAX_BUCKETS_NO = 4096;
+	//average number of entries in a bucket
+	private static final int BUCKET_SIZE = 8;
+	//bytes of the md5 of a bucket kept in its digest
+	public static final int DIGEST_LENGTH = 6;
+
+	public static class Entry {
+		public final String key;
+		public final long modified;
+		public final String hash;
+
+		public Entry(String key, long modified, String hash){
+			this.key = key;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		private String toLine() throws UnsupportedEncodingException {
+			return URLEncoder.encode(this.key, "UTF-8")+"\t"+this.modified+"\t"+this.hash;
+		}
+
+		//the modification date is left out: an imported record is saved with the date of the import,
+		//while its content is the same as on the other side
+		private String toDigestLine() throws UnsupportedEncodingException {
+			return URLEncoder.encode(this.key, "UTF-8")+"\t"+this.hash;
+		}
+
+		private static Entry fromLine(String line) throws IOException {
+			String[] fields = line.split("\t");
+			if (fields.length!=3)
+				throw new IOException("invalid manifest entry: "+line);
+			try {
+				return new Entry(URLDecoder.decode(fields[0], "UTF-8"), Long.parseLong(fields[1]), fields[2]);
+			} catch (NumberFormatException e){
+				throw new IOException("invalid manifest entry: "+line);
+			}
+		}
+	}
+
+	//what has to move to bring both sides up to date
+	public static class Delta {
+		//keys newer or only present on this side
+		public final List<String> toUpload = new ArrayList<String>();
+		//keys newer or only present on the other side
+		public final List<String> toDownload = new ArrayList<String>();
+		//key to download -> md5 of the record on the other side, to verify the downloaded file
+		public final Map<String,String> hashes = new HashMap<String,String>();
+		//keys with the same content on both sides
+		public int unchangedNo;
+
+		public boolean isEmpty(){
+			return this.toUpload.isEmpty()&&this.toDownload.isEmpty();
+		}
+	}
+
+	private final TreeMap<String,Entry> entries = new TreeMap<String,Entry>();
+
+	public void add(Entry entry){
+		this.entries.put(entry.key, entry);
+	}
+
+	public Entry get(String key){
+		return this.entries.get(key);
+	}
+
+	public Collection<Entry> getEntries(){
+		return this.entries.values();
+	}
+
+	public int size(){
+		return this.entries.size();
+	}
+
+	//number of buckets used by the side starting the comparison, a power of two so that both sides agree on it
+	public int getBucketsNo(){
+		int bucketsNo = MIN_BUCKETS_NO;
+		while (bucketsNo<MAX_BUCKETS_NO&&bucketsNo*BUCKET_SIZE<this.entries.size()){
+			bucketsNo *= 2;
+		}
+		return bucketsNo;
+	}
+
+	//content hash of a record, computed over the xml bytes sent or received
+	public static String hash(byte[] xml){
+		return TransferUtils.toHex(TransferUtils.md5(xml));
+	}
+
+	//content hash of a downloaded record file, the same as the one of its bytes
+	public static String hash(File file) throws IOException {
+		return TransferUtils.toHex(TransferUtils.md5(file, HttpCompression.BUFFER_SIZE));
+	}
+
+	public static int getBucket(String key, int bucketsNo){
+		byte[] md5;
+		try {
+			md5 = TransferUtils.md5(key.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+		return ((md5[0]&0xFF)<<8|(md5[1]&0xFF))%bucketsNo;
+	}
+
+	//digest (hex) of the keys and hashes of every bucket with at least one entry, empty buckets are left null
+	public String[] getBucketDigests(int bucketsNo) throws IOException {
+		StringBuilder[] buckets = new StringBuilder[bucketsNo];
+		for (Entry entry : this.entries.values()){
+			int bucket = SyncManifest.getBucket(entry.key, bucketsNo);
+			if (buckets[bucket]==null)
+				buckets[bucket] = new StringBuilder();
+			buckets[bucket].append(entry.toDigestLine()).append('\n');
+		}
+		String[] digests = new String[bucketsNo];
+		for (int i=0;i<bucketsNo;i++){
+			if (buckets[i]!=null){
+				byte[] md5 = TransferUtils.md5(buckets[i].toString().getBytes("UTF-8"));
+				byte[] digest = new byte[DIGEST_LENGTH];
+				System.arraycopy(md5, 0, digest, 0, DIGEST_LENGTH);
+				digests[i] = TransferUtils.toHex(digest);
+			}
+		}
+		return digests;
+	}
+
+	//buckets whose content differs from the given digests of the other side
+	public SortedSet<Integer> getChangedBuckets(String[] otherDigests) throws IOException {
+		String[] digests = this.getBucketDigests(otherDigests.length);
+		SortedSet<Integer> changedBuckets = new TreeSet<Integer>();
+		for (int i=0;i<digests.length;i++){
+			if ((digests[i]==null)?otherDigests[i]!=null:!digests[i].equals(otherDigests[i]))
+				changedBuckets.add(i);
+		}
+		return changedBuckets;
+	}
+
+	//manifest with the entries of the given buckets only
+	public SyncManifest getBuckets(Set<Integer> buckets, int bucketsNo){
+		SyncManifest manifest = new SyncManifest();
+		for (Entry entry : this.entries.values()){
+			if (buckets.contains(SyncManifest.getBucket(entry.key, bucketsNo)))
+				manifest.add(entry);
+		}
+		return manifest;
+	}
+
+	//compares this side with the other one, the modification dates only decide which side wins when the contents differ:
+	//when both sides changed a record the latest modification wins
+	public Delta compare(SyncManifest other){
+		Delta delta = new Delta();
+		for (Entry entry : this.entries.values()){
+			Entry otherEntry = other.get(entry.key);
+			if (otherEntry==null){
+				delta.toUpload.add(entry.key);
+			} else if (entry.hash.equals(otherEntry.hash)){
+				delta.unchangedNo++;
+			} else if (entry.modified>=otherEntry.modified){
+				delta.toUpload.add(entry.key);
+			} else {
+				delta.toDownload.add(entry.key);
+				delta.hashes.put(entry.key, otherEntry.hash);
+			}
+		}
+		for (Entry otherEntry : other.getEntries()){
+			if (!this.entries.containsKey(otherEntry.key)){
+				delta.toDownload.add(otherEntry.key);
+				delta.hashes.put(otherEntry.key, otherEntry.hash);
+			}
+		}
+		return delta;
+	}
+
+	//one entry per line: url-encoded key, modification date in ms and md5, separated by tabs
+	public void write(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, "UTF-8");
+		for (Entry entry : this.entries.values()){
+			writer.write(entry.toLine());
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	public static SyncManifest read(InputStream in) throws IOException {
+		return SyncManifest.read(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+	}
+
+	private static SyncManifest read(BufferedReader reader) throws IOException {
+		SyncManifest manifest = new SyncManifest();
+		String line;
+		while ((line = reader.readLine())!=null){
+			if (line.length()>0)
+				manifest.add(Entry.fromLine(line));
+		}
+		return manifest;
+	}
+
+	//answer of the server to the bucket digests of the device: the comma separated changed buckets on the first line,
+	//followed by the entries of the server in those buckets
+	public static void writeChanges(SortedSet<Integer> changedBuckets, SyncManifest entries, OutputStream out) throws IOException {
+		StringBuilder buckets = new StringBuilder();
+		for (Integer bucket : changedBuckets){
+			if (buckets.length()>0)
+				buckets.append(',');
+			buckets.append(bucket);
+		}
+		Writer writer = new OutputStreamWriter(out, "UTF-8");
+		writer.write(buckets.toString());
+		writer.write('\n');
+		writer.flush();
+		entries.write(out);
+	}
+
+	//fills changedBuckets and returns the entries
+	public static SyncManifest readChanges(InputStream in, SortedSet<Integer> changedBuckets) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		String buckets = reader.readLine();
+		if (buckets==null)
+			throw new IOException("empty manifest");
+		try {
+			for (String bucket : buckets.split(",")){
+				if (bucket.trim().length()>0)
+					changedBuckets.add(Integer.valueOf(bucket.trim()));
+			}
+		} catch (NumberFormatException e){
+			throw new IOException("invalid changed buckets: "+buckets);
+		}
+		return SyncManifest.read(reader);
+	}
+
+	//DIGEST_LENGTH bytes per bucket, zeros for an empty bucket: random digests do not compress, so they are sent in binary
+	public static void writeBucketDigests(String[] digests, OutputStream out) throws IOException {
+		byte[] bytes = new byte[digests.length*DIGEST_LENGTH];
+		for (int i=0;i<digests.length;i++){
+			if (digests[i]!=null){
+				for (int j=0;j<DIGEST_LENGTH;j++){
+					bytes[i*DIGEST_LENGTH+j] = (byte)Integer.parseInt(digests[i].substring(j*2, j*2+2), 16);
+				}
+			}
+		}
+		out.write(bytes);
+		out.flush();
+	}
+
+	public static String[] readBucketDigests(InputStream in, int bucketsNo) throws IOException {
+		String[] digests = new String[bucketsNo];
+		DataInputStream data = new DataInputStream(in);
+		byte[] digest = new byte[DIGEST_LENGTH];
+		for (int i=0;i<bucketsNo;i++){
+			data.readFully(digest);
+			for (byte b : digest){
+				if (b!=0){
+					digests[i] = TransferUtils.toHex(digest);
+					break;
+				}
+			}
+		}
+		return digests;
+	}
+}
@@ -0,0 +1,101 @@
+package org.openforis.collect.android.misc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+//helpers shared by the transfers to and from the server: query strings, md5 checksums, their hex and base64 forms;
+//plain JDK code, like the rest of the transfer classes, so that they run in the unit tests as well
+public class TransferUtils {
+
+	private static final String BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+	//thrown when the server does not implement an optional protocol: chunked uploads, bundles or delta sync
+	public static class UnsupportedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedException(String message){
+			super(message);
+		}
+	}
+
+	static String toQuery(Map<String,String> parameters) throws IOException {
+		if (parameters==null||parameters.isEmpty())
+			return "";
+		StringBuilder query = new StringBuilder();
+		for (Map.Entry<String,String> parameter : parameters.entrySet()){
+			query.append((query.length()==0)?"?":"&");
+			query.append(URLEncoder.encode(parameter.getKey(), "UTF-8")).append("=").append(URLEncoder.encode(parameter.getValue(), "UTF-8"));
+		}
+		return query.toString();
+	}
+
+	static byte[] md5(byte[] data){
+		return TransferUtils.md5(data, 0, data.length);
+	}
+
+	static byte[] md5(byte[] data, int offset, int length){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(data, offset, length);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] bytes){
+		StringBuilder hex = new StringBuilder(bytes.length*2);
+		for (byte b : bytes){
+			hex.append(Character.forDigit((b>>4)&0xF, 16)).append(Character.forDigit(b&0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	static byte[] md5(File file, int bufferSize) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] buffer = new byte[bufferSize];
+				int readBytes;
+				while ((readBytes = in.read(buffer))!=-1){
+					digest.update(buffer, 0, readBytes);
+				}
+			} finally {
+				in.close();
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}
+	}
+
+	//padded base64 as sent in Content-MD5, throws IllegalArgumentException if the text is malformed
+	static byte[] decodeBase64(String text){
+		if (text.length()%4!=0)
+			throw new IllegalArgumentException("base64 length not a multiple of 4: "+text.length());
+		int paddingNo = (text.endsWith("=="))?2:(text.endsWith("="))?1:0;
+		byte[] bytes = new byte[text.length()/4*3-paddingNo];
+		int bits = 0;
+		int bitsNo = 0;
+		int bytesNo = 0;
+		for (int i=0;i<text.length()-paddingNo;i++){
+			int value = BASE64_ALPHABET.indexOf(text.charAt(i));
+			if (value<0)
+				throw new IllegalArgumentException("not a base64 character: "+text.charAt(i));
+			bits = (bits<<6)|value;
+			bitsNo += 6;
+			if (bitsNo>=8){
+				bitsNo -= 8;
+				bytes[bytesNo++] = (byte)(bits>>bitsNo);
+			}
+		}
+		return bytes;
+	}
+}
@@ -1,11 +1,13 @@
 package org.openforis.collect.android.screens;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.fields.BooleanField;
 import org.openforis.collect.android.fields.CodeField;
+import org.openforis.collect.android.fields.CodeListOptions;
 import org.openforis.collect.android.fields.CoordinateField;
 import org.openforis.collect.android.fields.DateField;
 import org.openforis.collect.android.fields.Field;
@@ -20,7 +22,10 @@ import org.openforis.collect.android.fields.TextField;
 import org.openforis.collect.android.fields.TimeField;
 import org.openforis.collect.android.fields.UIElement;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.NodeStateCache;
 import org.openforis.collect.android.management.BaseActivity;
+import org.openforis.collect.android.management.CodeListCache;
+import org.openforis.collect.android.management.UIElementRegistry;
 import org.openforis.collect.android.messages.AlertMessage;
 import org.openforis.collect.android.misc.GpsActivity;
 import org.openforis.collect.android.misc.RunnableHandler;
@@ -53,12 +58,16 @@ import org.openforis.idm.model.TaxonOccurrence;
 import org.openforis.idm.model.TextValue;
 import org.openforis.idm.model.Time;
 
+import android.app.Activity;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.DisplayMetrics;
@@ -83,6 +92,8 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	private String breadcrumb;
 	private int intentType;
 	private int fieldsNo;
+	private int[] fieldIds;
+	private UIElementRegistry<UIElement> uiElementRegistry;
 	private int idmlId;
 	public int currInstanceNo;
 	
@@ -95,21 +106,38 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	private String latitude;
 	private String longitude;
 	
+	private int savedScrollY;
+	private int savedFocusId;
+	//incremented to cancel the pending prefetch
+	private int prefetchNo;
+	
 	public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         try{
         	Log.i(getResources().getString(R.string.app_name),TAG+":onCreate");
     		
         	ApplicationManager.formScreenActivityList.add(this);
+        	this.uiElementRegistry = new UIElementRegistry<UIElement>();
+        	ApplicationManager.setUIElementRegistry(this.uiElementRegistry);
+        	this.releaseScreensBeyondLimit();
+        	
+        	this.savedScrollY = -1;
+        	this.savedFocusId = View.NO_ID;
+        	if (savedInstanceState!=null){
+        		this.savedScrollY = savedInstanceState.getInt(getResources().getString(R.string.scrollPosition), -1);
+        		this.savedFocusId = savedInstanceState.getInt(getResources().getString(R.string.focusedViewId), View.NO_ID);
+        	}
         	
     		this.startingIntent = getIntent();
-    		this.breadcrumb = this.startingIntent.getStringExtra(getResources().getString(R.string.breadcrumb));
-    		this.intentType = this.startingIntent.getIntExtra(getResources().getString(R.string.intentType),-1);
-    		this.idmlId = this.startingIntent.getIntExtra(getResources().getString(R.string.idmlId),-1);
-    		this.currInstanceNo = this.startingIntent.getIntExtra(getResources().getString(R.string.instanceNo),-1);
+    		FormScreenDescriptor descriptor = this.startingIntent.getParcelableExtra(getResources().getString(R.string.screenDescriptor));
+    		this.breadcrumb = descriptor.getBreadcrumb();
+    		this.intentType = descriptor.getIntentType();
+    		this.idmlId = descriptor.getIdmlId();
+    		this.currInstanceNo = descriptor.getInstanceNo();
     		//this.numberOfInstances = this.startingIntent.getIntExtra(getResources().getString(R.string.numberOfInstances),-1);
-    		this.parentFormScreenId = this.startingIntent.getStringExtra(getResources().getString(R.string.parentFormScreenId));;
-    		this.fieldsNo = this.startingIntent.getExtras().size()-5;
+    		this.parentFormScreenId = descriptor.getParentFormScreenId();
+    		this.fieldIds = descriptor.getFieldIds();
+    		this.fieldsNo = this.fieldIds.length;
     		//this.parentEntitySingleAttribute = this.findParentEntity(this.getFormScreenId());
     		//this.parentEntityMultipleAttribute = this.findParentEntity(this.parentFormScreenId);
 
@@ -133,6 +161,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	{
 		super.onResume();
 		Log.i(getResources().getString(R.string.app_name),TAG+":onResume");
+		ApplicationManager.setUIElementRegistry(this.uiElementRegistry);
 		try{
 			//Log.e("onresume","this.getFormScreenId()=="+this.getFormScreenId());
 			//Log.e("onresume","this.parentFormScreenId=="+this.parentFormScreenId);
@@ -169,7 +198,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
     		}
     		
     		for (int i=0;i<this.fieldsNo;i++){
-    			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.startingIntent.getIntExtra(getResources().getString(R.string.attributeId)+i, -1));
+    			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.fieldIds[i]);
     			if (nodeDef instanceof EntityDefinition){
     				if (ApplicationManager.currentRecord.getRootEntity().getId()!=nodeDef.getId()){
         				Node<?> foundNode = this.parentEntitySingleAttribute.get(nodeDef.getName(), 0/*this.currInstanceNo*/);
@@ -209,7 +238,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		        				final TextField textField= new TextField(this, nodeDef);
 		        				textField.setOnClickListener(this);
 		        				textField.setId(nodeDef.getId());
-		        				textField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+		        				textField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 		        				textField.addTextChangedListener(new TextWatcher(){
 		        			        public void afterTextChanged(Editable s) {        			            
 		        			        	textField.setValue(0, s.toString(), FormScreen.this.getFormScreenId(),true);
@@ -230,7 +259,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		        				textField.setOnClickListener(this);
 		        				textField.setId(nodeDef.getId());
 		        				//Log.e("this.parentFormScreenId",nodeDef.getName()+"=="+this.parentFormScreenId);
-		        				textField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+		        				textField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 		        				textField.addTextChangedListener(new TextWatcher(){
 		        			        public void afterTextChanged(Editable s) {        			            
 		        			        	textField.setValue(FormScreen.this.currInstanceNo, s.toString(), FormScreen.this.parentFormScreenId,true);
@@ -257,7 +286,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		        				final MemoField memoField= new MemoField(this, nodeDef);
 		        				memoField.setOnClickListener(this);
 		        				memoField.setId(nodeDef.getId());
-		        				memoField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+		        				memoField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 		        				memoField.addTextChangedListener(new TextWatcher(){
 		        			        public void afterTextChanged(Editable s) {        			            
 		        			        	memoField.setValue(0, s.toString(), FormScreen.this.getFormScreenId(),true);
@@ -277,7 +306,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		        				final MemoField memoField= new MemoField(this, nodeDef);
 		        				memoField.setOnClickListener(this);
 		        				memoField.setId(nodeDef.getId());
-		        				memoField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+		        				memoField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 		        				memoField.addTextChangedListener(new TextWatcher(){
 		        			        public void afterTextChanged(Editable s) {        			            
 		        			        	memoField.setValue(FormScreen.this.currInstanceNo, s.toString(), FormScreen.this.parentFormScreenId,true);
@@ -312,7 +341,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final NumberField numberField= new NumberField(this, nodeDef);
 	        				numberField.setOnClickListener(this);
 	        				numberField.setId(nodeDef.getId());
-	        				numberField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+	        				numberField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 	        				numberField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	numberField.setValue(0, s.toString(), FormScreen.this.getFormScreenId(),true);
@@ -338,7 +367,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final NumberField numberField= new NumberField(this, nodeDef);
 	        				numberField.setOnClickListener(this);
 	        				numberField.setId(nodeDef.getId());
-	        				numberField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+	        				numberField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 	        				numberField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	numberField.setValue(FormScreen.this.currInstanceNo, s.toString(), FormScreen.this.parentFormScreenId,true);
@@ -369,9 +398,9 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				boolField.setOnClickListener(this);
 	        				boolField.setId(nodeDef.getId());
 	        				if (loadedValue.equals("")){
-	        					boolField.setValue(0, null, FormScreen.this.getFormScreenId(),false);	
+	        					boolField.setValue(0, null, FormScreen.this.getFormScreenId(),false, false);	
 	        				} else {
-	        					boolField.setValue(0, Boolean.valueOf(loadedValue), FormScreen.this.getFormScreenId(),false);	
+	        					boolField.setValue(0, Boolean.valueOf(loadedValue), FormScreen.this.getFormScreenId(),false, false);	
 	        				}	        				
 	        				ApplicationManager.putUIElement(boolField.getId(), boolField);
 	        				this.ll.addView(boolField);
@@ -388,9 +417,9 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	    					boolField.setOnClickListener(this);
 	    					boolField.setId(nodeDef.getId());
 	    					if (loadedValue.equals("")){
-	    						boolField.setValue(this.currInstanceNo, null, this.parentFormScreenId,false);
+	    						boolField.setValue(this.currInstanceNo, null, this.parentFormScreenId,false, false);
 	    					} else {
-	    						boolField.setValue(this.currInstanceNo, Boolean.valueOf(loadedValue), this.parentFormScreenId,false);
+	    						boolField.setValue(this.currInstanceNo, Boolean.valueOf(loadedValue), this.parentFormScreenId,false, false);
 	    					}
 	        				ApplicationManager.putUIElement(boolField.getId(), boolField);
 	        				this.ll.addView(boolField);
@@ -403,20 +432,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	    			} else if (nodeDef instanceof CodeAttributeDefinition){
 	    				loadedValue = "";
 	    				CodeAttributeDefinition codeAttrDef = (CodeAttributeDefinition)nodeDef;
-	    				ArrayList<String> options = new ArrayList<String>();
-	    				ArrayList<String> codes = new ArrayList<String>();
-	    				options.add("");
-	    				codes.add("null");
-	    				List<CodeListItem> codeListItemsList = codeAttrDef.getList().getItems();
-	    				for (CodeListItem codeListItem : codeListItemsList){
-	    					codes.add(codeListItem.getCode());
-	    					/*if (codeListItem.getLabel(null)==null){
-	    						options.add(codeListItem.getLabel("en"));
-	    					} else {
-	    						options.add(codeListItem.getLabel(null));	    						
-	    					}	*/
-	    					options.add(CodeField.getLabelForCodeListItem(codeListItem));
-	    				}
+	    				CodeListOptions codeListOptions = CodeListCache.getOptions(codeAttrDef.getList());
 	    				
 	    				if (!nodeDef.isMultiple()){
 	    					Node<?> foundNode = this.parentEntitySingleAttribute.get(nodeDef.getName(), 0);
@@ -426,10 +442,10 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        						loadedValue = codeValue.getCode();
 	        					}
 		    				}
-	        				CodeField codeField = new CodeField(this, nodeDef, codes, options, null);
+	        				CodeField codeField = new CodeField(this, nodeDef, codeListOptions, null);
 	        				codeField.setOnClickListener(this);
 	        				codeField.setId(nodeDef.getId());
-	        				codeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+	        				codeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 	        				ApplicationManager.putUIElement(codeField.getId(), codeField);
 	        				this.ll.addView(codeField);
 	    				} else if (this.intentType==getResources().getInteger(R.integer.multipleAttributeIntent)){
@@ -440,10 +456,10 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        						loadedValue = codeValue.getCode();
 	        					}
 		    				}
-	        				CodeField codeField = new CodeField(this, nodeDef, codes, options, null);
+	        				CodeField codeField = new CodeField(this, nodeDef, codeListOptions, null);
 	        				codeField.setOnClickListener(this);
 	        				codeField.setId(nodeDef.getId());
-	        				codeField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+	        				codeField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 	        				ApplicationManager.putUIElement(codeField.getId(), codeField);
 	        				this.ll.addView(codeField);
 	    				} else {//multiple attribute summary    			    		
@@ -480,7 +496,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		    				//coordField = new CoordinateField(this, nodeDef);
 	        				coordField.setOnClickListener(this);
 	        				coordField.setId(nodeDef.getId());
-	        				coordField.setValue(0, loadedValueLon, loadedValueLat, FormScreen.this.getFormScreenId(),false);
+	        				coordField.setValue(0, loadedValueLon, loadedValueLat, FormScreen.this.getFormScreenId(),false, false);
 	        				ApplicationManager.putUIElement(coordField.getId(), coordField);
 	        				this.ll.addView(coordField);
 	    				} else if (this.intentType==getResources().getInteger(R.integer.multipleAttributeIntent)){
@@ -508,7 +524,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				//coordField= new CoordinateField(this, nodeDef);
 	        				coordField.setOnClickListener(this);
 	        				coordField.setId(nodeDef.getId());
-	        				coordField.setValue(this.currInstanceNo, loadedValueLon, loadedValueLat, this.parentFormScreenId,false);
+	        				coordField.setValue(this.currInstanceNo, loadedValueLon, loadedValueLat, this.parentFormScreenId,false, false);
 	        				ApplicationManager.putUIElement(coordField.getId(), coordField);
 	        				this.ll.addView(coordField);
 	    				} else {//multiple attribute summary    			    		
@@ -554,7 +570,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final RangeField rangeField= new RangeField(this, nodeDef);
 	        				rangeField.setOnClickListener(this);
 	        				rangeField.setId(nodeDef.getId());
-	        				rangeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+	        				rangeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 	        				rangeField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	rangeField.setValue(0, s.toString(),  FormScreen.this.getFormScreenId(),true);
@@ -599,7 +615,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final RangeField rangeField= new RangeField(this, nodeDef);
 	        				rangeField.setOnClickListener(this);
 	        				rangeField.setId(nodeDef.getId());
-	        				rangeField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+	        				rangeField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 	        				rangeField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	rangeField.setValue(FormScreen.this.currInstanceNo, s.toString(), FormScreen.this.parentFormScreenId,true);
@@ -645,7 +661,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final DateField dateField= new DateField(this, nodeDef);
 	        				dateField.setOnClickListener(this);
 	        				dateField.setId(nodeDef.getId());
-	        				dateField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+	        				dateField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 	        				dateField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	dateField.setValue(0, s.toString(), FormScreen.this.getFormScreenId(),true);
@@ -682,7 +698,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final DateField dateField= new DateField(this, nodeDef);
 	        				dateField.setOnClickListener(this);
 	        				dateField.setId(nodeDef.getId());
-	        				dateField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+	        				dateField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 	        				dateField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	dateField.setValue(FormScreen.this.currInstanceNo, s.toString(), FormScreen.this.parentFormScreenId,true);
@@ -728,7 +744,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final TimeField timeField= new TimeField(this, nodeDef);
 	        				timeField.setOnClickListener(this);
 	        				timeField.setId(nodeDef.getId());
-	        				timeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+	        				timeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 	        				timeField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {
 	        			        	timeField.setValue(0, s.toString(), FormScreen.this.getFormScreenId(),true);
@@ -771,7 +787,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final TimeField timeField= new TimeField(this, nodeDef);
 	        				timeField.setOnClickListener(this);
 	        				timeField.setId(nodeDef.getId());
-	        				timeField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+	        				timeField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 	        				timeField.addTextChangedListener(new TextWatcher(){
 	        			        public void afterTextChanged(Editable s) {        			            
 	        			        	timeField.setValue(FormScreen.this.currInstanceNo, s.toString(), FormScreen.this.parentFormScreenId,true);
@@ -814,7 +830,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	        				final TaxonField taxonField= new TaxonField(this, nodeDef, codes, options, vernLang);
 	        				taxonField.setOnClickListener(this);
 	        				taxonField.setId(nodeDef.getId());
-	        				taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, FormScreen.this.getFormScreenId(),false);
+	        				taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, FormScreen.this.getFormScreenId(),false, false);
 	        				ApplicationManager.putUIElement(taxonField.getId(), taxonField);
 	        				this.ll.addView(taxonField);
 	    				} else if (this.intentType==getResources().getInteger(R.integer.multipleAttributeIntent)){
@@ -832,7 +848,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		    				final TaxonField taxonField= new TaxonField(this, nodeDef, codes, options, vernLang);
 		    				taxonField.setOnClickListener(this);
 		    				taxonField.setId(nodeDef.getId());
-		    				taxonField.setValue(this.currInstanceNo, code, sciName, vernName, vernLang, langVariant, this.parentFormScreenId,false);
+		    				taxonField.setValue(this.currInstanceNo, code, sciName, vernName, vernLang, langVariant, this.parentFormScreenId,false, false);
 	        				ApplicationManager.putUIElement(taxonField.getId(), taxonField);
 	        				this.ll.addView(taxonField);
 	    				} else {//multiple attribute summary    			    		
@@ -863,7 +879,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 			    				}
 		        				photoField.setOnClickListener(this);
 		        				photoField.setId(nodeDef.getId());
-		        				photoField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
+		        				photoField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false, false);
 		        				ApplicationManager.putUIElement(photoField.getId(), photoField);
 		        				this.ll.addView(photoField);
 		    				} else if (this.intentType==getResources().getInteger(R.integer.multipleAttributeIntent)){
@@ -882,7 +898,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 			    				}
 		        				photoField.setOnClickListener(this);
 		        				photoField.setId(nodeDef.getId());
-		        				photoField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false);
+		        				photoField.setValue(this.currInstanceNo, loadedValue, this.parentFormScreenId,false, false);
 		        				ApplicationManager.putUIElement(photoField.getId(), photoField);
 		        				this.ll.addView(photoField);
 		    				} else {//multiple attribute summary    			    		
@@ -909,14 +925,18 @@ public class FormScreen extends BaseActivity implements OnClickListener {
     		
             this.sv.post(new Runnable() {
                 public void run() {
+                	if (sv==null)
+                		return;
                 	if (ApplicationManager.selectedView!=null){
                 		if (ApplicationManager.isToBeScrolled){
                 			sv.scrollTo(0, ApplicationManager.selectedView.getTop());
                         	ApplicationManager.isToBeScrolled = false;	
                 		}
                 	}
+                	restoreViewState();
                 }
             });
+            this.prefetchAdjacentInstances();
 		} catch (Exception e){
     		RunnableHandler.reportException(e,getResources().getString(R.string.app_name),TAG+":onResume",
     				Environment.getExternalStorageDirectory().toString()
@@ -943,6 +963,164 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		}
 		super.onPause();
     }
+    
+    @Override
+    public void onSaveInstanceState(Bundle outState){
+    	super.onSaveInstanceState(outState);
+    	this.saveViewState();
+    	outState.putInt(getResources().getString(R.string.scrollPosition), this.savedScrollY);
+    	outState.putInt(getResources().getString(R.string.focusedViewId), this.savedFocusId);
+    }
+    
+    @Override
+    public void onLowMemory(){
+    	super.onLowMemory();
+    	List<Activity> formScreens = ApplicationManager.formScreenActivityList;
+    	if (formScreens!=null&&!formScreens.isEmpty()&&formScreens.get(formScreens.size()-1)!=this){
+    		this.releaseViews();
+    	}
+    }
+    
+    @Override
+    public void onDestroy(){
+    	Log.i(getResources().getString(R.string.app_name),TAG+":onDestroy");
+    	this.prefetchNo++;
+    	if (this.uiElementRegistry!=null){
+    		this.uiElementRegistry.clear();
+    	}
+    	if (ApplicationManager.formScreenActivityList!=null){
+    		ApplicationManager.formScreenActivityList.remove(this);
+    	}
+    	super.onDestroy();
+    }
+	
+	//screens deeper than the configured limit drop their view trees, onResume rebuilds them from the screen path
+	private void releaseScreensBeyondLimit(){
+		int maxLiveScreens = getResources().getInteger(R.integer.maxLiveFormScreens);
+		List<Activity> formScreens = ApplicationManager.formScreenActivityList;
+		for (int i=0;i<formScreens.size()-maxLiveScreens;i++){
+			Activity formScreen = formScreens.get(i);
+			if (formScreen instanceof FormScreen){
+				((FormScreen)formScreen).releaseViews();
+			}
+		}
+	}
+	
+	private void releaseViews(){
+		if (this.sv==null)
+			return;
+		Log.i(getResources().getString(R.string.app_name),TAG+":releaseViews "+this.getFormScreenId());
+		this.saveViewState();
+		this.uiElementRegistry.clear();
+		this.currentPictureField = null;
+		this.currentCoordinateField = null;
+		this.ll.removeAllViews();
+		this.sv.removeAllViews();
+		this.ll = null;
+		this.sv = null;
+		setContentView(new View(this));
+	}
+	
+	private void saveViewState(){
+		if (this.sv==null)
+			return;
+		this.savedScrollY = this.sv.getScrollY();
+		View focusedView = this.getCurrentFocus();
+		this.savedFocusId = (focusedView!=null)?focusedView.getId():View.NO_ID;
+	}
+	
+	private void restoreViewState(){
+		if (this.savedScrollY>=0){
+			this.sv.scrollTo(0, this.savedScrollY);
+			this.savedScrollY = -1;
+		}
+		if (this.savedFocusId!=View.NO_ID){
+			View focusedView = this.ll.findViewById(this.savedFocusId);
+			if (focusedView!=null)
+				focusedView.requestFocus();
+			this.savedFocusId = View.NO_ID;
+		}
+	}
+	
+	//fills the caches used to build the previous and next instance of a multiple entity while the current one is edited,
+	//one instance whenever the main thread is idle: the record is read on the thread editing it
+	//and nothing is cached from a state which was invalidated meanwhile
+	private void prefetchAdjacentInstances(){
+		final int prefetchNo = ++this.prefetchNo;
+		if (this.intentType!=getResources().getInteger(R.integer.multipleEntityIntent))
+			return;
+		String screenId = this.getFormScreenId();
+		int separatorIndex = screenId.lastIndexOf(getResources().getString(R.string.valuesSeparator2));
+		if (separatorIndex==-1)
+			return;
+		final Entity containerEntity = this.findParentEntity(screenId.substring(0, separatorIndex));
+		if (containerEntity==null)
+			return;
+		final String entityName = ApplicationManager.getNodeDefinition(this.idmlId).getName();
+		final int[] fieldIds = this.fieldIds;
+		final int threshold = this.calcNoOfCharsFitInOneLine();
+		final Resources res = getResources();
+		final LinkedList<Integer> adjacentNos = new LinkedList<Integer>();
+		adjacentNos.add(this.currInstanceNo+1);
+		adjacentNos.add(this.currInstanceNo-1);
+		Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler(){
+			@Override
+			public boolean queueIdle() {
+				if (prefetchNo!=FormScreen.this.prefetchNo)
+					return false;
+				int adjacentNo = adjacentNos.removeFirst();
+				if (adjacentNo>=0&&adjacentNo<containerEntity.getCount(entityName)){
+					Node<?> adjacentEntity = containerEntity.get(entityName, adjacentNo);
+					if (adjacentEntity instanceof Entity){
+						FormScreen.prefetchInstance((Entity)adjacentEntity, fieldIds, threshold, res);
+					}
+				}
+				//called again the next time the queue is idle
+				return !adjacentNos.isEmpty();
+			}
+		});
+	}
+	
+	private static void prefetchInstance(Entity entity, int[] fieldIds, int threshold, Resources res){
+		for (int fieldId : fieldIds){
+			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(fieldId);
+			if (nodeDef instanceof EntityDefinition){
+				int childrenNo = entity.getCount(nodeDef.getName());
+				for (int e=0;e<childrenNo;e++){
+					Node<?> childEntity = entity.get(nodeDef.getName(), e);
+					if (childEntity instanceof Entity)
+						SummaryList.getSummary(res, (EntityDefinition)nodeDef, (Entity)childEntity, threshold);
+				}
+			} else {
+				NodeStateCache.isRequired(entity, nodeDef);
+				if (nodeDef.isMultiple()){
+					SummaryTable.getValues(res, nodeDef, entity);
+				} else if (nodeDef instanceof CodeAttributeDefinition){
+					//the options of a dependent code list follow the code selected for its parent in that instance
+					CodeAttributeDefinition parentCodeAttrDef = ((CodeAttributeDefinition)nodeDef).getParentCodeAttributeDefinition();
+					if (parentCodeAttrDef!=null)
+						CodeListCache.getChildOptions(FormScreen.getSelectedItem(entity, parentCodeAttrDef));
+				}
+			}
+		}
+	}
+	
+	//item of the code selected in the closest instance of the code attribute, going up from the given entity
+	private static CodeListItem getSelectedItem(Entity entity, CodeAttributeDefinition codeAttrDef){
+		Entity parentEntity = entity;
+		while (parentEntity!=null&&parentEntity.getDefinition()!=codeAttrDef.getParentDefinition()){
+			parentEntity = parentEntity.getParent();
+		}
+		if (parentEntity==null)
+			return null;
+		Code codeValue = (Code)parentEntity.getValue(codeAttrDef.getName(), 0);
+		if (codeValue==null||codeValue.getCode()==null)
+			return null;
+		CodeAttributeDefinition parentCodeAttrDef = codeAttrDef.getParentCodeAttributeDefinition();
+		CodeListOptions codeListOptions = (parentCodeAttrDef==null)?CodeListCache.getOptions(codeAttrDef.getList())
+				:CodeListCache.getChildOptions(FormScreen.getSelectedItem(parentEntity, parentCodeAttrDef));
+		return codeListOptions.getItem(codeListOptions.getPosition(codeValue.getCode()));
+	}
 	
 	private int calcNoOfCharsFitInOneLine(){
 		DisplayMetrics metrics = new DisplayMetrics();
@@ -976,7 +1154,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 				SummaryTable temp = (SummaryTable)parentView;
 				ApplicationManager.selectedView = temp;
 				ApplicationManager.isToBeScrolled = false;
-				this.startActivity(this.prepareIntentForMultipleField(temp, tv.getId(), temp.getValues()));
+				this.startActivity(this.prepareIntentForMultipleField(temp, tv.getId()));
 			}
 			
 		}
@@ -984,50 +1162,35 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 	
 	private Intent prepareIntentForNewScreen(SummaryList summaryList){
 		Intent intent = new Intent(this,FormScreen.class);
+		String title;
 		if (!this.breadcrumb.equals("")){
-			String title = "";
 			if (summaryList.getEntityDefinition().isMultiple()){
 				title = this.breadcrumb+getResources().getString(R.string.breadcrumbSeparator)+summaryList.getTitle()+" "+(this.currInstanceNo+1);		
 			} else {
 				title = this.breadcrumb+getResources().getString(R.string.breadcrumbSeparator)+summaryList.getTitle();
 			}
-			intent.putExtra(getResources().getString(R.string.breadcrumb), title);
 		} else {
-			intent.putExtra(getResources().getString(R.string.breadcrumb), summaryList.getTitle());
+			title = summaryList.getTitle();
 		}
 		
+		int intentType;
 		if (summaryList.getEntityDefinition().isMultiple()){
-			intent.putExtra(getResources().getString(R.string.intentType), getResources().getInteger(R.integer.multipleEntityIntent));	
+			intentType = getResources().getInteger(R.integer.multipleEntityIntent);	
 		} else {
-			intent.putExtra(getResources().getString(R.string.intentType), getResources().getInteger(R.integer.singleEntityIntent));
-		}		
-		intent.putExtra(getResources().getString(R.string.idmlId), summaryList.getId());
-		intent.putExtra(getResources().getString(R.string.instanceNo), summaryList.getInstanceNo());
-		intent.putExtra(getResources().getString(R.string.parentFormScreenId), this.getFormScreenId());
-        List<NodeDefinition> entityAttributes = summaryList.getEntityDefinition().getChildDefinitions();
-        int counter = 0;
-        for (NodeDefinition formField : entityAttributes){
-			intent.putExtra(getResources().getString(R.string.attributeId)+counter, formField.getId());
-			counter++;
-        }
+			intentType = getResources().getInteger(R.integer.singleEntityIntent);
+		}
+		FormScreenDescriptor descriptor = new FormScreenDescriptor(title, intentType, summaryList.getId(), summaryList.getInstanceNo(), 
+				this.getFormScreenId(), summaryList.getEntityDefinition().getChildDefinitions());
+		intent.putExtra(getResources().getString(R.string.screenDescriptor), descriptor);
 		return intent;
 	}
 
-	private Intent prepareIntentForMultipleField(SummaryTable summaryTable, int clickedInstanceNo, List<List<String>> data){
+	private Intent prepareIntentForMultipleField(SummaryTable summaryTable, int clickedInstanceNo){
 		Intent intent = new Intent(this,FormScreen.class);
-		intent.putExtra(getResources().getString(R.string.breadcrumb), this.breadcrumb+getResources().getString(R.string.breadcrumbSeparator)+summaryTable.getTitle());
-		intent.putExtra(getResources().getString(R.string.intentType), getResources().getInteger(R.integer.multipleAttributeIntent));
-        intent.putExtra(getResources().getString(R.string.attributeId)+"0", summaryTable.getId());
-        intent.putExtra(getResources().getString(R.string.idmlId), summaryTable.getId());
-        intent.putExtra(getResources().getString(R.string.instanceNo), clickedInstanceNo);
-        intent.putExtra(getResources().getString(R.string.parentFormScreenId), this.getFormScreenId());
-        List<List<String>> values = summaryTable.getValues();
-        int numberOfInstances = values.size();
-        intent.putExtra(getResources().getString(R.string.numberOfInstances), numberOfInstances);
-        for (int i=0;i<numberOfInstances;i++){
-        	ArrayList<String> instanceValues = (ArrayList<String>)values.get(i);
-        	intent.putStringArrayListExtra(getResources().getString(R.string.instanceValues)+i,instanceValues);
-        }
+		FormScreenDescriptor descriptor = new FormScreenDescriptor(this.breadcrumb+getResources().getString(R.string.breadcrumbSeparator)+summaryTable.getTitle(), 
+				getResources().getInteger(R.integer.multipleAttributeIntent), summaryTable.getId(), clickedInstanceNo, 
+				this.getFormScreenId(), new int[]{summaryTable.getId()});
+		intent.putExtra(getResources().getString(R.string.screenDescriptor), descriptor);
 		return intent;
 	}
 	
@@ -1187,7 +1350,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		ArrayList<String> tableColHeaders = new ArrayList<String>();
 		tableColHeaders.add("Value");
 		for (int i=0;i<this.fieldsNo;i++){
-			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.startingIntent.getIntExtra(getResources().getString(R.string.attributeId)+i, -1));
+			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.fieldIds[i]);
 			if (nodeDef instanceof EntityDefinition){
 				if (ApplicationManager.currentRecord.getRootEntity().getId()!=nodeDef.getId()){
     				Node<?> foundNode = this.parentEntitySingleAttribute.get(nodeDef.getName(), 0/*this.currInstanceNo*/);
@@ -1430,19 +1593,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
     			} else if (nodeDef instanceof CodeAttributeDefinition){
     				loadedValue = "";
     				CodeAttributeDefinition codeAttrDef = (CodeAttributeDefinition)nodeDef;
-    				ArrayList<String> options = new ArrayList<String>();
-    				ArrayList<String> codes = new ArrayList<String>();
-    				options.add("");
-    				codes.add("null");
-    				List<CodeListItem> codeListItemsList = codeAttrDef.getList().getItems();
-    				for (CodeListItem codeListItem : codeListItemsList){
-    					codes.add(codeListItem.getCode());
-    					if (codeListItem.getLabel(null)==null){
-    						options.add(codeListItem.getLabel("en"));
-    					} else {
-    						options.add(codeListItem.getLabel(null));	    						
-    					}
-    				}
+    				CodeListOptions codeListOptions = CodeListCache.getOptions(codeAttrDef.getList());
     				
     				if (!nodeDef.isMultiple()){
     					Node<?> foundNode = this.parentEntitySingleAttribute.get(nodeDef.getName(), 0);
@@ -1452,7 +1603,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
         						loadedValue = codeValue.getCode();
         					}
 	    				}
-        				CodeField codeField = new CodeField(this, nodeDef, codes, options, loadedValue);
+        				CodeField codeField = new CodeField(this, nodeDef, codeListOptions, loadedValue);
         				codeField.setOnClickListener(this);
         				codeField.setId(nodeDef.getId());
         				//codeField.setValue(0, loadedValue, FormScreen.this.getFormScreenId(),false);
@@ -1466,7 +1617,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
         						loadedValue = codeValue.getCode();
         					}
 	    				}
-        				CodeField codeField = new CodeField(this, nodeDef, codes, options, loadedValue);
+        				CodeField codeField = new CodeField(this, nodeDef, codeListOptions, loadedValue);
         				codeField.setOnClickListener(this);
         				codeField.setId(nodeDef.getId());
         				//Log.e("onResume",this.parentFormScreenId+"=="+this.currInstanceNo);
@@ -1905,7 +2056,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		changeBackgroundColor(backgroundColor);
 		
 		for (int i=0;i<this.fieldsNo;i++){
-			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.startingIntent.getIntExtra(getResources().getString(R.string.attributeId)+i, -1));
+			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.fieldIds[i]);
 			if (nodeDef!=null){
 				if (nodeDef instanceof TextAttributeDefinition){
 					loadedValue = "";
@@ -1916,7 +2067,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 								loadedValue = textValue.getValue();
     					TextField textField = (TextField) ApplicationManager.getUIElement(nodeDef.getId());
     					if (textField!=null)
-    						textField.setValue(0, loadedValue, this.getFormScreenId(), false);
+    						textField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 					} else {
 						TextValue textValue = (TextValue)parentEntity.getValue(nodeDef.getName(), 0);							
 						if (textValue!=null)
@@ -1924,7 +2075,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 								loadedValue = textValue.getValue();
     					MemoField memoField = (MemoField) ApplicationManager.getUIElement(nodeDef.getId());
     					if (memoField!=null)
-    						memoField.setValue(0, loadedValue, this.getFormScreenId(), false);
+    						memoField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 					}								
 				} else if (nodeDef instanceof NumberAttributeDefinition){
 					loadedValue = "";
@@ -1941,7 +2092,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}					
 					NumberField numberField = (NumberField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (numberField!=null)
-						numberField.setValue(0, loadedValue, this.getFormScreenId(), false);
+						numberField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 				}  else if (nodeDef instanceof BooleanAttributeDefinition){
 					loadedValue = "";
 					BooleanValue boolValue = (BooleanValue)parentEntity.getValue(nodeDef.getName(), 0);
@@ -1952,9 +2103,9 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					if (boolField!=null){
 						
 						if (loadedValue.equals("")){
-							boolField.setValue(0, null, this.getFormScreenId(), false);
+							boolField.setValue(0, null, this.getFormScreenId(), false, false);
 						} else {
-							boolField.setValue(0, Boolean.valueOf(loadedValue), this.getFormScreenId(), false);
+							boolField.setValue(0, Boolean.valueOf(loadedValue), this.getFormScreenId(), false, false);
 						}
 					}					
 				} else if (nodeDef instanceof CodeAttributeDefinition){
@@ -1966,7 +2117,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					CodeField codeField = (CodeField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (codeField!=null){
 						//Log.e("refreshENTITY",this.getFormScreenId()+"=="+0);
-						codeField.setValue(0, loadedValue, this.getFormScreenId(), false);
+						codeField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 					}
 						
 				} else if (nodeDef instanceof CoordinateAttributeDefinition){
@@ -1982,7 +2133,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						
 					CoordinateField coordField = (CoordinateField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (coordField!=null)
-						coordField.setValue(0, loadedValueLon, loadedValueLat, this.getFormScreenId(), false);
+						coordField.setValue(0, loadedValueLon, loadedValueLat, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof RangeAttributeDefinition){
 					String from = "";
 					String to = "";
@@ -2008,7 +2159,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 											
 					RangeField rangeField = (RangeField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (rangeField!=null)
-						rangeField.setValue(0, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false);
+						rangeField.setValue(0, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof DateAttributeDefinition){
 					String day = "";
 					String month = "";
@@ -2024,7 +2175,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}
 					DateField dateField = (DateField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (dateField!=null)
-						dateField.setValue(0, year+getResources().getString(R.string.dateSeparator)+month+getResources().getString(R.string.dateSeparator)+day, this.getFormScreenId(), false);
+						dateField.setValue(0, year+getResources().getString(R.string.dateSeparator)+month+getResources().getString(R.string.dateSeparator)+day, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof TimeAttributeDefinition){
 					String hour = "";
 					String minute = "";
@@ -2037,7 +2188,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}						
 					TimeField timeField = (TimeField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (timeField!=null)
-						timeField.setValue(0, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false);					
+						timeField.setValue(0, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false, false);					
 				} else if (nodeDef instanceof TaxonAttributeDefinition){
     				String code = "";
     				String sciName = "";
@@ -2054,7 +2205,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}
 					TaxonField taxonField = (TaxonField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (taxonField!=null)
-						taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false);
+						taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof FileAttributeDefinition){
 					String fileName = "";
 					File fileValue = (File)parentEntity.getValue(nodeDef.getName(), 0);
@@ -2064,7 +2215,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}						
 					PhotoField photoField = (PhotoField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (photoField!=null)
-						photoField.setValue(0, fileName, this.getFormScreenId(), false);					
+						photoField.setValue(0, fileName, this.getFormScreenId(), false, false);					
 				}
 			}
 		}
@@ -2072,7 +2223,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 			//Log.e("REFRESHING",parentEntity.getIndex()+"parentEntity"+parentEntity.getName());
 			//Log.e("REFRESHING1","parentEntity"+parentEntity.getName());
 			for (int i=0;i<this.fieldsNo;i++){
-				NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.startingIntent.getIntExtra(getResources().getString(R.string.attributeId)+i, -1));
+				NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.fieldIds[i]);
 				if (nodeDef!=null){
 					//Log.e("refreshing existing field","=="+nodeDef.getName());
 					if (nodeDef instanceof TextAttributeDefinition){
@@ -2084,7 +2235,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 									loadedValue = textValue.getValue();
 	    					TextField textField = (TextField) ApplicationManager.getUIElement(nodeDef.getId());
 	    					if (textField!=null)
-	    						textField.setValue(0, loadedValue, this.getFormScreenId(), false);					
+	    						textField.setValue(0, loadedValue, this.getFormScreenId(), false, false);					
 						} else {
 							TextValue textValue = (TextValue)parentEntity.getValue(nodeDef.getName(), 0);							
 							if (textValue!=null)
@@ -2092,7 +2243,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 									loadedValue = textValue.getValue();
 	    					MemoField memoField = (MemoField) ApplicationManager.getUIElement(nodeDef.getId());
 	    					if (memoField!=null)
-	    						memoField.setValue(0, loadedValue, this.getFormScreenId(), false);
+	    						memoField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 						}								
 					} else if (nodeDef instanceof NumberAttributeDefinition){
 						String loadedValue = "";
@@ -2109,7 +2260,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}					
 						NumberField numberField = (NumberField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (numberField!=null)
-							numberField.setValue(0, loadedValue, this.getFormScreenId(), false);
+							numberField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 					}  else if (nodeDef instanceof BooleanAttributeDefinition){
 						String loadedValue = "";
 						BooleanValue boolValue = (BooleanValue)parentEntity.getValue(nodeDef.getName(), this.currInstanceNo);
@@ -2119,9 +2270,9 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						BooleanField boolField = (BooleanField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (boolField!=null){
 							if (loadedValue.equals("")){
-								boolField.setValue(0, null, this.getFormScreenId(), false);
+								boolField.setValue(0, null, this.getFormScreenId(), false, false);
 							} else {
-								boolField.setValue(0, Boolean.valueOf(loadedValue), this.getFormScreenId(), false);
+								boolField.setValue(0, Boolean.valueOf(loadedValue), this.getFormScreenId(), false, false);
 							}
 						}					
 					} else if (nodeDef instanceof CodeAttributeDefinition){
@@ -2133,7 +2284,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						CodeField codeField = (CodeField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (codeField!=null){
 							//Log.e("refreshENTITY",this.getFormScreenId()+"=="+0);
-							codeField.setValue(0, loadedValue, this.getFormScreenId(), false);
+							codeField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 						}
 							
 					} else if (nodeDef instanceof CoordinateAttributeDefinition){
@@ -2149,7 +2300,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 							
 						CoordinateField coordField = (CoordinateField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (coordField!=null)
-							coordField.setValue(0, loadedValueLon, loadedValueLat, this.getFormScreenId(), false);
+							coordField.setValue(0, loadedValueLon, loadedValueLat, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof RangeAttributeDefinition){
 						String from = "";
 						String to = "";
@@ -2175,7 +2326,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 												
 						RangeField rangeField = (RangeField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (rangeField!=null)
-							rangeField.setValue(0, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false);
+							rangeField.setValue(0, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof DateAttributeDefinition){
 						String day = "";
 						String month = "";
@@ -2191,7 +2342,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}						
 						DateField dateField = (DateField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (dateField!=null)
-							dateField.setValue(0, month+getResources().getString(R.string.dateSeparator)+day+getResources().getString(R.string.dateSeparator)+year, this.getFormScreenId(), false);
+							dateField.setValue(0, month+getResources().getString(R.string.dateSeparator)+day+getResources().getString(R.string.dateSeparator)+year, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof TimeAttributeDefinition){
 						String hour = "";
 						String minute = "";
@@ -2204,7 +2355,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}						
 						TimeField timeField = (TimeField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (timeField!=null)
-							timeField.setValue(0, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false);					
+							timeField.setValue(0, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false, false);					
 					} else if (nodeDef instanceof TaxonAttributeDefinition){
 	    				String code = "";
 	    				String sciName = "";
@@ -2221,7 +2372,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
     					}
     					TaxonField taxonField = (TaxonField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (taxonField!=null)
-							taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false);
+							taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof FileAttributeDefinition){
 						String fileName = "";
 						File fileValue = (File)parentEntity.getValue(nodeDef.getName(), 0);
@@ -2231,7 +2382,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}						
 						PhotoField photoField = (PhotoField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (photoField!=null)
-							photoField.setValue(0, fileName, this.getFormScreenId(), false);					
+							photoField.setValue(0, fileName, this.getFormScreenId(), false, false);					
 					}
 				}
 			}
@@ -2241,7 +2392,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 			EntityBuilder.addEntity(parentEntity, ApplicationManager.getSurvey().getSchema().getDefinitionById(this.idmlId).getName());
 			parentEntity = this.findParentEntity(this.getFormScreenId());
 			for (int i=0;i<this.fieldsNo;i++){
-				NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.startingIntent.getIntExtra(getResources().getString(R.string.attributeId)+i, -1));
+				NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.fieldIds[i]);
 				if (nodeDef!=null){
 					//Log.e("refreshing new field","=="+nodeDef.getName());
 					if (nodeDef instanceof TextAttributeDefinition){
@@ -2253,7 +2404,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 									loadedValue = textValue.getValue();
 	    					TextField textField = (TextField) ApplicationManager.getUIElement(nodeDef.getId());
 	    					if (textField!=null)
-	    						textField.setValue(0, loadedValue, this.getFormScreenId(), false);	
+	    						textField.setValue(0, loadedValue, this.getFormScreenId(), false, false);	
 						} else {
 							TextValue textValue = (TextValue)parentEntity.getValue(nodeDef.getName(), 0);							
 							if (textValue!=null)
@@ -2261,7 +2412,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 									loadedValue = textValue.getValue();
 	    					MemoField memoField = (MemoField) ApplicationManager.getUIElement(nodeDef.getId());
 	    					if (memoField!=null)
-	    						memoField.setValue(0, loadedValue, this.getFormScreenId(), false);
+	    						memoField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 						}    					
 					} else if (nodeDef instanceof NumberAttributeDefinition){
 						String loadedValue = "";
@@ -2276,7 +2427,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}					
 						NumberField numberField = (NumberField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (numberField!=null)
-							numberField.setValue(0, loadedValue, this.getFormScreenId(), false);
+							numberField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof BooleanAttributeDefinition){
 						String loadedValue = "";
 						BooleanValue boolValue = (BooleanValue)parentEntity.getValue(nodeDef.getName(), 0);
@@ -2285,9 +2436,9 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						BooleanField boolField = (BooleanField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (boolField!=null){
 							if (loadedValue.equals("")){
-								boolField.setValue(0, null, this.getFormScreenId(), false);
+								boolField.setValue(0, null, this.getFormScreenId(), false, false);
 							} else {
-								boolField.setValue(0, Boolean.valueOf(loadedValue), this.getFormScreenId(), false);
+								boolField.setValue(0, Boolean.valueOf(loadedValue), this.getFormScreenId(), false, false);
 							}
 						}					
 					} else if (nodeDef instanceof CodeAttributeDefinition){
@@ -2299,7 +2450,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						CodeField codeField = (CodeField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (codeField!=null){
 							//Log.e("refreshENTITYnull",this.getFormScreenId()+"=="+0);
-							codeField.setValue(0, loadedValue, this.getFormScreenId(), false);
+							codeField.setValue(0, loadedValue, this.getFormScreenId(), false, false);
 						}
 							
 					} else if (nodeDef instanceof CoordinateAttributeDefinition){
@@ -2315,7 +2466,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 							
 						CoordinateField coordField = (CoordinateField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (coordField!=null)
-							coordField.setValue(0, loadedValueLon, loadedValueLat, this.getFormScreenId(), false);
+							coordField.setValue(0, loadedValueLon, loadedValueLat, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof RangeAttributeDefinition){
 						String from = "";
 						String to = "";
@@ -2339,7 +2490,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}					
 						RangeField rangeField = (RangeField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (rangeField!=null)
-							rangeField.setValue(0, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false);
+							rangeField.setValue(0, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof DateAttributeDefinition){
 						String day = "";
 						String month = "";
@@ -2355,7 +2506,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}						
 						DateField dateField = (DateField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (dateField!=null)
-							dateField.setValue(0, month+getResources().getString(R.string.dateSeparator)+day+getResources().getString(R.string.dateSeparator)+year, this.getFormScreenId(), false);
+							dateField.setValue(0, month+getResources().getString(R.string.dateSeparator)+day+getResources().getString(R.string.dateSeparator)+year, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof TimeAttributeDefinition){
 						String hour = "";
 						String minute = "";
@@ -2368,7 +2519,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}						
 						TimeField timeField = (TimeField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (timeField!=null)
-							timeField.setValue(0, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false);					
+							timeField.setValue(0, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false, false);					
 					} else if (nodeDef instanceof TaxonAttributeDefinition){
 						String code = "";
 	    				String sciName = "";
@@ -2385,7 +2536,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
     					}
     					TaxonField taxonField = (TaxonField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (taxonField!=null)
-							taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false);
+							taxonField.setValue(0, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false, false);
 					} else if (nodeDef instanceof FileAttributeDefinition){
 						String fileName = "";
 						File fileValue = (File)parentEntity.getValue(nodeDef.getName(), 0);
@@ -2395,11 +2546,12 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 						}						
 						PhotoField photoField = (PhotoField) ApplicationManager.getUIElement(nodeDef.getId());
 						if (photoField!=null)
-							photoField.setValue(0, fileName, this.getFormScreenId(), false);					
+							photoField.setValue(0, fileName, this.getFormScreenId(), false, false);					
 					}
 				}
 			}
 		}*/
+		this.prefetchAdjacentInstances();
 	}
 	
 	private void refreshMultipleAttributeScreen(boolean isPreviousField){
@@ -2440,7 +2592,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 		///Entity parentEntity = this.findParentEntity(this.parentFormScreenId);
 		Entity parentEntity = this.parentEntityMultipleAttribute;
 		if (parentEntity!=null){
-			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.startingIntent.getIntExtra(getResources().getString(R.string.attributeId)+0, -1));
+			NodeDefinition nodeDef = ApplicationManager.getNodeDefinition(this.fieldIds[0]);
 			
 			if (nodeDef!=null){
 				if (nodeDef instanceof TextAttributeDefinition){
@@ -2451,14 +2603,14 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 							loadedValue = textValue.getValue();
     					TextField textField = (TextField) ApplicationManager.getUIElement(nodeDef.getId());
     					if (textField!=null)
-    						textField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false);	
+    						textField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false, false);	
 					} else {
 						TextValue textValue = (TextValue)parentEntity.getValue(nodeDef.getName(), this.currInstanceNo);
 						if (textValue!=null)
 							loadedValue = textValue.getValue();
     					TextField textField = (TextField) ApplicationManager.getUIElement(nodeDef.getId());
     					if (textField!=null)
-    						textField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false);
+    						textField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false, false);
 					} 
 				} else if (nodeDef instanceof NumberAttributeDefinition){
 					String loadedValue = "";
@@ -2473,7 +2625,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}					
 					NumberField numberField = (NumberField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (numberField!=null)
-						numberField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false);
+						numberField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof BooleanAttributeDefinition){
 					String loadedValue = "";
 					BooleanValue boolValue = (BooleanValue)parentEntity.getValue(nodeDef.getName(), this.currInstanceNo);
@@ -2482,9 +2634,9 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					BooleanField boolField = (BooleanField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (boolField!=null){
 						if (loadedValue.equals("")){
-							boolField.setValue(this.currInstanceNo, null, this.getFormScreenId(), false);
+							boolField.setValue(this.currInstanceNo, null, this.getFormScreenId(), false, false);
 						} else {
-							boolField.setValue(this.currInstanceNo, Boolean.valueOf(loadedValue), this.getFormScreenId(), false);
+							boolField.setValue(this.currInstanceNo, Boolean.valueOf(loadedValue), this.getFormScreenId(), false, false);
 						}
 					}					
 				} else if (nodeDef instanceof CodeAttributeDefinition){
@@ -2495,7 +2647,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					CodeField codeField = (CodeField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (codeField!=null){
 						//Log.e("refreshMULTattr",this.getFormScreenId()+"=="+this.currInstanceNo);
-						codeField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false);
+						codeField.setValue(this.currInstanceNo, loadedValue, this.getFormScreenId(), false, false);
 					}						
 				} else if (nodeDef instanceof CoordinateAttributeDefinition){
 					String loadedValueLat = "";
@@ -2511,7 +2663,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}						
 					CoordinateField coordField = (CoordinateField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (coordField!=null)
-						coordField.setValue(this.currInstanceNo, loadedValueLon, loadedValueLat, this.getFormScreenId(), false);
+						coordField.setValue(this.currInstanceNo, loadedValueLon, loadedValueLat, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof RangeAttributeDefinition){
 					String from = "";
 					String to = "";
@@ -2539,7 +2691,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}															
 					RangeField rangeField = (RangeField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (rangeField!=null)
-						rangeField.setValue(this.currInstanceNo, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false);
+						rangeField.setValue(this.currInstanceNo, from+getResources().getString(R.string.rangeSeparator)+to, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof DateAttributeDefinition){
 					String day = "";
 					String month = "";
@@ -2558,7 +2710,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}						
 					DateField dateField = (DateField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (dateField!=null)
-						dateField.setValue(this.currInstanceNo, year+getResources().getString(R.string.dateSeparator)+month+getResources().getString(R.string.dateSeparator)+day, this.getFormScreenId(), false);
+						dateField.setValue(this.currInstanceNo, year+getResources().getString(R.string.dateSeparator)+month+getResources().getString(R.string.dateSeparator)+day, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof TimeAttributeDefinition){
 					String hour = "";
 					String minute = "";
@@ -2573,7 +2725,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}						
 					TimeField timeField = (TimeField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (timeField!=null)
-						timeField.setValue(this.currInstanceNo, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false);					
+						timeField.setValue(this.currInstanceNo, hour+getResources().getString(R.string.timeSeparator)+minute, this.getFormScreenId(), false, false);					
 				} else if (nodeDef instanceof TaxonAttributeDefinition){
 					String code = "";
     				String sciName = "";
@@ -2590,7 +2742,7 @@ public class FormScreen extends BaseActivity implements OnClickListener {
 					}
 					TaxonField taxonField = (TaxonField) ApplicationManager.getUIElement(nodeDef.getId());
 					if (taxonField!=null)
-						taxonField.setValue(this.currInstanceNo, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false);
+						taxonField.setValue(this.currInstanceNo, code, sciName, vernName, vernLang, langVariant, this.getFormScreenId(), false, false);
 				} else if (nodeDef instanceof FileAttributeDefinition){
 					
 				}
@@ -0,0 +1,94 @@
+package org.openforis.collect.android.screens;
+
+import java.util.List;
+
+import org.openforis.idm.metamodel.NodeDefinition;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+public class FormScreenDescriptor implements Parcelable {
+
+	private String breadcrumb;
+	private int intentType;
+	private int idmlId;
+	private int instanceNo;
+	private String parentFormScreenId;
+	private int[] fieldIds;
+
+	public FormScreenDescriptor(String breadcrumb, int intentType, int idmlId, int instanceNo, String parentFormScreenId, int[] fieldIds){
+		this.breadcrumb = breadcrumb;
+		this.intentType = intentType;
+		this.idmlId = idmlId;
+		this.instanceNo = instanceNo;
+		this.parentFormScreenId = parentFormScreenId;
+		this.fieldIds = fieldIds;
+	}
+
+	public FormScreenDescriptor(String breadcrumb, int intentType, int idmlId, int instanceNo, String parentFormScreenId, List<NodeDefinition> fieldDefs){
+		this(breadcrumb, intentType, idmlId, instanceNo, parentFormScreenId, new int[fieldDefs.size()]);
+		for (int i=0;i<fieldDefs.size();i++){
+			this.fieldIds[i] = fieldDefs.get(i).getId();
+		}
+	}
+
+	private FormScreenDescriptor(Parcel in){
+		this.breadcrumb = in.readString();
+		this.intentType = in.readInt();
+		this.idmlId = in.readInt();
+		this.instanceNo = in.readInt();
+		this.parentFormScreenId = in.readString();
+		this.fieldIds = in.createIntArray();
+	}
+
+	public String getBreadcrumb(){
+		return this.breadcrumb;
+	}
+
+	public int getIntentType(){
+		return this.intentType;
+	}
+
+	public int getIdmlId(){
+		return this.idmlId;
+	}
+
+	public int getInstanceNo(){
+		return this.instanceNo;
+	}
+
+	public String getParentFormScreenId(){
+		return this.parentFormScreenId;
+	}
+
+	public int[] getFieldIds(){
+		return this.fieldIds;
+	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel out, int flags) {
+		out.writeString(this.breadcrumb);
+		out.writeInt(this.intentType);
+		out.writeInt(this.idmlId);
+		out.writeInt(this.instanceNo);
+		out.writeString(this.parentFormScreenId);
+		out.writeIntArray(this.fieldIds);
+	}
+
+	public static final Parcelable.Creator<FormScreenDescriptor> CREATOR = new Parcelable.Creator<FormScreenDescriptor>() {
+		@Override
+		public FormScreenDescriptor createFromParcel(Parcel in) {
+			return new FormScreenDescriptor(in);
+		}
+
+		@Override
+		public FormScreenDescriptor[] newArray(int size) {
+			return new FormScreenDescriptor[size];
+		}
+	};
+}
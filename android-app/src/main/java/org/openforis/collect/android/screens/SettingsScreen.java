@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.openforis.collect.android.R;
 import org.openforis.collect.android.management.ApplicationManager;
+import org.openforis.collect.android.management.LabelCache;
 import org.openforis.collect.android.misc.RunnableHandler;
 
 import android.app.Activity;
@@ -118,6 +119,7 @@ public class SettingsScreen extends Activity{
      				editor.putString(getResources().getString(R.string.selectedLanguage), language);
      				editor.commit();
      				ApplicationManager.selectedLanguage = language;
+     				LabelCache.prepare(ApplicationManager.getSurvey(), language);
  			    }
 
  			    @Override
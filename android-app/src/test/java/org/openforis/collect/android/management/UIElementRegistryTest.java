@@ -0,0 +1,76 @@
+package org.openforis.collect.android.management;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class UIElementRegistryTest extends TestCase {
+
+	private static final int ELEMENTS_NO = 100;
+
+	public void testClear() throws Exception {
+		UIElementRegistry<Object> registry = new UIElementRegistry<Object>();
+		Object element = new Object();
+		registry.put(1, element);
+		assertSame(element, registry.get(1));
+		registry.clear();
+		assertNull(registry.get(1));
+		assertEquals(0, registry.size());
+	}
+
+	public void testReleaseOfScreen() throws Exception {
+		UIElementRegistry<Object> registry = new UIElementRegistry<Object>();
+		Object[] views = new Object[ELEMENTS_NO];
+		for (int i=0;i<ELEMENTS_NO;i++){
+			views[i] = new Object();
+			registry.put(i, views[i]);
+		}
+		assertEquals(ELEMENTS_NO, registry.size());
+		//the views are still referenced by the screen, the registry lets go of them all the same
+		registry.clear();
+		assertEquals(0, registry.size());
+		for (int i=0;i<ELEMENTS_NO;i++){
+			assertNull(registry.get(i));
+		}
+	}
+
+	public void testRebuiltElementReplacesOldOne() throws Exception {
+		UIElementRegistry<Object> registry = new UIElementRegistry<Object>();
+		Object oldElement = new Object();
+		Object newElement = new Object();
+		registry.put(1, oldElement);
+		registry.put(1, newElement);
+		assertSame(newElement, registry.get(1));
+		assertEquals(1, registry.size());
+	}
+
+	public void testCollectedElementsAreDropped() throws Exception {
+		final List<WeakReference<Object>> references = new ArrayList<WeakReference<Object>>();
+		UIElementRegistry<Object> registry = new UIElementRegistry<Object>(){
+			@Override
+			protected WeakReference<Object> createReference(Object element){
+				WeakReference<Object> reference = super.createReference(element);
+				references.add(reference);
+				return reference;
+			}
+		};
+		Object[] views = new Object[ELEMENTS_NO];
+		for (int i=0;i<ELEMENTS_NO;i++){
+			views[i] = new Object();
+			registry.put(i, views[i]);
+		}
+		//cleared like the garbage collector does once the screen is gone, half of the elements first
+		for (int i=0;i<ELEMENTS_NO/2;i++){
+			references.get(i).clear();
+		}
+		assertNull(registry.get(0));
+		assertSame(views[ELEMENTS_NO-1], registry.get(ELEMENTS_NO-1));
+		assertEquals(ELEMENTS_NO/2, registry.size());
+		for (WeakReference<Object> reference : references){
+			reference.clear();
+		}
+		assertEquals(0, registry.size());
+	}
+}
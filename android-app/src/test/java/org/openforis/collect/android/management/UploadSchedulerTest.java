@@ -0,0 +1,87 @@
+package org.openforis.collect.android.management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class UploadSchedulerTest extends TestCase {
+
+	private static final long THRESHOLD = 256*1024;
+
+	public void testRetryDelay() throws Exception {
+		Random random = new Random(1);
+		for (int attemptsNo=1;attemptsNo<=UploadScheduler.MAX_ATTEMPTS;attemptsNo++){
+			//doubled after every failure from 5 seconds up to 30 minutes
+			long delay = Math.min(30*60*1000, (5*1000L)<<Math.min(attemptsNo-1, 20));
+			long min = Long.MAX_VALUE;
+			long max = 0;
+			for (int i=0;i<100;i++){
+				long retryDelay = UploadScheduler.getRetryDelay(attemptsNo, random);
+				min = Math.min(min, retryDelay);
+				max = Math.max(max, retryDelay);
+			}
+			//half of the delay is fixed, the other half is jitter
+			assertTrue(min>=delay/2);
+			assertTrue(max<delay);
+			assertTrue(max-min>delay/4);
+		}
+	}
+
+	public void testAttemptsAreCapped() throws Exception {
+		assertTrue(UploadScheduler.isRetried(1));
+		assertTrue(UploadScheduler.isRetried(UploadScheduler.MAX_ATTEMPTS-1));
+		assertFalse(UploadScheduler.isRetried(UploadScheduler.MAX_ATTEMPTS));
+	}
+
+	public void testSmallFilesAreBundled() throws Exception {
+		List<UploadScheduler.Upload> uploads = new ArrayList<UploadScheduler.Upload>();
+		for (int i=0;i<250;i++){
+			uploads.add(new UploadScheduler.Upload("plot"+i+".xml", true, 2048));
+		}
+		List<List<UploadScheduler.Upload>> tasks = UploadScheduler.plan(uploads, 2, true, THRESHOLD);
+		assertEquals(2, tasks.size());
+		assertEquals(100, tasks.get(0).size());
+		assertEquals("plot0.xml", tasks.get(0).get(0).fileName);
+		assertEquals("plot100.xml", tasks.get(1).get(0).fileName);
+
+		//one file per task when the server doesn't accept bundles
+		tasks = UploadScheduler.plan(uploads, 3, false, THRESHOLD);
+		assertEquals(Arrays.asList("plot0.xml", "plot1.xml", "plot2.xml"), UploadSchedulerTest.getFileNames(tasks));
+	}
+
+	public void testBundleLimits() throws Exception {
+		List<UploadScheduler.Upload> uploads = new ArrayList<UploadScheduler.Upload>();
+		uploads.add(new UploadScheduler.Upload("a.xml", true, 200*1024));
+		//sent with the chunked upload
+		uploads.add(new UploadScheduler.Upload("big.xml", true, THRESHOLD+1));
+		uploads.add(new UploadScheduler.Upload("missing.xml", true, -1));
+		//not bundled with files that overwrite the records of the server
+		uploads.add(new UploadScheduler.Upload("new.xml", false, 1024));
+		for (int i=0;i<30;i++){
+			uploads.add(new UploadScheduler.Upload("b"+i+".xml", true, 200*1024));
+		}
+		List<List<UploadScheduler.Upload>> tasks = UploadScheduler.plan(uploads, 10, true, THRESHOLD);
+		assertEquals(Arrays.asList("a.xml", "big.xml", "missing.xml", "new.xml", "b19.xml"), UploadSchedulerTest.getFileNames(tasks));
+		//a.xml and b0.xml to b18.xml, up to 4MB
+		assertEquals(20, tasks.get(0).size());
+		assertEquals(1, tasks.get(1).size());
+		assertEquals(1, tasks.get(2).size());
+		assertEquals(1, tasks.get(3).size());
+		assertEquals(11, tasks.get(4).size());
+
+		assertTrue(UploadScheduler.plan(uploads, 0, true, THRESHOLD).isEmpty());
+		assertTrue(UploadScheduler.plan(new ArrayList<UploadScheduler.Upload>(), 4, true, THRESHOLD).isEmpty());
+	}
+
+	//first file of every task
+	private static List<String> getFileNames(List<List<UploadScheduler.Upload>> tasks){
+		List<String> fileNames = new ArrayList<String>();
+		for (List<UploadScheduler.Upload> task : tasks){
+			fileNames.add(task.get(0).fileName);
+		}
+		return fileNames;
+	}
+}
@@ -0,0 +1,215 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//uploads 500 exported plots to a local stand-in of the server, one request per file and in bundles
+public class BundleUploaderTest extends TestCase {
+
+	private static final int FILES_NO = 500;
+	private static final int BUNDLE_SIZE = 100;
+
+	private StandInServer server;
+	private File folder;
+	private List<File> files = new ArrayList<File>();
+	private Map<String,byte[]> received = new HashMap<String,byte[]>();
+	private int requestsNo;
+	private long receivedBytes;
+	private String corruptedFileName;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.server = new StandInServer(false);
+		this.server.createContext("/save-received-data-file", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				BundleUploaderTest.this.receiveFile(exchange);
+			}
+		});
+		this.server.createContext("/save-received-data-bundle", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				BundleUploaderTest.this.receiveBundle(exchange);
+			}
+		});
+		this.server.start();
+		this.folder = File.createTempFile("exported", "");
+		this.folder.delete();
+		this.folder.mkdirs();
+		Random random = new Random(1);
+		for (int i=0;i<FILES_NO;i++){
+			StringBuilder xml = new StringBuilder("<plot><no>"+i+"</no>");
+			for (int tree=0;tree<20;tree++){
+				xml.append("<tree><dbh>").append(random.nextInt(1000)).append("</dbh><species>").append(random.nextInt(300)).append("</species></tree>");
+			}
+			xml.append("</plot>");
+			File file = new File(this.folder, "plot"+i+".xml");
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(xml.toString().getBytes("UTF-8"));
+			out.close();
+			this.files.add(file);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SharedHttpClient.shutdown();
+		this.server.stop();
+		for (File file : this.files){
+			file.delete();
+		}
+		this.folder.delete();
+	}
+
+	public void testBundles() throws Exception {
+		//one multipart request per file, as postSyncXML sends them
+		for (File file : this.files){
+			Map<String,String> fields = new LinkedHashMap<String,String>();
+			fields.put("survey_id", "99");
+			HttpPost request = new HttpPost(this.getUrl("/save-received-data-file"));
+			request.setEntity(new MultipartFileEntity(fields, "datafile_xml_string", file, "text/xml; charset=UTF-8"));
+			HttpResponse response = SharedHttpClient.getClient().execute(request);
+			assertEquals(200, response.getStatusLine().getStatusCode());
+			response.getEntity().consumeContent();
+		}
+		long singleBytes = this.getReceivedBytes();
+		assertEquals(FILES_NO, this.getRequestsNo());
+		assertEquals(FILES_NO, this.received.size());
+
+		this.reset();
+		BundleUploader uploader = new BundleUploader(this.getUrl("/save-received-data-bundle"));
+		for (int i=0;i<FILES_NO;i+=BUNDLE_SIZE){
+			BundleUploader.Result result = uploader.upload(this.files.subList(i, i+BUNDLE_SIZE), null);
+			assertEquals(BUNDLE_SIZE, result.saved.size());
+			assertTrue(result.refused.isEmpty());
+		}
+		assertEquals(FILES_NO/BUNDLE_SIZE, this.getRequestsNo());
+		//the bundles are compressed
+		assertTrue(this.getReceivedBytes()*2<singleBytes);
+		for (File file : this.files){
+			assertTrue(Arrays.equals(BundleUploaderTest.readFile(file), this.received.get(file.getName())));
+		}
+	}
+
+	public void testCorruptedBundleIsRefusedAsAWhole() throws Exception {
+		this.corruptedFileName = "plot3.xml";
+		BundleUploader.Result result = new BundleUploader(this.getUrl("/save-received-data-bundle")).upload(this.files.subList(0, 10), null);
+		assertTrue(result.saved.isEmpty());
+		assertEquals(10, result.refused.size());
+		assertTrue(this.received.isEmpty());
+	}
+
+	public void testUnsupportedServer() throws Exception {
+		try {
+			new BundleUploader(this.getUrl("/missing")).upload(this.files.subList(0, 2), null);
+			fail("bundle accepted by a server without bundles");
+		} catch (TransferUtils.UnsupportedException e){
+			//expected
+		}
+	}
+
+	private String getUrl(String path){
+		return this.server.getUrl(path);
+	}
+
+	private synchronized void reset(){
+		this.received.clear();
+		this.requestsNo = 0;
+		this.receivedBytes = 0;
+	}
+
+	private synchronized int getRequestsNo(){
+		return this.requestsNo;
+	}
+
+	private synchronized long getReceivedBytes(){
+		return this.receivedBytes;
+	}
+
+	private synchronized void receiveFile(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		HttpCompression.copy(exchange.getRequestBody(), body);
+		this.requestsNo++;
+		this.receivedBytes += body.size();
+		String form = body.toString("UTF-8");
+		int start = form.indexOf("<plot>");
+		int end = form.indexOf("</plot>")+"</plot>".length();
+		String fileName = "plot"+form.substring(start+"<plot><no>".length(), form.indexOf("</no>", start))+".xml";
+		this.received.put(fileName, form.substring(start, end).getBytes("UTF-8"));
+		byte[] response = "ok".getBytes("UTF-8");
+		exchange.sendResponseHeaders(200, response.length);
+		exchange.getResponseBody().write(response);
+	}
+
+	//all the files of the bundle are checked against the index before any of them is kept, like a transaction
+	private synchronized void receiveBundle(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		HttpCompression.copy(exchange.getRequestBody(), body);
+		this.requestsNo++;
+		this.receivedBytes += body.size();
+		Map<String,byte[]> files = new LinkedHashMap<String,byte[]>();
+		String index = null;
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(body.toByteArray()));
+		ZipEntry entry;
+		while ((entry = zip.getNextEntry())!=null){
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			HttpCompression.copy(zip, content);
+			if (entry.getName().equals(RecordBundleEntity.INDEX_ENTRY)){
+				index = content.toString("UTF-8");
+			} else {
+				byte[] bytes = content.toByteArray();
+				if (entry.getName().equals(this.corruptedFileName))
+					bytes[0] ^= 0xFF;
+				files.put(entry.getName(), bytes);
+			}
+		}
+		boolean isValid = index!=null;
+		for (String line : (index==null)?new String[0]:index.split("\n")){
+			String[] fields = line.split("\t");
+			byte[] file = files.get(fields[0]);
+			if (file==null||file.length!=Long.parseLong(fields[1])||!fields[2].equals(TransferUtils.toHex(TransferUtils.md5(file))))
+				isValid = false;
+		}
+		StringBuilder response = new StringBuilder();
+		for (String fileName : files.keySet()){
+			response.append(fileName).append('\t').append((isValid)?BundleUploader.STATUS_OK:"failed").append('\t').append((isValid)?"saved":"bundle corrupted").append('\n');
+		}
+		if (isValid)
+			this.received.putAll(files);
+		byte[] bytes = response.toString().getBytes("UTF-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			HttpCompression.copy(in, bytes);
+		} finally {
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,160 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//local stand-in of the server side of the chunked upload protocol of ChunkedUploader,
+//with hooks to drop the connection in the middle of a chunk, to corrupt chunks and to refuse compressed chunks
+public class ChunkedUploadServer {
+
+	public static final String PATH = "/upload-chunks";
+
+	private final StandInServer server;
+	private final Map<String,ByteArrayOutputStream> uploads = new HashMap<String,ByteArrayOutputStream>();
+	private final Map<String,String> parameters = new HashMap<String,String>();
+
+	private int chunksBeforeDrop = -1;
+	private int chunksToCorrupt = 0;
+	private int receivedChunksNo;
+	private int compressedChunksNo;
+	//status of the answer to a compressed chunk, 0 to accept it
+	private int compressedChunkStatus;
+	//refuses uncompressed chunks as well, like a server with a broken chunk
+	private boolean isEveryChunkRefused;
+
+	public ChunkedUploadServer() throws IOException {
+		this.server = new StandInServer(false);
+		this.server.createContext(PATH, new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				ChunkedUploadServer.this.handle(exchange);
+			}
+		});
+	}
+
+	public void start(){
+		this.server.start();
+	}
+
+	public void stop(){
+		this.server.stop();
+	}
+
+	public String getUrl(){
+		return this.server.getUrl(PATH);
+	}
+
+	//the connection is closed halfway through the chunk following the given number of accepted chunks
+	public synchronized void dropConnectionAfter(int chunksNo){
+		this.chunksBeforeDrop = chunksNo;
+	}
+
+	//the next chunks are received with a flipped byte
+	public synchronized void corruptChunks(int chunksNo){
+		this.chunksToCorrupt = chunksNo;
+	}
+
+	public synchronized void refuseCompressedChunks(int statusCode, boolean isEveryChunkRefused){
+		this.compressedChunkStatus = statusCode;
+		this.isEveryChunkRefused = isEveryChunkRefused;
+	}
+
+	public synchronized int getCompressedChunksNo(){
+		return this.compressedChunksNo;
+	}
+
+	public synchronized byte[] getReceived(String uploadId){
+		ByteArrayOutputStream upload = this.uploads.get(uploadId);
+		return (upload==null)?null:upload.toByteArray();
+	}
+
+	public synchronized String getParameter(String name){
+		return this.parameters.get(name);
+	}
+
+	public synchronized int getReceivedChunksNo(){
+		return this.receivedChunksNo;
+	}
+
+	private synchronized void handle(HttpExchange exchange) throws IOException {
+		String uploadId = exchange.getRequestURI().getPath().substring(PATH.length()+1);
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query!=null){
+			for (String parameter : query.split("&")){
+				String[] nameValue = parameter.split("=", 2);
+				this.parameters.put(java.net.URLDecoder.decode(nameValue[0], "UTF-8"), (nameValue.length>1)?java.net.URLDecoder.decode(nameValue[1], "UTF-8"):"");
+			}
+		}
+		ByteArrayOutputStream upload = this.uploads.get(uploadId);
+		if (exchange.getRequestMethod().equals("HEAD")){
+			//the JDK server does not keep the connection usable after a HEAD response
+			exchange.getResponseHeaders().set("Connection", "close");
+			if (upload==null){
+				exchange.sendResponseHeaders(404, -1);
+			} else {
+				exchange.getResponseHeaders().set(ChunkedUploader.UPLOAD_OFFSET, String.valueOf(upload.size()));
+				exchange.sendResponseHeaders(200, -1);
+			}
+			return;
+		}
+		if (!exchange.getRequestMethod().equals("PUT")){
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		if (upload==null){
+			upload = new ByteArrayOutputStream();
+			this.uploads.put(uploadId, upload);
+		}
+		long offset = Long.parseLong(exchange.getRequestHeaders().getFirst(ChunkedUploader.UPLOAD_OFFSET));
+		if (offset!=upload.size()){
+			exchange.getResponseHeaders().set(ChunkedUploader.UPLOAD_OFFSET, String.valueOf(upload.size()));
+			exchange.sendResponseHeaders(409, -1);
+			return;
+		}
+		if (this.chunksBeforeDrop==0){
+			//read part of the chunk and give up, like a link going down
+			this.chunksBeforeDrop = -1;
+			exchange.getRequestBody().read(new byte[1024]);
+			return;
+		}
+		boolean isCompressed = HttpCompression.isGzip(exchange.getRequestHeaders().getFirst(HttpCompression.CONTENT_ENCODING));
+		if (this.isEveryChunkRefused||(isCompressed&&this.compressedChunkStatus!=0)){
+			ChunkedUploadServer.readAll(exchange.getRequestBody());
+			exchange.sendResponseHeaders((this.compressedChunkStatus!=0)?this.compressedChunkStatus:400, -1);
+			return;
+		}
+		byte[] chunk = ChunkedUploadServer.readAll(HttpCompression.decode(exchange.getRequestBody(), (isCompressed)?HttpCompression.GZIP:null));
+		if (isCompressed)
+			this.compressedChunksNo++;
+		if (this.chunksToCorrupt>0&&chunk.length>0){
+			this.chunksToCorrupt--;
+			chunk[0] ^= 0xFF;
+		}
+		String checksum = exchange.getRequestHeaders().getFirst(ChunkedUploader.UPLOAD_CHECKSUM);
+		if (checksum==null||!checksum.equals("md5 "+TransferUtils.toHex(TransferUtils.md5(chunk)))){
+			exchange.sendResponseHeaders(ChunkedUploader.SC_CHECKSUM_MISMATCH, -1);
+			return;
+		}
+		upload.write(chunk);
+		this.receivedChunksNo++;
+		if (this.chunksBeforeDrop>0)
+			this.chunksBeforeDrop--;
+		exchange.getResponseHeaders().set(ChunkedUploader.UPLOAD_OFFSET, String.valueOf(upload.size()));
+		long length = Long.parseLong(exchange.getRequestHeaders().getFirst(ChunkedUploader.UPLOAD_LENGTH));
+		byte[] response = ((upload.size()==length)?"saved":"ok").getBytes("UTF-8");
+		exchange.sendResponseHeaders(200, response.length);
+		exchange.getResponseBody().write(response);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HttpCompression.copy(in, bytes);
+		return bytes.toByteArray();
+	}
+}
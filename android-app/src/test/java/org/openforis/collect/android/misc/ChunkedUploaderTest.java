@@ -0,0 +1,142 @@
+package org.openforis.collect.android.misc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ChunkedUploaderTest extends TestCase {
+
+	private static final int CHUNK_SIZE = 16*1024;
+	private static final int CHUNKS_NO = 20;
+
+	private ChunkedUploadServer server;
+	private File file;
+	private byte[] content;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.server = new ChunkedUploadServer();
+		this.server.start();
+		this.content = new byte[CHUNKS_NO*CHUNK_SIZE+123];
+		new Random(1).nextBytes(this.content);
+		this.file = File.createTempFile("cluster", ".xml");
+		FileOutputStream out = new FileOutputStream(this.file);
+		out.write(this.content);
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.server.stop();
+		this.file.delete();
+	}
+
+	public void testUpload() throws Exception {
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		Map<String,String> parameters = new HashMap<String,String>();
+		parameters.put("overwrite", "true");
+		assertEquals("saved", uploader.upload(this.file, parameters));
+		assertTrue(Arrays.equals(this.content, this.server.getReceived(ChunkedUploader.getUploadId(this.file))));
+		assertEquals(CHUNKS_NO+1, this.server.getReceivedChunksNo());
+		assertEquals("true", this.server.getParameter("overwrite"));
+	}
+
+	public void testInterruptedUploadResumes() throws Exception {
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		uploader.setTimeouts(5000, 5000);
+		this.server.dropConnectionAfter(CHUNKS_NO/2);
+		try {
+			uploader.upload(this.file, null);
+			fail("interrupted upload completed");
+		} catch (IOException e){
+			//expected
+		}
+		String uploadId = ChunkedUploader.getUploadId(this.file);
+		assertEquals(CHUNKS_NO/2*CHUNK_SIZE, this.server.getReceived(uploadId).length);
+		assertEquals("saved", uploader.upload(this.file, null));
+		//only the chunks not acknowledged before the interruption are sent again
+		assertEquals(this.content.length-CHUNKS_NO/2*CHUNK_SIZE, uploader.getSentBytes());
+		assertTrue(Arrays.equals(this.content, this.server.getReceived(uploadId)));
+	}
+
+	public void testCorruptedChunkIsSentAgain() throws Exception {
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		this.server.corruptChunks(2);
+		assertEquals("saved", uploader.upload(this.file, null));
+		assertEquals(this.content.length+2*CHUNK_SIZE, uploader.getSentBytes());
+		assertTrue(Arrays.equals(this.content, this.server.getReceived(ChunkedUploader.getUploadId(this.file))));
+	}
+
+	public void testCompletedUploadIsNotSentAgain() throws Exception {
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		uploader.upload(this.file, null);
+		assertEquals("saved", uploader.upload(this.file, null));
+		assertEquals(0, uploader.getSentBytes());
+		assertTrue(Arrays.equals(this.content, this.server.getReceived(ChunkedUploader.getUploadId(this.file))));
+	}
+
+	public void testCompressedChunks() throws Exception {
+		this.writeRecord();
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		uploader.setCompressed(true);
+		assertEquals("saved", uploader.upload(this.file, null));
+		assertTrue(Arrays.equals(this.content, this.server.getReceived(ChunkedUploader.getUploadId(this.file))));
+		assertEquals(this.server.getReceivedChunksNo(), this.server.getCompressedChunksNo());
+		assertEquals(this.content.length, uploader.getSentBytes());
+		assertTrue(uploader.getTransferredBytes()<this.content.length/2);
+		assertTrue(uploader.isCompressed());
+	}
+
+	public void testCompressedChunkRefused() throws Exception {
+		this.writeRecord();
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		uploader.setCompressed(true);
+		this.server.refuseCompressedChunks(415, false);
+		assertEquals("saved", uploader.upload(this.file, null));
+		assertTrue(Arrays.equals(this.content, this.server.getReceived(ChunkedUploader.getUploadId(this.file))));
+		assertEquals(0, this.server.getCompressedChunksNo());
+		assertFalse(uploader.isCompressed());
+	}
+
+	public void testBadRequestKeepsCompression() throws Exception {
+		this.writeRecord();
+		ChunkedUploader uploader = new ChunkedUploader(this.server.getUrl(), CHUNK_SIZE);
+		uploader.setCompressed(true);
+		//refused uncompressed as well: the chunk is at fault, not the compression
+		this.server.refuseCompressedChunks(400, true);
+		try {
+			uploader.upload(this.file, null);
+			fail("refused chunk accepted");
+		} catch (IOException e){
+			//expected
+		}
+		assertTrue(uploader.isCompressed());
+
+		//accepted uncompressed: the compression is given up
+		this.server.refuseCompressedChunks(400, false);
+		assertEquals("saved", uploader.upload(this.file, null));
+		assertEquals(0, this.server.getCompressedChunksNo());
+		assertFalse(uploader.isCompressed());
+	}
+
+	//replaces the random content with a compressible record of the same size
+	private void writeRecord() throws IOException {
+		StringBuilder xml = new StringBuilder("<cluster>");
+		Random random = new Random(1);
+		while (xml.length()<this.content.length-10){
+			xml.append("<tree><dbh>").append(random.nextInt(1000)).append("</dbh></tree>");
+		}
+		xml.setLength(this.content.length-10);
+		xml.append("</cluster>");
+		this.content = xml.toString().getBytes("UTF-8");
+		FileOutputStream out = new FileOutputStream(this.file);
+		out.write(this.content);
+		out.close();
+	}
+}
@@ -0,0 +1,192 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+//a device and a server holding the same 5,000 records, with a day of changes on both sides
+public class DeltaSyncClientTest extends TestCase {
+
+	private static final int RECORDS_NO = 5000;
+	private static final long DAY = 24*60*60*1000L;
+
+	private DeltaSyncServer server;
+	private SyncManifest device;
+	private Map<String,byte[]> deviceRecords;
+	private Random random;
+	private long now;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.server = new DeltaSyncServer();
+		this.server.start();
+		this.device = new SyncManifest();
+		this.deviceRecords = new HashMap<String,byte[]>();
+		this.random = new Random(1);
+		this.now = 1370000000000L;
+		for (int i=0;i<RECORDS_NO;i++){
+			String key = "cluster:"+i;
+			byte[] xml = this.createRecord(key);
+			long modified = this.now-DAY-this.random.nextInt(100)*DAY;
+			this.server.putRecord(key, modified, xml);
+			this.putDeviceRecord(key, modified, xml);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SharedHttpClient.shutdown();
+		this.server.stop();
+	}
+
+	public void testUnchangedDataset() throws Exception {
+		DeltaSyncClient client = new DeltaSyncClient(this.server.getUrl());
+		SyncManifest.Delta delta = client.compare(this.device, null);
+		assertTrue(delta.isEmpty());
+		assertTrue(client.getSentBytes()+client.getReceivedBytes()<16*1024);
+		//a fraction of the whole manifest, gzipped
+		assertTrue((client.getSentBytes()+client.getReceivedBytes())*10<DeltaSyncClientTest.getCompressedSize(this.device));
+	}
+
+	public void testDailyChanges() throws Exception {
+		HashSet<String> expectedUploads = new HashSet<String>();
+		HashSet<String> expectedDownloads = new HashSet<String>();
+		//edited on the device
+		for (int i=0;i<20;i++){
+			String key = "cluster:"+(i*97);
+			this.putDeviceRecord(key, this.now, this.createRecord(key));
+			expectedUploads.add(key);
+		}
+		//new on the device
+		for (int i=0;i<5;i++){
+			String key = "cluster:"+(RECORDS_NO+i);
+			this.putDeviceRecord(key, this.now, this.createRecord(key));
+			expectedUploads.add(key);
+		}
+		//edited on the server
+		for (int i=0;i<10;i++){
+			String key = "cluster:"+(i*89+1);
+			this.server.putRecord(key, this.now, this.createRecord(key));
+			expectedDownloads.add(key);
+		}
+		//new on the server
+		for (int i=0;i<3;i++){
+			String key = "cluster:"+(RECORDS_NO+100+i);
+			this.server.putRecord(key, this.now, this.createRecord(key));
+			expectedDownloads.add(key);
+		}
+		//edited on both sides, the later edit wins
+		this.putDeviceRecord("cluster:4999", this.now-1000, this.createRecord("cluster:4999"));
+		this.server.putRecord("cluster:4999", this.now, this.createRecord("cluster:4999"));
+		expectedDownloads.add("cluster:4999");
+
+		DeltaSyncClient client = new DeltaSyncClient(this.server.getUrl());
+		SyncManifest.Delta delta = client.compare(this.device, null);
+		assertEquals(expectedUploads, new HashSet<String>(delta.toUpload));
+		assertEquals(expectedDownloads, new HashSet<String>(delta.toDownload));
+		assertEquals(1, this.server.getManifestRequestsNo());
+
+		long recordsBytes = 0;
+		for (String key : delta.toUpload){
+			recordsBytes += this.deviceRecords.get(key).length;
+		}
+		FileDownloader downloader = new FileDownloader(3, FileDownloader.DEFAULT_BUFFER_SIZE);
+		File folder = File.createTempFile("imported", "");
+		folder.delete();
+		//imported like SyncManager does: the record is saved with the clock of the device at the time of the import
+		long importTime = this.now+60*1000;
+		for (String key : delta.toDownload){
+			File file = downloader.download(client.getRecordUrl(key, null), folder, key.replace(':', '_')+".xml", delta.hashes.get(key), null).get();
+			recordsBytes += file.length();
+			this.importDeviceRecord(key, importTime, file);
+			file.delete();
+		}
+		downloader.shutdown();
+		folder.delete();
+		assertTrue(client.getSentBytes()+client.getReceivedBytes()<32*1024);
+		//the changed records only, instead of the whole dataset
+		assertTrue(recordsBytes*100<this.getDatasetSize());
+
+		//the downloaded records are now the same on both sides
+		delta = client.compare(this.device, null);
+		assertEquals(expectedUploads, new HashSet<String>(delta.toUpload));
+		assertTrue(delta.toDownload.isEmpty());
+
+		//once the uploads reach the server, the buckets of the imported records match despite their later date
+		for (String key : expectedUploads){
+			this.server.putRecord(key, this.device.get(key).modified, this.deviceRecords.get(key));
+		}
+		delta = client.compare(this.device, null);
+		assertTrue(delta.isEmpty());
+		assertEquals(0, this.server.getChangedBucketsNo());
+	}
+
+	public void testManifestRoundTrip() throws Exception {
+		SyncManifest manifest = new SyncManifest();
+		manifest.add(new SyncManifest.Entry("cluster:1,2", 1L, "00ff"));
+		manifest.add(new SyncManifest.Entry("plot\t\u00e4\n3", 2L, "ff00"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manifest.write(out);
+		SyncManifest read = SyncManifest.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(2, read.size());
+		assertEquals("ff00", read.get("plot\t\u00e4\n3").hash);
+		assertEquals(1L, read.get("cluster:1,2").modified);
+		assertTrue(Arrays.equals(manifest.getBucketDigests(16), read.getBucketDigests(16)));
+	}
+
+	private void putDeviceRecord(String key, long modified, byte[] xml){
+		this.deviceRecords.put(key, xml);
+		this.device.add(new SyncManifest.Entry(key, modified, TransferUtils.toHex(TransferUtils.md5(xml))));
+	}
+
+	private void importDeviceRecord(String key, long modified, File file) throws Exception {
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			HttpCompression.copy(in, xml);
+		} finally {
+			in.close();
+		}
+		this.deviceRecords.put(key, xml.toByteArray());
+		this.device.add(new SyncManifest.Entry(key, modified, SyncManifest.hash(file)));
+	}
+
+	//a cluster with a few plots and randomly filled attributes, about 2KB
+	private byte[] createRecord(String key) throws Exception {
+		StringBuilder xml = new StringBuilder("<cluster><id>"+key+"</id>");
+		for (int plot=0;plot<4;plot++){
+			xml.append("<plot><no>").append(plot).append("</no>");
+			for (int tree=0;tree<5;tree++){
+				xml.append("<tree><dbh>").append(this.random.nextInt(1000)).append("</dbh><species>")
+					.append(this.random.nextInt(300)).append("</species></tree>");
+			}
+			xml.append("</plot>");
+		}
+		xml.append("</cluster>");
+		return xml.toString().getBytes("UTF-8");
+	}
+
+	private long getDatasetSize(){
+		long size = 0;
+		for (byte[] xml : this.deviceRecords.values()){
+			size += xml.length;
+		}
+		return size;
+	}
+
+	private static long getCompressedSize(SyncManifest manifest) throws Exception {
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		manifest.write(plain);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		HttpCompression.compress(new ByteArrayInputStream(plain.toByteArray()), compressed);
+		return compressed.size();
+	}
+}
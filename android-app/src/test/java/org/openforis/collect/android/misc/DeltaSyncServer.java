@@ -0,0 +1,102 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//local stand-in of the server side of DeltaSyncClient, holding records in memory
+public class DeltaSyncServer {
+
+	public static final String PATH = "/sync";
+
+	private final StandInServer server;
+	private final SyncManifest manifest = new SyncManifest();
+	private final Map<String,byte[]> records = new HashMap<String,byte[]>();
+	private int manifestRequestsNo;
+	//buckets found different by the last manifest request
+	private int changedBucketsNo;
+
+	public DeltaSyncServer() throws IOException {
+		this.server = new StandInServer(false);
+		this.server.createContext(PATH, new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				DeltaSyncServer.this.handle(exchange);
+			}
+		});
+	}
+
+	public void start(){
+		this.server.start();
+	}
+
+	public void stop(){
+		this.server.stop();
+	}
+
+	public String getUrl(){
+		return this.server.getUrl(PATH);
+	}
+
+	public synchronized void putRecord(String key, long modified, byte[] xml){
+		this.records.put(key, xml);
+		this.manifest.add(new SyncManifest.Entry(key, modified, TransferUtils.toHex(TransferUtils.md5(xml))));
+	}
+
+	public synchronized int getManifestRequestsNo(){
+		return this.manifestRequestsNo;
+	}
+
+	public synchronized int getChangedBucketsNo(){
+		return this.changedBucketsNo;
+	}
+
+	private synchronized void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		Map<String,String> parameters = DeltaSyncServer.getParameters(exchange.getRequestURI().getRawQuery());
+		if (path.equals(PATH+DeltaSyncClient.MANIFEST_PATH)&&exchange.getRequestMethod().equals("POST")){
+			this.manifestRequestsNo++;
+			InputStream in = HttpCompression.decode(exchange.getRequestBody(), exchange.getRequestHeaders().getFirst(HttpCompression.CONTENT_ENCODING));
+			int bucketsNo = Integer.parseInt(parameters.get(DeltaSyncClient.BUCKETS_NO));
+			SortedSet<Integer> changedBuckets = this.manifest.getChangedBuckets(SyncManifest.readBucketDigests(in, bucketsNo));
+			this.changedBucketsNo = changedBuckets.size();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			OutputStream out = new GZIPOutputStream(response);
+			SyncManifest.writeChanges(changedBuckets, this.manifest.getBuckets(changedBuckets, bucketsNo), out);
+			out.close();
+			exchange.getResponseHeaders().set(HttpCompression.CONTENT_ENCODING, HttpCompression.GZIP);
+			exchange.sendResponseHeaders(200, response.size());
+			exchange.getResponseBody().write(response.toByteArray());
+		} else if (path.equals(PATH+DeltaSyncClient.RECORD_PATH)){
+			byte[] xml = this.records.get(parameters.get(DeltaSyncClient.KEY));
+			if (xml==null){
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, xml.length);
+			exchange.getResponseBody().write(xml);
+		} else {
+			exchange.sendResponseHeaders(404, -1);
+		}
+	}
+
+	private static Map<String,String> getParameters(String query) throws IOException {
+		Map<String,String> parameters = new HashMap<String,String>();
+		if (query!=null){
+			for (String parameter : query.split("&")){
+				String[] nameValue = parameter.split("=", 2);
+				parameters.put(URLDecoder.decode(nameValue[0], "UTF-8"), (nameValue.length>1)?URLDecoder.decode(nameValue[1], "UTF-8"):"");
+			}
+		}
+		return parameters;
+	}
+}
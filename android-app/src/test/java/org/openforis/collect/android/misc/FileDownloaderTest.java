@@ -0,0 +1,299 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//downloads from a local stand-in of the data server which supports byte ranges with If-Range and can drop connections
+public class FileDownloaderTest extends TestCase {
+
+	private static final int FILES_NO = 6;
+	private static final int FILE_SIZE = 1024*1024;
+
+	private StandInServer server;
+	private Map<String,byte[]> files = new HashMap<String,byte[]>();
+	private Map<String,Integer> dropAfter = new HashMap<String,Integer>();
+	private Map<String,String> wrongMd5 = new HashMap<String,String>();
+	private Map<String,String> etags = new HashMap<String,String>();
+	private File targetFolder;
+	private int activeRequestsNo;
+	private int maxActiveRequestsNo;
+
+	@Override
+	protected void setUp() throws Exception {
+		Random random = new Random(1);
+		for (int i=0;i<FILES_NO;i++){
+			byte[] content = new byte[FILE_SIZE];
+			random.nextBytes(content);
+			this.files.put("cluster"+i+".xml", content);
+			this.etags.put("cluster"+i+".xml", "\"cluster"+i+"-1\"");
+		}
+		this.server = new StandInServer(true);
+		this.server.createContext("/planned/", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				FileDownloaderTest.this.updateActiveRequestsNo(1);
+				try {
+					FileDownloaderTest.this.serve(exchange);
+				} finally {
+					FileDownloaderTest.this.updateActiveRequestsNo(-1);
+				}
+			}
+		});
+		this.server.start();
+		this.targetFolder = File.createTempFile("imported", "");
+		this.targetFolder.delete();
+		this.targetFolder.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.server.stop();
+		for (File file : this.targetFolder.listFiles()){
+			file.delete();
+		}
+		this.targetFolder.delete();
+	}
+
+	public void testParallelDownloads() throws Exception {
+		FileDownloader downloader = new FileDownloader(3, FileDownloader.DEFAULT_BUFFER_SIZE);
+		List<Future<File>> downloads = new ArrayList<Future<File>>();
+		for (String fileName : this.files.keySet()){
+			downloads.add(downloader.download(this.getUrl(fileName), this.targetFolder, fileName, null, null));
+		}
+		for (Future<File> download : downloads){
+			download.get();
+		}
+		downloader.shutdown();
+		for (String fileName : this.files.keySet()){
+			this.assertDownloaded(fileName);
+		}
+		//no more connections than workers
+		assertTrue(this.getMaxActiveRequestsNo()<=3);
+	}
+
+	public void testInterruptedDownloadResumes() throws Exception {
+		this.dropAfter.put("cluster0.xml", FILE_SIZE/3);
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		final FileDownloader.Result[] results = new FileDownloader.Result[1];
+		downloader.download(this.getUrl("cluster0.xml"), this.targetFolder, "cluster0.xml", null, new FileDownloader.Listener(){
+			@Override
+			public void onFinished(String url, File file, FileDownloader.Result result) {
+				results[0] = result;
+			}
+		}).get();
+		downloader.shutdown();
+		assertEquals(2, results[0].attemptsNo);
+		//the second attempt only asked for the missing bytes
+		assertEquals(FILE_SIZE, results[0].downloadedBytes);
+		this.assertDownloaded("cluster0.xml");
+	}
+
+	public void testPartialFileOfPreviousSessionIsResumed() throws Exception {
+		byte[] content = this.files.get("cluster1.xml");
+		this.writePart("cluster1.xml", content, FILE_SIZE/2, this.etags.get("cluster1.xml"));
+		FileDownloader.Result result = this.download("cluster1.xml", null);
+		assertEquals(FILE_SIZE/2, result.resumedFrom);
+		assertEquals(FILE_SIZE/2, result.downloadedBytes);
+		this.assertDownloaded("cluster1.xml");
+	}
+
+	public void testChangedFileIsNotResumed() throws Exception {
+		byte[] content = this.files.get("cluster4.xml").clone();
+		content[0]++;
+		this.writePart("cluster4.xml", content, FILE_SIZE/2, "\"cluster4-0\"");
+		FileDownloader.Result result = this.download("cluster4.xml", null);
+		//the server sent the whole new version instead of the range
+		assertEquals(FILE_SIZE, result.downloadedBytes);
+		this.assertDownloaded("cluster4.xml");
+	}
+
+	public void testPartWithoutValidatorIsNotResumed() throws Exception {
+		OutputStream out = new FileOutputStream(new File(this.targetFolder, "cluster5.xml"+FileDownloader.PART_EXTENSION));
+		out.write(this.files.get("cluster5.xml"), 0, FILE_SIZE/2);
+		out.close();
+		FileDownloader.Result result = this.download("cluster5.xml", null);
+		assertEquals(0, result.resumedFrom);
+		assertEquals(FILE_SIZE, result.downloadedBytes);
+		this.assertDownloaded("cluster5.xml");
+	}
+
+	public void testResumedFileIsVerified() throws Exception {
+		//the stored md5 of the first response checks the bytes of both sessions
+		byte[] content = this.files.get("cluster1.xml").clone();
+		content[0]++;
+		this.writePart("cluster1.xml", content, FILE_SIZE/2, this.etags.get("cluster1.xml"));
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		try {
+			downloader.download(this.getUrl("cluster1.xml"), this.targetFolder, "cluster1.xml", null, null).get();
+			fail("corrupted file accepted");
+		} catch (ExecutionException e){
+			//expected
+		}
+		downloader.shutdown();
+		assertFalse(new File(this.targetFolder, "cluster1.xml").exists());
+		assertFalse(new File(this.targetFolder, "cluster1.xml"+FileDownloader.PART_EXTENSION).exists());
+		assertFalse(new File(this.targetFolder, "cluster1.xml"+FileDownloader.VALIDATOR_EXTENSION).exists());
+	}
+
+	public void testExpectedMd5IsChecked() throws Exception {
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		try {
+			downloader.download(this.getUrl("cluster2.xml"), this.targetFolder, "cluster2.xml", "00000000000000000000000000000000", null).get();
+			fail("file with another md5 accepted");
+		} catch (ExecutionException e){
+			//expected
+		}
+		downloader.download(this.getUrl("cluster2.xml"), this.targetFolder, "cluster2.xml", TransferUtils.toHex(TransferUtils.md5(this.files.get("cluster2.xml"))), null).get();
+		downloader.shutdown();
+		this.assertDownloaded("cluster2.xml");
+	}
+
+	public void testCompletePartFileIsRenamed() throws Exception {
+		this.writePart("cluster2.xml", this.files.get("cluster2.xml"), FILE_SIZE, this.etags.get("cluster2.xml"));
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		downloader.download(this.getUrl("cluster2.xml"), this.targetFolder, "cluster2.xml", null, null).get();
+		downloader.shutdown();
+		this.assertDownloaded("cluster2.xml");
+	}
+
+	public void testMalformedContentMd5IsIgnored() throws Exception {
+		this.wrongMd5.put("cluster3.xml", "not base64");
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		downloader.download(this.getUrl("cluster3.xml"), this.targetFolder, "cluster3.xml", null, null).get();
+		downloader.shutdown();
+		this.assertDownloaded("cluster3.xml");
+	}
+
+	public void testCorruptedDownloadIsRejected() throws Exception {
+		this.wrongMd5.put("cluster3.xml", "AAAAAAAAAAAAAAAAAAAAAA==");
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		Future<File> download = downloader.download(this.getUrl("cluster3.xml"), this.targetFolder, "cluster3.xml", null, null);
+		try {
+			download.get();
+			fail("corrupted file accepted");
+		} catch (ExecutionException e){
+			//expected
+		}
+		downloader.shutdown();
+		assertFalse(new File(this.targetFolder, "cluster3.xml").exists());
+		assertFalse(new File(this.targetFolder, "cluster3.xml"+FileDownloader.PART_EXTENSION).exists());
+	}
+
+	private FileDownloader.Result download(String fileName, String expectedMd5) throws Exception {
+		FileDownloader downloader = new FileDownloader(1, FileDownloader.DEFAULT_BUFFER_SIZE);
+		final FileDownloader.Result[] results = new FileDownloader.Result[1];
+		downloader.download(this.getUrl(fileName), this.targetFolder, fileName, expectedMd5, new FileDownloader.Listener(){
+			@Override
+			public void onFinished(String url, File file, FileDownloader.Result result) {
+				results[0] = result;
+			}
+		}).get();
+		downloader.shutdown();
+		return results[0];
+	}
+
+	//a part left by a previous session, with the validator of the response it was received from
+	private void writePart(String fileName, byte[] content, int length, String etag) throws IOException {
+		OutputStream out = new FileOutputStream(new File(this.targetFolder, fileName+FileDownloader.PART_EXTENSION));
+		out.write(content, 0, length);
+		out.close();
+		FileDownloader.writeValidator(new File(this.targetFolder, fileName+FileDownloader.VALIDATOR_EXTENSION), etag,
+				TransferUtils.toHex(TransferUtils.md5(this.files.get(fileName))));
+	}
+
+	private void assertDownloaded(String fileName) throws IOException {
+		File file = new File(this.targetFolder, fileName);
+		assertTrue(file.exists());
+		assertFalse(new File(this.targetFolder, fileName+FileDownloader.PART_EXTENSION).exists());
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		HttpCompression.copy(in, content);
+		in.close();
+		assertTrue(Arrays.equals(this.files.get(fileName), content.toByteArray()));
+	}
+
+	private String getUrl(String fileName){
+		return this.server.getUrl("/planned/"+fileName);
+	}
+
+	private synchronized void updateActiveRequestsNo(int change){
+		this.activeRequestsNo += change;
+		this.maxActiveRequestsNo = Math.max(this.maxActiveRequestsNo, this.activeRequestsNo);
+	}
+
+	private synchronized int getMaxActiveRequestsNo(){
+		return this.maxActiveRequestsNo;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		String fileName = exchange.getRequestURI().getPath().substring("/planned/".length());
+		byte[] content = this.files.get(fileName);
+		if (content==null){
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		int start = 0;
+		String etag = this.etags.get(fileName);
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (range!=null&&ifRange!=null&&!ifRange.equals(etag)){
+			//the file changed, it is sent whole
+			range = null;
+		}
+		exchange.getResponseHeaders().set("ETag", etag);
+		if (range!=null){
+			start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+			if (start>=content.length){
+				exchange.getResponseHeaders().set("Content-Range", "bytes */"+content.length);
+				exchange.sendResponseHeaders(416, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Range", "bytes "+start+"-"+(content.length-1)+"/"+content.length);
+		} else {
+			String md5 = this.wrongMd5.get(fileName);
+			exchange.getResponseHeaders().set("Content-MD5", (md5!=null)?md5:FileDownloaderTest.encodeBase64(TransferUtils.md5(content)));
+		}
+		exchange.sendResponseHeaders((range!=null)?206:200, content.length-start);
+		OutputStream out = exchange.getResponseBody();
+		Integer dropAfter;
+		synchronized (this.dropAfter){
+			dropAfter = this.dropAfter.remove(fileName);
+		}
+		if (dropAfter!=null){
+			out.write(content, start, dropAfter);
+			out.flush();
+			//closing the exchange before the announced length is sent cuts the connection
+			return;
+		}
+		out.write(content, start, content.length-start);
+	}
+
+	private static String encodeBase64(byte[] bytes){
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		StringBuilder text = new StringBuilder();
+		for (int i=0;i<bytes.length;i+=3){
+			int b = (bytes[i]&0xFF)<<16|((i+1<bytes.length)?(bytes[i+1]&0xFF)<<8:0)|((i+2<bytes.length)?bytes[i+2]&0xFF:0);
+			text.append(alphabet.charAt((b>>18)&63)).append(alphabet.charAt((b>>12)&63));
+			text.append((i+1<bytes.length)?alphabet.charAt((b>>6)&63):'=');
+			text.append((i+2<bytes.length)?alphabet.charAt(b&63):'=');
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,188 @@
+package org.openforis.collect.android.misc;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//lists a download folder of 500 plots on a local stand-in of the server, which answers conditional requests like apache
+public class FileListingTest extends TestCase {
+
+	private static final int FILES_NO = 500;
+	private static final String LAST_MODIFIED = "Mon, 19 Oct 2026 08:00:00 GMT";
+
+	private StandInServer server;
+	private File cacheFile;
+	private String contentType = FileListing.HTML;
+	private int version = 1;
+	private boolean isEtagSent = true;
+	private int requestsNo;
+	private int notModifiedNo;
+	private long sentBytes;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.server = new StandInServer(false);
+		this.server.createContext("/planned/", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				FileListingTest.this.list(exchange);
+			}
+		});
+		this.server.start();
+		this.cacheFile = File.createTempFile("server_files", ".txt");
+		this.cacheFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SharedHttpClient.shutdown();
+		this.server.stop();
+		this.cacheFile.delete();
+	}
+
+	public void testRevalidation() throws Exception {
+		FileListing listing = new FileListing(this.getUrl(), this.cacheFile);
+		FileListing.Result result = listing.refresh();
+		assertTrue(result.isModified);
+		assertEquals(FILES_NO, result.files.size());
+		assertEquals("plot0.xml", result.files.get(0));
+		long fullBytes = this.getSentBytes();
+
+		result = listing.refresh();
+		assertFalse(result.isModified);
+		assertEquals(FILES_NO, result.files.size());
+		assertEquals(1, this.getNotModifiedNo());
+		//the revalidation sent no body
+		assertEquals(fullBytes, this.getSentBytes());
+
+		//the validators survive a restart of the app in the cache file
+		FileListing restarted = new FileListing(this.getUrl(), this.cacheFile);
+		assertEquals(FILES_NO, restarted.load().size());
+		result = restarted.refresh();
+		assertFalse(result.isModified);
+		assertEquals(2, this.getNotModifiedNo());
+
+		this.setVersion(2);
+		result = restarted.refresh();
+		assertTrue(result.isModified);
+		assertEquals(FILES_NO+1, result.files.size());
+		assertEquals(2, this.getRequestsNo());
+	}
+
+	public void testLastModifiedOnly() throws Exception {
+		this.isEtagSent = false;
+		FileListing listing = new FileListing(this.getUrl(), null);
+		assertTrue(listing.refresh().isModified);
+		assertFalse(listing.refresh().isModified);
+		assertEquals(1, this.getNotModifiedNo());
+	}
+
+	public void testStructuredListings() throws Exception {
+		this.contentType = FileListing.JSON;
+		FileListing listing = new FileListing(this.getUrl(), null);
+		List<String> files = listing.refresh().files;
+		assertEquals(FILES_NO, files.size());
+		assertEquals("plot499.xml", files.get(FILES_NO-1));
+
+		this.contentType = FileListing.CSV;
+		listing = new FileListing(this.getUrl(), null);
+		files = listing.refresh().files;
+		assertEquals(FILES_NO, files.size());
+		assertEquals("plot499.xml", files.get(FILES_NO-1));
+	}
+
+	public void testParse() throws Exception {
+		assertEquals(Arrays.asList("a.xml", "b \"c\".xml", "\u00e4.xml"),
+				FileListing.parseJson("[\"a.xml\", \"b \\\"c\\\".xml\", \"\\u00e4.xml\"]"));
+		assertEquals(Arrays.asList("a.xml", "b.xml"),
+				FileListing.parseJson("[{\"size\":12,\"name\":\"a.xml\"},{\"name\":\"b.xml\",\"modified\":\"2026-10-19\"}]"));
+		assertEquals(Arrays.asList("a.xml", "b,\"c\".xml"),
+				FileListing.parseCsv(new BufferedReader(new StringReader("name,size\na.xml,12\n\"b,\"\"c\"\".xml\",13\n"))));
+		assertEquals(Arrays.asList("a.xml"),
+				FileListing.parseHtml(new BufferedReader(new StringReader("<ul><li><a href=\"/awfdatademo/\"> Parent Directory</a></li>\n<li><a href=\"a.xml\"> a.xml</a></li>\n</ul>"))));
+		assertEquals(Arrays.asList("a.xml"),
+				FileListing.parseJson(" [ {\"tags\":[\"x\",{\"name\":\"nested\"}],\"size\":1.5e3,\"hidden\":false,\"name\":\"a.xml\"}, {\"size\":null} ] "));
+		assertEquals(Collections.<String>emptyList(), FileListing.parseJson("[]"));
+		for (String json : new String[]{"[\"a.xml\"", "[\"a.xml\",]", "{\"name\":\"a.xml\"}", "[\"a.xml\"] x"}){
+			try {
+				FileListing.parseJson(json);
+				fail("malformed listing accepted: "+json);
+			} catch (IOException e){
+				//expected
+			}
+		}
+	}
+
+	private String getUrl(){
+		return this.server.getUrl("/planned/");
+	}
+
+	private synchronized void setVersion(int version){
+		this.version = version;
+	}
+
+	private synchronized int getRequestsNo(){
+		return this.requestsNo;
+	}
+
+	private synchronized int getNotModifiedNo(){
+		return this.notModifiedNo;
+	}
+
+	private synchronized long getSentBytes(){
+		return this.sentBytes;
+	}
+
+	private synchronized void list(HttpExchange exchange) throws IOException {
+		String etag = "\"listing-"+this.version+"\"";
+		String lastModified = (this.version==1)?LAST_MODIFIED:"Tue, 20 Oct 2026 08:00:00 GMT";
+		if (this.isEtagSent)
+			exchange.getResponseHeaders().set(FileListing.ETAG, etag);
+		exchange.getResponseHeaders().set(FileListing.LAST_MODIFIED, lastModified);
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst(FileListing.IF_NONE_MATCH);
+		String ifModifiedSince = exchange.getRequestHeaders().getFirst(FileListing.IF_MODIFIED_SINCE);
+		boolean isNotModified = (ifNoneMatch!=null)?ifNoneMatch.equals(etag):lastModified.equals(ifModifiedSince);
+		if (isNotModified){
+			this.notModifiedNo++;
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+		this.requestsNo++;
+		int filesNo = FILES_NO+this.version-1;
+		StringBuilder listing = new StringBuilder();
+		if (this.contentType.equals(FileListing.JSON)){
+			listing.append('[');
+			for (int i=0;i<filesNo;i++){
+				listing.append((i>0)?",":"").append("{\"name\":\"plot").append(i).append(".xml\",\"size\":2048}");
+			}
+			listing.append(']');
+		} else if (this.contentType.equals(FileListing.CSV)){
+			listing.append("name,size\n");
+			for (int i=0;i<filesNo;i++){
+				listing.append("plot").append(i).append(".xml,2048\n");
+			}
+		} else {
+			listing.append("<html><head><title>Index of /awfdatademo/planned</title></head><body>\n<ul><li><a href=\"/awfdatademo/\"> Parent Directory</a></li>\n");
+			for (int i=0;i<filesNo;i++){
+				listing.append("<li><a href=\"plot").append(i).append(".xml\"> plot").append(i).append(".xml</a></li>\n");
+			}
+			listing.append("</ul>\n</body></html>\n");
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(listing.toString().getBytes("UTF-8"));
+		exchange.getResponseHeaders().set("Content-Type", this.contentType+"; charset=UTF-8");
+		exchange.sendResponseHeaders(200, body.size());
+		exchange.getResponseBody().write(body.toByteArray());
+		this.sentBytes += body.size();
+	}
+}
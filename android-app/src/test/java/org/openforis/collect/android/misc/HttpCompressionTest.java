@@ -0,0 +1,286 @@
+package org.openforis.collect.android.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//transfers an exported record to and from a local stand-in of the server, with and without gzip
+public class HttpCompressionTest extends TestCase {
+
+	private static final int PLOTS_NO = 400;
+	private static final int TREES_NO = 25;
+
+	private StandInServer server;
+	private byte[] record;
+	private byte[] receivedUpload;
+	private long uploadWireBytes;
+	private boolean isUploadCompressed;
+	//status of the answer to a compressed upload, 0 to accept it
+	private int compressedUploadStatus;
+	//refuses uncompressed uploads with 400 as well
+	private boolean isEveryUploadRefused;
+	//answers uploads with an Accept-Encoding listing gzip
+	private boolean isGzipAdvertised;
+	private int uploadRequestsNo;
+	private File recordFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.record = createRecordXml();
+		this.server = new StandInServer(false);
+		this.server.createContext("/record.xml", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				boolean isCompressed = HttpCompression.isGzip(exchange.getRequestHeaders().getFirst(HttpCompression.ACCEPT_ENCODING));
+				if (isCompressed){
+					exchange.getResponseHeaders().set(HttpCompression.CONTENT_ENCODING, HttpCompression.GZIP);
+				}
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream out = exchange.getResponseBody();
+				if (isCompressed){
+					HttpCompression.compress(new ByteArrayInputStream(HttpCompressionTest.this.record), out);
+				} else {
+					out.write(HttpCompressionTest.this.record);
+				}
+				out.close();
+			}
+		});
+		this.server.createContext("/upload", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				CountingInputStream wireIn = new CountingInputStream(exchange.getRequestBody());
+				String contentEncoding = exchange.getRequestHeaders().getFirst(HttpCompression.CONTENT_ENCODING);
+				InputStream in = HttpCompression.decode(wireIn, contentEncoding);
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				HttpCompression.copy(in, body);
+				boolean isCompressed = HttpCompression.isGzip(contentEncoding);
+				HttpCompressionTest.this.uploadRequestsNo++;
+				if (HttpCompressionTest.this.isGzipAdvertised)
+					exchange.getResponseHeaders().set(HttpCompression.ACCEPT_ENCODING, "gzip, deflate");
+				if (HttpCompressionTest.this.isEveryUploadRefused||(isCompressed&&HttpCompressionTest.this.compressedUploadStatus!=0)){
+					exchange.sendResponseHeaders((isCompressed)?HttpCompressionTest.this.compressedUploadStatus:400, -1);
+					return;
+				}
+				HttpCompressionTest.this.receivedUpload = body.toByteArray();
+				HttpCompressionTest.this.uploadWireBytes = wireIn.count;
+				HttpCompressionTest.this.isUploadCompressed = isCompressed;
+				byte[] answer = "saved".getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, answer.length);
+				exchange.getResponseBody().write(answer);
+			}
+		});
+		this.server.start();
+		this.recordFile = File.createTempFile("cluster", ".xml");
+		OutputStream out = new FileOutputStream(this.recordFile);
+		out.write(this.record);
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SharedHttpClient.shutdown();
+		this.server.stop();
+		this.recordFile.delete();
+	}
+
+	public void testDecodeLeavesIdentityStreamsUntouched() throws Exception {
+		InputStream in = new ByteArrayInputStream(new byte[0]);
+		assertSame(in, HttpCompression.decode(in, null));
+		assertSame(in, HttpCompression.decode(in, "identity"));
+		assertTrue(HttpCompression.isGzip("GZIP"));
+		assertTrue(HttpCompression.isGzip("x-gzip"));
+	}
+
+	public void testCompressedDownload() throws Exception {
+		long plainWireBytes = this.download(false);
+		long gzipWireBytes = this.download(true);
+		assertEquals(this.record.length, plainWireBytes);
+		assertTrue(gzipWireBytes*5<plainWireBytes);
+	}
+
+	public void testCompressedUpload() throws Exception {
+		this.upload(false);
+		long plainWireBytes = this.uploadWireBytes;
+		assertTrue(Arrays.equals(this.record, this.receivedUpload));
+		this.upload(true);
+		long gzipWireBytes = this.uploadWireBytes;
+		assertTrue(Arrays.equals(this.record, this.receivedUpload));
+		assertTrue(gzipWireBytes*5<plainWireBytes);
+	}
+
+	public void testAcceptEncodingOfServer() throws Exception {
+		assertTrue(HttpCompression.isGzipAccepted("gzip"));
+		assertTrue(HttpCompression.isGzipAccepted("deflate, GZIP;q=0.5"));
+		assertFalse(HttpCompression.isGzipAccepted("gzip;q=0"));
+		assertFalse(HttpCompression.isGzipAccepted("identity"));
+		assertFalse(HttpCompression.isGzipAccepted(null));
+	}
+
+	public void testFormUploadWithoutAdvertisedGzip() throws Exception {
+		FileUploader uploader = this.createUploader();
+		assertEquals("saved", uploader.upload(this.recordFile, Collections.<String,String>emptyMap()));
+		assertEquals("saved", uploader.upload(this.recordFile, Collections.<String,String>emptyMap()));
+		assertFalse(this.isUploadCompressed);
+		assertFalse(uploader.isCompressed());
+		assertEquals(2, this.uploadRequestsNo);
+	}
+
+	public void testCompressedFormUpload() throws Exception {
+		this.isGzipAdvertised = true;
+		FileUploader uploader = this.createUploader();
+		//the first form goes uncompressed, the answer tells that gzip is accepted
+		assertEquals("saved", uploader.upload(this.recordFile, Collections.singletonMap("overwrite", "true")));
+		assertFalse(this.isUploadCompressed);
+		assertTrue(uploader.isCompressed());
+		assertEquals("saved", uploader.upload(this.recordFile, Collections.singletonMap("overwrite", "true")));
+		assertTrue(this.isUploadCompressed);
+		assertTrue(HttpCompressionTest.contains(this.receivedUpload, this.record));
+		assertTrue(this.uploadWireBytes*5<this.record.length);
+		assertEquals(2, this.uploadRequestsNo);
+	}
+
+	public void testUnsupportedCompression() throws Exception {
+		//advertised, yet refused
+		this.isGzipAdvertised = true;
+		this.compressedUploadStatus = 415;
+		FileUploader uploader = this.createUploader();
+		uploader.setCompressed(true);
+		assertEquals("saved", uploader.upload(this.recordFile, Collections.<String,String>emptyMap()));
+		assertFalse(this.isUploadCompressed);
+		assertFalse(uploader.isCompressed());
+		assertTrue(uploader.isCompressionRefused());
+		assertTrue(HttpCompressionTest.contains(this.receivedUpload, this.record));
+		assertEquals(2, this.uploadRequestsNo);
+		//the advertisement is not trusted anymore
+		assertEquals("saved", uploader.upload(this.recordFile, Collections.<String,String>emptyMap()));
+		assertFalse(this.isUploadCompressed);
+		assertEquals(3, this.uploadRequestsNo);
+	}
+
+	public void testBadRequestIsNotSentAgain() throws Exception {
+		this.isGzipAdvertised = true;
+		this.isEveryUploadRefused = true;
+		this.compressedUploadStatus = 400;
+		FileUploader uploader = this.createUploader();
+		uploader.setCompressed(true);
+		try {
+			uploader.upload(this.recordFile, Collections.<String,String>emptyMap());
+			fail("refused upload accepted");
+		} catch (IOException e){
+			//expected
+		}
+		assertEquals(1, this.uploadRequestsNo);
+		assertTrue(uploader.isCompressed());
+	}
+
+	private FileUploader createUploader(){
+		return new FileUploader(this.server.getUrl("/upload"), "datafile_xml_string", "text/xml; charset=UTF-8");
+	}
+
+	private static boolean contains(byte[] bytes, byte[] part){
+		for (int i=0;i+part.length<=bytes.length;i++){
+			int j = 0;
+			while (j<part.length&&bytes[i+j]==part[j]){
+				j++;
+			}
+			if (j==part.length)
+				return true;
+		}
+		return false;
+	}
+
+	//returns the number of bytes received from the server, checks the decoded content
+	private long download(boolean isCompressed) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(this.server.getUrl("/record.xml")).openConnection();
+		if (isCompressed)
+			connection.setRequestProperty(HttpCompression.ACCEPT_ENCODING, HttpCompression.GZIP);
+		CountingInputStream wireIn = new CountingInputStream(connection.getInputStream());
+		InputStream in = HttpCompression.decode(wireIn, connection.getContentEncoding());
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		HttpCompression.copy(in, content);
+		in.close();
+		assertTrue(Arrays.equals(this.record, content.toByteArray()));
+		return wireIn.count;
+	}
+
+	private void upload(boolean isCompressed) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(this.server.getUrl("/upload")).openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setChunkedStreamingMode(HttpCompression.BUFFER_SIZE);
+		if (isCompressed)
+			connection.setRequestProperty(HttpCompression.CONTENT_ENCODING, HttpCompression.GZIP);
+		OutputStream out = connection.getOutputStream();
+		if (isCompressed){
+			HttpCompression.compress(new ByteArrayInputStream(this.record), out);
+		} else {
+			HttpCompression.copy(new ByteArrayInputStream(this.record), out);
+		}
+		out.close();
+		assertEquals(200, connection.getResponseCode());
+		connection.disconnect();
+	}
+
+	//record in the layout written by DataManager.saveRecordToXml
+	private static byte[] createRecordXml() throws IOException {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<cluster>\n  <id><value>1234</value></id>\n");
+		for (int plot=0;plot<PLOTS_NO;plot++){
+			xml.append("  <plot>\n    <no><value>").append(plot).append("</value></no>\n");
+			xml.append("    <land_use><code>").append(plot%7).append("</code></land_use>\n");
+			for (int tree=0;tree<TREES_NO;tree++){
+				xml.append("    <tree>\n      <tree_no><value>").append(tree+1).append("</value></tree_no>\n");
+				xml.append("      <dbh><value>").append(10+(plot*31+tree*17)%90).append(".").append(tree%10).append("</value><unit>cm</unit></dbh>\n");
+				xml.append("      <species><code>SP").append((plot+tree)%40).append("</code><scientific_name>Species ").append((plot+tree)%40).append("</scientific_name></species>\n");
+				xml.append("      <health><code>").append(tree%3).append("</code></health>\n    </tree>\n");
+			}
+			xml.append("  </plot>\n");
+		}
+		xml.append("</cluster>\n");
+		return xml.toString().getBytes("UTF-8");
+	}
+
+	private static class CountingInputStream extends InputStream {
+
+		private final InputStream in;
+		private long count;
+
+		public CountingInputStream(InputStream in){
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = this.in.read();
+			if (b!=-1)
+				this.count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int readBytes = this.in.read(buffer, offset, length);
+			if (readBytes>0)
+				this.count += readBytes;
+			return readBytes;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package org.openforis.collect.android.misc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//imports 100 plots from a local stand-in of the server, with the latency of a mobile network,
+//into a journal file synced at every commit like the database
+public class ImportPipelineTest extends TestCase {
+
+	private static final int RECORDS_NO = 100;
+	private static final int LATENCY = 20;
+
+	private StandInServer server;
+	private Map<String,byte[]> plots = new LinkedHashMap<String,byte[]>();
+	private File folder;
+	private File journal;
+
+	private static class Plot {
+		final String name;
+		final int treesNo;
+
+		Plot(String name, int treesNo){
+			this.name = name;
+			this.treesNo = treesNo;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		Random random = new Random(1);
+		for (int i=0;i<RECORDS_NO;i++){
+			StringBuilder xml = new StringBuilder("<plot><no>"+i+"</no>");
+			for (int tree=0;tree<200;tree++){
+				xml.append("<tree><dbh>").append(random.nextInt(1000)).append("</dbh><species>").append(random.nextInt(300)).append("</species></tree>");
+			}
+			xml.append("</plot>");
+			this.plots.put("plot"+i+".xml", xml.toString().getBytes("UTF-8"));
+		}
+		this.plots.put("broken.xml", "<plot><no>".getBytes("UTF-8"));
+		this.server = new StandInServer(true);
+		this.server.createContext("/planned/", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(LATENCY);
+					String path = exchange.getRequestURI().getPath();
+					byte[] plot = ImportPipelineTest.this.plots.get(path.substring(path.lastIndexOf('/')+1));
+					if (plot==null){
+						exchange.sendResponseHeaders(404, -1);
+						return;
+					}
+					exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+					exchange.sendResponseHeaders(200, plot.length);
+					exchange.getResponseBody().write(plot);
+				} catch (InterruptedException e){
+					throw new IOException(e.toString());
+				}
+			}
+		});
+		this.server.start();
+		this.folder = File.createTempFile("imported", "");
+		this.folder.delete();
+		this.folder.mkdirs();
+		this.journal = new File(this.folder, "journal");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SharedHttpClient.shutdown();
+		this.server.stop();
+		for (File file : this.folder.listFiles()){
+			file.delete();
+		}
+		this.folder.delete();
+	}
+
+	public void testPipelinedImport() throws Exception {
+		Map<String,String> files = new LinkedHashMap<String,String>();
+		for (int i=0;i<RECORDS_NO;i++){
+			files.put("plot"+i+".xml", this.getUrl("plot"+i+".xml"));
+		}
+		final RandomAccessFile database = new RandomAccessFile(this.journal, "rw");
+		final List<Plot> saved = new ArrayList<Plot>();
+		FileDownloader downloader = new FileDownloader(3, FileDownloader.DEFAULT_BUFFER_SIZE);
+		ImportPipeline.Result result;
+		try {
+			result = new ImportPipeline<Plot>(downloader, this.folder, 2, ImportPipeline.DEFAULT_QUEUE_CAPACITY, ImportPipeline.DEFAULT_BATCH_SIZE).run(files, ImportPipelineTest.createParser(), new ImportPipeline.Persister<Plot>(){
+				@Override
+				public void persist(List<Plot> records) throws Exception {
+					ImportPipelineTest.commit(database, records);
+					saved.addAll(records);
+				}
+			});
+		} finally {
+			database.close();
+			downloader.shutdown();
+		}
+		assertEquals(RECORDS_NO, result.importedNo);
+		assertEquals(RECORDS_NO, saved.size());
+		assertTrue(result.failed.isEmpty());
+		assertTrue(result.batchesNo<RECORDS_NO/2);
+		for (Plot plot : saved){
+			assertEquals(200, plot.treesNo);
+			//the verified files are kept in the target folder, without a partial file left behind
+			assertTrue(new File(this.folder, plot.name).exists());
+			assertFalse(new File(this.folder, plot.name+FileDownloader.PART_EXTENSION).exists());
+		}
+	}
+
+	public void testFailures() throws Exception {
+		Map<String,String> files = new LinkedHashMap<String,String>();
+		for (int i=0;i<10;i++){
+			files.put("plot"+i+".xml", this.getUrl("plot"+i+".xml"));
+		}
+		files.put("missing.xml", this.getUrl("missing.xml"));
+		files.put("broken.xml", this.getUrl("broken.xml"));
+		final List<Plot> saved = new ArrayList<Plot>();
+		FileDownloader downloader = new FileDownloader(3, FileDownloader.DEFAULT_BUFFER_SIZE);
+		ImportPipeline.Result result = new ImportPipeline<Plot>(downloader, this.folder, 2, 2, 4).run(files, ImportPipelineTest.createParser(), new ImportPipeline.Persister<Plot>(){
+			@Override
+			public void persist(List<Plot> records) throws Exception {
+				for (Plot plot : records){
+					//the whole batch of the refused record is rolled back
+					if (plot.name.equals("plot7.xml"))
+						throw new IOException("refused");
+				}
+				saved.addAll(records);
+			}
+		});
+		downloader.shutdown();
+		assertTrue(result.failed.get("missing.xml").startsWith("not downloaded"));
+		assertTrue(result.failed.get("broken.xml").startsWith("not parsed"));
+		assertTrue(result.failed.get("plot7.xml").startsWith("not saved"));
+		assertEquals(12, result.importedNo+result.failed.size());
+		assertEquals(result.importedNo, saved.size());
+	}
+
+	private String getUrl(String fileName){
+		return this.server.getUrl("/planned/"+fileName);
+	}
+
+	private static ImportPipeline.Parser<Plot> createParser(){
+		final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>(){
+			@Override
+			protected DocumentBuilder initialValue() {
+				try {
+					return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+				} catch (Exception e){
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		return new ImportPipeline.Parser<Plot>(){
+			@Override
+			public Plot parse(String name, File file) throws Exception {
+				InputStream in = new FileInputStream(file);
+				try {
+					return ImportPipelineTest.parse(builders.get(), name, in);
+				} finally {
+					in.close();
+				}
+			}
+		};
+	}
+
+	private static Plot parse(DocumentBuilder builder, String name, InputStream in) throws Exception {
+		Document document = builder.parse(in);
+		return new Plot(name, document.getElementsByTagName("tree").getLength());
+	}
+
+	//appends the records and syncs the file, as a database commits a transaction
+	private static void commit(RandomAccessFile database, List<Plot> records) throws IOException {
+		database.seek(database.length());
+		for (Plot plot : records){
+			database.writeUTF(plot.name);
+			database.writeInt(plot.treesNo);
+		}
+		database.getFD().sync();
+	}
+}
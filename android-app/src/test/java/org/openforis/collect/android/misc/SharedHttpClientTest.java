@@ -0,0 +1,101 @@
+package org.openforis.collect.android.misc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+//compares a client per request, as ServerInterface used to do, with the shared client against a local server
+//which records the client port of every request, so that each new connection is counted
+public class SharedHttpClientTest extends TestCase {
+
+	private static final int REQUESTS_NO = 200;
+	private static final int THREADS_NO = 4;
+
+	private StandInServer server;
+	private Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+	@Override
+	protected void setUp() throws Exception {
+		this.server = new StandInServer(true);
+		this.server.createContext("/awfdatademo/planned/", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				SharedHttpClientTest.this.clientPorts.add(exchange.getRemoteAddress().getPort());
+				byte[] response = "<li><a href=\"cluster1.xml\"> cluster1.xml</a></li>".getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, response.length);
+				exchange.getResponseBody().write(response);
+			}
+		});
+		this.server.start();
+		SharedHttpClient.setBaseUrl(this.server.getUrl("/"));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SharedHttpClient.shutdown();
+		SharedHttpClient.setBaseUrl(SharedHttpClient.DEFAULT_BASE_URL);
+		this.server.stop();
+	}
+
+	public void testBaseUrl(){
+		assertEquals(this.server.getUrl("/awfdatademo/planned/"), SharedHttpClient.getUrl("/awfdatademo/planned/"));
+	}
+
+	public void testConnectionsAreReused() throws Exception {
+		for (int i=0;i<REQUESTS_NO;i++){
+			this.get(new DefaultHttpClient());
+		}
+		assertEquals(REQUESTS_NO, this.clientPorts.size());
+		this.clientPorts.clear();
+
+		for (int i=0;i<REQUESTS_NO;i++){
+			this.get(SharedHttpClient.getClient());
+		}
+		assertEquals(1, this.clientPorts.size());
+	}
+
+	public void testConcurrentRequestsShareThePool() throws Exception {
+		final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i=0;i<THREADS_NO;i++){
+			Thread thread = new Thread(){
+				@Override
+				public void run() {
+					try {
+						for (int j=0;j<REQUESTS_NO/THREADS_NO;j++){
+							SharedHttpClientTest.this.get(SharedHttpClient.getClient());
+						}
+					} catch (Exception e){
+						errors.add(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertTrue(this.clientPorts.size()<=Math.min(THREADS_NO, SharedHttpClient.MAX_CONNECTIONS));
+	}
+
+	private void get(HttpClient client) throws IOException {
+		HttpResponse response = client.execute(new HttpGet(SharedHttpClient.getUrl("/awfdatademo/planned/")));
+		assertEquals(200, response.getStatusLine().getStatusCode());
+		response.getEntity().consumeContent();
+	}
+}
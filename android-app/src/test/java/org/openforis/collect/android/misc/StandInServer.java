@@ -0,0 +1,54 @@
+package org.openforis.collect.android.misc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+//local stand-in of the server shared by the network tests: a JDK http server on a free port of the loopback interface,
+//every exchange is closed once its handler returns, so that a handler may return right after sending its headers
+public class StandInServer {
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	//a concurrent server handles every request on its own thread, the other one handles them one at a time
+	public StandInServer(boolean isConcurrent) throws IOException {
+		//small answers are not held back waiting for the acknowledgement of the previous ones
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.executor = (isConcurrent)?Executors.newCachedThreadPool():null;
+		this.server.setExecutor(this.executor);
+	}
+
+	public void createContext(String path, final HttpHandler handler){
+		this.server.createContext(path, new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handler.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	public void start(){
+		this.server.start();
+	}
+
+	public void stop(){
+		this.server.stop(0);
+		if (this.executor!=null)
+			this.executor.shutdownNow();
+	}
+
+	public String getUrl(String path){
+		return "http://127.0.0.1:"+this.server.getAddress().getPort()+path;
+	}
+}